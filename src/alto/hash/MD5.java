@@ -35,6 +35,9 @@ package alto.hash;
  * 
  * <p> Cleanup and reorg by <code>jdp@syntelos</code>.  Dropped
  * "native" option.  </p>
+ * 
+ * <p> A JDK "MD5" message digest is used in place of this
+ * implementation when {@link Tools#UseProvider}.  </p>
  *
  *
  * @author Santeri Paavolainen (sjpaavol@cc.helsinki.fi)
@@ -67,6 +70,11 @@ public class MD5 {
          */
         byte	buffer[];
 
+        /**
+         * Transform input words
+         */
+        final int decode[] = new int[16];
+
         public MD5State() {
             super();
             buffer = new byte[64];
@@ -102,17 +110,30 @@ public class MD5 {
     MD5State	state;
  
     /**
-     * if hash() has been called, finals is set to the current finals
-     * state.  Any update() causes this to be set to null.
+     * if hash() has been called, finals is set to the current hash.
+     * Any update() causes this to be set to null.
      */
-    MD5State 	finals;
+    byte	finals[];
+
+    /**
+     * JDK engine, or null
+     */
+    private final java.security.MessageDigest digest;
 
   
     /**
      * Initialize MD5.
      */
     public MD5 () {
+        this(Tools.Provider("MD5"));
+    }
+
+    /**
+     * @param digest JDK engine, or null for this implementation
+     */
+    MD5 (java.security.MessageDigest digest) {
         super();
+        this.digest = digest;
         this.init();
     }
 
@@ -133,24 +154,77 @@ public class MD5 {
     public void init () {
         this.state = new MD5State();
         this.finals = null;
+        if (null != this.digest)
+            this.digest.reset();
+    }
+
+    /**
+     * @return Using the JDK engine
+     */
+    public boolean isProvided(){
+        return (null != this.digest);
     }
 
     public void update (byte buffer[], int offset, int length) {
         this.finals = null;
-        Update(this.state, buffer, offset, length);
+        /* Length can be told to be shorter, but not longer */
+        if ((offset + length) > buffer.length)
+            length = buffer.length - offset;
+        if (0 < length){
+            if (null != this.digest)
+                this.digest.update(buffer, offset, length);
+            else
+                Update(this.state, buffer, offset, length);
+        }
     }
     public void update (byte buffer[], int length) {
-        this.finals = null;
-        Update(this.state, buffer, 0, length);
+        this.update(buffer, 0, length);
     }
     public void update (byte buffer[]) {
         this.update(buffer, 0, buffer.length);
     }
     public void update (byte b) {
-        byte buffer[] = new byte[1];
-        buffer[0] = b;
-
-        this.update(buffer, 1);
+        this.finals = null;
+        if (null != this.digest)
+            this.digest.update(b);
+        else {
+            MD5State stat = this.state;
+            int index = (int) (stat.count & 0x3f);
+            stat.buffer[index] = b;
+            stat.count += 1;
+            if (63 == index)
+                Transform(stat, stat.buffer, 0, stat.decode);
+        }
+    }
+    /**
+     * Update with the remaining bytes of the buffer, leaving its
+     * position at its limit.
+     */
+    public void update (java.nio.ByteBuffer input) {
+        this.finals = null;
+        if (input.hasArray()){
+            int position = input.position();
+            this.update(input.array(), (input.arrayOffset() + position), input.remaining());
+            input.position(input.limit());
+        }
+        else if (null != this.digest)
+            this.digest.update(input);
+        else {
+            MD5State stat = this.state;
+            int length = input.remaining();
+            int index = (int) (stat.count & 0x3f);
+            stat.count += length;
+            while (0 < length){
+                int fill = Math.min(64 - index, length);
+                input.get(stat.buffer, index, fill);
+                index += fill;
+                length -= fill;
+                if (64 == index){
+                    Transform(stat, stat.buffer, 0, stat.decode);
+                    index = 0;
+                }
+            }
+        }
     }
   
     /**
@@ -212,22 +286,32 @@ public class MD5 {
      */
     public byte[] hash() {
         if (null == this.finals) {
-            MD5State fin = new MD5State(this.state);
+            if (null != this.digest){
+                try {
+                    this.finals = ((java.security.MessageDigest)this.digest.clone()).digest();
+                }
+                catch (CloneNotSupportedException exc){
+                    throw new alto.sys.Error.Bug(exc);
+                }
+            }
+            else {
+                MD5State fin = new MD5State(this.state);
 
-            int[] count_ints = {(int) (fin.count << 3), (int) (fin.count >> 29)};
-            byte[] bits = Encode(count_ints, 8);
+                int[] count_ints = {(int) (fin.count << 3), (int) (fin.count >> 29)};
+                byte[] bits = Encode(count_ints, 8);
     
-            int index = (int) (fin.count & 0x3f);
-            int padlen = (index < 56) ? (56 - index) : (120 - index);
+                int index = (int) (fin.count & 0x3f);
+                int padlen = (index < 56) ? (56 - index) : (120 - index);
 
-            Update(fin, PADDING, 0, padlen);
-            Update(fin, bits, 0, 8);	
+                Update(fin, PADDING, 0, padlen);
+                Update(fin, bits, 0, 8);	
 
+                this.finals = Encode(fin.state, 16);
+            }
             /* this.update() sets finals to null 
              */
-            this.finals = fin;
         } 
-        return Encode(this.finals.state, 16);
+        return this.finals.clone();
     }    
 
     /**
@@ -250,11 +334,7 @@ public class MD5 {
      *			maximum is buffer.length)
      */
     private static void Update (MD5State stat, byte buffer[], int offset, int length) {
-        int	index, partlen, i, start;
-
-        /* Length can be told to be shorter, but not inter */
-        if ((length - offset)> buffer.length)
-            length = buffer.length - offset;
+        int	index, partlen, i;
 
         /* compute number of bytes mod 64 */
 
@@ -264,14 +344,15 @@ public class MD5 {
         partlen = 64 - index;
 
         if (length >= partlen) {
-            int[] decode_buf = new int[16];
+            int[] decode_buf = stat.decode;
             if (partlen == 64) {
                 partlen = 0;
             } else {
-                for (i = 0; i < partlen; i++)
-                    stat.buffer[i + index] = buffer[i + offset];
+                System.arraycopy(buffer, offset, stat.buffer, index, partlen);
                 Transform(stat, stat.buffer, 0, decode_buf);
             }
+            /* whole blocks from the input array
+             */
             for (i = partlen; (i + 63) < length; i+= 64) {
                 Transform(stat, buffer, i + offset, decode_buf);
             }
@@ -282,12 +363,8 @@ public class MD5 {
 
         /* buffer remaining input 
          */
-        if (i < length) {
-            start = i;
-            for (; i < length; i++) {
-                stat.buffer[index + i - start] = buffer[i + offset];
-            }
-        }
+        if (i < length)
+            System.arraycopy(buffer, i + offset, stat.buffer, index, length - i);
     }
 
     private static void Decode (byte buffer[], int offset, int[] out) {
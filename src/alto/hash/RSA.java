@@ -21,6 +21,8 @@ package alto.hash;
 import java.security.KeyFactory;
 import java.security.interfaces.RSAPublicKey;
 import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPrivateCrtKey;
+import java.security.spec.RSAPrivateCrtKeySpec;
 import java.security.spec.RSAPrivateKeySpec;
 import java.security.spec.RSAPublicKeySpec;
 
@@ -138,6 +140,8 @@ public class RSA
     public final static int KEYS_PUB_N = 0;
     public final static int KEYS_PUB_E = 1;
     public final static int KEYS_PRI_D = 2;
+    public final static int KEYS_PRI_P = 3;
+    public final static int KEYS_PRI_Q = 4;
 
 
     /**
@@ -155,9 +159,11 @@ public class RSA
      * @param rng A random number generator (subclass of Random).
      * 
      * @returns An array containing the two components of the public
-     * key, "n" and "e", with the private key "d", which should be
-     * accessed using the constants <tt>`KEYS_PUB_N'</tt>,
-     * <tt>`KEYS_PUB_E'</tt> and <tt>`KEYS_PRI_D'</tt>, respectively.
+     * key, "n" and "e", with the private key "d", and its primes "p"
+     * and "q", which should be accessed using the constants
+     * <tt>`KEYS_PUB_N'</tt>, <tt>`KEYS_PUB_E'</tt>,
+     * <tt>`KEYS_PRI_D'</tt>, <tt>`KEYS_PRI_P'</tt> and
+     * <tt>`KEYS_PRI_Q'</tt>, respectively.
      */
     public final static BigInteger[] keys( int keysz, int ec, java.util.Random rng){
         BigInteger p, q, n, e = null, d, P;
@@ -223,7 +229,7 @@ public class RSA
             }
         }
 
-        BigInteger keys[] = new BigInteger[3];
+        BigInteger keys[] = new BigInteger[5];
 
         keys[KEYS_PUB_N] = n;
 
@@ -231,6 +237,10 @@ public class RSA
 
         keys[KEYS_PRI_D] = d;
 
+        keys[KEYS_PRI_P] = p;
+
+        keys[KEYS_PRI_Q] = q;
+
         return keys;
     }
 
@@ -238,6 +248,13 @@ public class RSA
 
     private BigInteger n = null, e = null, d = null;//, _n1;
 
+    /**
+     * Optional private key primes and exponents for the Chinese
+     * Remainder Theorem [PKCS#1 sec 5.1.2], a private key operation
+     * in about one third the time of "d" over "n".
+     */
+    private BigInteger p, q, dp, dq, qinv;
+
     private int blklen_plain, blklen_crypt;
 
     private RSAPublicKey keyPublic;
@@ -304,6 +321,19 @@ public class RSA
         this(U.getModulus(),U.getPublicExponent(),R.getPrivateExponent());
         this.keyPublic = U;
         this.keyPrivate = R;
+        if (R instanceof RSAPrivateCrtKey){
+            RSAPrivateCrtKey crt = (RSAPrivateCrtKey)R;
+            if (null != crt.getPrimeP() && null != crt.getPrimeQ()
+                && null != crt.getPrimeExponentP() && null != crt.getPrimeExponentQ()
+                && null != crt.getCrtCoefficient())
+            {
+                this.p = crt.getPrimeP();
+                this.q = crt.getPrimeQ();
+                this.dp = crt.getPrimeExponentP();
+                this.dq = crt.getPrimeExponentQ();
+                this.qinv = crt.getCrtCoefficient();
+            }
+        }
     }
     public RSA( java.security.KeyPair pair){
         this( ((RSAPublicKey)pair.getPublic()), ((RSAPrivateKey)pair.getPrivate()));
@@ -345,9 +375,10 @@ public class RSA
         this._init();
     }
     /**
-     * @param keys An array of two or three elements: if two, the two
-     * components of the public key; if three, both the public and
-     * private keys.
+     * @param keys An array of two, three or five elements: if two,
+     * the two components of the public key; if three, both the public
+     * and private keys; if five, the public and private keys with the
+     * private key primes.
      */
     public RSA( BigInteger[] keys){
         super();
@@ -370,6 +401,13 @@ public class RSA
                 this.e = keys[KEYS_PUB_E];
                 this.d = keys[KEYS_PRI_D];
             }
+            else if ( 5 == len){
+
+                this.n = keys[KEYS_PUB_N];
+                this.e = keys[KEYS_PUB_E];
+                this.d = keys[KEYS_PRI_D];
+                this._initCrt(keys[KEYS_PRI_P],keys[KEYS_PRI_Q]);
+            }
             else
                 throw new java.lang.IllegalArgumentException("Too many elements in keys array argument.");
 
@@ -395,6 +433,36 @@ public class RSA
         else
             throw new IllegalStateException("Zero-negative modulus length");
     }
+    private final void _initCrt(BigInteger p, BigInteger q){
+        if (null != this.d && null != p && null != q){
+            if (p.compareTo(q) < 0){
+                BigInteger t = p;
+                p = q;
+                q = t;
+            }
+            this.p = p;
+            this.q = q;
+            this.dp = this.d.mod(p.subtract(ONE));
+            this.dq = this.d.mod(q.subtract(ONE));
+            this.qinv = q.modInverse(p);
+        }
+    }
+    /**
+     * @return Private key operation on the argument, "c<sup>d</sup>
+     * mod n"
+     */
+    private final BigInteger modPowPrivate(BigInteger c){
+        BigInteger p = this.p;
+        if (null != p){
+            BigInteger q = this.q;
+            BigInteger m1 = c.modPow(this.dp,p);
+            BigInteger m2 = c.modPow(this.dq,q);
+            BigInteger h = this.qinv.multiply(m1.subtract(m2)).mod(p);
+            return m2.add(h.multiply(q));
+        }
+        else
+            return c.modPow(this.d,this.n);
+    }
 
 
     public BigInteger getModulus(){
@@ -423,7 +491,11 @@ public class RSA
     public RSAPrivateKey getPrivateKey(){
         RSAPrivateKey keyPrivate = this.keyPrivate;
         if (null == keyPrivate){
-            RSAPrivateKeySpec keySpec = new RSAPrivateKeySpec(this.n,this.d);
+            RSAPrivateKeySpec keySpec;
+            if (null != this.p && null != this.e)
+                keySpec = new RSAPrivateCrtKeySpec(this.n,this.e,this.d,this.p,this.q,this.dp,this.dq,this.qinv);
+            else
+                keySpec = new RSAPrivateKeySpec(this.n,this.d);
             try {
                 keyPrivate = (RSAPrivateKey)GetKeyFactory().generatePrivate(keySpec);
                 this.keyPrivate = keyPrivate;
@@ -557,6 +629,22 @@ public class RSA
     public int decipher ( byte[] ciphertext, int offset, int len, byte[] output, int outofs){
         if ( null == this.d || null == this.n)
             throw new java.lang.IllegalArgumentException("Private key is not available.");
+        else if ( null != this.p){
+
+            byte[] block = Trim(ciphertext,offset,len);
+
+            byte[] result = Trim(this.modPowPrivate(new BigInteger(1,block)));
+
+            int reslen = result.length;
+
+            int outlen = (output.length - outofs);
+            if (reslen > outlen)
+                throw new IllegalArgumentException("Output block too small, require '"+reslen+"' found '"+outlen+"'.");
+            else {
+                java.lang.System.arraycopy(result,0,output,outofs,reslen);
+                return reslen;
+            }
+        }
         else
             return this.decipher( n, d, ciphertext, offset, len, output, outofs);
     }
@@ -607,7 +695,7 @@ public class RSA
      */
     public byte[] sign(SHA1 sha){
 
-        return Trim(sha.toInteger().modPow( this.d, this.n));
+        return Trim(this.modPowPrivate(sha.toInteger()));
     }
     /**
      * @param signature Signature 
@@ -42,6 +42,13 @@ import java.math.BigInteger;
  *      34AA973C D4C4DAA4 F61EEB2B DBAD2731 6534016F
  * </pre>
  * 
+ * <p><b>Engine</b>
+ * 
+ * <p> Input arrays and buffers are transformed in whole blocks of 64
+ * bytes.  A JDK "SHA-1" message digest is used in place of this
+ * implementation when {@link Tools#UseProvider}.  See {@link
+ * Tools#main(java.lang.String[])} for throughput.
+ * 
  * <p><b>Command line</b>
  * 
  * <p> Calling this class as a command line filter, it will hash data
@@ -70,24 +77,38 @@ public final class SHA1 {
 
     private byte hashBits[] = new byte[SHA_LEN_BYTES];
     private boolean hashValid = false;
-    private int state[] = new int[5];
+    private final int state[] = new int[5];
+    /*
+     * Bytes hashed
+     */
     private long count = 0;
 
-
     /*
-     * The following array forms the basis for the transform
-     * buffer. Update puts bytes into this buffer and then
-     * transform adds it into the state of the hash.
+     * The block buffer holds input bytes until a whole block of 64
+     * bytes is transformed into the state of the hash.  Whole blocks
+     * of input arrays are transformed in place.
      */
-    private int block[] = new int[16];
+    private final byte block[] = new byte[64];
     private int blockIndex;
+    private final int schedule[] = new int[80];
+
+    /*
+     * JDK engine, or null
+     */
+    private final java.security.MessageDigest digest;
 
     /**
      * Calls "reset".
      */
     public SHA1() {
+        this(Tools.Provider("SHA-1"));
+    }
+    /**
+     * @param digest JDK engine, or null for this implementation
+     */
+    SHA1(java.security.MessageDigest digest) {
         super();
-
+        this.digest = digest;
         reset();
     }
     public SHA1(BigInteger b){
@@ -95,6 +116,7 @@ public final class SHA1 {
     }
     public SHA1(byte[] hashBits){
         super();
+        this.digest = null;
         if (null != hashBits){
             final int hl = hashBits.length;
             if (hl <= SHA_LEN_BYTES){
@@ -122,124 +144,52 @@ public final class SHA1 {
         return EMPTY;
     }
 
-    /*
-     * These functions are taken out of #defines in Steve's
-     * code. Java doesn't have a preprocessor so the first
-     * step is to just promote them to real methods.
-     * Later we can optimize them out into inline code,
-     * note that by making them final some compilers will
-     * inline them when given the -O flag.
+    /**
+     * @return Using the JDK engine
      */
-    final int rol(int value, int bits) {
-        int q = (value << bits) | (value >>> (32 - bits));
-        return q;
-    }
-
-    final int blk0(int i) {
-        block[i] = (rol(block[i],24)&0xFF00FF00) | (rol(block[i],8)&0x00FF00FF);
-        return block[i];
+    public boolean isProvided(){
+        return (null != this.digest);
     }
 
-    final int blk(int i) {
-        block[i&15] = rol(block[(i+13)&15]^block[(i+8)&15]^
-                          block[(i+2)&15]^block[i&15], 1);
-        return (block[i&15]);
-    }
-
-    final void R0(int data[], int v, int w, int x , int y, int z, int i) {
-        data[z] += ((data[w] & (data[x] ^ data[y] )) ^ data[y]) +
-            blk0(i) + 0x5A827999 + rol(data[v] ,5);
-        data[w] = rol(data[w], 30);
-    }
-
-    final void R1(int data[], int v, int w, int x, int y, int z, int i) {
-        data[z] += ((data[w] & (data[x] ^ data[y])) ^ data[y]) +
-            blk(i) + 0x5A827999 + rol(data[v] ,5);
-        data[w] = rol(data[w], 30);
-    }
-
-    final void R2(int data[], int v, int w, int x, int y, int z, int i) {
-        data[z] += (data[w] ^ data[x] ^ data[y]) +
-            blk(i) + 0x6ED9EBA1 + rol(data[v] ,5);
-        data[w] = rol(data[w], 30);
-    }
-
-    final void R3(int data[], int v, int w, int x, int y, int z, int i) {
-        data[z] += (((data[w] | data[x]) & data[y]) | (data[w] & data[x])) +
-            blk(i) + 0x8F1BBCDC + rol(data[v] ,5);
-        data[w] = rol(data[w], 30);
-    }
-
-    final void R4(int data[], int v, int w, int x, int y, int z, int i) {
-        data[z] += (data[w] ^ data[x] ^ data[y]) +
-            blk(i) + 0xCA62C1D6 + rol(data[v] ,5);
-        data[w] = rol(data[w], 30);
-    }
-
-
-    /*
-     * Steve's original code and comments :
-     *
-     * blk0() and blk() perform the initial expand.
-     * I got the idea of expanding during the round function from SSLeay
-     *
-     * #define blk0(i) block->l[i]
-     * #define blk(i) (block->l[i&15] = rol(block->l[(i+13)&15]^block->l[(i+8)&15] \
-     *   ^block->l[(i+2)&15]^block->l[i&15],1))
-     *
-     * (R0+R1), R2, R3, R4 are the different operations used in SHA1
-     * #define R0(v,w,x,y,z,i) z+=((w&(x^y))^y)+blk0(i)+0x5A827999+rol(v,5);w=rol(w,30);
-     * #define R1(v,w,x,y,z,i) z+=((w&(x^y))^y)+blk(i)+0x5A827999+rol(v,5);w=rol(w,30);
-     * #define R2(v,w,x,y,z,i) z+=(w^x^y)+blk(i)+0x6ED9EBA1+rol(v,5);w=rol(w,30);
-     * #define R3(v,w,x,y,z,i) z+=(((w|x)&y)|(w&x))+blk(i)+0x8F1BBCDC+rol(v,5);w=rol(w,30);
-     * #define R4(v,w,x,y,z,i) z+=(w^x^y)+blk(i)+0xCA62C1D6+rol(v,5);w=rol(w,30);
-     */
-
-    int dd[] = new int[5];
-
     /**
      * Hash a single 512-bit block. This is the core of the algorithm.
      *
-     * Note that working with arrays is very inefficent in Java as it
-     * does a class cast check each time you store into the array.
-     *
+     * The message schedule is expanded in full, and the rounds work
+     * in local variables, per FIPS PUB 180-1.
      */
+    private final static void Transform(int[] state, byte[] in, int ofs, int[] w) {
 
-    void transform() {
-
-        /* Copy context->state[] to working vars */
-        dd[0] = state[0];
-        dd[1] = state[1];
-        dd[2] = state[2];
-        dd[3] = state[3];
-        dd[4] = state[4];
-        /* 4 rounds of 20 operations each. Loop unrolled. */
-        R0(dd,0,1,2,3,4, 0); R0(dd,4,0,1,2,3, 1); R0(dd,3,4,0,1,2, 2); R0(dd,2,3,4,0,1, 3);
-        R0(dd,1,2,3,4,0, 4); R0(dd,0,1,2,3,4, 5); R0(dd,4,0,1,2,3, 6); R0(dd,3,4,0,1,2, 7);
-        R0(dd,2,3,4,0,1, 8); R0(dd,1,2,3,4,0, 9); R0(dd,0,1,2,3,4,10); R0(dd,4,0,1,2,3,11);
-        R0(dd,3,4,0,1,2,12); R0(dd,2,3,4,0,1,13); R0(dd,1,2,3,4,0,14); R0(dd,0,1,2,3,4,15);
-        R1(dd,4,0,1,2,3,16); R1(dd,3,4,0,1,2,17); R1(dd,2,3,4,0,1,18); R1(dd,1,2,3,4,0,19);
-        R2(dd,0,1,2,3,4,20); R2(dd,4,0,1,2,3,21); R2(dd,3,4,0,1,2,22); R2(dd,2,3,4,0,1,23);
-        R2(dd,1,2,3,4,0,24); R2(dd,0,1,2,3,4,25); R2(dd,4,0,1,2,3,26); R2(dd,3,4,0,1,2,27);
-        R2(dd,2,3,4,0,1,28); R2(dd,1,2,3,4,0,29); R2(dd,0,1,2,3,4,30); R2(dd,4,0,1,2,3,31);
-        R2(dd,3,4,0,1,2,32); R2(dd,2,3,4,0,1,33); R2(dd,1,2,3,4,0,34); R2(dd,0,1,2,3,4,35);
-        R2(dd,4,0,1,2,3,36); R2(dd,3,4,0,1,2,37); R2(dd,2,3,4,0,1,38); R2(dd,1,2,3,4,0,39);
-        R3(dd,0,1,2,3,4,40); R3(dd,4,0,1,2,3,41); R3(dd,3,4,0,1,2,42); R3(dd,2,3,4,0,1,43);
-        R3(dd,1,2,3,4,0,44); R3(dd,0,1,2,3,4,45); R3(dd,4,0,1,2,3,46); R3(dd,3,4,0,1,2,47);
-        R3(dd,2,3,4,0,1,48); R3(dd,1,2,3,4,0,49); R3(dd,0,1,2,3,4,50); R3(dd,4,0,1,2,3,51);
-        R3(dd,3,4,0,1,2,52); R3(dd,2,3,4,0,1,53); R3(dd,1,2,3,4,0,54); R3(dd,0,1,2,3,4,55);
-        R3(dd,4,0,1,2,3,56); R3(dd,3,4,0,1,2,57); R3(dd,2,3,4,0,1,58); R3(dd,1,2,3,4,0,59);
-        R4(dd,0,1,2,3,4,60); R4(dd,4,0,1,2,3,61); R4(dd,3,4,0,1,2,62); R4(dd,2,3,4,0,1,63);
-        R4(dd,1,2,3,4,0,64); R4(dd,0,1,2,3,4,65); R4(dd,4,0,1,2,3,66); R4(dd,3,4,0,1,2,67);
-        R4(dd,2,3,4,0,1,68); R4(dd,1,2,3,4,0,69); R4(dd,0,1,2,3,4,70); R4(dd,4,0,1,2,3,71);
-        R4(dd,3,4,0,1,2,72); R4(dd,2,3,4,0,1,73); R4(dd,1,2,3,4,0,74); R4(dd,0,1,2,3,4,75);
-        R4(dd,4,0,1,2,3,76); R4(dd,3,4,0,1,2,77); R4(dd,2,3,4,0,1,78); R4(dd,1,2,3,4,0,79);
-        /* Add the working vars back into context.state[] */
-        state[0] += dd[0];
-        state[1] += dd[1];
-        state[2] += dd[2];
-        state[3] += dd[3];
-        state[4] += dd[4];
+        for (int t = 0; t < 16; t++, ofs += 4)
+            w[t] = ((in[ofs] << 24) | ((in[ofs+1] & 0xff) << 16) |
+                    ((in[ofs+2] & 0xff) << 8) | (in[ofs+3] & 0xff));
+
+        for (int t = 16; t < 80; t++){
+            int x = (w[t-3] ^ w[t-8] ^ w[t-14] ^ w[t-16]);
+            w[t] = ((x << 1) | (x >>> 31));
+        }
+        int a = state[0], b = state[1], c = state[2], d = state[3], e = state[4], t, tmp;
+
+        for (t = 0; t < 20; t++){
+            tmp = ((a << 5) | (a >>> 27)) + ((b & c) | (~b & d)) + e + w[t] + 0x5A827999;
+            e = d; d = c; c = ((b << 30) | (b >>> 2)); b = a; a = tmp;
+        }
+        for (; t < 40; t++){
+            tmp = ((a << 5) | (a >>> 27)) + (b ^ c ^ d) + e + w[t] + 0x6ED9EBA1;
+            e = d; d = c; c = ((b << 30) | (b >>> 2)); b = a; a = tmp;
+        }
+        for (; t < 60; t++){
+            tmp = ((a << 5) | (a >>> 27)) + ((b & c) | (b & d) | (c & d)) + e + w[t] + 0x8F1BBCDC;
+            e = d; d = c; c = ((b << 30) | (b >>> 2)); b = a; a = tmp;
+        }
+        for (; t < 80; t++){
+            tmp = ((a << 5) | (a >>> 27)) + (b ^ c ^ d) + e + w[t] + 0xCA62C1D6;
+            e = d; d = c; c = ((b << 30) | (b >>> 2)); b = a; a = tmp;
+        }
+        state[0] += a;
+        state[1] += b;
+        state[2] += c;
+        state[3] += d;
+        state[4] += e;
     }
 
 
@@ -258,23 +208,23 @@ public final class SHA1 {
         hashBits = new byte[SHA_LEN_BYTES];
         hashValid = false;
         blockIndex = 0;
+        if (null != digest)
+            digest.reset();
     }
 
     /**
-     * Add one byte to the hash. When this is implemented
-     * all of the abstract class methods end up calling
-     * this method for types other than bytes.
+     * Add one byte to the hash.
      */
     public void update(byte b) {
-        int mask = (8 * (blockIndex & 3));
-
-        count += 8;
-        block[blockIndex >> 2] &= ~(0xff << mask);
-        block[blockIndex >> 2] |= (b & 0xff) << mask;
-        blockIndex++;
-        if (blockIndex == 64) {
-            transform();
-            blockIndex = 0;
+        if (null != digest)
+            digest.update(b);
+        else {
+            count += 1;
+            block[blockIndex++] = b;
+            if (blockIndex == 64) {
+                Transform(state,block,0,schedule);
+                blockIndex = 0;
+            }
         }
     }
 
@@ -321,34 +271,104 @@ public final class SHA1 {
         update(b.toByteArray());
     }
 
+    /**
+     * Add the UTF-8 encoding of the string to the hash, as {@link
+     * alto.io.u.Utf8#encode(java.lang.String)} without the
+     * intermediate array.
+     */
     public void update(String string) {
-        this.update( alto.io.u.Utf8.encode(string));
+        if ( null != string){
+            for (int cc = 0, count = string.length(); cc < count; cc++){
+                char ch = string.charAt(cc);
+                if (0x80 > ch)
+                    update((byte)ch);
+                else if (0x07FF < ch){
+                    update((byte)(0xE0 | ((ch >> 12) & 0x0F)));
+                    update((byte)(0x80 | ((ch >>  6) & 0x3F)));
+                    update((byte)(0x80 | (ch & 0x3F)));
+                }
+                else {
+                    update((byte)(0xC0 | ((ch >>  6) & 0x1F)));
+                    update((byte)(0x80 | (ch & 0x3F)));
+                }
+            }
+        }
     }
 
     /**
      * Add all bytes to the hash.
      */
     public void update(byte input[]) {
-        if ( null != input){
-            int len = input.length;
-            for (int i = 0; i < len; i++) 
-                update(input[i]);
-        }
+        if ( null != input)
+            update(input,0,input.length);
     }
 
     /**
      * Add a range bytes to the hash.
      */
     public void update(byte input[], int offset, int len) {
-        if ( null != input){
-            if ( 0 < offset){
-                len += offset;
-                for (int i = offset; i < len; i++) 
-                    update(input[i]);
+        if ( null != input && 0 < len){
+            if ( 0 > offset)
+                offset = 0;
+            if (null != digest)
+                digest.update(input,offset,len);
+            else {
+                count += len;
+                int index = blockIndex;
+                if (0 < index){
+                    int fill = Math.min(64-index,len);
+                    System.arraycopy(input,offset,block,index,fill);
+                    index += fill;
+                    offset += fill;
+                    len -= fill;
+                    if (64 == index){
+                        Transform(state,block,0,schedule);
+                        index = 0;
+                    }
+                }
+                while (64 <= len){
+                    Transform(state,input,offset,schedule);
+                    offset += 64;
+                    len -= 64;
+                }
+                if (0 < len){
+                    System.arraycopy(input,offset,block,index,len);
+                    index += len;
+                }
+                blockIndex = index;
+            }
+        }
+    }
+
+    /**
+     * Add the remaining bytes of the buffer to the hash, leaving its
+     * position at its limit.
+     */
+    public void update(java.nio.ByteBuffer input) {
+        if ( null != input && input.hasRemaining()){
+            if (input.hasArray()){
+                int position = input.position();
+                update(input.array(),(input.arrayOffset()+position),input.remaining());
+                input.position(input.limit());
+            }
+            else if (null != digest)
+                digest.update(input);
+            else {
+                int len = input.remaining();
+                count += len;
+                int index = blockIndex;
+                while (0 < len){
+                    int fill = Math.min(64-index,len);
+                    input.get(block,index,fill);
+                    index += fill;
+                    len -= fill;
+                    if (64 == index){
+                        Transform(state,block,0,schedule);
+                        index = 0;
+                    }
+                }
+                blockIndex = index;
             }
-            else
-                for (int i = 0; i < len; i++) 
-                    update(input[i]);
         }
     }
 
@@ -358,20 +378,27 @@ public final class SHA1 {
     private void finish() {
         if (hashValid)
             return;
+        else if (null != digest){
+            hashBits = digest.digest();
+            hashValid = true;
+        }
         else {
-            byte bits[] = new byte[8];
-            int i, j;
-
-            for (i = 0; i < 8; i++) {
-                bits[i] = (byte)((count >>> (((7 - i) * 8))) & 0xff);
+            long bits = (count << 3);
+            int index = blockIndex;
+            block[index++] = (byte)0x80;
+            if (56 < index){
+                while (64 > index)
+                    block[index++] = 0;
+                Transform(state,block,0,schedule);
+                index = 0;
             }
-
-            update((byte) 128);
-            while (blockIndex != 56)
-                update((byte) 0);
-            // This should cause a transform to happen.
-            update(bits);
-            for (i = 0; i < SHA_LEN_BYTES; i++) {
+            while (56 > index)
+                block[index++] = 0;
+            for (int i = 0; i < 8; i++)
+                block[56+i] = (byte)(bits >>> ((7 - i) * 8));
+            Transform(state,block,0,schedule);
+            blockIndex = 0;
+            for (int i = 0; i < SHA_LEN_BYTES; i++) {
                 hashBits[i] = (byte)
                     ((state[i>>2] >> ((3-(i & 3)) * 8) ) & 0xff);
             }
@@ -51,6 +51,48 @@ public abstract class Tools
      */
     public final static java.math.BigInteger FOUR = java.math.BigInteger.valueOf(4);
 
+    /**
+     * Use JDK message digest engines in {@link SHA1} and {@link MD5},
+     * from the system property <code>"alto.hash.Provider"</code>,
+     * default true.
+     */
+    public final static boolean UseProvider = (!"false".equalsIgnoreCase(System.getProperty("alto.hash.Provider")));
+
+    private final static java.util.concurrent.ConcurrentHashMap<String,Object> Providers = new java.util.concurrent.ConcurrentHashMap<String,Object>();
+
+    /**
+     * @return New JDK engine for the algorithm, cloned from a
+     * prototype, or null for not {@link #UseProvider}, or an
+     * algorithm not found or not cloneable
+     * @since 1.6
+     */
+    public final static java.security.MessageDigest Provider(String algorithm){
+        if (UseProvider){
+            Object prototype = Providers.get(algorithm);
+            if (null == prototype){
+                try {
+                    java.security.MessageDigest md = java.security.MessageDigest.getInstance(algorithm);
+                    md.clone();
+                    prototype = md;
+                }
+                catch (java.security.NoSuchAlgorithmException exc){
+                    prototype = Boolean.FALSE;
+                }
+                catch (CloneNotSupportedException exc){
+                    prototype = Boolean.FALSE;
+                }
+                Providers.putIfAbsent(algorithm,prototype);
+            }
+            if (prototype instanceof java.security.MessageDigest){
+                try {
+                    return (java.security.MessageDigest)((java.security.MessageDigest)prototype).clone();
+                }
+                catch (CloneNotSupportedException exc){
+                }
+            }
+        }
+        return null;
+    }
     /**
      * @since 1.1
      */
@@ -223,4 +265,94 @@ public abstract class Tools
         else
             return false;
     }
+
+
+    protected static void usage(java.io.PrintStream out){
+        out.println();
+        out.println("Usage");
+        out.println();
+        out.println("  Tools bench [millis]");
+        out.println();
+        out.println("Description");
+        out.println();
+        out.println("  Throughput in MB/s of SHA1 and MD5, in this implementation and");
+        out.println("  with the JDK engine, for inputs of 64 B to 16 MB.  Each hash is");
+        out.println("  a new object, as in use.  Default 1000 milliseconds per case.");
+        out.println();
+    }
+    private final static int[] BenchSizes = {
+        64, 1024, 0x10000, 0x100000, 0x1000000
+    };
+    /**
+     * @return Megabytes per second
+     */
+    private final static double Bench(int engine, byte[] input, long millis){
+        int len = input.length;
+        long bytes = 0L, sink = 0L;
+        long start = System.nanoTime(), end = (start+(millis * 1000000L)), now;
+        do {
+            for (int cc = 0; cc < 16; cc++){
+                byte[] hash;
+                switch (engine){
+                case 0:
+                    SHA1 sha = new SHA1((java.security.MessageDigest)null);
+                    sha.update(input,0,len);
+                    hash = sha.hash();
+                    break;
+                case 1:
+                    sha = new SHA1(Provider("SHA-1"));
+                    sha.update(input,0,len);
+                    hash = sha.hash();
+                    break;
+                case 2:
+                    MD5 md5 = new MD5((java.security.MessageDigest)null);
+                    md5.update(input,0,len);
+                    hash = md5.hash();
+                    break;
+                default:
+                    md5 = new MD5(Provider("MD5"));
+                    md5.update(input,0,len);
+                    hash = md5.hash();
+                    break;
+                }
+                sink += hash[0];
+                bytes += len;
+            }
+        }
+        while ((now = System.nanoTime()) < end);
+        if (0L == sink)
+            System.err.print("");
+        return ((bytes/1e6)/((now-start)/1e9));
+    }
+    public static void main(String[] argv){
+        if (0 < argv.length && "bench".equals(argv[0])){
+            long millis = 1000L;
+            if (1 < argv.length)
+                millis = Long.parseLong(argv[1]);
+            if (null == Provider("SHA-1") || null == Provider("MD5"))
+                System.out.println("JDK engine not available, see alto.hash.Provider");
+            else {
+                java.util.Random random = new java.util.Random();
+                System.out.printf("%10s %12s %12s %12s %12s%n","bytes","SHA1","SHA1 (JDK)","MD5","MD5 (JDK)");
+                for (int size : BenchSizes){
+                    byte[] input = new byte[size];
+                    random.nextBytes(input);
+                    /*
+                     * Warm up
+                     */
+                    for (int engine = 0; engine < 4; engine++)
+                        Bench(engine,input,Math.max(100L,(millis>>2)));
+                    System.out.printf("%10d",size);
+                    for (int engine = 0; engine < 4; engine++)
+                        System.out.printf(" %12.1f",Bench(engine,input,millis));
+                    System.out.println();
+                }
+            }
+            System.exit(0);
+        }
+        else {
+            usage(System.err);
+            System.exit(1);
+        }
+    }
 }
@@ -38,6 +38,66 @@ public final class SAuth
     extends java.lang.Object
     implements Authentication.Method
 {
+    /**
+     * Prepared RSA contexts by principal UID.  An entry is valid for
+     * the key pair it was prepared from, and is dropped by {@link
+     * alto.sec.Keys} when its key set is read, generated or
+     * destroyed.
+     */
+    public final static class Context
+        extends java.lang.Object
+    {
+        public final static int Size = 0x200;
+
+        private final static alto.io.u.Bobjmap Cache = new alto.io.u.Bobjmap(Size);
+
+        private final java.security.KeyPair pair;
+
+        private final RSA rsa;
+
+        private Context(java.security.KeyPair pair){
+            super();
+            this.pair = pair;
+            this.rsa = new RSA(pair);
+        }
+
+        /**
+         * @return Cached or new context for the principal's RSA keys
+         */
+        public final static RSA Get(Principal.Authentic keys){
+            return Get(keys.getUID(),keys.getKeyPair("RSA"));
+        }
+        /**
+         * @param uid Optional principal UID, when null the context is
+         * not cached
+         * @param pair Required RSA key pair
+         */
+        public final static RSA Get(java.lang.String uid, java.security.KeyPair pair){
+            if (null == pair)
+                throw new alto.sys.Error.State("RSA");
+            else if (null == uid)
+                return new RSA(pair);
+            else {
+                Context context = (Context)Cache.get(uid);
+                if (null == context || pair != context.pair){
+                    context = new Context(pair);
+                    Cache.put(uid,context);
+                }
+                return context.rsa;
+            }
+        }
+        public final static void Invalidate(java.lang.String uid){
+            if (null != uid)
+                Cache.remove(uid);
+        }
+        public final static void Clear(){
+            Cache.clear();
+        }
+        public final static alto.lang.Statistic[] Statistics(){
+            return Cache.statistics();
+        }
+    }
+
 
     private Authentication kind;
 
@@ -64,7 +124,7 @@ public final class SAuth
 
     public boolean sign(Principal.Authentic keys, HttpRequest request){
         if (null != keys){
-            RSA rsa = new RSA(keys);
+            RSA rsa = Context.Get(keys);
             request.maySetDate();
             request.maySetHost();
             request.setContentMD5();
@@ -72,59 +132,7 @@ public final class SAuth
             this.setSAuthUID(request,keys.getUID());
             this.setSAuthNonce(request);
 
-            java.lang.String requestline = request.validateMethod()+' '+request.validatePathComplete();
-            java.lang.String headerHost = request.validateHostHeaderString();
-            java.lang.String headerDate = request.validateDateHeaderString();
-            java.lang.String headerSAuthVersion = this.validateSAuthVersionHeaderString(request);
-            java.lang.String headerSAuthUID = this.validateSAuthUIDHeaderString(request);
-            java.lang.String headerSAuthNonce = this.validateSAuthNonceHeaderString(request);
-
-            java.lang.String headerContentType = null;
-            java.lang.String headerContentLength = null;
-            java.lang.String headerContentEncoding = null;
-            java.lang.String headerContentRange = null;
-            java.lang.String headerContentLocation = null;
-            java.lang.String headerETag = null;
-            java.lang.String headerLastModified = null;
-            java.lang.String headerExpires = null;
-            java.lang.String headerContentMD5 = null;
-
-            SHA1 sha = new SHA1();
-            sha.update(requestline);
-            sha.update(headerHost);
-            sha.update(headerDate);
-            if (request.isContentLengthPositive()){
-
-                headerContentType = request.getContentTypeHeaderString();
-                sha.update(headerContentType);
-
-                headerContentLength = request.validateContentLengthHeaderString();
-                sha.update(headerContentLength);
-
-                headerContentEncoding = request.getContentEncodingHeaderString();
-                sha.update(headerContentEncoding);
-
-                headerContentRange = request.getContentRangeHeaderString();
-                sha.update(headerContentRange);
-
-                headerContentLocation = request.getContentLocationHeaderString();
-                sha.update(headerContentLocation);
-
-                headerETag = request.getETagHeaderString();
-                sha.update(headerETag);
-
-                headerLastModified = request.getLastModifiedHeaderString();
-                sha.update(headerLastModified);
-
-                headerExpires = request.getExpiresHeaderString();
-                sha.update(headerExpires);
-
-                headerContentMD5 = request.validateContentMD5HeaderString();//(verifyContentMD5)
-                sha.update(headerContentMD5);
-            }
-            sha.update(headerSAuthVersion);
-            sha.update(headerSAuthUID);
-            sha.update(headerSAuthNonce);
+            SHA1 sha = this.canonical(request);
 
             long signature = Function.Xor.Hash64(rsa.sign(sha));
 
@@ -139,71 +147,64 @@ public final class SAuth
             if (this.hasSAuthVersion(request)){
                 long requested = this.getSAuthSignatureLong(request);
 
-                RSA rsa = new RSA(keys);
-
-                java.lang.String requestline = request.validateMethod()+' '+request.validatePathComplete();
-                java.lang.String headerHost = request.validateHostHeaderString();
-                java.lang.String headerDate = request.validateDateHeaderString();
-                java.lang.String headerSAuthVersion = this.validateSAuthVersionHeaderString(request);
-                java.lang.String headerSAuthUID = this.validateSAuthUIDHeaderString(request);
-                java.lang.String headerSAuthNonce = this.validateSAuthNonceHeaderString(request);
+                RSA rsa = Context.Get(keys);
 
-                java.lang.String headerContentType = null;
-                java.lang.String headerContentLength = null;
-                java.lang.String headerContentEncoding = null;
-                java.lang.String headerContentRange = null;
-                java.lang.String headerContentLocation = null;
-                java.lang.String headerETag = null;
-                java.lang.String headerLastModified = null;
-                java.lang.String headerExpires = null;
-                java.lang.String headerContentMD5 = null;
+                SHA1 sha = this.canonical(request);
 
-                SHA1 sha = new SHA1();
-                sha.update(requestline);
-                sha.update(headerHost);
-                sha.update(headerDate);
-                if (request.isContentLengthPositive()){
+                long signature = Function.Xor.Hash64(rsa.sign(sha));
 
-                    headerContentType = request.getContentTypeHeaderString();
-                    sha.update(headerContentType);
+                return (requested == signature);
+            }
+            else
+                return false;
+        }
+        else
+            throw new alto.sys.Error.Argument();
+    }
+    /**
+     * Hash the canonical request for signing.  The request line and
+     * header strings are added to the hash in order, as their UTF-8
+     * encodings, without building a canonical string.
+     */
+    protected SHA1 canonical(HttpRequest request){
+        java.lang.String method = request.validateMethod();
+        java.lang.String path = request.validatePathComplete();
+        java.lang.String headerHost = request.validateHostHeaderString();
+        java.lang.String headerDate = request.validateDateHeaderString();
+        java.lang.String headerSAuthVersion = this.validateSAuthVersionHeaderString(request);
+        java.lang.String headerSAuthUID = this.validateSAuthUIDHeaderString(request);
+        java.lang.String headerSAuthNonce = this.validateSAuthNonceHeaderString(request);
 
-                    headerContentLength = request.validateContentLengthHeaderString();
-                    sha.update(headerContentLength);
+        SHA1 sha = new SHA1();
+        sha.update(method);
+        sha.update((byte)' ');
+        sha.update(path);
+        sha.update(headerHost);
+        sha.update(headerDate);
+        if (request.isContentLengthPositive()){
 
-                    headerContentEncoding = request.getContentEncodingHeaderString();
-                    sha.update(headerContentEncoding);
+            sha.update(request.getContentTypeHeaderString());
 
-                    headerContentRange = request.getContentRangeHeaderString();
-                    sha.update(headerContentRange);
+            sha.update(request.validateContentLengthHeaderString());
 
-                    headerContentLocation = request.getContentLocationHeaderString();
-                    sha.update(headerContentLocation);
+            sha.update(request.getContentEncodingHeaderString());
 
-                    headerETag = request.getETagHeaderString();
-                    sha.update(headerETag);
+            sha.update(request.getContentRangeHeaderString());
 
-                    headerLastModified = request.getLastModifiedHeaderString();
-                    sha.update(headerLastModified);
+            sha.update(request.getContentLocationHeaderString());
 
-                    headerExpires = request.getExpiresHeaderString();
-                    sha.update(headerExpires);
+            sha.update(request.getETagHeaderString());
 
-                    headerContentMD5 = request.validateContentMD5HeaderString();//(verifyContentMD5)
-                    sha.update(headerContentMD5);
-                }
-                sha.update(headerSAuthVersion);
-                sha.update(headerSAuthUID);
-                sha.update(headerSAuthNonce);
+            sha.update(request.getLastModifiedHeaderString());
 
-                long signature = Function.Xor.Hash64(rsa.sign(sha));
+            sha.update(request.getExpiresHeaderString());
 
-                return (requested == signature);
-            }
-            else
-                return false;
+            sha.update(request.validateContentMD5HeaderString());//(verifyContentMD5)
         }
-        else
-            throw new alto.sys.Error.Argument();
+        sha.update(headerSAuthVersion);
+        sha.update(headerSAuthUID);
+        sha.update(headerSAuthNonce);
+        return sha;
     }
 
     /*
@@ -359,4 +360,103 @@ public final class SAuth
         java.lang.String value = alto.io.u.Hex.encode(folded);
         request.setHeader(Header.SAuth.Signature,value);
     }
+
+
+    protected static void usage( java.io.PrintStream out){
+        out.println();
+        out.println("Usage");
+        out.println();
+        out.println("  SAuth [iterations]");
+        out.println();
+        out.println("Description");
+        out.println();
+        out.println("  Verify a canonical request with a new RSA context, a private");
+        out.println("  key without primes and a canonical string per request, and");
+        out.println("  with a cached CRT context and streaming hash, and print");
+        out.println("  verifies per second for each.");
+        out.println("  Default 2000 iterations with a 1024 bit key.");
+        out.println();
+    }
+    private final static java.lang.String[] Canonical = {
+        "PUT",
+        "/sys/users/jdp/profile.xml/1",
+        "Host: alto.example.com:8080",
+        "Date: Sat, 29 Oct 1994 19:43:31 GMT",
+        "Content-Type: application/xml",
+        "Content-Length: 4096",
+        "ETag: 7b5a3c2f",
+        "Content-MD5: Q2hlY2sgSW50ZWdyaXR5IQ==",
+        "SAuth: 1",
+        "SAuth-UID: 6f1ed002ab5595859014ebf0951522d9",
+        "SAuth-Nonce: 0123456789abcdef"
+    };
+    private static long VerifyNew(java.security.KeyPair pair){
+        RSA rsa = new RSA(pair);
+        java.lang.String requestline = Canonical[0]+' '+Canonical[1];
+        SHA1 sha = new SHA1();
+        sha.update(alto.io.u.Utf8.encode(requestline));
+        for (int cc = 2; cc < Canonical.length; cc++)
+            sha.update(alto.io.u.Utf8.encode(Canonical[cc]));
+        return Function.Xor.Hash64(rsa.sign(sha));
+    }
+    private static long VerifyCached(java.lang.String uid, java.security.KeyPair pair){
+        RSA rsa = Context.Get(uid,pair);
+        SHA1 sha = new SHA1();
+        sha.update(Canonical[0]);
+        sha.update((byte)' ');
+        sha.update(Canonical[1]);
+        for (int cc = 2; cc < Canonical.length; cc++)
+            sha.update(Canonical[cc]);
+        return Function.Xor.Hash64(rsa.sign(sha));
+    }
+    public static void main(java.lang.String[] argv){
+        int iterations = 2000;
+        if (0 < argv.length){
+            try {
+                iterations = java.lang.Integer.parseInt(argv[0]);
+            }
+            catch (java.lang.NumberFormatException exc){
+                usage(System.err);
+                System.exit(1);
+            }
+        }
+        try {
+            RSA keys = new RSA();
+            java.security.KeyPair pair = new java.security.KeyPair(keys.getPublicKey(),keys.getPrivateKey());
+            /*
+             * Before: private key without primes
+             */
+            RSA plain = new RSA(keys.getModulus(),keys.getPublicExponent(),keys.getPrivateExponent());
+            java.security.KeyPair legacy = new java.security.KeyPair(plain.getPublicKey(),plain.getPrivateKey());
+            java.lang.String uid = "6f1ed002ab5595859014ebf0951522d9";
+
+            if (VerifyNew(legacy) != VerifyCached(uid,pair))
+                throw new alto.sys.Error.Bug("Signature mismatch");
+
+            for (int pass = 0; pass < 2; pass++){
+                long check = 0L;
+                long start = java.lang.System.nanoTime();
+                for (int cc = 0; cc < iterations; cc++)
+                    check ^= VerifyNew(legacy);
+                long before = (java.lang.System.nanoTime()-start);
+
+                start = java.lang.System.nanoTime();
+                for (int cc = 0; cc < iterations; cc++)
+                    check ^= VerifyCached(uid,pair);
+                long after = (java.lang.System.nanoTime()-start);
+
+                if (0 < pass){
+                    System.out.printf("new context, string  %10.1f verifies/s%n",(iterations/(before/1e9)));
+                    System.out.printf("cached, streaming    %10.1f verifies/s%n",(iterations/(after/1e9)));
+                }
+                else if (0L != check)
+                    throw new alto.sys.Error.Bug("Signature mismatch");
+            }
+            System.exit(0);
+        }
+        catch (java.lang.Exception exc){
+            exc.printStackTrace();
+            System.exit(1);
+        }
+    }
 }
@@ -150,8 +150,11 @@ public class Bbo extends java.io.OutputStream {
     public void close() throws java.io.IOException {
         /*
          * Don't reset_write on closing output, because it causes the
-         * buffer to look empty.
+         * buffer to look empty.  Closing the writer of a ring pipe is
+         * its end of stream.
          */
+        if (buf instanceof Bbr)
+            buf.close();
     }
 
     // Bbuf
@@ -43,6 +43,7 @@ package alto.io.u ;
  * 
  * @see Bbo
  * @see Bbi
+ * @see Bbr
  * @see Dbo
  * @since 1.1
  */
@@ -0,0 +1,411 @@
+/*
+ * Copyright (C) 1998, 2009  John Pritchard and the Alto Project Group.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package alto.io.u ;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Pipe for <tt>`Bbo'</tt> and <tt>`Bbi'</tt> over a bounded ring
+ * buffer, for one writer thread and one reader thread.
+ *
+ * <p><b>Usage</b>
+ *
+ * <pre>
+ * Bbr pipe = new Bbr();
+ * OutputStream pipeOut = new Bbo(pipe);
+ * InputStream pipeIn = new Bbi(pipe);
+ * </pre>
+ *
+ * <p> As for {@link Bbp}, with the difference that the writer blocks
+ * while the ring is full, and that {@link #close()} by the writer,
+ * on the pipe or on its <tt>`Bbo'</tt>, is end of stream to the
+ * reader.
+ *
+ * <p><b>Thread safety</b>
+ *
+ * <p> The read and write indeces are volatile and each is written by
+ * only one thread, so transfers take no lock.  A waiting thread
+ * spins, then yields, then parks until the other side moves its
+ * index.  This class is safe for one reader thread and one writer
+ * thread in the standard I/O API defined here and used by Bbo and
+ * Bbi.  The remaining <tt>`Bbuf'</tt> API is not available on the
+ * pipe.
+ *
+ * @see Bbp
+ * @see Bbo
+ * @see Bbi
+ */
+public class Bbr extends Bbuf {
+
+    public final static int Capacity = 0x10000;
+
+    private final static int Spin = 0x100;
+
+    private final static int Yield = 0x10;
+
+    private final static long Park = 1000000L;
+
+
+    protected boolean apierrors = true;
+
+    private final byte[] ring;
+
+    private final int mask;
+
+    /**
+     * Count of bytes read, written only by the reader
+     */
+    private volatile long head;
+    /**
+     * Count of bytes written, written only by the writer
+     */
+    private volatile long tail;
+
+    private volatile boolean closed;
+
+    private volatile Thread reader, writer;
+
+
+    public Bbr(){
+        this(Capacity);
+    }
+    /**
+     * @param capacity Ring size, rounded up to a power of two
+     */
+    public Bbr( int capacity){
+        super(1);
+        if (0 < capacity && capacity <= 0x40000000){
+            int size = 1;
+            while (size < capacity)
+                size <<= 1;
+            this.ring = new byte[size];
+            this.mask = (size-1);
+        }
+        else
+            throw new java.lang.IllegalArgumentException(String.valueOf(capacity));
+    }
+    /**
+     * @param api_exc If true, throw exceptions on I/O methods that
+     * shouldn't be used on the pipe.
+     */
+    public Bbr( boolean api_exc){
+        this(Capacity);
+        this.apierrors = api_exc;
+    }
+
+
+    public final int capacity(){
+        return this.ring.length;
+    }
+    public int available()
+        throws java.io.IOException
+    {
+        return (int)(this.tail - this.head);
+    }
+    public int read()
+        throws java.io.IOException
+    {
+        long head = this.head;
+        if (this.awaitRead(head)){
+            int re = (this.ring[(int)head & this.mask] & 0xff);
+            this.head = (head+1);
+            this.signal(this.writer);
+            return re;
+        }
+        else
+            return -1;
+    }
+    public int read(byte b[])
+        throws java.io.IOException
+    {
+        return this.read( b, 0, b.length);
+    }
+    /**
+     * Block until at least one byte is available, and copy as many
+     * as are available up to the requested length.
+     *
+     * @return Number of bytes copied, or negative one for end of
+     * stream, or for interrupt as by {@link Bbp}.
+     */
+    public int read(byte b[], int off, int len)
+        throws java.io.IOException
+    {
+        if (1 > len)
+            return 0;
+        else {
+            long head = this.head;
+            if (this.awaitRead(head)){
+                int many = (int)java.lang.Math.min(len,(this.tail - head));
+                byte[] ring = this.ring;
+                int ofs = ((int)head & this.mask);
+                int first = java.lang.Math.min(many,(ring.length-ofs));
+                java.lang.System.arraycopy(ring,ofs,b,off,first);
+                if (first < many)
+                    java.lang.System.arraycopy(ring,0,b,(off+first),(many-first));
+                this.head = (head+many);
+                this.signal(this.writer);
+                return many;
+            }
+            else
+                return -1;
+        }
+    }
+    public void write(int b)
+        throws java.io.IOException
+    {
+        long tail = this.tail;
+        this.awaitWrite(tail);
+        this.ring[(int)tail & this.mask] = (byte)b;
+        this.tail = (tail+1);
+        this.signal(this.reader);
+    }
+    public void write(byte b[])
+        throws java.io.IOException
+    {
+        this.write( b, 0, b.length);
+    }
+    /**
+     * Block while the ring is full, and return after all bytes have
+     * been copied into the ring.
+     */
+    public void write(byte b[], int off, int len)
+        throws java.io.IOException
+    {
+        byte[] ring = this.ring;
+        int size = ring.length;
+        while (0 < len){
+            long tail = this.tail;
+            int free = this.awaitWrite(tail);
+            int many = java.lang.Math.min(len,free);
+            int ofs = ((int)tail & this.mask);
+            int first = java.lang.Math.min(many,(size-ofs));
+            java.lang.System.arraycopy(b,off,ring,ofs,first);
+            if (first < many)
+                java.lang.System.arraycopy(b,(off+first),ring,0,(many-first));
+            this.tail = (tail+many);
+            this.signal(this.reader);
+            off += many;
+            len -= many;
+        }
+    }
+    public long skip(long n)
+        throws java.io.IOException
+    {
+        if (apierrors)
+            throw new alto.sys.Error.State("Skip not available on pipe.");
+        else
+            return 0L;
+    }
+
+    public void mark(int readlimit) {}
+
+    public void reset() {
+        if (apierrors) throw new alto.sys.Error.State("Reset not available on pipe.");
+    }
+    /**
+     * Called by the Bbi constructor and close, no effect.
+     */
+    public void reset_read(){
+    }
+    /**
+     * Called by the Bbo constructor, no effect.
+     */
+    public void reset_write(){
+    }
+    public boolean markSupported() {
+        return false;
+    }
+    public void flush()
+        throws java.io.IOException
+    {
+    }
+    /**
+     * Writer end of stream.  The reader receives the remaining bytes,
+     * followed by end of stream.
+     */
+    public void close()
+        throws java.io.IOException
+    {
+        this.closed = true;
+        this.signal(this.reader);
+    }
+    public boolean isClosed(){
+        return this.closed;
+    }
+    /**
+     * @return False for end of stream or interrupt
+     */
+    private boolean awaitRead(long head){
+        for (int cc = 0; ; cc++){
+            if (head != this.tail)
+                return true;
+            else if (this.closed)
+                return (head != this.tail);
+            else if (cc < Spin)
+                continue;
+            else if (cc < (Spin+Yield))
+                java.lang.Thread.yield();
+            else {
+                this.reader = java.lang.Thread.currentThread();
+                try {
+                    if (head == this.tail && (!this.closed))
+                        LockSupport.parkNanos(this,Park);
+                }
+                finally {
+                    this.reader = null;
+                }
+                if (java.lang.Thread.interrupted())
+                    return false;
+            }
+        }
+    }
+    /**
+     * @return Free space, greater than zero
+     */
+    private int awaitWrite(long tail)
+        throws java.io.IOException
+    {
+        int size = this.ring.length;
+        for (int cc = 0; ; cc++){
+            if (this.closed)
+                throw new java.io.IOException("Pipe closed.");
+            else {
+                int free = (int)(size - (tail - this.head));
+                if (0 < free)
+                    return free;
+                else if (cc < Spin)
+                    continue;
+                else if (cc < (Spin+Yield))
+                    java.lang.Thread.yield();
+                else {
+                    this.writer = java.lang.Thread.currentThread();
+                    try {
+                        if (tail - this.head == size)
+                            LockSupport.parkNanos(this,Park);
+                    }
+                    finally {
+                        this.writer = null;
+                    }
+                    if (java.lang.Thread.interrupted())
+                        throw new java.io.InterruptedIOException();
+                }
+            }
+        }
+    }
+    private void signal(Thread waiter){
+        if (null != waiter)
+            LockSupport.unpark(waiter);
+    }
+
+
+    protected static void usage( java.io.PrintStream out){
+        out.println();
+        out.println("Usage");
+        out.println();
+        out.println("  Bbr [megabytes]");
+        out.println();
+        out.println("Description");
+        out.println();
+        out.println("  Throughput of Bbr and Bbp pipes between a writer and a");
+        out.println("  reader thread through Bbo and Bbi, for writes of 64 B,");
+        out.println("  4 KB and 64 KB.  Default 64 megabytes per run.");
+        out.println();
+    }
+    private final static class Writer
+        extends java.lang.Thread
+    {
+        final Bbuf pipe;
+        final int size;
+        final long total;
+        java.io.IOException error;
+
+        Writer(Bbuf pipe, int size, long total){
+            super("Bbr writer");
+            this.pipe = pipe;
+            this.size = size;
+            this.total = total;
+            this.setDaemon(true);
+        }
+        public void run(){
+            try {
+                java.io.OutputStream out = new Bbo(this.pipe);
+                byte[] b = new byte[this.size];
+                for (long cc = 0; cc < this.total; cc += this.size)
+                    out.write(b,0,(int)java.lang.Math.min(this.size,(this.total-cc)));
+            }
+            catch (java.io.IOException exc){
+                this.error = exc;
+            }
+        }
+    }
+    /**
+     * @return Megabytes per second
+     */
+    private static double Run(Bbuf pipe, int size, long total)
+        throws java.lang.Exception
+    {
+        Writer writer = new Writer(pipe,size,total);
+        java.io.InputStream in = new Bbi(pipe);
+        byte[] b = new byte[0x10000];
+        long start = java.lang.System.nanoTime();
+        writer.start();
+        for (long cc = 0; cc < total; ){
+            int re = in.read(b,0,b.length);
+            if (0 < re)
+                cc += re;
+            else
+                throw new java.io.EOFException();
+        }
+        long end = java.lang.System.nanoTime();
+        writer.join();
+        if (null != writer.error)
+            throw writer.error;
+        else
+            return ((total/1048576.0)/((end-start)/1e9));
+    }
+    public static void main(java.lang.String[] argv){
+        long total = (64L << 20);
+        if (0 < argv.length){
+            try {
+                total = (java.lang.Long.parseLong(argv[0]) << 20);
+            }
+            catch (java.lang.NumberFormatException exc){
+                usage(System.err);
+                System.exit(1);
+            }
+        }
+        int[] sizes = {64, 0x1000, 0x10000};
+        try {
+            for (int pass = 0; pass < 2; pass++){
+                for (int cc = 0; cc < sizes.length; cc++){
+                    int size = sizes[cc];
+                    double bbr = Run(new Bbr(),size,total);
+                    double bbp = Run(new Bbp(),size,total);
+                    if (0 < pass)
+                        System.out.printf("%6d B writes  Bbr %10.1f MB/s  Bbp %10.1f MB/s%n",size,bbr,bbp);
+                }
+            }
+            System.exit(0);
+        }
+        catch (java.lang.Exception exc){
+            exc.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
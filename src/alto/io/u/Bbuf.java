@@ -47,6 +47,17 @@ package alto.io.u ;
  * <p> The <code>`close()'</code> method resets both pointers and
  * markers.  </p>
  *
+ * <h3>Growth</h3>
+ *
+ * <p> The internal buffer grows geometrically, by at least the growth
+ * factor and at least its current length.  </p>
+ *
+ * <p> In segmented mode, from {@link #Bbuf(int,boolean)} or {@link
+ * #buf_segmented(boolean)}, writes append fixed size chunks from a
+ * per- thread pool instead, and nothing is copied as the buffer
+ * grows.  A buffer that is written and then drained to a stream or
+ * channel by <code>`writeTo'</code> never joins its chunks.  </p>
+ *
  * <h3>Not MT Safe</h3>
  *
  * <p> This class is not synchronized, as most applications have only
@@ -78,9 +89,160 @@ package alto.io.u ;
  * @see Dbo
  * @since 1.1
  */
-public class Bbuf 
+public class Bbuf
     extends Bits
 {
+    /**
+     * <p> Segmented mode writes in fixed size chunks from a per-
+     * thread pool.  Chunks are returned to the pool of the thread
+     * that releases them. </p>
+     *
+     * @see Bbuf#buf_segmented(boolean)
+     */
+    private final static class Segments
+        extends java.lang.Object
+    {
+        /**
+         * Chunk size
+         */
+        final static int Size = 0x2000;
+        /**
+         * Greatest number of chunks held in a thread's pool
+         */
+        final static int Pooled = 0x40;
+
+        private final static class Pool
+            extends java.lang.Object
+        {
+            final byte[][] list = new byte[Pooled][];
+            int count;
+
+            Pool(){
+                super();
+            }
+        }
+
+        private final static java.lang.ThreadLocal<Pool> Pools = new java.lang.ThreadLocal<Pool>(){
+                protected Pool initialValue(){
+                    return new Pool();
+                }
+            };
+
+        final static byte[] Take(){
+            Pool pool = Pools.get();
+            if (0 < pool.count){
+                int idx = --pool.count;
+                byte[] chunk = pool.list[idx];
+                pool.list[idx] = null;
+                return chunk;
+            }
+            else
+                return new byte[Size];
+        }
+        final static void Give(byte[] chunk){
+            Pool pool = Pools.get();
+            if (pool.count < Pooled)
+                pool.list[pool.count++] = chunk;
+        }
+
+
+        private byte[][] list = new byte[8][];
+
+        private int count, fill;
+
+        int size;
+
+
+        Segments(){
+            super();
+        }
+
+
+        private byte[] tail(){
+            if (0 < this.count && this.fill < Size)
+                return this.list[this.count-1];
+            else {
+                byte[][] list = this.list;
+                int count = this.count;
+                if (count == list.length){
+                    byte[][] copier = new byte[count<<1][];
+                    java.lang.System.arraycopy(list,0,copier,0,count);
+                    this.list = list = copier;
+                }
+                byte[] chunk = Take();
+                list[count] = chunk;
+                this.count = (count+1);
+                this.fill = 0;
+                return chunk;
+            }
+        }
+        void write(int b){
+            byte[] chunk = this.tail();
+            chunk[this.fill++] = (byte)b;
+            this.size += 1;
+        }
+        /**
+         * Big endian
+         */
+        void write(long b, int many){
+            for (int sh = ((many-1)<<3); -1 < sh; sh -= 8)
+                this.write((int)(b>>>sh));
+        }
+        void write(byte[] b, int off, int len){
+            while (0 < len){
+                byte[] chunk = this.tail();
+                int many = java.lang.Math.min(len,(Size-this.fill));
+                java.lang.System.arraycopy(b,off,chunk,this.fill,many);
+                this.fill += many;
+                this.size += many;
+                off += many;
+                len -= many;
+            }
+        }
+        /**
+         * Copy all chunks into the argument
+         */
+        void copy(byte[] dst, int ofs){
+            for (int cc = 0, last = (this.count-1); cc <= last; cc++){
+                int many = (cc == last)?(this.fill):(Size);
+                java.lang.System.arraycopy(this.list[cc],0,dst,ofs,many);
+                ofs += many;
+            }
+        }
+        int writeTo(java.io.OutputStream out)
+            throws java.io.IOException
+        {
+            for (int cc = 0, last = (this.count-1); cc <= last; cc++){
+                int many = (cc == last)?(this.fill):(Size);
+                out.write(this.list[cc],0,many);
+            }
+            return this.size;
+        }
+        int writeTo(java.nio.channels.WritableByteChannel out)
+            throws java.io.IOException
+        {
+            for (int cc = 0, last = (this.count-1); cc <= last; cc++){
+                int many = (cc == last)?(this.fill):(Size);
+                java.nio.ByteBuffer bb = java.nio.ByteBuffer.wrap(this.list[cc],0,many);
+                while (bb.hasRemaining())
+                    out.write(bb);
+            }
+            return this.size;
+        }
+        /**
+         * Return chunks to the pool and clear
+         */
+        void release(){
+            byte[][] list = this.list;
+            for (int cc = 0, count = this.count; cc < count; cc++){
+                Give(list[cc]);
+                list[cc] = null;
+            }
+            this.count = 0;
+            this.fill = 0;
+            this.size = 0;
+        }
+    }
 
     public final static int COPY = 0x200;//(512)
 
@@ -104,6 +266,11 @@ public class Bbuf
 
     private int gf = GF;
 
+    /**
+     * Segmented mode writes
+     */
+    private Segments seg;
+
     /** 
      * If reopening a completed stream via unread is a problem, set
      * this to false.  Otherwise, unread is accepted for all bytes,
@@ -175,6 +342,16 @@ public class Bbuf
 
         this.buf = new byte[gf];
     }
+    /**
+     * @param gf Internal buffer growth factor, as for {@link
+     * #Bbuf(int)}
+     * @param segmented Write in pooled chunks, see {@link
+     * #buf_segmented(boolean)}
+     */
+    public Bbuf( int gf, boolean segmented){
+        this(gf);
+        this.buf_segmented(segmented);
+    }
 
 
     /**
@@ -184,8 +361,11 @@ public class Bbuf
     public int available()
         throws java.io.IOException
     {
-
-        return (this.wc - this.rc);
+        Segments seg = this.seg;
+        if (null != seg)
+            return ((this.wc - this.rc) + seg.size);
+        else
+            return (this.wc - this.rc);
     }
 
     public final int length()
@@ -199,6 +379,7 @@ public class Bbuf
      * the first byte has been written
      */
     public int offset_write(){
+        this.join();
         return (this.wc-1);
     }
     /**
@@ -219,8 +400,72 @@ public class Bbuf
         else
             return this.gf;
     }
+    /**
+     * <p> Set segmented mode.  In segmented mode, writes append to a
+     * list of fixed size chunks taken from a per- thread pool, and
+     * the contiguous internal buffer is not copied as it grows.  The
+     * chunks are drained without joining by {@link
+     * #writeTo(java.io.OutputStream)}, {@link
+     * #writeTo(java.nio.channels.WritableByteChannel)} and {@link
+     * #copyOutArray(java.io.OutputStream)}.  Any other read, mark or
+     * array access joins the chunks into the contiguous buffer once,
+     * and returns the chunks to the pool. </p>
+     * 
+     * @param seg True to enable, false to join any chunks and
+     * disable.
+     */
+    public final void buf_segmented( boolean seg){
+        if (seg){
+            if (null == this.seg)
+                this.seg = new Segments();
+        }
+        else if (null != this.seg){
+            this.join();
+            this.seg = null;
+        }
+    }
+    public final boolean buf_segmented(){
+        return (null != this.seg);
+    }
+    /**
+     * Copy segmented writes into the contiguous buffer.
+     */
+    private void join(){
+        Segments seg = this.seg;
+        if (null != seg && 0 < seg.size){
+            int wc = this.wc, size = seg.size;
+
+            this.grow(wc+size);
+
+            seg.copy(this.buf,wc);
+
+            this.wc = (wc+size);
+
+            seg.release();
+        }
+    }
+    /**
+     * Geometric growth of the contiguous buffer: at least the
+     * growth factor, at least the current length, and at least the
+     * requested length.
+     * 
+     * @param length Required buffer length
+     */
+    private void grow( int length){
+        byte[] buf = this.buf;
+        int blen = buf.length;
+        if (length > blen){
+            int to = blen+java.lang.Math.max(this.gf,blen);
+            if (0 > to)
+                to = java.lang.Integer.MAX_VALUE-1;
+            if (length > to)
+                to = length;
+            this.buf = growbuf(buf,(to-1));
+        }
+    }
 
     public void unread(){
+        this.join();
         int rc = this.rc;
         if (this.unwind_finished){
             if (0 < rc)
@@ -232,6 +477,7 @@ public class Bbuf
         }
     }
     public void unread(int ch){
+        this.join();
         int rc = this.rc;
         if (this.unwind_finished){
             if (0 < rc)
@@ -247,6 +493,7 @@ public class Bbuf
         }
     }
     public void unreadn( int n){
+        this.join();
         int rc = this.rc;
         if (this.unwind_finished){
 
@@ -265,6 +512,7 @@ public class Bbuf
     public int peek()
         throws java.io.IOException
     {
+        this.join();
 
         int av = this.available();
 
@@ -277,6 +525,7 @@ public class Bbuf
     public int read()
         throws java.io.IOException
     {
+        this.join();
 
         int av = this.available();
 
@@ -308,6 +557,7 @@ public class Bbuf
     public int read(byte b[], int off, int len)
         throws java.io.IOException
     {
+        this.join();
         int av = this.available();
         if (1 > av)
             return -1;
@@ -324,9 +574,36 @@ public class Bbuf
             return len;
         }
     }
+    /**
+     * Copy into buffer as many as remaining bytes, or available
+     * bytes.
+     *
+     * @param dst Non null buffer to copy into
+     * 
+     * @returns Number of copied bytes, or negative one when no bytes
+     * are available.  */
+    public int read(java.nio.ByteBuffer dst)
+        throws java.io.IOException
+    {
+        this.join();
+        int av = (this.wc - this.rc);
+        if (1 > av)
+            return -1;
+        else {
+            int len = java.lang.Math.min(av,dst.remaining());
+            if (0 < len){
+
+                dst.put(this.buf,this.rc,len);
+
+                this.rc += len;
+            }
+            return len;
+        }
+    }
     public byte[] readMany(int many)
         throws java.io.IOException
     {
+        this.join();
         int av = this.available();
         if (1 > av)
             return null;
@@ -351,6 +628,7 @@ public class Bbuf
      * @exception java.io.IOException If two bytes are not available.
      */
     public short read2() throws java.io.IOException {
+        this.join();
 
         if ( 2 <= available()){
 
@@ -372,6 +650,7 @@ public class Bbuf
      * @exception java.io.IOException If three bytes are not available.
      */
     public int read3() throws java.io.IOException {
+        this.join();
 
         if ( 3 <= available()){
 
@@ -399,6 +678,7 @@ public class Bbuf
      * @exception java.io.IOException If four bytes are not available.
      */
     public int read4() throws java.io.IOException {
+        this.join();
 
         if ( 4 <= available()){
 
@@ -432,6 +712,7 @@ public class Bbuf
      * @exception java.io.IOException If eight bytes are not available.
      */
     public long read8() throws java.io.IOException {
+        this.join();
 
         if ( 8 <= available()){
 
@@ -486,6 +767,7 @@ public class Bbuf
     public String read_ascii( int len)
         throws java.io.IOException
     {
+        this.join();
         if (len < available()){
             String ret = new String(buf, 0, rc, len);
             rc += len;
@@ -502,6 +784,7 @@ public class Bbuf
      * @returns Number of bytes skipped.
      */
     public int skip_read(int n){
+        this.join();
 
         if (0 < n){
 
@@ -520,6 +803,7 @@ public class Bbuf
      * @returns Number of bytes skipped.
      */
     public int skip_write(int n){
+        this.join();
 
         if (0 < n){
 
@@ -640,6 +924,7 @@ public class Bbuf
      * so that two (or more) calls to reset clears any mark.
      */
     public void reset(){
+        this.join();
         wc = wc_mark;
         wc_mark = 0;
     }
@@ -647,6 +932,7 @@ public class Bbuf
      * Same as "reset".
      */
     public void reset_write(){
+        this.join();
         wc = wc_mark;
         wc_mark = 0;
     }
@@ -662,12 +948,14 @@ public class Bbuf
      * OutputStream's <tt>`mark(int)'</tt>.  
      */
     public void mark_write() {
+        this.join();
         wc_mark = wc;
     }
     /**
      * Return bytes written since last "mark".
      */
     public byte[] marked_write(){
+        this.join();
 
         int many = wc- wc_mark;
 
@@ -688,13 +976,15 @@ public class Bbuf
      * @param b 16 bits */
     public void write2 ( int b){
 
-        if ( wc+2 >= buf.length){
+        if (null != this.seg){
 
-            if ( 2 > gf)
-                buf = growbuf(buf,buf.length+2);
-            else
-                buf = growbuf(buf,buf.length+gf);
+            this.seg.write(b,2);
+
+            return ;
         }
+        else if ( wc+2 > buf.length)
+
+            this.grow(wc+2);
 
         buf[wc++] = (byte)((b & 0xff00)>>>8);
 
@@ -707,13 +997,15 @@ public class Bbuf
      * @param b 24 bits */
     public void write3 ( int b){
 
-        if ( wc+3 >= buf.length){
+        if (null != this.seg){
 
-            if ( 3 > gf)
-                buf = growbuf(buf,buf.length+3);
-            else
-                buf = growbuf(buf,buf.length+gf);
+            this.seg.write(b,3);
+
+            return ;
         }
+        else if ( wc+3 > buf.length)
+
+            this.grow(wc+3);
 
         buf[wc++] = (byte)((b & 0xff0000)>>>16);
         buf[wc++] = (byte)((b & 0xff00)>>>8);
@@ -726,13 +1018,15 @@ public class Bbuf
      * @param b 32 bits */
     public void write4 ( int b){
 
-        if ( wc+4 >= buf.length){
+        if (null != this.seg){
 
-            if ( 4 > gf)
-                buf = growbuf(buf,buf.length+4);
-            else
-                buf = growbuf(buf,buf.length+gf);
+            this.seg.write(b,4);
+
+            return ;
         }
+        else if ( wc+4 > buf.length)
+
+            this.grow(wc+4);
 
         buf[wc++] = (byte)((b & 0xff000000)>>>24);
 
@@ -749,13 +1043,15 @@ public class Bbuf
      * @param b 64 bits */
     public void write8 ( long b){
 
-        if ( wc+8 >= buf.length){
+        if (null != this.seg){
 
-            if ( 8 > gf)
-                buf = growbuf(buf,buf.length+8);
-            else
-                buf = growbuf(buf,buf.length+gf);
+            this.seg.write(b,8);
+
+            return ;
         }
+        else if ( wc+8 > buf.length)
+
+            this.grow(wc+8);
 
         buf[wc++] = (byte)((b & 0xff00000000000000L)>>>56);
 
@@ -825,6 +1121,7 @@ public class Bbuf
      * Look at last byte written.
      */
     public int peek_write(){
+        this.join();
         int wc = (this.wc-1);
         if (-1 < wc)
             return this.buf[wc]&0xff;
@@ -837,10 +1134,15 @@ public class Bbuf
         throws java.io.IOException
     {
 
-        if ( wc >= buf.length){
+        if (null != this.seg){
+
+            this.seg.write(b);
 
-            buf = growbuf(buf,buf.length+gf);
+            return ;
         }
+        else if ( wc >= buf.length)
+
+            this.grow(wc+1);
 
         byte bb = (byte)(b & 0xff);//for debugging
 
@@ -872,15 +1174,17 @@ public class Bbuf
         throws java.io.IOException
     {
         if (0 < len){
-            int ni = wc+len;
+            if (null != this.seg){
 
-            if ( ni >= buf.length){
+                this.seg.write(b,off,len);
 
-                if ( len > gf)
-                    buf = growbuf(buf,ni);
-                else 
-                    buf = growbuf(buf,buf.length+gf);
+                return ;
             }
+            int ni = wc+len;
+
+            if ( ni > buf.length)
+
+                this.grow(ni);
 
             System.arraycopy(b,off,buf,wc,len);
 
@@ -888,21 +1192,58 @@ public class Bbuf
         }
     }
 
+    /**
+     * @param src Non null input buffer to copy into the internal
+     * buffer, from its position to its limit.
+     *
+     * @returns Number of bytes written.  */
+    public int write(java.nio.ByteBuffer src)
+        throws java.io.IOException
+    {
+        int len = src.remaining();
+        if (0 < len){
+            if (src.hasArray()){
+
+                this.write(src.array(),(src.arrayOffset()+src.position()),len);
+
+                src.position(src.limit());
+            }
+            else if (null == this.seg){
+
+                this.grow(wc+len);
+
+                src.get(buf,wc,len);
+
+                wc += len;
+            }
+            else {
+                byte[] iob = new byte[java.lang.Math.min(len,COPY)];
+                while (src.hasRemaining()){
+                    int many = java.lang.Math.min(src.remaining(),iob.length);
+                    src.get(iob,0,many);
+                    this.write(iob,0,many);
+                }
+            }
+        }
+        return len;
+    }
     /**
      * Repeat the byte into the buffer.
      */
     public int nwrite ( byte ch, int many){
         if (0 < many){
-	    
-            int ni = wc+many;
+            if (null != this.seg){
 
-            if ( ni >= buf.length){
+                for ( int cc = 0; cc < many; cc++)
+                    this.seg.write(ch);
 
-                if ( many > gf)
-                    buf = growbuf(buf,ni);
-                else 
-                    buf = growbuf(buf,buf.length+gf);
+                return many;
             }
+            int ni = wc+many;
+
+            if ( ni > buf.length)
+
+                this.grow(ni);
 
             for ( int cc = wc; cc < ni; cc++)
                 buf[cc] = ch;
@@ -1249,6 +1590,8 @@ public class Bbuf
     public void flush()
         throws java.io.IOException
     {
+        if (null != this.seg)
+            this.seg.release();
 
         wc = 0;
         rc = 0;
@@ -1261,6 +1604,8 @@ public class Bbuf
     public void close()
         throws java.io.IOException
     { 
+        if (null != this.seg)
+            this.seg.release();
 
         wc = 0;
         rc = 0;
@@ -1296,6 +1641,7 @@ public class Bbuf
     public final byte[] toByteArray()
         throws java.io.IOException
     {
+        this.join();
 
         int av = available();
 
@@ -1313,11 +1659,22 @@ public class Bbuf
         }
     }
 
+    /**
+     * Readable (available) bytes as a read only view of the internal
+     * buffer, without copying.  Has no effect on the state of reading
+     * or writing, and is invalid after the next write.
+     */
+    public final java.nio.ByteBuffer toByteBuffer(){
+        this.join();
+        int rc = this.rc, av = java.lang.Math.max(0,(this.wc - rc));
+        return java.nio.ByteBuffer.wrap(this.buf,java.lang.Math.min(rc,this.buf.length),av).asReadOnlyBuffer();
+    }
     /**
      * @return Internal buffer in its optimistic extent, without
      * copying.
      */
     public final byte[] verbatim(){
+        this.join();
         return this.buf;
     }
 
@@ -1325,6 +1682,7 @@ public class Bbuf
      * Return a copy of the internal buffer, verbatim.
      */
     public final byte[] dump(){
+        this.join();
         if ( 0 >= buf.length)
             return null;
         else {
@@ -1340,6 +1698,8 @@ public class Bbuf
      * produce null pointer exceptions after this method has been
      * called.  */
     public void destroy(){
+        if (null != this.seg)
+            this.seg.release();
         this.buf = null;
     }
 
@@ -1352,6 +1712,8 @@ public class Bbuf
      * write points.  */
     public int copyOutLoop( java.io.OutputStream out) throws java.io.IOException {
 
+        this.join();
+
         int c0 = rc, length = available();
 
         if ( 0 < length){
@@ -1378,18 +1740,21 @@ public class Bbuf
      * write points.  */
     public int copyOutArray( java.io.OutputStream out) throws java.io.IOException {
 
-        int c0 = rc, length = available();
+        int c0 = rc, length = (wc - rc);
 
         if ( 0 < length){
 
             byte[] bb = buf;
 
             out.write(bb,c0,length);
-
-            return length;
         }
         else
-            return 0;
+            length = 0;
+
+        if (null != this.seg)
+            length += this.seg.writeTo(out);
+
+        return length;
     }
 
     /**
@@ -1477,12 +1842,40 @@ public class Bbuf
      * @param out Destination stream.
      */
     public int writeTo(java.io.OutputStream out) throws java.io.IOException {
-        int total = 0;
-        byte[] iobuf = new byte[COPY];
-        int count;
-        while(0 < (count = this.read(iobuf,0,COPY))){
-            out.write(iobuf,0,count);
-            total += count;
+        int total = (this.wc - this.rc);
+        if (0 < total){
+            out.write(this.buf,this.rc,total);
+            this.rc = this.wc;
+        }
+        else
+            total = 0;
+        Segments seg = this.seg;
+        if (null != seg){
+            total += seg.writeTo(out);
+            seg.release();
+        }
+        return total;
+    }
+    /**
+     * Drain the buffer contents to the channel, consuming them as
+     * {@link #writeTo(java.io.OutputStream)}.
+     * 
+     * @param out Destination channel.
+     */
+    public int writeTo(java.nio.channels.WritableByteChannel out) throws java.io.IOException {
+        int total = (this.wc - this.rc);
+        if (0 < total){
+            java.nio.ByteBuffer bb = java.nio.ByteBuffer.wrap(this.buf,this.rc,total);
+            while (bb.hasRemaining())
+                out.write(bb);
+            this.rc = this.wc;
+        }
+        else
+            total = 0;
+        Segments seg = this.seg;
+        if (null != seg){
+            total += seg.writeTo(out);
+            seg.release();
         }
         return total;
     }
@@ -1891,4 +2284,72 @@ public class Bbuf
         }
         return count;
     }
+
+
+    protected static void usage( java.io.PrintStream out){
+        out.println();
+        out.println("Usage");
+        out.println("    Bbuf [bytes] [write] [rounds]");
+        out.println();
+        out.println("Description");
+        out.println("    Time writing 'bytes' in 'write' byte arrays and draining");
+        out.println("    to a channel, for contiguous and segmented buffers.");
+        out.println("    Defaults 4M bytes in 1k writes for 20 rounds.");
+        out.println();
+    }
+    private final static long Run(int bytes, int write, int rounds, boolean segmented)
+        throws java.io.IOException
+    {
+        byte[] b = new byte[write];
+        java.nio.channels.WritableByteChannel sink = java.nio.channels.Channels.newChannel(new java.io.OutputStream(){
+                public void write(int b){
+                }
+                public void write(byte[] b, int off, int len){
+                }
+            });
+        long check = 0L;
+        for (int rc = 0; rc < rounds; rc++){
+            Bbuf buf = new Bbuf(GF,segmented);
+            for (int wc = 0; wc < bytes; wc += write)
+                buf.write(b,0,write);
+            check += buf.writeTo(sink);
+        }
+        return check;
+    }
+    /**
+     * <p> Timed comparison of contiguous and segmented writes drained
+     * to a channel. </p>
+     */
+    public static void main(java.lang.String[] argv){
+        int bytes = 0x400000, write = 0x400, rounds = 20;
+        try {
+            if (0 < argv.length)
+                bytes = java.lang.Integer.parseInt(argv[0]);
+            if (1 < argv.length)
+                write = java.lang.Integer.parseInt(argv[1]);
+            if (2 < argv.length)
+                rounds = java.lang.Integer.parseInt(argv[2]);
+        }
+        catch (java.lang.NumberFormatException input){
+            usage(System.err);
+            java.lang.System.exit(1);
+        }
+        try {
+            Run(bytes,write,rounds,false);
+            Run(bytes,write,rounds,true);
+            for (int cc = 0; cc < 2; cc++){
+                boolean segmented = (1 == cc);
+                long start = java.lang.System.nanoTime();
+                long check = Run(bytes,write,rounds,segmented);
+                long nanos = (java.lang.System.nanoTime()-start);
+                if (check != ((long)rounds*(long)(((bytes+write-1)/write)*write)))
+                    throw new alto.sys.Error.State("drain-test failed for "+check);
+                java.lang.System.out.printf("%s\t%d bytes\t%.2f ms/round%n",(segmented)?("segmented"):("contiguous"),bytes,((nanos/1e6)/rounds));
+            }
+        }
+        catch (java.lang.Throwable thro){
+            thro.printStackTrace();
+            java.lang.System.exit(1);
+        }
+    }
 }
@@ -0,0 +1,767 @@
+/*
+ * Copyright (C) 1998, 2009  John Pritchard and the Alto Project Group.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package alto.io.u;
+
+import java.lang.ref.SoftReference;
+
+/**
+ * <p> A bounded cache for keyed use in place of {@link Slobjmap}.
+ * Where the soft map leaves retention to the collector, this map
+ * holds its values strongly and bounds them by entry count and by
+ * weight in bytes, with an optional time to live. </p>
+ *
+ * <h3>Index</h3>
+ *
+ * <p> Entries are nodes in a chained hash table, and recency is kept
+ * only in the linked segment lists, so that get, put, remove and
+ * each eviction are constant time.  The table doubles when its load
+ * exceeds three quarters. </p>
+ *
+ * <h3>Compatibility</h3>
+ *
+ * <p> This map is not in the {@link Hasharray} family, and is not
+ * assignable to a {@link Slobjmap}, {@link Lobjmap} or {@link
+ * Hasharray} variable.  Callers change the declared type, and keep
+ * the keyed members of {@link Slobjmap}: get, put, remove, {@link
+ * #getReference(java.lang.Object)}, containsKey, size, keys,
+ * elements, keyary, valary, clear, destroy and the {@link
+ * alto.sys.Lock$Advanced} API.  </p>
+ *
+ * <p> The indexed members <code>value(int)</code>,
+ * <code>value(int,Object)</code>, <code>getReference(int)</code>,
+ * <code>append</code>, <code>insert</code> and
+ * <code>replace</code> are not defined.  Eviction reorders and
+ * removes entries on every access, so an index has no stable
+ * meaning, and maintaining one in the family's value lists made each
+ * eviction linear.  <code>getReferenceQueue()</code> is not defined,
+ * as values are held strongly and never enqueued.  </p>
+ *
+ * <h3>Eviction</h3>
+ *
+ * <p> Segmented LRU.  A new key enters the probation segment, and a
+ * hit on a probationary key promotes it into the protected segment.
+ * The protected segment holds at most four fifths of the entry bound,
+ * and its least recently used key is demoted back into probation
+ * when it is full.  Victims are taken from the tail of probation
+ * before protected, so that a scan of single use keys does not flush
+ * the frequently used ones. </p>
+ *
+ * <h3>Weight</h3>
+ *
+ * <p> The weight of a value is its length for byte arrays, twice its
+ * length for character sequences, and the value of {@link
+ * Bobjmap$Weighted} for values implementing that interface.  Other
+ * values weigh nothing, and a subclass may override {@link
+ * #weigh(java.lang.Object,java.lang.Object)}. </p>
+ *
+ * <h3>Statistics</h3>
+ *
+ * <p> Hit, miss, eviction and expiration counters, and the current
+ * count and weight, are available as {@link Bobjmap$Counter}
+ * statistic headers from {@link #statistics()}. </p>
+ *
+ * <h3>Synchronized</h3>
+ *
+ * <p> Unlike the other maps in this package, a get on this map
+ * modifies its recency lists, so the methods defined here are
+ * synchronized.  Callers written for {@link Slobjmap} holding only
+ * the read lock around a get remain correct.  The {@link
+ * alto.sys.Lock$Advanced} API is retained for compound operations.
+ * </p>
+ *
+ * <h3>Null</h3>
+ *
+ * <p> Null keys and values are not stored. </p>
+ *
+ * @see Cobjmap
+ */
+public class Bobjmap
+    extends java.util.Dictionary
+    implements alto.sys.Lock.Advanced
+{
+    /**
+     * Value weight in bytes, see {@link
+     * Bobjmap#weigh(java.lang.Object,java.lang.Object)}.
+     */
+    public interface Weighted {
+
+        public long weight();
+    }
+
+    /**
+     * A cache counter as a statistic header.  The header value is
+     * refreshed from the map, or the sum over the maps of a striped
+     * cache, by {@link #update()}.
+     */
+    public static class Counter
+        extends alto.lang.Statistic
+        implements alto.lang.Header.Update
+    {
+        public final static String Hits        = "Cache-Hits";
+        public final static String Misses      = "Cache-Misses";
+        public final static String Evictions   = "Cache-Evictions";
+        public final static String Expirations = "Cache-Expirations";
+        public final static String Count       = "Cache-Count";
+        public final static String Weight      = "Cache-Weight";
+
+        private final Bobjmap[] maps;
+
+
+        public Counter(String name, Bobjmap map){
+            this(name,new Bobjmap[]{map});
+        }
+        public Counter(String name, Bobjmap[] maps){
+            super(name);
+            if (null != maps && 0 < maps.length && null != maps[0]){
+                this.maps = maps;
+                this.update();
+            }
+            else
+                throw new alto.sys.Error.Argument();
+        }
+
+
+        public long getCounter(){
+            Bobjmap[] maps = this.maps;
+            long value = 0L;
+            for (int cc = 0, count = maps.length; cc < count; cc++){
+                long counter = maps[cc].counter(this.name);
+                if (0L > counter)
+                    return counter;
+                else
+                    value += counter;
+            }
+            return value;
+        }
+        public void update(){
+            long value = this.getCounter();
+            this.value = java.lang.String.valueOf(value);
+            this.parsed = java.lang.Long.valueOf(value);
+            this.string = (this.name+": "+this.value);
+        }
+    }
+
+    /**
+     * Value wrapper chained into the hash table and linked into one of
+     * the segment lists.
+     */
+    protected final static class Node
+        extends java.lang.Object
+    {
+        protected final java.lang.Object key;
+
+        protected final int hash;
+
+        protected java.lang.Object value;
+
+        protected long weight, expires;
+
+        protected boolean protect;
+
+        protected Node prev, next, chain;
+
+
+        protected Node(java.lang.Object key, int hash){
+            super();
+            this.key = key;
+            this.hash = hash;
+        }
+    }
+
+    /**
+     * Least recently used at the tail.
+     */
+    private final static class Segment
+        extends java.lang.Object
+    {
+        Node head, tail;
+
+        int count;
+
+
+        Segment(){
+            super();
+        }
+
+
+        void push(Node node){
+            node.prev = null;
+            node.next = this.head;
+            if (null != this.head)
+                this.head.prev = node;
+            else
+                this.tail = node;
+            this.head = node;
+            this.count += 1;
+        }
+        void unlink(Node node){
+            if (null != node.prev)
+                node.prev.next = node.next;
+            else
+                this.head = node.next;
+            if (null != node.next)
+                node.next.prev = node.prev;
+            else
+                this.tail = node.prev;
+            node.prev = null;
+            node.next = null;
+            this.count -= 1;
+        }
+        void clear(){
+            this.head = null;
+            this.tail = null;
+            this.count = 0;
+        }
+    }
+
+    public final static int DefaultEntries = 1024;
+
+    private final static int Spread(java.lang.Object key){
+        int h = key.hashCode();
+        return (h ^ (h >>> 16));
+    }
+    private final static int Capacity(int entries){
+        int size = 0x10;
+        while (size < entries && 0x40000000 > size)
+            size <<= 1;
+        return size;
+    }
+
+
+    private final int maxEntries, maxProtected, initial;
+
+    private final long maxWeight, ttl;
+
+    private final Segment probation = new Segment(), protect = new Segment();
+
+    private final alto.sys.Lock.Advanced lock = new alto.sys.lock.Light();
+
+    private Node[] table;
+
+    private int count;
+
+    private long weight, hits, misses, evictions, expirations;
+
+
+    /**
+     * @param maxEntries Greatest number of entries, greater than zero
+     * @param maxWeight Greatest total weight in bytes, or zero for
+     * no weight bound
+     * @param ttl Time to live in milliseconds from the last put, or
+     * zero for none
+     */
+    public Bobjmap(int maxEntries, long maxWeight, long ttl){
+        super();
+        if (0 < maxEntries && -1 < maxWeight && -1 < ttl){
+            this.maxEntries = maxEntries;
+            this.maxProtected = java.lang.Math.max(1,(maxEntries - (maxEntries/5)));
+            this.maxWeight = maxWeight;
+            this.ttl = ttl;
+            this.initial = Capacity(java.lang.Math.min(maxEntries,DefaultEntries));
+            this.table = new Node[this.initial];
+        }
+        else
+            throw new java.lang.IllegalArgumentException();
+    }
+    public Bobjmap(int maxEntries, long maxWeight){
+        this(maxEntries,maxWeight,0L);
+    }
+    public Bobjmap(int maxEntries){
+        this(maxEntries,0L,0L);
+    }
+    public Bobjmap(){
+        this(DefaultEntries,0L,0L);
+    }
+
+
+    public final int getMaxEntries(){
+        return this.maxEntries;
+    }
+    public final long getMaxWeight(){
+        return this.maxWeight;
+    }
+    public final long getTimeToLive(){
+        return this.ttl;
+    }
+    public final synchronized long getWeight(){
+        return this.weight;
+    }
+    public final synchronized long getHits(){
+        return this.hits;
+    }
+    public final synchronized long getMisses(){
+        return this.misses;
+    }
+    public final synchronized long getEvictions(){
+        return this.evictions;
+    }
+    public final synchronized long getExpirations(){
+        return this.expirations;
+    }
+    /**
+     * @param name One of the {@link Bobjmap$Counter} names
+     * @return Current value of the named counter, or negative one for
+     * an unknown name
+     */
+    public final synchronized long counter(String name){
+        if (Counter.Hits.equals(name))
+            return this.hits;
+        else if (Counter.Misses.equals(name))
+            return this.misses;
+        else if (Counter.Evictions.equals(name))
+            return this.evictions;
+        else if (Counter.Expirations.equals(name))
+            return this.expirations;
+        else if (Counter.Count.equals(name))
+            return this.count;
+        else if (Counter.Weight.equals(name))
+            return this.weight;
+        else
+            return -1L;
+    }
+    /**
+     * @return New statistic headers over this map's counters
+     */
+    public alto.lang.Statistic[] statistics(){
+        return new alto.lang.Statistic[]{
+            new Counter(Counter.Hits,this),
+            new Counter(Counter.Misses,this),
+            new Counter(Counter.Evictions,this),
+            new Counter(Counter.Expirations,this),
+            new Counter(Counter.Count,this),
+            new Counter(Counter.Weight,this)
+        };
+    }
+    /**
+     * Set the statistic headers for this map's counters into the
+     * argument.
+     */
+    public void statistics(alto.lang.Headers headers){
+        alto.lang.Statistic[] list = this.statistics();
+        for (int cc = 0, count = list.length; cc < count; cc++){
+            headers.setHeader(list[cc]);
+        }
+    }
+    /**
+     * Reset counters to zero.
+     */
+    public final synchronized void resetStatistics(){
+        this.hits = 0L;
+        this.misses = 0L;
+        this.evictions = 0L;
+        this.expirations = 0L;
+    }
+    /**
+     * Override this method to define the weight of values.
+     * @return Weight of value in bytes, not negative
+     */
+    protected long weigh(java.lang.Object key, java.lang.Object value){
+        if (value instanceof byte[])
+            return ((byte[])value).length;
+        else if (value instanceof java.lang.CharSequence)
+            return (((java.lang.CharSequence)value).length()<<1);
+        else if (value instanceof Weighted)
+            return java.lang.Math.max(0L,((Weighted)value).weight());
+        else
+            return 0L;
+    }
+    /**
+     * Override this method to observe entries dropped by eviction or
+     * expiration, not by remove or replacement.  Called holding this
+     * map's monitor.
+     */
+    protected void evicted(java.lang.Object key, java.lang.Object value){
+    }
+    /**
+     * Drop expired entries.  Expired entries are otherwise dropped
+     * when encountered by get, or by eviction.
+     * @return Number of entries dropped
+     */
+    public final synchronized int expire(){
+        if (0L < this.ttl){
+            long now = java.lang.System.currentTimeMillis();
+            return (this.expire(this.probation,now)+this.expire(this.protect,now));
+        }
+        else
+            return 0;
+    }
+    private int expire(Segment segment, long now){
+        int re = 0;
+        Node node = segment.tail;
+        while (null != node){
+            Node prev = node.prev;
+            if (node.expires <= now){
+                this.drop(node);
+                this.expirations += 1;
+                this.evicted(node.key,node.value);
+                re += 1;
+            }
+            node = prev;
+        }
+        return re;
+    }
+    public final synchronized int size(){
+        return this.count;
+    }
+    public final synchronized boolean isEmpty(){
+        return (0 == this.count);
+    }
+    public final synchronized boolean isNotEmpty(){
+        return (0 != this.count);
+    }
+    /**
+     * @return Key is present, without recording a hit or miss
+     */
+    public synchronized boolean containsKey(java.lang.Object key){
+        if (null == key)
+            return false;
+        else
+            return (null != this.find(key));
+    }
+    public synchronized void clear(){
+        this.table = new Node[this.initial];
+        this.count = 0;
+        this.probation.clear();
+        this.protect.clear();
+        this.weight = 0L;
+    }
+    public synchronized void destroy(){
+        this.clear();
+    }
+    public synchronized java.lang.Object get(java.lang.Object key){
+        Node node = (null != key)?(this.find(key)):(null);
+        if (null == node){
+            this.misses += 1;
+            return null;
+        }
+        else if (0L < this.ttl && node.expires <= java.lang.System.currentTimeMillis()){
+            this.drop(node);
+            this.expirations += 1;
+            this.misses += 1;
+            this.evicted(node.key,node.value);
+            return null;
+        }
+        else {
+            this.hits += 1;
+            this.touch(node);
+            return node.value;
+        }
+    }
+    public synchronized java.lang.Object put(java.lang.Object key, java.lang.Object value){
+        if (null == key || null == value)
+            throw new java.lang.IllegalArgumentException();
+        else {
+            Node node = this.find(key);
+            if (null == node){
+                node = new Node(key,Spread(key));
+                this.set(node,value);
+                this.index(node);
+                this.probation.push(node);
+                this.evict(node);
+                return null;
+            }
+            else {
+                java.lang.Object old = node.value;
+                if (0L < this.ttl && node.expires <= java.lang.System.currentTimeMillis())
+                    old = null;
+                this.set(node,value);
+                this.touch(node);
+                this.evict(node);
+                return old;
+            }
+        }
+    }
+    public synchronized java.lang.Object remove(java.lang.Object key){
+        Node node = (null != key)?(this.find(key)):(null);
+        if (null != node){
+            this.drop(node);
+            return node.value;
+        }
+        else
+            return null;
+    }
+    /**
+     * For callers written against {@link Slobjmap}.
+     * @return A new soft reference to the current value, or null
+     */
+    public SoftReference getReference(java.lang.Object key){
+        java.lang.Object value = this.get(key);
+        if (null != value)
+            return new SoftReference(value);
+        else
+            return null;
+    }
+    /**
+     * @return Keys from most to least recently used, protected
+     * before probation
+     */
+    public synchronized java.lang.Object[] keyary(){
+        java.lang.Object[] list = new java.lang.Object[this.count];
+        int lx = 0;
+        for (Node node = this.protect.head; null != node; node = node.next)
+            list[lx++] = node.key;
+        for (Node node = this.probation.head; null != node; node = node.next)
+            list[lx++] = node.key;
+        return list;
+    }
+    /**
+     * @return Values in the order of {@link #keyary()}
+     */
+    public synchronized java.lang.Object[] valary(){
+        java.lang.Object[] list = new java.lang.Object[this.count];
+        int lx = 0;
+        for (Node node = this.protect.head; null != node; node = node.next)
+            list[lx++] = node.value;
+        for (Node node = this.probation.head; null != node; node = node.next)
+            list[lx++] = node.value;
+        return list;
+    }
+    public java.util.Enumeration keys(){
+        return new Array.Enumerator.Object(this.keyary());
+    }
+    public java.util.Enumeration elements(){
+        return new Array.Enumerator.Object(this.valary());
+    }
+    public final int lockReadLockCount(){
+        return this.lock.lockReadLockCount();
+    }
+    public final boolean lockReadEnterTry(){
+        return this.lock.lockReadEnterTry();
+    }
+    public final boolean lockReadEnterTry(long millis) 
+        throws java.lang.InterruptedException 
+    {
+        return this.lock.lockReadEnterTry(millis);
+    }
+    public final void lockReadEnter(){
+        this.lock.lockReadEnter();
+    }
+    public final void lockReadExit(){
+        this.lock.lockReadExit();
+    }
+    public final int lockWriteHoldCount(){
+        return this.lock.lockWriteHoldCount();
+    }
+    public final boolean lockWriteEnterTry(){
+        return this.lock.lockWriteEnterTry();
+    }
+    public final boolean lockWriteEnterTry(long millis) 
+        throws java.lang.InterruptedException 
+    {
+        return this.lock.lockWriteEnterTry(millis);
+    }
+    public final void lockWriteEnter(){
+        this.lock.lockWriteEnter();
+    }
+    public final void lockWriteExit(){
+        this.lock.lockWriteExit();
+    }
+    /**
+     * @return Node of key in the hash table, or null
+     */
+    private Node find(java.lang.Object key){
+        int hash = Spread(key);
+        Node[] table = this.table;
+        for (Node node = table[hash & (table.length-1)]; null != node; node = node.chain){
+            if (hash == node.hash && key.equals(node.key))
+                return node;
+        }
+        return null;
+    }
+    /**
+     * Add node to the hash table, doubling the table over three
+     * quarters load.
+     */
+    private void index(Node node){
+        Node[] table = this.table;
+        int slot = (node.hash & (table.length-1));
+        node.chain = table[slot];
+        table[slot] = node;
+        this.count += 1;
+        if (this.count > (table.length - (table.length>>2)) && 0x40000000 > table.length){
+            int len = (table.length<<1), mask = (len-1);
+            Node[] grow = new Node[len];
+            for (int cc = 0, count = table.length; cc < count; cc++){
+                Node next;
+                for (Node chain = table[cc]; null != chain; chain = next){
+                    next = chain.chain;
+                    int to = (chain.hash & mask);
+                    chain.chain = grow[to];
+                    grow[to] = chain;
+                }
+            }
+            this.table = grow;
+        }
+    }
+    /**
+     * Remove node from the hash table.
+     */
+    private void unindex(Node node){
+        Node[] table = this.table;
+        int slot = (node.hash & (table.length-1));
+        Node prev = null;
+        for (Node chain = table[slot]; null != chain; prev = chain, chain = chain.chain){
+            if (chain == node){
+                if (null == prev)
+                    table[slot] = node.chain;
+                else
+                    prev.chain = node.chain;
+                node.chain = null;
+                this.count -= 1;
+                return;
+            }
+        }
+    }
+    /**
+     * Replace node value, weight and expiration.
+     */
+    private void set(Node node, java.lang.Object value){
+        long weight = this.weigh(node.key,value);
+        this.weight += (weight - node.weight);
+        node.value = value;
+        node.weight = weight;
+        if (0L < this.ttl)
+            node.expires = (java.lang.System.currentTimeMillis() + this.ttl);
+    }
+    /**
+     * Record a hit: promote from probation, or move to the head of
+     * protected.
+     */
+    private void touch(Node node){
+        if (node.protect){
+            this.protect.unlink(node);
+            this.protect.push(node);
+        }
+        else {
+            this.probation.unlink(node);
+            node.protect = true;
+            this.protect.push(node);
+            while (this.protect.count > this.maxProtected){
+                Node demote = this.protect.tail;
+                this.protect.unlink(demote);
+                demote.protect = false;
+                this.probation.push(demote);
+            }
+        }
+    }
+    /**
+     * Remove node from the hash table, its segment and weight.
+     */
+    private void drop(Node node){
+        this.unindex(node);
+        if (node.protect)
+            this.protect.unlink(node);
+        else
+            this.probation.unlink(node);
+        this.weight -= node.weight;
+    }
+    /**
+     * Drop entries from the tail of probation, then protected, until
+     * within bounds.  The argument is evicted alone when it alone
+     * exceeds the weight bound, and otherwise last.
+     * @return Argument was not evicted
+     */
+    private boolean evict(Node keep){
+        if (0L < this.maxWeight && keep.weight > this.maxWeight){
+            this.drop(keep);
+            this.evictions += 1;
+            this.evicted(keep.key,keep.value);
+            return false;
+        }
+        boolean re = true;
+        long now = (0L < this.ttl)?(java.lang.System.currentTimeMillis()):(0L);
+        while (this.count > this.maxEntries ||
+               (0L < this.maxWeight && this.weight > this.maxWeight))
+        {
+            Node victim = this.probation.tail;
+            if (keep == victim)
+                victim = victim.prev;
+            if (null == victim){
+                victim = this.protect.tail;
+                if (keep == victim)
+                    victim = victim.prev;
+                if (null == victim){
+                    victim = keep;
+                    re = false;
+                }
+            }
+            this.drop(victim);
+            if (0L < this.ttl && victim.expires <= now)
+                this.expirations += 1;
+            else
+                this.evictions += 1;
+            this.evicted(victim.key,victim.value);
+            if (!re)
+                break;
+        }
+        return re;
+    }
+
+
+    protected static void usage( java.io.PrintStream out){
+        out.println();
+        out.println("Usage");
+        out.println("    Bobjmap [entries [puts]]");
+        out.println();
+        out.println("Description");
+        out.println("    Fill a map bounded to entries (default 50000), then");
+        out.println("    time puts of new keys (default 1000000), each evicting");
+        out.println("    one entry, and gets of the most recent keys.  Reports");
+        out.println("    nanoseconds per operation and checks the bound.");
+        out.println();
+    }
+    public static void main(java.lang.String[] argv){
+        try {
+            int entries = 50000, puts = 1000000;
+            if (0 < argv.length)
+                entries = java.lang.Integer.parseInt(argv[0]);
+            if (1 < argv.length)
+                puts = java.lang.Integer.parseInt(argv[1]);
+            Bobjmap map = new Bobjmap(entries);
+            for (int cc = 0; cc < entries; cc++)
+                map.put(java.lang.Integer.valueOf(cc),"v");
+            for (int round = 0; round < 3; round++){
+                int base = (entries + (round * puts));
+                long start = java.lang.System.nanoTime();
+                for (int cc = 0; cc < puts; cc++)
+                    map.put(java.lang.Integer.valueOf(base+cc),"v");
+                long end = java.lang.System.nanoTime();
+                long gets = 0L;
+                int first = (base + puts - entries);
+                long gstart = java.lang.System.nanoTime();
+                for (int cc = 0; cc < puts; cc++){
+                    if (null != map.get(java.lang.Integer.valueOf(first + (cc % entries))))
+                        gets += 1;
+                }
+                long gend = java.lang.System.nanoTime();
+                System.out.printf("entries %d: put %.1f ns, get %.1f ns, size %d, evictions %d, hits %d of %d%n",
+                                  entries,((end-start)/(double)puts),((gend-gstart)/(double)puts),
+                                  map.size(),map.getEvictions(),gets,puts);
+                if (map.size() != entries)
+                    System.exit(1);
+            }
+            System.exit(0);
+        }
+        catch (java.lang.Exception exc){
+            exc.printStackTrace();
+            usage(System.err);
+            System.exit(1);
+        }
+    }
+}
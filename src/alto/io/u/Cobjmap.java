@@ -0,0 +1,474 @@
+/*
+ * Copyright (C) 1998, 2009  John Pritchard and the Alto Project Group.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package alto.io.u;
+
+/**
+ * <p> A concurrent objmap for registries shared among threads, for
+ * example type tables, principal caches and header name tables. </p>
+ *
+ * <h3>Lock free reads</h3>
+ *
+ * <p> Keys are distributed over a power of two number of stripes.
+ * Each stripe holds an {@link Objmap} with the {@link
+ * alto.io.u.hasharray.IndexObjectOpen open addressing index} that is
+ * not modified once it has been published, so that a reader takes no
+ * lock.  A writer synchronizes on its stripe only.  The value of an
+ * existing key is replaced in place, while the addition or removal
+ * of a key publishes a copy of the stripe's map.  This favors reads
+ * over writes, as is normal for a registry. </p>
+ *
+ * <h3>Weakly consistent input order</h3>
+ *
+ * <p> Each key is numbered in input order when first added.  The
+ * keys, elements, key array and value array methods produce a
+ * snapshot ordered by this number.  A snapshot is consistent per
+ * stripe, and may or may not reflect changes made concurrently in
+ * other stripes.  Indexed access ({@link Objmap#key(int)}) is not
+ * available, as an index is not stable under concurrent change. </p>
+ *
+ * <h3>Null</h3>
+ *
+ * <p> Null keys and values are not stored. </p>
+ *
+ * @see Lobjmap
+ */
+public class Cobjmap
+    extends java.util.Dictionary
+{
+    /**
+     * A key's value and input order number.
+     */
+    protected final static class Cell
+        extends java.lang.Object
+        implements java.lang.Comparable
+    {
+        public final java.lang.Object key;
+
+        public final long order;
+
+        public volatile java.lang.Object value;
+
+
+        protected Cell(java.lang.Object key, java.lang.Object value, long order){
+            super();
+            this.key = key;
+            this.value = value;
+            this.order = order;
+        }
+
+
+        public int compareTo(java.lang.Object that){
+            long a = this.order, b = ((Cell)that).order;
+            if (a < b)
+                return -1;
+            else if (a == b)
+                return 0;
+            else
+                return 1;
+        }
+    }
+    /**
+     * Stripe monitor and published map of key to cell.
+     */
+    protected final static class Stripe
+        extends java.lang.Object
+    {
+        protected final int initial;
+
+        protected volatile Objmap map;
+
+
+        protected Stripe(int initial){
+            super();
+            this.initial = initial;
+            this.map = this.newMap();
+        }
+
+
+        protected Objmap newMap(){
+            return new Objmap(Hasharray.Types.Indeces.ObjectOpen,this.initial,0.75f);
+        }
+    }
+
+    private final static int Spread(java.lang.Object key){
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        h *= 0x9E3779B9;
+        return h;
+    }
+
+
+    private final Stripe[] stripes;
+
+    private final int shift;
+
+    private final java.util.concurrent.atomic.AtomicInteger count = new java.util.concurrent.atomic.AtomicInteger();
+
+    private final java.util.concurrent.atomic.AtomicLong order = new java.util.concurrent.atomic.AtomicLong();
+
+
+    /**
+     * @param stripes Number of stripes, rounded up to a power of two
+     * @param initial Initial capacity of the map
+     */
+    public Cobjmap(int stripes, int initial){
+        super();
+        if (1 > stripes || 1 > initial)
+            throw new java.lang.IllegalArgumentException();
+        else {
+            int size = 1, bits = 0;
+            while (size < stripes){
+                size <<= 1;
+                bits += 1;
+            }
+            this.shift = (32-bits);
+            int stripeInitial = java.lang.Math.max(11,(initial/size));
+            this.stripes = new Stripe[size];
+            for (int cc = 0; cc < size; cc++)
+                this.stripes[cc] = new Stripe(stripeInitial);
+        }
+    }
+    /**
+     * Sixteen stripes
+     */
+    public Cobjmap(int initial){
+        this(16,initial);
+    }
+    public Cobjmap(){
+        this(16,11);
+    }
+
+
+    protected final Stripe stripe(java.lang.Object key){
+        if (32 == this.shift)
+            return this.stripes[0];
+        else
+            return this.stripes[Spread(key) >>> this.shift];
+    }
+    public int size(){
+        return this.count.get();
+    }
+    public boolean isEmpty(){
+        return (1 > this.count.get());
+    }
+    public boolean isNotEmpty(){
+        return (0 < this.count.get());
+    }
+    public boolean containsKey(java.lang.Object key){
+        if (null == key)
+            return false;
+        else
+            return (null != this.stripe(key).map.get(key));
+    }
+    public java.lang.Object get(java.lang.Object key){
+        if (null == key)
+            return null;
+        else {
+            Cell cell = (Cell)this.stripe(key).map.get(key);
+            if (null != cell)
+                return cell.value;
+            else
+                return null;
+        }
+    }
+    /**
+     * Replace the keyed value
+     * @return Previous value, or null
+     */
+    public java.lang.Object put(java.lang.Object key, java.lang.Object value){
+        if (null == key || null == value)
+            throw new java.lang.IllegalArgumentException();
+        else
+            return this.put(key,value,true);
+    }
+    /**
+     * Registry idiom for a value constructed outside of any lock.
+     * @return The existing value, or null when the argument value
+     * has been added
+     */
+    public java.lang.Object putIfAbsent(java.lang.Object key, java.lang.Object value){
+        if (null == key || null == value)
+            throw new java.lang.IllegalArgumentException();
+        else
+            return this.put(key,value,false);
+    }
+    private java.lang.Object put(java.lang.Object key, java.lang.Object value, boolean replace){
+        Stripe stripe = this.stripe(key);
+        synchronized(stripe){
+            Objmap map = stripe.map;
+            Cell cell = (Cell)map.get(key);
+            if (null != cell){
+                java.lang.Object old = cell.value;
+                if (replace)
+                    cell.value = value;
+                return old;
+            }
+            else {
+                map = map.cloneObjmap();
+                map.put(key,new Cell(key,value,this.order.getAndIncrement()));
+                stripe.map = map;
+                this.count.incrementAndGet();
+                return null;
+            }
+        }
+    }
+    public java.lang.Object remove(java.lang.Object key){
+        if (null == key)
+            return null;
+        else {
+            Stripe stripe = this.stripe(key);
+            synchronized(stripe){
+                Objmap map = stripe.map;
+                if (null != map.get(key)){
+                    map = map.cloneObjmap();
+                    Cell cell = (Cell)map.remove(key);
+                    stripe.map = map;
+                    this.count.decrementAndGet();
+                    return cell.value;
+                }
+                else
+                    return null;
+            }
+        }
+    }
+    public void clear(){
+        Stripe[] stripes = this.stripes;
+        for (int cc = 0, len = stripes.length; cc < len; cc++){
+            Stripe stripe = stripes[cc];
+            synchronized(stripe){
+                int size = stripe.map.size();
+                stripe.map = stripe.newMap();
+                this.count.addAndGet(-size);
+            }
+        }
+    }
+    /**
+     * @return Weakly consistent snapshot of cells in input order
+     */
+    protected final Cell[] snapshot(){
+        Stripe[] stripes = this.stripes;
+        int slen = stripes.length;
+        Objmap[] maps = new Objmap[slen];
+        int size = 0;
+        for (int cc = 0; cc < slen; cc++){
+            Objmap map = stripes[cc].map;
+            maps[cc] = map;
+            size += map.size();
+        }
+        Cell[] list = new Cell[size];
+        int lx = 0;
+        for (int cc = 0; cc < slen; cc++){
+            Objmap map = maps[cc];
+            for (int mc = 0, mz = map.size(); mc < mz; mc++)
+                list[lx++] = (Cell)map.value(mc);
+        }
+        java.util.Arrays.sort(list);
+        return list;
+    }
+    public java.lang.Object[] keyary(){
+        Cell[] list = this.snapshot();
+        java.lang.Object[] re = new java.lang.Object[list.length];
+        for (int cc = 0, len = list.length; cc < len; cc++)
+            re[cc] = list[cc].key;
+        return re;
+    }
+    public java.lang.Object[] valary(){
+        Cell[] list = this.snapshot();
+        java.lang.Object[] re = new java.lang.Object[list.length];
+        for (int cc = 0, len = list.length; cc < len; cc++)
+            re[cc] = list[cc].value;
+        return re;
+    }
+    public java.util.Enumeration keys(){
+        return new Array.Enumerator.Object(this.keyary());
+    }
+    public java.util.Enumeration elements(){
+        return new Array.Enumerator.Object(this.valary());
+    }
+
+
+    protected static void usage( java.io.PrintStream out){
+        out.println();
+        out.println("Usage");
+        out.println("    Cobjmap [keys [millis [write-percent]]]");
+        out.println();
+        out.println("Description");
+        out.println("    Contention test comparing Cobjmap and Lobjmap over a");
+        out.println("    table of keys (default 1000) for 1 to 64 threads, each");
+        out.println("    for millis (default 1000), with a mix of get and put");
+        out.println("    (default 5 percent put).");
+        out.println();
+    }
+    /**
+     * Test thread body
+     */
+    private final static class Contender
+        extends java.lang.Thread
+    {
+        private final java.util.Dictionary map;
+        private final alto.sys.Lock lock;
+        private final java.lang.Object[] keys;
+        private final int writes;
+        private final java.util.concurrent.CountDownLatch start;
+        private volatile boolean stop;
+        private long ops;
+
+        Contender(java.util.Dictionary map, alto.sys.Lock lock, java.lang.Object[] keys, int writes, java.util.concurrent.CountDownLatch start){
+            super();
+            this.map = map;
+            this.lock = lock;
+            this.keys = keys;
+            this.writes = writes;
+            this.start = start;
+            this.setDaemon(true);
+        }
+
+        public void run(){
+            java.util.Random prng = new java.util.Random(this.hashCode());
+            java.util.Dictionary map = this.map;
+            alto.sys.Lock lock = this.lock;
+            java.lang.Object[] keys = this.keys;
+            int klen = keys.length, writes = this.writes;
+            long ops = 0L;
+            try {
+                this.start.await();
+            }
+            catch (java.lang.InterruptedException exc){
+                return;
+            }
+            while (!this.stop){
+                java.lang.Object key = keys[prng.nextInt(klen)];
+                if (prng.nextInt(100) < writes){
+                    lock.lockWriteEnter();
+                    try {
+                        map.put(key,key);
+                    }
+                    finally {
+                        lock.lockWriteExit();
+                    }
+                }
+                else {
+                    lock.lockReadEnter();
+                    try {
+                        if (null == map.get(key))
+                            throw new alto.sys.Error.State("missing "+key);
+                    }
+                    finally {
+                        lock.lockReadExit();
+                    }
+                }
+                ops += 1L;
+            }
+            this.ops = ops;
+        }
+    }
+    private final static long Contend(java.util.Dictionary map, alto.sys.Lock lock, java.lang.Object[] keys, int threads, long millis, int writes)
+        throws java.lang.InterruptedException
+    {
+        java.util.concurrent.CountDownLatch start = new java.util.concurrent.CountDownLatch(1);
+        Contender[] list = new Contender[threads];
+        for (int cc = 0; cc < threads; cc++){
+            list[cc] = new Contender(map,lock,keys,writes,start);
+            list[cc].start();
+        }
+        start.countDown();
+        java.lang.Thread.sleep(millis);
+        long ops = 0L;
+        for (int cc = 0; cc < threads; cc++)
+            list[cc].stop = true;
+        for (int cc = 0; cc < threads; cc++){
+            list[cc].join(millis+1000L);
+            if (list[cc].isAlive())
+                /*
+                 * Stalled in lock
+                 */
+                return -1L;
+            else
+                ops += list[cc].ops;
+        }
+        return ops;
+    }
+    private final static String Rate(long ops, long millis){
+        if (0L > ops)
+            return "stalled";
+        else
+            return java.lang.String.valueOf(ops/millis);
+    }
+    /**
+     * <p> Timed contention comparison of {@link Cobjmap} and {@link
+     * Lobjmap} for 1, 2, 4, 8, 16, 32 and 64 threads.  The Lobjmap
+     * is employed under its external lock, as in {@link
+     * alto.lang.Date.Symbols}. </p>
+     */
+    public static void main(java.lang.String[] argv){
+        int K = 1000, W = 5;
+        long millis = 1000L;
+        try {
+            if (null != argv){
+                if (0 < argv.length)
+                    K = java.lang.Integer.parseInt(argv[0]);
+                if (1 < argv.length)
+                    millis = java.lang.Long.parseLong(argv[1]);
+                if (2 < argv.length)
+                    W = java.lang.Integer.parseInt(argv[2]);
+            }
+        }
+        catch (java.lang.NumberFormatException input){
+            usage(System.err);
+            java.lang.System.exit(1);
+        }
+        try {
+            java.io.PrintStream out = java.lang.System.out;
+            java.lang.Object[] keys = new java.lang.Object[K];
+            Cobjmap cobjmap = new Cobjmap(K);
+            Lobjmap lobjmap = new Lobjmap();
+            for (int cc = 0; cc < K; cc++){
+                keys[cc] = ("key-"+cc);
+                cobjmap.put(keys[cc],keys[cc]);
+                lobjmap.put(keys[cc],keys[cc]);
+            }
+            /*
+             * Warm both
+             */
+            Contend(cobjmap,alto.sys.Lock.Nil.Instance,keys,1,(millis/4),W);
+            Contend(lobjmap,lobjmap,keys,1,(millis/4),W);
+
+            out.println("threads\tCobjmap ops/ms\tLobjmap ops/ms");
+            boolean lstalled = false;
+            for (int threads = 1; threads <= 64; threads <<= 1){
+                long c = Contend(cobjmap,alto.sys.Lock.Nil.Instance,keys,threads,millis,W);
+                long l;
+                if (lstalled)
+                    l = -1L;
+                else {
+                    /*
+                     * A stalled lock remains stalled
+                     */
+                    l = Contend(lobjmap,lobjmap,keys,threads,millis,W);
+                    lstalled = (0L > l);
+                }
+                out.println(threads+"\t"+Rate(c,millis)+"\t"+Rate(l,millis));
+            }
+        }
+        catch (java.lang.Throwable thro){
+            thro.printStackTrace();
+            java.lang.System.exit(1);
+        }
+    }
+}
@@ -21,6 +21,7 @@ package alto.io.u ;
 import alto.io.u.hasharray.Entry;
 import alto.io.u.hasharray.Index;
 import alto.io.u.hasharray.IndexObject;
+import alto.io.u.hasharray.IndexObjectOpen;
 import alto.io.u.hasharray.IndexLong;
 import alto.io.u.hasharray.Values;
 
@@ -138,6 +139,13 @@ public abstract class Hasharray
             public final static java.lang.Class Object = IndexObject.class;
 
             public final static java.lang.Class Long = IndexLong.class;
+            /**
+             * Alternative to 'Object' for large maps: open
+             * addressing over a primitive table with geometric
+             * growth.
+             * @see alto.io.u.hasharray.IndexObjectOpen
+             */
+            public final static java.lang.Class ObjectOpen = IndexObjectOpen.class;
         }
 
     }
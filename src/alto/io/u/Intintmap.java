@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 1998, 2009  John Pritchard and the Alto Project Group.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package alto.io.u ;
+
+import alto.io.u.hasharray.Index;
+import alto.io.u.hasharray.Values;
+
+/**
+ * <p> Map from primitive int keys to primitive int values,
+ * maintaining input order for keys and values.  This class has the
+ * API of {@link Intint} without its dependence on {@link Hasharray}
+ * and {@link alto.io.u.hasharray.IndexLong}: it has no entry
+ * objects, does not allocate for lookup, and the full range of int
+ * values are keys. </p>
+ *
+ * <h3>Not Synchronized</h3>
+ *
+ * <p> This class is not multi- thread safe, it is intended for use by
+ * a single thread- user.  External thread safety must be applied in
+ * multi- threaded applications. </p>
+ *
+ * @see Longhasharray
+ */
+public class Intintmap
+    extends Longhasharray
+{
+
+    protected Values.Int values;
+
+
+    public Intintmap(int initial, float load){
+        super(initial,load);
+        this.values = new Values.Int(java.lang.Math.max(initial,Initial));
+    }
+    public Intintmap(int initial){
+        this(initial,0.75f);
+    }
+    public Intintmap(){
+        this(11,0.75f);
+    }
+
+
+    public void clear(){
+        super.clear();
+        this.values.clear();
+    }
+    public void destroy(){
+        super.destroy();
+        this.values.destroy();
+    }
+    public int[] keyary(){
+        int count = this.count;
+        if (0 < count){
+            long[] keys = this.keys.get();
+            int[] ary = new int[count];
+            for (int cc = 0; cc < count; cc++)
+                ary[cc] = (int)keys[cc];
+            return ary;
+        }
+        else
+            return null;
+    }
+    public java.util.Enumeration keys(){
+        return new Array.Enumerator.Int(this.keyary(),this.count);
+    }
+    public int[] valary(){
+        if (0 < this.count)
+            return this.values.copy();
+        else
+            return null;
+    }
+    public long lastKey(){
+        return this.longGetLastKey();
+    }
+    public int lastValue(){
+        return this.values.last();
+    }
+    public void lastValue( int val){
+        this.values.last(val);
+    }
+    public java.util.Enumeration elements(){
+        return this.values.enumerate();
+    }
+    public boolean containsValue(int value){
+        return this.values.contains(value);
+    }
+    public boolean contains(int value){
+        return this.values.contains(value);
+    }
+    public boolean containsKey(int key){
+        return this.longContainsKey(key);
+    }
+    public int indexOf(int key){
+        return this.longIndexOfKey(key,0);
+    }
+    public int indexOf( int key, int fromIdx){
+        return this.longIndexOfKey(key,fromIdx);
+    }
+    public int[] indexOfList(int key){
+        return this.longIndexListOfKey(key);
+    }
+    public int lastIndexOf( int key){
+        return this.longLastIndexOfKey(key,Integer.MAX_VALUE);
+    }
+    public int lastIndexOf( int key, int fromIdx){
+        return this.longLastIndexOfKey(key,fromIdx);
+    }
+    public int indexOfValue( int val){
+        return this.values.indexOf(val);
+    }
+    public int indexOfValue( int val, int from){
+        return this.values.indexOf(val,from);
+    }
+    public int lastIndexOfValue( int val){
+        return this.values.lastIndexOf(val);
+    }
+    public int lastIndexOfValue( int val, int fromIdx){
+        return this.values.lastIndexOf(val,fromIdx);
+    }
+    public java.lang.Object get(java.lang.Object key){
+        if (key instanceof java.lang.Number){
+            int idx = this.longIndexOfKey(((java.lang.Number)key).intValue(),0);
+            if (-1 < idx)
+                return Values.Int.ToObject(this.values.get()[idx]);
+        }
+        return Values.NilObject;
+    }
+    public int get(int key){
+        int idx = this.longIndexOfKey(key,0);
+        if (-1 < idx)
+            return this.values.get()[idx];
+        else
+            return Values.NilInt;
+    }
+    public int[] list(int key){
+        int[] lidx = this.longIndexListOfKey(key);
+        if (null != lidx)
+            return this.values.list(lidx);
+        else
+            return Values.NilArrayInt;
+    }
+    public java.lang.Object list(int key, java.lang.Class comp){
+        int[] lidx = this.longIndexListOfKey(key);
+        if (null != lidx)
+            return this.values.list(lidx,comp);
+        else
+            return Values.NilObject;
+    }
+    public int key(int idx){
+        return (int)this.longGetKey(idx);
+    }
+    public int value(int idx){
+        return this.values.get(idx);
+    }
+    public int value(int idx, int value){
+        return this.values.set(idx,value);
+    }
+    public java.lang.Object put(java.lang.Object key, java.lang.Object value){
+        if (key instanceof java.lang.Number && value instanceof java.lang.Number){
+            int idx = this.longIndexOfKey(((java.lang.Number)key).intValue(),0);
+            int old = this.put(((java.lang.Number)key).intValue(),((java.lang.Number)value).intValue());
+            if (-1 < idx)
+                return Values.Int.ToObject(old);
+            else
+                return Values.NilObject;
+        }
+        else
+            throw new java.lang.IllegalArgumentException();
+    }
+    /**
+     * Replace the keyed value
+     * @return Previous value
+     */
+    public int put(int key, int value){
+        int idx = this.longPutKey(key);
+        int[] list = Ensure(this.values);
+        if (idx < this.values.size()){
+            int old = list[idx];
+            list[idx] = value;
+            return old;
+        }
+        else {
+            this.values.append(value);
+            return Values.NilInt;
+        }
+    }
+    /**
+     * Add a potentially duplicate key.
+     */
+    public int append( int key, int val){
+        int idx = this.longAppendKey(key);
+        Ensure(this.values);
+        this.values.append(val);
+        return idx;
+    }
+    public int insert( int idx, int key, int val){
+        if (-1 < idx){
+            int count = this.values.size();
+            idx = this.longInsertKey(idx,key);
+            int[] list = Ensure(this.values);
+            this.values.append(val);
+            if (idx < count){
+                java.lang.System.arraycopy(list,idx,list,(idx+1),(count-idx));
+                list[idx] = val;
+            }
+            return idx;
+        }
+        else
+            return Index.NotFound;
+    }
+    public int replace( int idx, int nkey, int nval){
+        if (-1 < idx && idx < this.count){
+            this.longReplaceKey(idx,nkey);
+            this.values.set(idx,nval);
+            return idx;
+        }
+        else
+            return Index.NotFound;
+    }
+    /**
+     * Drop slot by index
+     */
+    public int drop( int idx){
+        if (this.longRemoveKeyByIndex(idx))
+            return this.values.remove(idx);
+        else
+            return Values.NilInt;
+    }
+    public java.lang.Object remove( java.lang.Object key){
+        if (key instanceof java.lang.Number){
+            int idx = this.longRemoveKeyByValue(((java.lang.Number)key).intValue());
+            if (-1 < idx)
+                return Values.Int.ToObject(this.values.remove(idx));
+        }
+        return Values.NilObject;
+    }
+    public int remove( int key){
+        int idx = this.longRemoveKeyByValue(key);
+        if (-1 < idx)
+            return this.values.remove(idx);
+        else
+            return Values.NilInt;
+    }
+    public final Intintmap cloneIntintmap(){
+        Intintmap clone = (Intintmap)super.cloneLonghasharray();
+        clone.values = this.values.cloneValues();
+        return clone;
+    }
+}
@@ -0,0 +1,509 @@
+/*
+ * Copyright (C) 1998, 2009  John Pritchard and the Alto Project Group.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package alto.io.u ;
+
+import alto.io.u.hasharray.Values;
+
+/**
+ * <p> Abstract base "hash array" for primitive long keys, the
+ * primitive alternative to {@link Hasharray} with {@link
+ * alto.io.u.hasharray.IndexLong}.  Keys are held in a {@link
+ * alto.io.u.hasharray.Values.Long} list in input order, and are
+ * indexed by an open addressing table of primitive slots.  A slot
+ * holds one plus the index of its key into the keys list, or zero
+ * for empty. </p>
+ *
+ * <h3>Full key range</h3>
+ *
+ * <p> Empty is represented in the table slots rather than in the
+ * keys list, so every 64 bit value is a valid key including
+ * <code>Long.MIN_VALUE</code>. </p>
+ *
+ * <h3>No allocation</h3>
+ *
+ * <p> Lookup, and put over an existing key, do not allocate.  The
+ * keys and values lists grow geometrically, so that put of a new key
+ * allocates only when the list or table capacity is doubled. </p>
+ *
+ * <h3>Not Synchronized</h3>
+ *
+ * <p> This class is not multi- thread safe, it is intended for use by
+ * a single thread- user.  External thread safety must be applied in
+ * multi- threaded applications. </p>
+ *
+ * <h3>Multiple key instances</h3>
+ *
+ * <p> The key list may contain multiple identical keys via append and
+ * insert.  Lookup returns the least index for the key. </p>
+ *
+ * @see Longmap
+ * @see Longlong
+ * @see Intintmap
+ */
+public abstract class Longhasharray
+    extends java.util.Dictionary
+    implements java.lang.Cloneable
+{
+    /**
+     * Enumerate a list of longs as {@link java.lang.Long} objects,
+     * where {@link Array.Enumerator.Long} masks to int.
+     */
+    public final static class Enumerator
+        extends Array.Enumerator
+    {
+        private final long[] target;
+
+        public Enumerator(long[] target, int size){
+            super();
+            this.target = target;
+            this.len = size;
+        }
+
+        public boolean hasMoreElements(){
+            return (this.tc < this.len);
+        }
+        public java.lang.Object nextElement(){
+            if (this.tc >= this.len)
+                throw new java.util.NoSuchElementException();
+            else
+                return java.lang.Long.valueOf(this.target[this.tc++]);
+        }
+    }
+    /**
+     * Least capacity of keys and values lists.
+     */
+    protected final static int Initial = 16;
+
+
+    protected final static int Hash(long key){
+        long h = (key * 0x9E3779B97F4A7C15L);
+        return (int)(h ^ (h >>> 32));
+    }
+    private final static int TableSize(int initial, float load){
+        int size = 8;
+        int min = (int)((float)initial / load) + 1;
+        while (size < min && 0 < size)
+            size <<= 1;
+        if (0 < size)
+            return size;
+        else
+            throw new alto.sys.Error.State(java.lang.String.valueOf(initial));
+    }
+    /**
+     * Geometric growth to permit one append without reallocation.
+     */
+    protected final static java.lang.Object[] Ensure(Values.Object values){
+        java.lang.Object[] list = values.get();
+        int len = (null != list)?(list.length):(0);
+        if (values.size() >= len){
+            java.lang.Object[] copier = new java.lang.Object[java.lang.Math.max((len << 1),Initial)];
+            if (null != list)
+                java.lang.System.arraycopy(list,0,copier,0,len);
+            values.set(copier);
+            return copier;
+        }
+        else
+            return list;
+    }
+    /**
+     * Geometric growth to permit one append without reallocation.
+     */
+    protected final static long[] Ensure(Values.Long values){
+        long[] list = values.get();
+        int len = (null != list)?(list.length):(0);
+        if (values.size() >= len){
+            list = Array.grow(list,java.lang.Math.max((len << 1),Initial));
+            values.set(list);
+        }
+        return list;
+    }
+    /**
+     * Geometric growth to permit one append without reallocation.
+     */
+    protected final static int[] Ensure(Values.Int values){
+        int[] list = values.get();
+        int len = (null != list)?(list.length):(0);
+        if (values.size() >= len){
+            list = Array.grow(list,java.lang.Math.max((len << 1),Initial));
+            values.set(list);
+        }
+        return list;
+    }
+
+
+    /**
+     * <p> A value between zero and one that defines the threshold
+     * for doubling the table. </p>
+     */
+    public final float load;
+    /**
+     * <p> Keys in input order. </p>
+     */
+    protected Values.Long keys;
+    /**
+     * <p> Slots table has a power of two length. </p>
+     */
+    protected int[] slots;
+    /**
+     * <p> Table length minus one. </p>
+     */
+    protected int mask;
+    /**
+     * <p> Table count at which to double the table. </p>
+     */
+    protected int limit;
+    /**
+     * <p> Number of keys, and of occupied slots. </p>
+     */
+    protected int count;
+    /**
+     * <p> True when a key has been appended or inserted as a
+     * duplicate. </p>
+     */
+    protected boolean multiple;
+
+
+    protected Longhasharray(int initial, float load){
+        super();
+        if ((initial <= 0) || (load <= 0f) || (load >= 1f))
+            throw new IllegalArgumentException();
+        else {
+            this.load = load;
+            this.keys = new Values.Long(java.lang.Math.max(initial,Initial));
+            int size = TableSize(initial,load);
+            this.slots = new int[size];
+            this.mask = (size-1);
+            this.limit = (int)((float)size * load);
+        }
+    }
+
+
+    public int size(){
+        return this.count;
+    }
+    public boolean isEmpty(){
+        return (1 > this.count);
+    }
+    public boolean isNotEmpty(){
+        return (0 < this.count);
+    }
+    public void clear(){
+        this.count = 0;
+        this.multiple = false;
+        this.keys.clear();
+        java.util.Arrays.fill(this.slots,0);
+    }
+    public void destroy(){
+        this.count = 0;
+        this.keys.destroy();
+        this.slots = null;
+    }
+    protected Longhasharray cloneLonghasharray(){
+        try {
+            Longhasharray clone = (Longhasharray)super.clone();
+            clone.keys = this.keys.cloneValues();
+            clone.slots = this.slots.clone();
+            return clone;
+        }
+        catch (CloneNotSupportedException e){
+            throw new InternalError();
+        }
+    }
+    /**
+     * @return Key at index, or zero for an index out of bounds.
+     */
+    protected final long longGetKey(int idx){
+        if (-1 < idx && idx < this.count)
+            return this.keys.get()[idx];
+        else
+            return 0L;
+    }
+    /**
+     * @return Copy of the keys list
+     */
+    protected final long[] longKeyary(){
+        if (0 < this.count)
+            return this.keys.copy();
+        else
+            return null;
+    }
+    protected final long longGetLastKey(){
+        int count = this.count;
+        if (0 < count)
+            return this.keys.get()[count-1];
+        else
+            return 0L;
+    }
+    public java.util.Enumeration keys(){
+        return new Enumerator(this.keys.get(),this.count);
+    }
+    /**
+     * @return Index of key, or negative one for not found
+     */
+    protected final int longIndexOfKey(long key){
+        return this.longIndexOfKey(key,0);
+    }
+    /**
+     * @return Least index of key at or after from, or negative one
+     * for not found
+     */
+    protected final int longIndexOfKey(long key, int from){
+        long[] keys = this.keys.get();
+        int[] slots = this.slots;
+        int mask = this.mask;
+        int re = -1;
+        for (int pos = (Hash(key) & mask), slot, ix; ; pos = ((pos+1) & mask)){
+            slot = slots[pos];
+            if (0 == slot)
+                return re;
+            else {
+                ix = (slot-1);
+                if (key == keys[ix] && from <= ix){
+                    if (this.multiple){
+                        if (-1 == re || ix < re)
+                            re = ix;
+                    }
+                    else
+                        return ix;
+                }
+            }
+        }
+    }
+    /**
+     * @return Ascending list of indeces for key, or null for not
+     * found
+     */
+    protected final int[] longIndexListOfKey(long key){
+        long[] keys = this.keys.get();
+        int[] slots = this.slots;
+        int mask = this.mask;
+        int[] list = null;
+        for (int pos = (Hash(key) & mask), slot, ix; ; pos = ((pos+1) & mask)){
+            slot = slots[pos];
+            if (0 == slot)
+                break;
+            else {
+                ix = (slot-1);
+                if (key == keys[ix])
+                    list = Array.add(list,ix);
+            }
+        }
+        if (null != list && 1 < list.length)
+            java.util.Arrays.sort(list);
+        return list;
+    }
+    protected final int longLastIndexOfKey(long key, int from){
+        int[] list = this.longIndexListOfKey(key);
+        if (null != list){
+            for (int cc = (list.length-1), re; -1 < cc; cc--){
+                re = list[cc];
+                if (from >= re)
+                    return re;
+            }
+        }
+        return -1;
+    }
+    protected final boolean longContainsKey(long key){
+        return (-1 < this.longIndexOfKey(key,0));
+    }
+    /**
+     * @return Index of an existing key, or of a new key appended to
+     * the keys list.  For a new key the returned index equals the
+     * size of the values list.
+     */
+    protected final int longPutKey(long key){
+        int idx = this.longIndexOfKey(key,0);
+        if (-1 < idx)
+            return idx;
+        else
+            return this.add(key);
+    }
+    /**
+     * Append a potentially duplicate key.
+     * @return Index of appended key
+     */
+    protected final int longAppendKey(long key){
+        if (-1 < this.longIndexOfKey(key,0))
+            this.multiple = true;
+        return this.add(key);
+    }
+    private final int add(long key){
+        int idx = this.count;
+        Ensure(this.keys);
+        this.keys.append(key);
+        this.link(idx,key);
+        this.count += 1;
+        return idx;
+    }
+    /**
+     * Insert a potentially duplicate key at index.
+     */
+    protected final int longInsertKey(int idx, long key){
+        int count = this.count;
+        if (idx >= count)
+            return this.longAppendKey(key);
+        else if (0 > idx)
+            throw new java.lang.ArrayIndexOutOfBoundsException(java.lang.String.valueOf(idx));
+        else {
+            if (-1 < this.longIndexOfKey(key,0))
+                this.multiple = true;
+            /*
+             * Increment pointers for insert
+             */
+            this.renumber(idx,1);
+            long[] keys = Ensure(this.keys);
+            this.keys.append(key);
+            java.lang.System.arraycopy(keys,idx,keys,(idx+1),(count-idx));
+            keys[idx] = key;
+            this.link(idx,key);
+            this.count += 1;
+            return idx;
+        }
+    }
+    protected final int longReplaceKey(int idx, long nkey){
+        if (-1 < idx && idx < this.count){
+            long[] keys = this.keys.get();
+            this.unlink(this.position(idx,keys[idx]));
+            if (-1 < this.longIndexOfKey(nkey,0))
+                this.multiple = true;
+            keys[idx] = nkey;
+            this.link(idx,nkey);
+            return idx;
+        }
+        else
+            throw new java.lang.ArrayIndexOutOfBoundsException(java.lang.String.valueOf(idx));
+    }
+    /**
+     * @return Index of removed key, or negative one for not found
+     */
+    protected final int longRemoveKeyByValue(long key){
+        int idx = this.longIndexOfKey(key,0);
+        if (-1 < idx)
+            this.longRemoveKeyByIndex(idx);
+        return idx;
+    }
+    protected final boolean longRemoveKeyByIndex(int idx){
+        if (-1 < idx && idx < this.count){
+            this.unlink(this.position(idx,this.keys.get()[idx]));
+            /*
+             * Decrement pointers for remove
+             */
+            this.renumber((idx+1),-1);
+            this.keys.remove(idx);
+            this.count -= 1;
+            return true;
+        }
+        else
+            return false;
+    }
+    /**
+     * @return Slot position holding index
+     */
+    private final int position(int idx, long key){
+        int[] slots = this.slots;
+        int mask = this.mask;
+        int target = (idx+1);
+        for (int pos = (Hash(key) & mask), slot; ; pos = ((pos+1) & mask)){
+            slot = slots[pos];
+            if (target == slot)
+                return pos;
+            else if (0 == slot)
+                throw new alto.sys.Error.State("bug "+idx);
+        }
+    }
+    private final void link(int idx, long key){
+        if (this.count >= this.limit)
+            this.resize();
+
+        int[] slots = this.slots;
+        int mask = this.mask;
+        int pos = (Hash(key) & mask);
+        while (0 != slots[pos])
+            pos = ((pos+1) & mask);
+        slots[pos] = (idx+1);
+    }
+    /**
+     * Backward shift deletion of the slot at position.
+     */
+    private final void unlink(int pos){
+        int[] slots = this.slots;
+        long[] keys = this.keys.get();
+        int mask = this.mask;
+        int hole = pos, next = pos, slot, home;
+        while (true){
+            next = ((next+1) & mask);
+            slot = slots[next];
+            if (0 == slot)
+                break;
+            else {
+                home = (Hash(keys[slot-1]) & mask);
+                /*
+                 * Move slot into the hole unless its home is
+                 * cyclically within (hole, next]
+                 */
+                if (hole <= next){
+                    if (home <= hole || next < home){
+                        slots[hole] = slot;
+                        hole = next;
+                    }
+                }
+                else if (home <= hole && next < home){
+                    slots[hole] = slot;
+                    hole = next;
+                }
+            }
+        }
+        slots[hole] = 0;
+    }
+    private final void resize(){
+        int[] os = this.slots;
+        int olen = os.length;
+        int nlen = (olen << 1);
+        if (0 < nlen){
+            int[] ns = new int[nlen];
+            long[] keys = this.keys.get();
+            int mask = (nlen-1);
+            for (int oc = 0, slot, pos; oc < olen; oc++){
+                slot = os[oc];
+                if (0 != slot){
+                    pos = (Hash(keys[slot-1]) & mask);
+                    while (0 != ns[pos])
+                        pos = ((pos+1) & mask);
+                    ns[pos] = slot;
+                }
+            }
+            this.slots = ns;
+            this.mask = mask;
+            this.limit = (int)((float)nlen * this.load);
+        }
+        else
+            throw new alto.sys.Error.State(java.lang.String.valueOf(olen));
+    }
+    /**
+     * Add delta to every slot holding an index at or above 'from'.
+     */
+    private final void renumber(int from, int delta){
+        int[] slots = this.slots;
+        int test = (from+1);
+        for (int cc = 0, len = slots.length; cc < len; cc++){
+            if (test <= slots[cc])
+                slots[cc] += delta;
+        }
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 1998, 2009  John Pritchard and the Alto Project Group.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package alto.io.u ;
+
+import alto.io.u.hasharray.Index;
+import alto.io.u.hasharray.Values;
+
+/**
+ * <p> Map from primitive long keys to primitive long values,
+ * maintaining input order for keys and values.  The API is that of
+ * {@link Intint} with long keys and values, and the full range of
+ * long values are keys. </p>
+ *
+ * <h3>Not Synchronized</h3>
+ *
+ * <p> This class is not multi- thread safe, it is intended for use by
+ * a single thread- user.  External thread safety must be applied in
+ * multi- threaded applications. </p>
+ *
+ * @see Longhasharray
+ */
+public class Longlong
+    extends Longhasharray
+{
+
+    protected Values.Long values;
+
+
+    public Longlong(int initial, float load){
+        super(initial,load);
+        this.values = new Values.Long(java.lang.Math.max(initial,Initial));
+    }
+    public Longlong(int initial){
+        this(initial,0.75f);
+    }
+    public Longlong(){
+        this(11,0.75f);
+    }
+
+
+    public void clear(){
+        super.clear();
+        this.values.clear();
+    }
+    public void destroy(){
+        super.destroy();
+        this.values.destroy();
+    }
+    public long[] keyary(){
+        return this.longKeyary();
+    }
+    public long[] valary(){
+        if (0 < this.count)
+            return this.values.copy();
+        else
+            return null;
+    }
+    public long lastKey(){
+        return this.longGetLastKey();
+    }
+    public long lastValue(){
+        return this.values.last();
+    }
+    public void lastValue( long val){
+        this.values.last(val);
+    }
+    public java.util.Enumeration elements(){
+        return new Enumerator(this.values.get(),this.count);
+    }
+    public boolean containsValue(long value){
+        return this.values.contains(value);
+    }
+    public boolean contains(long value){
+        return this.values.contains(value);
+    }
+    public boolean containsKey(long key){
+        return this.longContainsKey(key);
+    }
+    public int indexOf(long key){
+        return this.longIndexOfKey(key,0);
+    }
+    public int indexOf( long key, int fromIdx){
+        return this.longIndexOfKey(key,fromIdx);
+    }
+    public int[] indexOfList(long key){
+        return this.longIndexListOfKey(key);
+    }
+    public int lastIndexOf( long key){
+        return this.longLastIndexOfKey(key,Integer.MAX_VALUE);
+    }
+    public int lastIndexOf( long key, int fromIdx){
+        return this.longLastIndexOfKey(key,fromIdx);
+    }
+    public int indexOfValue( long val){
+        return this.values.indexOf(val);
+    }
+    public int indexOfValue( long val, int from){
+        return this.values.indexOf(val,from);
+    }
+    public int lastIndexOfValue( long val){
+        return this.values.lastIndexOf(val);
+    }
+    public int lastIndexOfValue( long val, int fromIdx){
+        return this.values.lastIndexOf(val,fromIdx);
+    }
+    public java.lang.Object get(java.lang.Object key){
+        if (key instanceof java.lang.Number){
+            int idx = this.longIndexOfKey(((java.lang.Number)key).longValue(),0);
+            if (-1 < idx)
+                return Values.Long.ToObject(this.values.get()[idx]);
+        }
+        return Values.NilObject;
+    }
+    public long get(long key){
+        int idx = this.longIndexOfKey(key,0);
+        if (-1 < idx)
+            return this.values.get()[idx];
+        else
+            return Values.NilLong;
+    }
+    public long[] list(long key){
+        int[] lidx = this.longIndexListOfKey(key);
+        if (null != lidx)
+            return this.values.list(lidx);
+        else
+            return Values.NilArrayLong;
+    }
+    public java.lang.Object list(long key, java.lang.Class comp){
+        int[] lidx = this.longIndexListOfKey(key);
+        if (null != lidx)
+            return this.values.list(lidx,comp);
+        else
+            return Values.NilObject;
+    }
+    public long key(int idx){
+        return this.longGetKey(idx);
+    }
+    public long value(int idx){
+        return this.values.get(idx);
+    }
+    public long value(int idx, long value){
+        return this.values.set(idx,value);
+    }
+    public java.lang.Object put(java.lang.Object key, java.lang.Object value){
+        if (key instanceof java.lang.Number && value instanceof java.lang.Number){
+            int idx = this.longIndexOfKey(((java.lang.Number)key).longValue(),0);
+            long old = this.put(((java.lang.Number)key).longValue(),((java.lang.Number)value).longValue());
+            if (-1 < idx)
+                return Values.Long.ToObject(old);
+            else
+                return Values.NilObject;
+        }
+        else
+            throw new java.lang.IllegalArgumentException();
+    }
+    /**
+     * Replace the keyed value
+     * @return Previous value
+     */
+    public long put(long key, long value){
+        int idx = this.longPutKey(key);
+        long[] list = Ensure(this.values);
+        if (idx < this.values.size()){
+            long old = list[idx];
+            list[idx] = value;
+            return old;
+        }
+        else {
+            this.values.append(value);
+            return Values.NilLong;
+        }
+    }
+    /**
+     * Add a potentially duplicate key.
+     */
+    public int append( long key, long val){
+        int idx = this.longAppendKey(key);
+        Ensure(this.values);
+        this.values.append(val);
+        return idx;
+    }
+    public int insert( int idx, long key, long val){
+        if (-1 < idx){
+            int count = this.values.size();
+            idx = this.longInsertKey(idx,key);
+            long[] list = Ensure(this.values);
+            this.values.append(val);
+            if (idx < count){
+                java.lang.System.arraycopy(list,idx,list,(idx+1),(count-idx));
+                list[idx] = val;
+            }
+            return idx;
+        }
+        else
+            return Index.NotFound;
+    }
+    public int replace( int idx, long nkey, long nval){
+        if (-1 < idx && idx < this.count){
+            this.longReplaceKey(idx,nkey);
+            this.values.set(idx,nval);
+            return idx;
+        }
+        else
+            return Index.NotFound;
+    }
+    /**
+     * Drop slot by index
+     */
+    public long drop( int idx){
+        if (this.longRemoveKeyByIndex(idx))
+            return this.values.remove(idx);
+        else
+            return Values.NilLong;
+    }
+    public java.lang.Object remove( java.lang.Object key){
+        if (key instanceof java.lang.Number){
+            int idx = this.longRemoveKeyByValue(((java.lang.Number)key).longValue());
+            if (-1 < idx)
+                return Values.Long.ToObject(this.values.remove(idx));
+        }
+        return Values.NilObject;
+    }
+    public long remove( long key){
+        int idx = this.longRemoveKeyByValue(key);
+        if (-1 < idx)
+            return this.values.remove(idx);
+        else
+            return Values.NilLong;
+    }
+    public final Longlong cloneLonglong(){
+        Longlong clone = (Longlong)super.cloneLonghasharray();
+        clone.values = this.values.cloneValues();
+        return clone;
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 1998, 2009  John Pritchard and the Alto Project Group.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package alto.io.u ;
+
+import alto.io.u.hasharray.Index;
+import alto.io.u.hasharray.Values;
+
+/**
+ * <p> Map from primitive long keys to objects, maintaining input
+ * order for keys and values.  The API is that of {@link Intmap}
+ * with long keys, and the full range of long values are keys. </p>
+ *
+ * <p> The standard dictionary API wraps the long key API, and
+ * employs any {@link java.lang.Number} key by its long value. </p>
+ *
+ * <h3>Not Synchronized</h3>
+ *
+ * <p> This class is not multi- thread safe, it is intended for use by
+ * a single thread- user.  External thread safety must be applied in
+ * multi- threaded applications. </p>
+ *
+ * @see Longhasharray
+ */
+public class Longmap
+    extends Longhasharray
+{
+
+    protected Values.Object values;
+
+
+    public Longmap(int initial, float load){
+        super(initial,load);
+        this.values = new Values.Object(java.lang.Math.max(initial,Initial));
+    }
+    public Longmap(int initial){
+        this(initial,0.75f);
+    }
+    public Longmap(){
+        this(11,0.75f);
+    }
+
+
+    public void clear(){
+        super.clear();
+        this.values.clear();
+    }
+    public void destroy(){
+        super.destroy();
+        this.values.destroy();
+    }
+    public long[] keyary(){
+        return this.longKeyary();
+    }
+    public java.lang.Object[] valary(){
+        if (0 < this.count)
+            return this.values.copy();
+        else
+            return null;
+    }
+    public java.lang.Object[] valary(Class comp){
+        if (0 < this.count){
+            java.lang.Object[] copy = (java.lang.Object[])java.lang.reflect.Array.newInstance(comp,this.count);
+            java.lang.System.arraycopy(this.values.get(),0,copy,0,this.count);
+            return copy;
+        }
+        else
+            return null;
+    }
+    public long lastKey(){
+        return this.longGetLastKey();
+    }
+    public java.lang.Object lastValue(){
+        return this.values.last();
+    }
+    public void lastValue( java.lang.Object val){
+        this.values.last(val);
+    }
+    public java.util.Enumeration elements(){
+        return this.values.enumerate();
+    }
+    public boolean containsValue(java.lang.Object value){
+        return this.values.contains(value);
+    }
+    public boolean contains(java.lang.Object value){
+        return this.values.contains(value);
+    }
+    public boolean containsKey(long key){
+        return this.longContainsKey(key);
+    }
+    public int indexOf(long key){
+        return this.longIndexOfKey(key,0);
+    }
+    public int[] indexOfList(long key){
+        return this.longIndexListOfKey(key);
+    }
+    public int indexOf( long key, int fromIdx){
+        return this.longIndexOfKey(key,fromIdx);
+    }
+    public int lastIndexOf( long key){
+        return this.longLastIndexOfKey(key,Integer.MAX_VALUE);
+    }
+    public int indexOfValue( java.lang.Object val){
+        return this.values.indexOf(val);
+    }
+    public int indexOfValue( java.lang.Object val, int fromIdx){
+        return this.values.indexOf(val,fromIdx);
+    }
+    public int lastIndexOfValue( java.lang.Object val){
+        return this.values.lastIndexOf(val);
+    }
+    public int lastIndexOfValue( java.lang.Object val, int fromIdx){
+        return this.values.lastIndexOf(val,fromIdx);
+    }
+    public java.lang.Object get(java.lang.Object key){
+        if (key instanceof java.lang.Number)
+            return this.get(((java.lang.Number)key).longValue());
+        else
+            return Values.NilObject;
+    }
+    public java.lang.Object get(long key){
+        int idx = this.longIndexOfKey(key,0);
+        if (-1 < idx)
+            return this.values.get()[idx];
+        else
+            return Values.NilObject;
+    }
+    public java.lang.Object[] list(long key){
+        int[] lidx = this.longIndexListOfKey(key);
+        if (null != lidx)
+            return this.values.list(lidx);
+        else
+            return Values.NilArrayObject;
+    }
+    public java.lang.Object[] list(long key, Class comp){
+        int[] lidx = this.longIndexListOfKey(key);
+        if (null != lidx)
+            return (java.lang.Object[])this.values.list(lidx,comp);
+        else
+            return Values.NilArrayObject;
+    }
+    public long key(int idx){
+        return this.longGetKey(idx);
+    }
+    public java.lang.Object value(int idx){
+        return this.values.get(idx);
+    }
+    public java.lang.Object value(int idx, java.lang.Object value){
+        return this.values.set(idx,value);
+    }
+    public java.lang.Object put(java.lang.Object key, java.lang.Object value){
+        if (key instanceof java.lang.Number)
+            return this.put(((java.lang.Number)key).longValue(),value);
+        else
+            throw new java.lang.IllegalArgumentException();
+    }
+    /**
+     * Replace the keyed value
+     * @return Previous value
+     */
+    public java.lang.Object put(long key, java.lang.Object value){
+        int idx = this.longPutKey(key);
+        java.lang.Object[] list = Ensure(this.values);
+        if (idx < this.values.size()){
+            java.lang.Object old = list[idx];
+            list[idx] = value;
+            return old;
+        }
+        else {
+            this.values.append(value);
+            return Values.NilObject;
+        }
+    }
+    /**
+     * Add a potentially duplicate key.
+     */
+    public int append( long key, java.lang.Object val){
+        int idx = this.longAppendKey(key);
+        Ensure(this.values);
+        this.values.append(val);
+        return idx;
+    }
+    public int insert( int idx, long key, java.lang.Object val){
+        if (-1 < idx){
+            int count = this.values.size();
+            idx = this.longInsertKey(idx,key);
+            java.lang.Object[] list = Ensure(this.values);
+            this.values.append(val);
+            if (idx < count){
+                java.lang.System.arraycopy(list,idx,list,(idx+1),(count-idx));
+                list[idx] = val;
+            }
+            return idx;
+        }
+        else
+            return Index.NotFound;
+    }
+    public int replace( int idx, long nkey, java.lang.Object nval){
+        if (-1 < idx && idx < this.count){
+            this.longReplaceKey(idx,nkey);
+            this.values.set(idx,nval);
+            return idx;
+        }
+        else
+            return Index.NotFound;
+    }
+    public java.lang.Object drop( int idx){
+        if (this.longRemoveKeyByIndex(idx))
+            return this.values.remove(idx);
+        else
+            return Values.NilObject;
+    }
+    public java.lang.Object remove( java.lang.Object key){
+        if (key instanceof java.lang.Number)
+            return this.remove(((java.lang.Number)key).longValue());
+        else
+            return Values.NilObject;
+    }
+    public java.lang.Object remove( long key){
+        int idx = this.longRemoveKeyByValue(key);
+        if (-1 < idx)
+            return this.values.remove(idx);
+        else
+            return Values.NilObject;
+    }
+    public final Longmap cloneLongmap(){
+        Longmap clone = (Longmap)super.cloneLonghasharray();
+        clone.values = this.values.cloneValues();
+        return clone;
+    }
+}
@@ -67,6 +67,14 @@ public class Objmap
     public Objmap(){
         super(Types.Indeces.Object,Values.Types.Object);
     }
+    /**
+     * @param index Primary index class, for example {@link
+     * Hasharray.Types.Indeces#ObjectOpen}.  A subclass of {@link
+     * alto.io.u.hasharray.IndexObject}.
+     */
+    public Objmap(java.lang.Class index, int initial, float load){
+        super(index,initial,load,Values.Types.Object);
+    }
     public Objmap(java.lang.Object key, java.lang.Object value){
         this();
         this.put(key,value);
@@ -28,6 +28,7 @@ import alto.io.u.Hasharray;
  * table and key array.  </p>
  * 
  * @see IndexObject
+ * @see IndexObjectOpen
  * @see IndexLong
  * @see alto.io.u.Hasharray
  */
@@ -131,12 +132,14 @@ public abstract class Index
     public Index cloneIndex(){
         try {
             Index index = (Index)super.clone();
-            index.table = (Entry[])this.table.clone();
-            Entry ent;
-            for (int ac = 0, an = this.table.length, bc, bn; ac < an; ac++){
-                ent = index.table[ac];
-                if (null != ent)
-                    index.table[ac] = ent.cloneEntry();
+            if (null != this.table){
+                index.table = (Entry[])this.table.clone();
+                Entry ent;
+                for (int ac = 0, an = this.table.length, bc, bn; ac < an; ac++){
+                    ent = index.table[ac];
+                    if (null != ent)
+                        index.table[ac] = ent.cloneEntry();
+                }
             }
             return index;
         }
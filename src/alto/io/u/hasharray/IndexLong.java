@@ -125,7 +125,7 @@ public class IndexLong
             return idx;
         }
         else {
-            int n_len = (keys_len+this.grow);
+            int n_len = java.lang.Math.max((keys_len << 1),(keys_len+this.grow));
             if (idx < n_len){
                 keys = Array.grow(keys,n_len);
                 this.keys = keys;
@@ -28,6 +28,10 @@ import alto.io.u.Hasharray;
  * <p> The "keys" array is initialized by this constructor, and is
  * maintained in parallel with "vals" by objmap. </p>
  *
+ * <p> The table and key operations are not final for the benefit of
+ * the alternative {@link IndexObjectOpen}, which shares this keys
+ * array but replaces the chained table. </p>
+ *
  */
 public class IndexObject
     extends Index
@@ -96,7 +100,7 @@ public class IndexObject
             return idx;
         }
         else {
-            int n_len = (keys_len+this.grow);
+            int n_len = java.lang.Math.max((keys_len << 1),(keys_len+this.grow));
             if (idx < n_len){
                 keys = Array.grow(keys,n_len);
                 this.keys = keys;
@@ -107,7 +111,7 @@ public class IndexObject
                 throw new alto.sys.Error.State(java.lang.String.valueOf(idx));
         }
     }
-    public final Entry lookupEntry(java.lang.Object key){
+    public Entry lookupEntry(java.lang.Object key){
         if (KO_NIL == key)
             return null;
         else {
@@ -124,14 +128,14 @@ public class IndexObject
             return null;
         }
     }
-    public final int lookup(java.lang.Object key){
+    public int lookup(java.lang.Object key){
         Entry ent = this.lookupEntry(key);
         if (null == ent)
             return -1;
         else
             return ent.aryix;
     }
-    public final int lookup(java.lang.Object key, int from){
+    public int lookup(java.lang.Object key, int from){
         if (KO_NIL == key)
             return -1;
         else {
@@ -150,7 +154,7 @@ public class IndexObject
             return -1;
         }
     }
-    public final int[] lookupList(java.lang.Object key){
+    public int[] lookupList(java.lang.Object key){
         if (KO_NIL == key)
             return null;
         else {
@@ -168,7 +172,7 @@ public class IndexObject
             return list;
         }
     }
-    public final int[] lookupList(java.lang.Object key, int from){
+    public int[] lookupList(java.lang.Object key, int from){
         if (KO_NIL == key)
             return null;
         else {
@@ -205,7 +209,7 @@ public class IndexObject
             return null;
         }
     }
-    public final Entry removeByKey(java.lang.Object key){
+    public Entry removeByKey(java.lang.Object key){
         Entry ent = this.removeIn(key);
         if (null != ent){
             this.count -= 1;
@@ -215,7 +219,7 @@ public class IndexObject
         return ent;
     }
     @Override
-    public final Entry removeByIndex(int idx){
+    public Entry removeByIndex(int idx){
         Entry ent = super.removeByIndex(idx);
         if (null != ent){
             if (idx != ent.aryix)
@@ -227,7 +231,7 @@ public class IndexObject
         }
         return ent;
     }
-    public final Entry put(java.lang.Object key){
+    public Entry put(java.lang.Object key){
         if (null == key)
             return null;
         else {
@@ -259,7 +263,7 @@ public class IndexObject
             }
         }
     }
-    public final Entry put(int idx, java.lang.Object key){
+    public Entry put(int idx, java.lang.Object key){
         if (null == key || 0 > idx)
             return null;
         else {
@@ -291,7 +295,7 @@ public class IndexObject
             }
         }
     }
-    public final Entry insert(int idx, java.lang.Object key){
+    public Entry insert(int idx, java.lang.Object key){
         if (KO_NIL == key || 0 > idx)
             return null;
         else if (this.threshold()){
@@ -361,7 +365,7 @@ public class IndexObject
             return ne;
         }
     }
-    public final Entry replace(int idx, java.lang.Object nkey){
+    public Entry replace(int idx, java.lang.Object nkey){
         Entry table[] = this.table;
         java.lang.Object okey = this.key(idx);
         long nhash = this.hash(nkey);
@@ -373,7 +377,7 @@ public class IndexObject
 
         return this.key(nent,idx,nkey);
     }
-    public final Entry append( java.lang.Object key){
+    public Entry append( java.lang.Object key){
         if (KO_NIL == key)
             return null;
         else if (this.threshold()){
@@ -393,7 +397,7 @@ public class IndexObject
             return ne;
         }
     }
-    public final Entry append( int idx, java.lang.Object key){
+    public Entry append( int idx, java.lang.Object key){
         if (KO_NIL == key || 0 > idx)
             return null;
         else if (this.threshold()){
@@ -0,0 +1,652 @@
+/*
+ * Copyright (C) 1998, 2009  John Pritchard and the Alto Project Group.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package alto.io.u.hasharray;
+
+import alto.io.u.Array;
+import alto.io.u.Hasharray;
+
+
+/**
+ * <p> Open addressing index for object keys. </p>
+ *
+ * <p> The collision table is a power of two length array of
+ * primitive slots, probed linearly.  A slot holds one plus the
+ * "aryix" of its key, or zero for empty.  Removal shifts following
+ * slots backwards, so the table has no deleted markers.  The "keys"
+ * array (and its parallel array of key hash codes) grows
+ * geometrically. </p>
+ *
+ * <p> Input order is the order of the keys array, as for the chained
+ * {@link IndexObject}.  Multiple key instances share a probe
+ * sequence, and lookup returns the least index among them. </p>
+ *
+ * <h3>Entry cursor</h3>
+ *
+ * <p> This index does not allocate table entries.  The {@link Entry}
+ * returned from the put, append, insert, replace and remove methods
+ * is one instance per index, valid until the next call into this
+ * index.  The {@link alto.io.u.Hasharray} subclasses read its "aryix"
+ * immediately, and no other use is supported. </p>
+ *
+ * <h3>Selection</h3>
+ *
+ * <p> Employ this index with {@link
+ * alto.io.u.Hasharray.Types.Indeces#ObjectOpen}, for example
+ * <pre>
+ *   new Objmap(Hasharray.Types.Indeces.ObjectOpen,initial,load)
+ * </pre>
+ * </p>
+ *
+ * @see IndexObject
+ */
+public class IndexObjectOpen
+    extends IndexObject
+{
+
+    private final static int Spread(java.lang.Object key){
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        h *= 0x85ebca6b;
+        h ^= (h >>> 13);
+        return h;
+    }
+    private final static int TableSize(int initial, float load){
+        int size = 8;
+        int min = (int)((float)initial / load) + 1;
+        while (size < min && 0 < size)
+            size <<= 1;
+        if (0 < size)
+            return size;
+        else
+            throw new alto.sys.Error.State(java.lang.String.valueOf(initial));
+    }
+
+
+    /**
+     * <p> Slots table has a power of two length. </p>
+     */
+    protected int[] slots;
+    /**
+     * <p> Spread hash codes in parallel with the "keys" array. </p>
+     */
+    protected int[] hashes;
+    /**
+     * <p> Table length minus one. </p>
+     */
+    protected int mask;
+    /**
+     * <p> Table count at which to double the table. </p>
+     */
+    protected int limit;
+    /**
+     * <p> Number of occupied slots. </p>
+     */
+    protected int occupied;
+    /**
+     * <p> True when a key has been appended or inserted as a
+     * duplicate, so that lookup must scan a whole probe sequence
+     * for the least index. </p>
+     */
+    protected boolean multiple;
+
+    private Entry cursor = new Entry(0L);
+
+
+    public IndexObjectOpen(Hasharray parent, int initial, float load){
+        super(parent,initial,load);
+        /*
+         * Drop the chained table allocated by Index
+         */
+        this.table = null;
+        this.threshold = 0;
+        int size = TableSize(initial,load);
+        this.slots = new int[size];
+        this.mask = (size-1);
+        this.limit = (int)((float)size * load);
+        this.hashes = new int[this.keys.length];
+    }
+
+
+    @Override
+    public void destroy(){
+        super.destroy();
+        this.slots = null;
+        this.hashes = null;
+        this.keys = null;
+    }
+    @Override
+    public void clear(){
+        this.count = 0;
+        this.occupied = 0;
+        this.multiple = false;
+        java.util.Arrays.fill(this.slots,0);
+        java.util.Arrays.fill(this.keys,null);
+    }
+    @Override
+    public Index cloneIndex(){
+        IndexObjectOpen clone = (IndexObjectOpen)super.cloneIndex();
+        clone.slots = this.slots.clone();
+        clone.hashes = this.hashes.clone();
+        clone.cursor = new Entry(0L);
+        return clone;
+    }
+    private final Entry cursor(int aryix){
+        Entry cursor = this.cursor;
+        cursor.aryix = aryix;
+        return cursor;
+    }
+    /**
+     * @return Slot position of the least index for key, or negative
+     * one for not found
+     */
+    private final int find(java.lang.Object key, int hash, int from){
+        int[] slots = this.slots;
+        int[] hashes = this.hashes;
+        java.lang.Object[] keys = this.keys;
+        int mask = this.mask;
+        int re = -1, reix = java.lang.Integer.MAX_VALUE;
+        for (int pos = (hash & mask), slot, ix; ; pos = ((pos+1) & mask)){
+            slot = slots[pos];
+            if (0 == slot)
+                return re;
+            else {
+                ix = (slot-1);
+                if (hash == hashes[ix] && from <= ix && ix < reix){
+                    java.lang.Object test = keys[ix];
+                    if (KO_NIL != test && test.equals(key)){
+                        if (this.multiple){
+                            re = pos;
+                            reix = ix;
+                        }
+                        else
+                            return pos;
+                    }
+                }
+            }
+        }
+    }
+    /**
+     * @return Slot position holding index, or negative one for not
+     * found
+     */
+    private final int position(int idx){
+        if (-1 < idx && idx < this.keys.length && KO_NIL != this.keys[idx]){
+            int[] slots = this.slots;
+            int mask = this.mask;
+            int target = (idx+1);
+            for (int pos = (this.hashes[idx] & mask), slot; ; pos = ((pos+1) & mask)){
+                slot = slots[pos];
+                if (0 == slot)
+                    return -1;
+                else if (target == slot)
+                    return pos;
+            }
+        }
+        return -1;
+    }
+    /**
+     * Store index into the first empty slot of its probe sequence.
+     */
+    private final void link(int idx){
+        if (this.occupied >= this.limit)
+            this.resize();
+
+        int[] slots = this.slots;
+        int mask = this.mask;
+        int pos = (this.hashes[idx] & mask);
+        while (0 != slots[pos])
+            pos = ((pos+1) & mask);
+        slots[pos] = (idx+1);
+        this.occupied += 1;
+    }
+    /**
+     * Backward shift deletion of the slot at position.
+     */
+    private final void unlink(int pos){
+        int[] slots = this.slots;
+        int[] hashes = this.hashes;
+        int mask = this.mask;
+        int hole = pos, next = pos, slot, home;
+        while (true){
+            next = ((next+1) & mask);
+            slot = slots[next];
+            if (0 == slot)
+                break;
+            else {
+                home = (hashes[slot-1] & mask);
+                /*
+                 * Move slot into the hole unless its home is
+                 * cyclically within (hole, next]
+                 */
+                if (hole <= next){
+                    if (home <= hole || next < home){
+                        slots[hole] = slot;
+                        hole = next;
+                    }
+                }
+                else if (home <= hole && next < home){
+                    slots[hole] = slot;
+                    hole = next;
+                }
+            }
+        }
+        slots[hole] = 0;
+        this.occupied -= 1;
+    }
+    /**
+     * Double the table.
+     */
+    private final void resize(){
+        int[] os = this.slots;
+        int olen = os.length;
+        int nlen = (olen << 1);
+        if (0 < nlen){
+            int[] ns = new int[nlen];
+            int[] hashes = this.hashes;
+            int mask = (nlen-1);
+            for (int oc = 0, slot, pos; oc < olen; oc++){
+                slot = os[oc];
+                if (0 != slot){
+                    pos = (hashes[slot-1] & mask);
+                    while (0 != ns[pos])
+                        pos = ((pos+1) & mask);
+                    ns[pos] = slot;
+                }
+            }
+            this.slots = ns;
+            this.mask = mask;
+            this.limit = (int)((float)nlen * this.load);
+        }
+        else
+            throw new alto.sys.Error.State(java.lang.String.valueOf(olen));
+    }
+    /**
+     * Add delta to every slot holding an index at or above 'from'.
+     */
+    private final void renumber(int from, int delta){
+        int[] slots = this.slots;
+        int test = (from+1);
+        for (int cc = 0, len = slots.length; cc < len; cc++){
+            if (test <= slots[cc])
+                slots[cc] += delta;
+        }
+    }
+    /**
+     * Geometric growth of keys and hashes to include index.
+     */
+    private final void capacity(int idx){
+        int len = this.keys.length;
+        if (idx >= len){
+            int nlen = java.lang.Math.max((len << 1),(idx+1));
+            java.lang.Object[] keys = new java.lang.Object[nlen];
+            java.lang.System.arraycopy(this.keys,0,keys,0,len);
+            this.keys = keys;
+            this.hashes = Array.grow(this.hashes,nlen);
+        }
+    }
+    private final Entry add(int idx, java.lang.Object key, int hash){
+        if (0 > idx)
+            idx = this.count;
+        this.capacity(idx);
+        this.keys[idx] = key;
+        this.hashes[idx] = hash;
+        this.link(idx);
+        this.count += 1;
+        return this.cursor(idx);
+    }
+
+    @Override
+    public Entry lookupEntry(java.lang.Object key){
+        int ix = this.lookup(key);
+        if (-1 < ix){
+            Entry re = new Entry(Spread(key) & HASH_MASK);
+            re.aryix = ix;
+            return re;
+        }
+        else
+            return null;
+    }
+    @Override
+    public int lookup(java.lang.Object key){
+        if (KO_NIL == key)
+            return -1;
+        else {
+            int pos = this.find(key,Spread(key),0);
+            if (-1 < pos)
+                return (this.slots[pos]-1);
+            else
+                return -1;
+        }
+    }
+    @Override
+    public int lookup(java.lang.Object key, int from){
+        if (KO_NIL == key)
+            return -1;
+        else {
+            int pos = this.find(key,Spread(key),from);
+            if (-1 < pos)
+                return (this.slots[pos]-1);
+            else
+                return -1;
+        }
+    }
+    @Override
+    public int[] lookupList(java.lang.Object key){
+        return this.lookupList(key,0);
+    }
+    @Override
+    public int[] lookupList(java.lang.Object key, int from){
+        if (KO_NIL == key)
+            return null;
+        else {
+            int hash = Spread(key);
+            int[] slots = this.slots;
+            int[] hashes = this.hashes;
+            java.lang.Object[] keys = this.keys;
+            int mask = this.mask;
+            int[] list = null;
+            for (int pos = (hash & mask), slot, ix; ; pos = ((pos+1) & mask)){
+                slot = slots[pos];
+                if (0 == slot)
+                    break;
+                else {
+                    ix = (slot-1);
+                    if (hash == hashes[ix] && from <= ix){
+                        java.lang.Object test = keys[ix];
+                        if (KO_NIL != test && test.equals(key))
+                            list = Array.add(list,ix);
+                    }
+                }
+            }
+            if (null != list && 1 < list.length)
+                java.util.Arrays.sort(list);
+            return list;
+        }
+    }
+    @Override
+    public Entry removeByKey(java.lang.Object key){
+        if (KO_NIL == key)
+            return null;
+        else {
+            int pos = this.find(key,Spread(key),0);
+            if (-1 < pos){
+                int idx = (this.slots[pos]-1);
+                this.unlink(pos);
+                this.renumber(idx,-1);
+                this.count -= 1;
+                Array.shift(this.keys,idx);
+                Array.shift(this.hashes,idx);
+                return this.cursor(idx);
+            }
+            else
+                return null;
+        }
+    }
+    @Override
+    public Entry removeByIndex(int idx){
+        int pos = this.position(idx);
+        if (-1 < pos)
+            this.unlink(pos);
+        /*
+         * Decrement pointers for remove
+         */
+        this.renumber((idx+1),-1);
+
+        if (-1 < pos){
+            this.count -= 1;
+            Array.shift(this.keys,idx);
+            Array.shift(this.hashes,idx);
+            return this.cursor(idx);
+        }
+        else
+            return null;
+    }
+    @Override
+    public Entry put(java.lang.Object key){
+        if (KO_NIL == key)
+            return null;
+        else {
+            int hash = Spread(key);
+            int pos = this.find(key,hash,0);
+            if (-1 < pos){
+                int idx = (this.slots[pos]-1);
+                this.keys[idx] = key;
+                return this.cursor(idx);
+            }
+            else
+                return this.add(-1,key,hash);
+        }
+    }
+    @Override
+    public Entry put(int idx, java.lang.Object key){
+        if (KO_NIL == key || 0 > idx)
+            return null;
+        else {
+            int hash = Spread(key);
+            int pos = this.find(key,hash,0);
+            if (-1 < pos){
+                int aryix = (this.slots[pos]-1);
+                this.keys[aryix] = key;
+                return this.cursor(aryix);
+            }
+            else
+                return this.add(idx,key,hash);
+        }
+    }
+    @Override
+    public Entry insert(int idx, java.lang.Object key){
+        if (KO_NIL == key || 0 > idx)
+            return null;
+        else {
+            int hash = Spread(key);
+            if (-1 < this.find(key,hash,0))
+                this.multiple = true;
+
+            int count = this.count;
+            if (idx < count){
+                /*
+                 * Increment pointers for insert
+                 */
+                this.renumber(idx,1);
+
+                this.capacity(count);
+                java.lang.System.arraycopy(this.keys,idx,this.keys,(idx+1),(count-idx));
+                java.lang.System.arraycopy(this.hashes,idx,this.hashes,(idx+1),(count-idx));
+            }
+            return this.add(idx,key,hash);
+        }
+    }
+    @Override
+    public Entry replace(int idx, java.lang.Object nkey){
+        int pos = this.position(idx);
+        if (-1 < pos)
+            this.unlink(pos);
+
+        if (KO_NIL == nkey){
+            this.keys[idx] = nkey;
+            return this.cursor(idx);
+        }
+        else {
+            int hash = Spread(nkey);
+            if (-1 < this.find(nkey,hash,0))
+                this.multiple = true;
+            /*
+             * Replace does not change the count
+             */
+            int count = this.count;
+            Entry re = this.add(idx,nkey,hash);
+            this.count = count;
+            return re;
+        }
+    }
+    @Override
+    public Entry append(java.lang.Object key){
+        return this.append(-1,key);
+    }
+    @Override
+    public Entry append(int idx, java.lang.Object key){
+        if (KO_NIL == key)
+            return null;
+        else {
+            int hash = Spread(key);
+            if (-1 < this.find(key,hash,0))
+                this.multiple = true;
+            return this.add(idx,key,hash);
+        }
+    }
+
+
+    protected static void usage( java.io.PrintStream out){
+        out.println();
+        out.println("Usage");
+        out.println("    IndexObjectOpen [N]");
+        out.println();
+        out.println("Description");
+        out.println("    Compare put, get and remove timings for the chained");
+        out.println("    and open addressing object key indeces for N keys,");
+        out.println("    or by default for 1k, 10k and 100k keys.  The chained");
+        out.println("    index put is quadratic, so a run of 1M keys (N=1000000)");
+        out.println("    takes a while.");
+        out.println("    Then time put and get on an Objmap built over each");
+        out.println("    index, including the growth of its value list.");
+        out.println();
+    }
+    private final static long Nanos(long start){
+        return (java.lang.System.nanoTime()-start);
+    }
+    private final static void Report(java.io.PrintStream out, String name, String op, int n, long nanos){
+        double ns = ((double)nanos / (double)n);
+        out.println(name+"\t"+op+"\t"+n+"\t"+((long)ns)+" ns/op");
+    }
+    /**
+     * @return Checksum to defeat dead code elimination
+     */
+    private final static long Run(java.io.PrintStream out, java.lang.Class jclass, java.lang.Object[] testvector, int N, int R){
+        Hasharray parent = new alto.io.u.Objmap();
+        Index index = (jclass == IndexObjectOpen.class)?(new IndexObjectOpen(parent,11,0.75f)):(new IndexObject(parent,11,0.75f));
+        IndexObject table = (IndexObject)index;
+        String name = jclass.getName();
+        name = name.substring(name.lastIndexOf('.')+1);
+        long check = 0L, start;
+
+        start = java.lang.System.nanoTime();
+        for (int cc = 0; cc < N; cc++)
+            check += table.put(testvector[cc]).aryix;
+        Report(out,name,"put",N,Nanos(start));
+
+        start = java.lang.System.nanoTime();
+        for (int cc = 0; cc < N; cc++){
+            int ix = table.lookup(testvector[cc]);
+            if (ix != cc)
+                throw new alto.sys.Error.State("lookup-test miss "+cc+" != "+ix);
+            check += ix;
+        }
+        Report(out,name,"get",N,Nanos(start));
+        /*
+         * Remove renumbers pointers over the table in both
+         * implementations, so remove from the tail for R keys
+         */
+        start = java.lang.System.nanoTime();
+        for (int cc = (N-1), rc = 0; rc < R; cc--, rc++){
+            Entry ent = table.removeByKey(testvector[cc]);
+            if (null == ent || ent.aryix != cc)
+                throw new alto.sys.Error.State("remove-test miss "+cc);
+            check += ent.aryix;
+        }
+        Report(out,name,"remove",R,Nanos(start));
+
+        if ((N-R) != table.size())
+            throw new alto.sys.Error.State("size-test failed for "+table.size()+" != "+(N-R));
+        return check;
+    }
+    /**
+     * @return Checksum to defeat dead code elimination
+     */
+    private final static long RunMap(java.io.PrintStream out, java.lang.Class jclass, java.lang.Object[] testvector, int N){
+        alto.io.u.Objmap map = new alto.io.u.Objmap(jclass,11,0.75f);
+        String name = jclass.getName();
+        name = "Objmap/"+name.substring(name.lastIndexOf('.')+1);
+        long check = 0L, start;
+
+        start = java.lang.System.nanoTime();
+        for (int cc = 0; cc < N; cc++)
+            map.put(testvector[cc],testvector[cc]);
+        Report(out,name,"put",N,Nanos(start));
+
+        start = java.lang.System.nanoTime();
+        for (int cc = 0; cc < N; cc++){
+            if (testvector[cc] != map.get(testvector[cc]))
+                throw new alto.sys.Error.State("map-get-test miss "+cc);
+            check += cc;
+        }
+        Report(out,name,"get",N,Nanos(start));
+
+        if (N != map.size())
+            throw new alto.sys.Error.State("map-size-test failed for "+map.size()+" != "+N);
+        return check;
+    }
+    /**
+     * <p> Timed put, get and remove comparison of {@link IndexObject}
+     * and {@link IndexObjectOpen}, and of an {@link alto.io.u.Objmap}
+     * built over each. </p>
+     */
+    public static void main(java.lang.String[] argv){
+        int[] sizes;
+        if (null == argv || 0 == argv.length)
+            sizes = new int[]{1000,10000,100000};
+        else {
+            try {
+                sizes = new int[]{java.lang.Integer.parseInt(argv[0])};
+            }
+            catch (java.lang.NumberFormatException input){
+                usage(System.err);
+                java.lang.System.exit(1);
+                return;
+            }
+        }
+        try {
+            java.io.PrintStream out = java.lang.System.out;
+            long check = 0L;
+            for (int sc = 0; sc < sizes.length; sc++){
+                int N = sizes[sc];
+                int R = java.lang.Math.min(N,1000);
+                java.lang.Object[] testvector = new java.lang.Object[N];
+                for (int cc = 0; cc < N; cc++)
+                    testvector[cc] = ("key-"+cc);
+                /*
+                 * Warm both before reporting
+                 */
+                check += Run(new java.io.PrintStream(new java.io.ByteArrayOutputStream()),IndexObject.class,testvector,java.lang.Math.min(N,10000),R/10);
+                check += Run(new java.io.PrintStream(new java.io.ByteArrayOutputStream()),IndexObjectOpen.class,testvector,java.lang.Math.min(N,10000),R/10);
+
+                check += Run(out,IndexObject.class,testvector,N,R);
+                check += Run(out,IndexObjectOpen.class,testvector,N,R);
+
+                check += RunMap(new java.io.PrintStream(new java.io.ByteArrayOutputStream()),IndexObjectOpen.class,testvector,java.lang.Math.min(N,10000));
+                check += RunMap(out,IndexObject.class,testvector,N);
+                check += RunMap(out,IndexObjectOpen.class,testvector,N);
+            }
+            out.println("check "+check);
+        }
+        catch (java.lang.Throwable thro){
+            thro.printStackTrace();
+            java.lang.System.exit(1);
+        }
+    }
+}
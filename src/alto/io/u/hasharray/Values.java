@@ -48,6 +48,14 @@ public abstract class Values
     public final static boolean[] NilArrayBoolean = null;
     public final static char[] NilArrayChar = null;
 
+    /**
+     * @return Geometric growth of a list from 'length', by at least
+     * 'grow'
+     */
+    protected final static int Grow(int length, int grow){
+        return java.lang.Math.max((length << 1),(length+grow));
+    }
+
     public final static class Types {
 
         public final static class Abstracts {
@@ -237,7 +245,7 @@ public abstract class Values
                     }
                     else if (idx == count){
                         if (count >= list.length){
-                            list = Array.grow(list,(count+this.grow));
+                            list = Array.grow(list,Grow(count,this.grow));
                             list[idx] = value;
                             this.list = list;
                         }
@@ -250,7 +258,7 @@ public abstract class Values
                 }
                 else if (0 == idx){
                     this.count = 1;
-                    list = Array.grow(list,(idx+this.grow));
+                    list = Array.grow(list,Grow(idx,this.grow));
                     list[idx] = value;
                     this.list = list;
                     return NilObject;
@@ -335,7 +343,7 @@ public abstract class Values
             int count = this.count;
             int length = (null != list)?(list.length):(0);
             if (count >= length){
-                list = Array.grow(list,(length+this.grow));
+                list = Array.grow(list,Grow(length,this.grow));
                 this.list = list;
             }
             list[count] = value;
@@ -357,7 +365,7 @@ public abstract class Values
                     else if (idx == count){
                         int length = list.length;
                         if (count >= length){
-                            list = Array.grow(list,(length+this.grow));
+                            list = Array.grow(list,Grow(length,this.grow));
                             list[idx] = value;
                             this.count += 1;
                             this.list = list;
@@ -380,6 +388,7 @@ public abstract class Values
                     if (idx < count){
                         java.lang.Object old = list[idx];
                         Array.shift(list,idx);
+                        this.count -= 1;
                         return old;
                     }
                 }
@@ -468,7 +477,7 @@ public abstract class Values
                     else if (idx == count){
                         int length = list.length;
                         if (count >= length){
-                            list = Array.grow(list,(length+this.grow));
+                            list = Array.grow(list,Grow(length,this.grow));
                             this.list = list;
                         }
                         this.count += 1;
@@ -506,7 +515,7 @@ public abstract class Values
             int count = this.count;
             int length = (null != list)?(list.length):(0);
             if (count >= length){
-                list = Array.grow(list,(length+this.grow));
+                list = Array.grow(list,Grow(length,this.grow));
                 this.list = list;
             }
             list[count] = value;
@@ -530,7 +539,7 @@ public abstract class Values
                     }
                     else if (idx == count){
                         if (count >= length){
-                            list = Array.grow(list,(length+this.grow));
+                            list = Array.grow(list,Grow(length,this.grow));
                             this.list = list;
                         }
                         list[idx] = value;
@@ -717,7 +726,7 @@ public abstract class Values
                     }
                     else if (idx == count){
                         if (count >= list.length){
-                            list = Array.grow(list,(count+this.grow));
+                            list = Array.grow(list,Grow(count,this.grow));
                             list[idx] = value;
                             this.list = list;
                         }
@@ -730,7 +739,7 @@ public abstract class Values
                 }
                 else if (0 == idx){
                     this.count = 1;
-                    list = Array.grow(list,(idx+this.grow));
+                    list = Array.grow(list,Grow(idx,this.grow));
                     list[idx] = value;
                     this.list = list;
                     return NilLong;
@@ -815,7 +824,7 @@ public abstract class Values
             int count = this.count;
             int length = (null != list)?(list.length):(0);
             if (count >= length){
-                list = Array.grow(list,(length+this.grow));
+                list = Array.grow(list,Grow(length,this.grow));
                 this.list = list;
             }
             list[count] = value;
@@ -837,7 +846,7 @@ public abstract class Values
                     else if (idx == count){
                         int length = list.length;
                         if (count >= length){
-                            list = Array.grow(list,(length+this.grow));
+                            list = Array.grow(list,Grow(length,this.grow));
                             list[idx] = value;
                             this.count += 1;
                             this.list = list;
@@ -860,6 +869,7 @@ public abstract class Values
                     if (idx < count){
                         long old = list[idx];
                         Array.shift(list,idx);
+                        this.count -= 1;
                         return old;
                     }
                 }
@@ -948,7 +958,7 @@ public abstract class Values
                     else if (idx == count){
                         int length = list.length;
                         if (count >= length){
-                            list = Array.grow(list,(length+this.grow));
+                            list = Array.grow(list,Grow(length,this.grow));
                             this.list = list;
                         }
                         this.count += 1;
@@ -986,7 +996,7 @@ public abstract class Values
             int count = this.count;
             int length = (null != list)?(list.length):(0);
             if (count >= length){
-                list = Array.grow(list,(length+this.grow));
+                list = Array.grow(list,Grow(length,this.grow));
                 this.list = list;
             }
             list[count] = value.longValue();
@@ -1010,7 +1020,7 @@ public abstract class Values
                     }
                     else if (idx == count){
                         if (count >= length){
-                            list = Array.grow(list,(length+this.grow));
+                            list = Array.grow(list,Grow(length,this.grow));
                             this.list = list;
                         }
                         list[idx] = value.longValue();
@@ -1197,7 +1207,7 @@ public abstract class Values
                     }
                     else if (idx == count){
                         if (count >= list.length){
-                            list = Array.grow(list,(count+this.grow));
+                            list = Array.grow(list,Grow(count,this.grow));
                             list[idx] = value;
                             this.list = list;
                         }
@@ -1210,7 +1220,7 @@ public abstract class Values
                 }
                 else if (0 == idx){
                     this.count = 1;
-                    list = Array.grow(list,(idx+this.grow));
+                    list = Array.grow(list,Grow(idx,this.grow));
                     list[idx] = value;
                     this.list = list;
                     return NilInt;
@@ -1295,7 +1305,7 @@ public abstract class Values
             int count = this.count;
             int length = (null != list)?(list.length):(0);
             if (count >= length){
-                list = Array.grow(list,(length+this.grow));
+                list = Array.grow(list,Grow(length,this.grow));
                 this.list = list;
             }
             list[count] = value;
@@ -1317,7 +1327,7 @@ public abstract class Values
                     else if (idx == count){
                         int length = list.length;
                         if (count >= length){
-                            list = Array.grow(list,(length+this.grow));
+                            list = Array.grow(list,Grow(length,this.grow));
                             list[idx] = value;
                             this.count += 1;
                             this.list = list;
@@ -1340,6 +1350,7 @@ public abstract class Values
                     if (idx < count){
                         int old = list[idx];
                         Array.shift(list,idx);
+                        this.count -= 1;
                         return old;
                     }
                 }
@@ -1428,7 +1439,7 @@ public abstract class Values
                     else if (idx == count){
                         int length = list.length;
                         if (count >= length){
-                            list = Array.grow(list,(length+this.grow));
+                            list = Array.grow(list,Grow(length,this.grow));
                             this.list = list;
                         }
                         this.count += 1;
@@ -1466,7 +1477,7 @@ public abstract class Values
             int count = this.count;
             int length = (null != list)?(list.length):(0);
             if (count >= length){
-                list = Array.grow(list,(length+this.grow));
+                list = Array.grow(list,Grow(length,this.grow));
                 this.list = list;
             }
             list[count] = value.intValue();
@@ -1490,7 +1501,7 @@ public abstract class Values
                     }
                     else if (idx == count){
                         if (count >= length){
-                            list = Array.grow(list,(length+this.grow));
+                            list = Array.grow(list,Grow(length,this.grow));
                             this.list = list;
                         }
                         list[idx] = value.intValue();
@@ -1677,7 +1688,7 @@ public abstract class Values
                     }
                     else if (idx == count){
                         if (count >= list.length){
-                            list = Array.grow(list,(count+this.grow));
+                            list = Array.grow(list,Grow(count,this.grow));
                             list[idx] = value;
                             this.list = list;
                         }
@@ -1690,7 +1701,7 @@ public abstract class Values
                 }
                 else if (0 == idx){
                     this.count = 1;
-                    list = Array.grow(list,(idx+this.grow));
+                    list = Array.grow(list,Grow(idx,this.grow));
                     list[idx] = value;
                     this.list = list;
                     return NilDouble;
@@ -1775,7 +1786,7 @@ public abstract class Values
             int count = this.count;
             int length = (null != list)?(list.length):(0);
             if (count >= length){
-                list = Array.grow(list,(length+this.grow));
+                list = Array.grow(list,Grow(length,this.grow));
                 this.list = list;
             }
             list[count] = value;
@@ -1797,7 +1808,7 @@ public abstract class Values
                     else if (idx == count){
                         int length = list.length;
                         if (count >= length){
-                            list = Array.grow(list,(length+this.grow));
+                            list = Array.grow(list,Grow(length,this.grow));
                             list[idx] = value;
                             this.count += 1;
                             this.list = list;
@@ -1820,6 +1831,7 @@ public abstract class Values
                     if (idx < count){
                         double old = list[idx];
                         Array.shift(list,idx);
+                        this.count -= 1;
                         return old;
                     }
                 }
@@ -1908,7 +1920,7 @@ public abstract class Values
                     else if (idx == count){
                         int length = list.length;
                         if (count >= length){
-                            list = Array.grow(list,(length+this.grow));
+                            list = Array.grow(list,Grow(length,this.grow));
                             this.list = list;
                         }
                         this.count += 1;
@@ -1946,7 +1958,7 @@ public abstract class Values
             int count = this.count;
             int length = (null != list)?(list.length):(0);
             if (count >= length){
-                list = Array.grow(list,(length+this.grow));
+                list = Array.grow(list,Grow(length,this.grow));
                 this.list = list;
             }
             list[count] = value.doubleValue();
@@ -1970,7 +1982,7 @@ public abstract class Values
                     }
                     else if (idx == count){
                         if (count >= length){
-                            list = Array.grow(list,(length+this.grow));
+                            list = Array.grow(list,Grow(length,this.grow));
                             this.list = list;
                         }
                         list[idx] = value.doubleValue();
@@ -2157,7 +2169,7 @@ public abstract class Values
                     }
                     else if (idx == count){
                         if (count >= list.length){
-                            list = Array.grow(list,(count+this.grow));
+                            list = Array.grow(list,Grow(count,this.grow));
                             list[idx] = value;
                             this.list = list;
                         }
@@ -2170,7 +2182,7 @@ public abstract class Values
                 }
                 else if (0 == idx){
                     this.count = 1;
-                    list = Array.grow(list,(idx+this.grow));
+                    list = Array.grow(list,Grow(idx,this.grow));
                     list[idx] = value;
                     this.list = list;
                     return NilFloat;
@@ -2255,7 +2267,7 @@ public abstract class Values
             int count = this.count;
             int length = (null != list)?(list.length):(0);
             if (count >= length){
-                list = Array.grow(list,(length+this.grow));
+                list = Array.grow(list,Grow(length,this.grow));
                 this.list = list;
             }
             list[count] = value;
@@ -2277,7 +2289,7 @@ public abstract class Values
                     else if (idx == count){
                         int length = list.length;
                         if (count >= length){
-                            list = Array.grow(list,(length+this.grow));
+                            list = Array.grow(list,Grow(length,this.grow));
                             list[idx] = value;
                             this.count += 1;
                             this.list = list;
@@ -2300,6 +2312,7 @@ public abstract class Values
                     if (idx < count){
                         float old = list[idx];
                         Array.shift(list,idx);
+                        this.count -= 1;
                         return old;
                     }
                 }
@@ -2388,7 +2401,7 @@ public abstract class Values
                     else if (idx == count){
                         int length = list.length;
                         if (count >= length){
-                            list = Array.grow(list,(length+this.grow));
+                            list = Array.grow(list,Grow(length,this.grow));
                             this.list = list;
                         }
                         this.count += 1;
@@ -2426,7 +2439,7 @@ public abstract class Values
             int count = this.count;
             int length = (null != list)?(list.length):(0);
             if (count >= length){
-                list = Array.grow(list,(length+this.grow));
+                list = Array.grow(list,Grow(length,this.grow));
                 this.list = list;
             }
             list[count] = value.floatValue();
@@ -2450,7 +2463,7 @@ public abstract class Values
                     }
                     else if (idx == count){
                         if (count >= length){
-                            list = Array.grow(list,(length+this.grow));
+                            list = Array.grow(list,Grow(length,this.grow));
                             this.list = list;
                         }
                         list[idx] = value.floatValue();
@@ -2637,7 +2650,7 @@ public abstract class Values
                     }
                     else if (idx == count){
                         if (count >= list.length){
-                            list = Array.grow(list,(count+this.grow));
+                            list = Array.grow(list,Grow(count,this.grow));
                             list[idx] = value;
                             this.list = list;
                         }
@@ -2650,7 +2663,7 @@ public abstract class Values
                 }
                 else if (0 == idx){
                     this.count = 1;
-                    list = Array.grow(list,(idx+this.grow));
+                    list = Array.grow(list,Grow(idx,this.grow));
                     list[idx] = value;
                     this.list = list;
                     return NilByte;
@@ -2735,7 +2748,7 @@ public abstract class Values
             int count = this.count;
             int length = (null != list)?(list.length):(0);
             if (count >= length){
-                list = Array.grow(list,(length+this.grow));
+                list = Array.grow(list,Grow(length,this.grow));
                 this.list = list;
             }
             list[count] = value;
@@ -2757,7 +2770,7 @@ public abstract class Values
                     else if (idx == count){
                         int length = list.length;
                         if (count >= length){
-                            list = Array.grow(list,(length+this.grow));
+                            list = Array.grow(list,Grow(length,this.grow));
                             list[idx] = value;
                             this.count += 1;
                             this.list = list;
@@ -2780,6 +2793,7 @@ public abstract class Values
                     if (idx < count){
                         byte old = list[idx];
                         Array.shift(list,idx);
+                        this.count -= 1;
                         return old;
                     }
                 }
@@ -2868,7 +2882,7 @@ public abstract class Values
                     else if (idx == count){
                         int length = list.length;
                         if (count >= length){
-                            list = Array.grow(list,(length+this.grow));
+                            list = Array.grow(list,Grow(length,this.grow));
                             this.list = list;
                         }
                         this.count += 1;
@@ -2906,7 +2920,7 @@ public abstract class Values
             int count = this.count;
             int length = (null != list)?(list.length):(0);
             if (count >= length){
-                list = Array.grow(list,(length+this.grow));
+                list = Array.grow(list,Grow(length,this.grow));
                 this.list = list;
             }
             list[count] = value.byteValue();
@@ -2930,7 +2944,7 @@ public abstract class Values
                     }
                     else if (idx == count){
                         if (count >= length){
-                            list = Array.grow(list,(length+this.grow));
+                            list = Array.grow(list,Grow(length,this.grow));
                             this.list = list;
                         }
                         list[idx] = value.byteValue();
@@ -3117,7 +3131,7 @@ public abstract class Values
                     }
                     else if (idx == count){
                         if (count >= list.length){
-                            list = Array.grow(list,(count+this.grow));
+                            list = Array.grow(list,Grow(count,this.grow));
                             list[idx] = value;
                             this.list = list;
                         }
@@ -3130,7 +3144,7 @@ public abstract class Values
                 }
                 else if (0 == idx){
                     this.count = 1;
-                    list = Array.grow(list,(idx+this.grow));
+                    list = Array.grow(list,Grow(idx,this.grow));
                     list[idx] = value;
                     this.list = list;
                     return NilShort;
@@ -3215,7 +3229,7 @@ public abstract class Values
             int count = this.count;
             int length = (null != list)?(list.length):(0);
             if (count >= length){
-                list = Array.grow(list,(length+this.grow));
+                list = Array.grow(list,Grow(length,this.grow));
                 this.list = list;
             }
             list[count] = value;
@@ -3237,7 +3251,7 @@ public abstract class Values
                     else if (idx == count){
                         int length = list.length;
                         if (count >= length){
-                            list = Array.grow(list,(length+this.grow));
+                            list = Array.grow(list,Grow(length,this.grow));
                             list[idx] = value;
                             this.count += 1;
                             this.list = list;
@@ -3260,6 +3274,7 @@ public abstract class Values
                     if (idx < count){
                         short old = list[idx];
                         Array.shift(list,idx);
+                        this.count -= 1;
                         return old;
                     }
                 }
@@ -3348,7 +3363,7 @@ public abstract class Values
                     else if (idx == count){
                         int length = list.length;
                         if (count >= length){
-                            list = Array.grow(list,(length+this.grow));
+                            list = Array.grow(list,Grow(length,this.grow));
                             this.list = list;
                         }
                         this.count += 1;
@@ -3386,7 +3401,7 @@ public abstract class Values
             int count = this.count;
             int length = (null != list)?(list.length):(0);
             if (count >= length){
-                list = Array.grow(list,(length+this.grow));
+                list = Array.grow(list,Grow(length,this.grow));
                 this.list = list;
             }
             list[count] = value.shortValue();
@@ -3410,7 +3425,7 @@ public abstract class Values
                     }
                     else if (idx == count){
                         if (count >= length){
-                            list = Array.grow(list,(length+this.grow));
+                            list = Array.grow(list,Grow(length,this.grow));
                             this.list = list;
                         }
                         list[idx] = value.shortValue();
@@ -3597,7 +3612,7 @@ public abstract class Values
                     }
                     else if (idx == count){
                         if (count >= list.length){
-                            list = Array.grow(list,(count+this.grow));
+                            list = Array.grow(list,Grow(count,this.grow));
                             list[idx] = value;
                             this.list = list;
                         }
@@ -3610,7 +3625,7 @@ public abstract class Values
                 }
                 else if (0 == idx){
                     this.count = 1;
-                    list = Array.grow(list,(idx+this.grow));
+                    list = Array.grow(list,Grow(idx,this.grow));
                     list[idx] = value;
                     this.list = list;
                     return NilBoolean;
@@ -3695,7 +3710,7 @@ public abstract class Values
             int count = this.count;
             int length = (null != list)?(list.length):(0);
             if (count >= length){
-                list = Array.grow(list,(length+this.grow));
+                list = Array.grow(list,Grow(length,this.grow));
                 this.list = list;
             }
             list[count] = value;
@@ -3717,7 +3732,7 @@ public abstract class Values
                     else if (idx == count){
                         int length = list.length;
                         if (count >= length){
-                            list = Array.grow(list,(length+this.grow));
+                            list = Array.grow(list,Grow(length,this.grow));
                             list[idx] = value;
                             this.count += 1;
                             this.list = list;
@@ -3740,6 +3755,7 @@ public abstract class Values
                     if (idx < count){
                         boolean old = list[idx];
                         Array.shift(list,idx);
+                        this.count -= 1;
                         return old;
                     }
                 }
@@ -3828,7 +3844,7 @@ public abstract class Values
                     else if (idx == count){
                         int length = list.length;
                         if (count >= length){
-                            list = Array.grow(list,(length+this.grow));
+                            list = Array.grow(list,Grow(length,this.grow));
                             this.list = list;
                         }
                         this.count += 1;
@@ -3866,7 +3882,7 @@ public abstract class Values
             int count = this.count;
             int length = (null != list)?(list.length):(0);
             if (count >= length){
-                list = Array.grow(list,(length+this.grow));
+                list = Array.grow(list,Grow(length,this.grow));
                 this.list = list;
             }
             list[count] = value.booleanValue();
@@ -3890,7 +3906,7 @@ public abstract class Values
                     }
                     else if (idx == count){
                         if (count >= length){
-                            list = Array.grow(list,(length+this.grow));
+                            list = Array.grow(list,Grow(length,this.grow));
                             this.list = list;
                         }
                         list[idx] = value.booleanValue();
@@ -4077,7 +4093,7 @@ public abstract class Values
                     }
                     else if (idx == count){
                         if (count >= list.length){
-                            list = Array.grow(list,(count+this.grow));
+                            list = Array.grow(list,Grow(count,this.grow));
                             list[idx] = value;
                             this.list = list;
                         }
@@ -4090,7 +4106,7 @@ public abstract class Values
                 }
                 else if (0 == idx){
                     this.count = 1;
-                    list = Array.grow(list,(idx+this.grow));
+                    list = Array.grow(list,Grow(idx,this.grow));
                     list[idx] = value;
                     this.list = list;
                     return NilChar;
@@ -4175,7 +4191,7 @@ public abstract class Values
             int count = this.count;
             int length = (null != list)?(list.length):(0);
             if (count >= length){
-                list = Array.grow(list,(length+this.grow));
+                list = Array.grow(list,Grow(length,this.grow));
                 this.list = list;
             }
             list[count] = value;
@@ -4197,7 +4213,7 @@ public abstract class Values
                     else if (idx == count){
                         int length = list.length;
                         if (count >= length){
-                            list = Array.grow(list,(length+this.grow));
+                            list = Array.grow(list,Grow(length,this.grow));
                             list[idx] = value;
                             this.count += 1;
                             this.list = list;
@@ -4220,6 +4236,7 @@ public abstract class Values
                     if (idx < count){
                         char old = list[idx];
                         Array.shift(list,idx);
+                        this.count -= 1;
                         return old;
                     }
                 }
@@ -4306,7 +4323,7 @@ public abstract class Values
                     else if (idx == count){
                         int length = list.length;
                         if (count >= length){
-                            list = Array.grow(list,(length+this.grow));
+                            list = Array.grow(list,Grow(length,this.grow));
                             this.list = list;
                         }
                         this.count += 1;
@@ -4344,7 +4361,7 @@ public abstract class Values
             int count = this.count;
             int length = (null != list)?(list.length):(0);
             if (count >= length){
-                list = Array.grow(list,(length+this.grow));
+                list = Array.grow(list,Grow(length,this.grow));
                 this.list = list;
             }
             this.count += 1;
@@ -4366,7 +4383,7 @@ public abstract class Values
                     }
                     else if (idx == count){
                         if (count >= length){
-                            list = Array.grow(list,(length+this.grow));
+                            list = Array.grow(list,Grow(length,this.grow));
                             this.list = list;
                         }
                         this.count += 1;
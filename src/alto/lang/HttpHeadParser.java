@@ -0,0 +1,650 @@
+/*
+ * Copyright (C) 1998, 2009  John Pritchard and the Alto Project Group.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package alto.lang;
+
+/**
+ * <p> Incremental HTTP/1.x message head parser over raw bytes.  The
+ * head is scanned in bulk, and each header is recorded as name and
+ * value offsets into the head buffer.  Strings are constructed only
+ * on request, and well known header names are returned as the
+ * constants of {@link Header}, without allocation. </p>
+ * 
+ * <h3>Usage</h3>
+ * 
+ * <p> An implementation of {@link
+ * HttpMessage#readMessageHead(alto.io.Input)} calls {@link
+ * #read(alto.io.Input,Headers)} to add the headers of the message
+ * head from the input, and receive its headline.  A buffer input
+ * ({@link alto.lang.buffer.InputStream}) is read in bulk, and then
+ * reset to the first byte following the head.  Otherwise the input
+ * is read one byte at a time.  </p>
+ * 
+ * <p> Alternatively, a caller holding the bytes calls {@link
+ * #update(byte[],int,int)} until {@link #isComplete()}. </p>
+ * 
+ * <h3>Not MT Safe</h3>
+ * 
+ * <p> One instance is reused by one thread for any number of heads,
+ * see {@link #reset()}. </p>
+ * 
+ * @see Header
+ */
+public final class HttpHeadParser
+    extends java.lang.Object
+{
+    /**
+     * Greatest head length
+     */
+    public final static int MaxHead = 0x10000;
+
+    private final static int COPY = 0x1000;
+
+    /**
+     * Interned header names
+     */
+    private final static class Names
+        extends java.lang.Object
+    {
+        final static java.lang.String[] List = {
+            Header.Http.Date,
+            Header.Http.Location,
+            Header.Http.Host,
+            Header.Http.UserAgent,
+            Header.Http.Server,
+            Header.Http.Method,
+            Header.Http.Connection,
+            Header.Http.Authorization,
+            Header.Http.WWWAuthenticate,
+            Header.Http.ContentType,
+            Header.Http.ContentLength,
+            Header.Http.ContentEncoding,
+            Header.Http.ContentLocation,
+            Header.Http.ContentRange,
+            Header.Http.ContentMD5,
+            Header.Http.ETag,
+            Header.Http.LastModified,
+            Header.Http.IfModifiedSince,
+            Header.Http.IfUnmodifiedSince,
+            Header.Http.IfNoneMatch,
+            Header.Http.Expires,
+            Header.Http.Destination,
+            Header.Http.VersionTag,
+            Header.Http.XPrincipal,
+            Header.Http.Value.Method.Name,
+            Header.SAuth.Version,
+            Header.SAuth.UID,
+            Header.SAuth.Nonce,
+            Header.SAuth.Signature,
+            Header.SDFS.MID,
+            Header.SDFS.TTL,
+            Header.SDFS.Affinity,
+            Header.SDFS.Method,
+            Header.SDFS.MSig,
+            Header.SDFS.Notify,
+            "Accept",
+            "Accept-Charset",
+            "Accept-Encoding",
+            "Accept-Language",
+            "Cache-Control",
+            "Cookie",
+            "Expect",
+            "If-Match",
+            "Keep-Alive",
+            "Pragma",
+            "Range",
+            "Referer",
+            "Transfer-Encoding",
+            "Upgrade"
+        };
+        final static int Size = 0x80;
+        final static int Mask = (Size-1);
+
+        final static java.lang.String[] Table = new java.lang.String[Size];
+        static {
+            for (int cc = 0, count = List.length; cc < count; cc++){
+                java.lang.String name = List[cc];
+                int h = Hash(name);
+                for (int ix = (h & Mask); ; ix = ((ix+1) & Mask)){
+                    java.lang.String test = Table[ix];
+                    if (null == test){
+                        Table[ix] = name;
+                        break;
+                    }
+                    else if (test.equalsIgnoreCase(name))
+                        break;
+                }
+            }
+        }
+        final static int Lower(int ch){
+            if ('A' <= ch && 'Z' >= ch)
+                return (ch + ('a'-'A'));
+            else
+                return ch;
+        }
+        final static int Hash(java.lang.String name){
+            int h = 0;
+            for (int cc = 0, count = name.length(); cc < count; cc++)
+                h = (31*h)+Lower(name.charAt(cc));
+            return (h ^ (h>>>7));
+        }
+        final static int Hash(byte[] b, int ofs, int end){
+            int h = 0;
+            for (int cc = ofs; cc < end; cc++)
+                h = (31*h)+Lower(b[cc]);
+            return (h ^ (h>>>7));
+        }
+        final static boolean Equals(java.lang.String name, byte[] b, int ofs, int end){
+            int count = name.length();
+            if (count != (end-ofs))
+                return false;
+            else {
+                for (int cc = 0; cc < count; cc++){
+                    if (Lower(name.charAt(cc)) != Lower(b[ofs+cc]))
+                        return false;
+                }
+                return true;
+            }
+        }
+        /**
+         * @return Interned name or null
+         */
+        final static java.lang.String Lookup(byte[] b, int ofs, int end){
+            int h = Hash(b,ofs,end);
+            for (int ix = (h & Mask); ; ix = ((ix+1) & Mask)){
+                java.lang.String test = Table[ix];
+                if (null == test)
+                    return null;
+                else if (Equals(test,b,ofs,end))
+                    return test;
+            }
+        }
+    }
+
+
+    private byte[] buf = new byte[COPY];
+
+    private final byte[] iob = new byte[COPY];
+
+    /**
+     * Head length, and scan position
+     */
+    private int length, scan;
+
+    /**
+     * Start of the current line
+     */
+    private int line;
+
+    private int headlineEnd = -1;
+
+    /**
+     * Per header: name start, name end, value start, value end.
+     */
+    private int[] index = new int[0x40];
+
+    private int count;
+
+    private boolean complete;
+
+
+    public HttpHeadParser(){
+        super();
+    }
+
+
+    /**
+     * Prepare to parse another head.
+     */
+    public void reset(){
+        this.length = 0;
+        this.scan = 0;
+        this.line = 0;
+        this.headlineEnd = -1;
+        this.count = 0;
+        this.complete = false;
+    }
+    /**
+     * Scan bytes for the message head.
+     * 
+     * @return Number of bytes consumed from the argument.  When the
+     * head is complete, the bytes following the head are not
+     * consumed.
+     * 
+     * @exception java.io.IOException For a head exceeding {@link
+     * #MaxHead}
+     */
+    public int update(byte[] b, int ofs, int len)
+        throws java.io.IOException
+    {
+        if (this.complete || 1 > len)
+            return 0;
+        else {
+            /*
+             * Copy in bulk to the end of the current head
+             */
+            int length = this.length;
+            int end = (length+len);
+            if (end > MaxHead)
+                end = MaxHead;
+            byte[] buf = this.buf;
+            if (end > buf.length){
+                byte[] copier = new byte[java.lang.Math.min(MaxHead,java.lang.Math.max(end,(buf.length<<1)))];
+                java.lang.System.arraycopy(buf,0,copier,0,length);
+                this.buf = buf = copier;
+            }
+            java.lang.System.arraycopy(b,ofs,buf,length,(end-length));
+            this.length = end;
+            /*
+             * Scan new bytes for line ends
+             */
+            for (int cc = this.scan; cc < end; cc++){
+                if ('\n' == buf[cc]){
+                    int lend = cc;
+                    if (this.line < lend && '\r' == buf[lend-1])
+                        lend -= 1;
+                    if (this.line == lend){
+                        if (-1 < this.headlineEnd){
+                            this.complete = true;
+                            this.length = (cc+1);
+                            this.scan = (cc+1);
+                            return ((cc+1) - length);
+                        }
+                    }
+                    else
+                        this.line(this.line,lend);
+
+                    this.line = (cc+1);
+                }
+            }
+            this.scan = end;
+            if (end == MaxHead)
+                throw new java.io.IOException("Message head exceeds "+MaxHead+" bytes.");
+            else
+                return len;
+        }
+    }
+    /**
+     * Read a head from the input, and add its headers to the
+     * destination.
+     * 
+     * @param dst Optional destination
+     * @return Headline, or null for end of input before a complete
+     * head.
+     */
+    public java.lang.String read(alto.io.Input in, Headers dst)
+        throws java.io.IOException
+    {
+        if (this.read(in)){
+            if (null != dst){
+                for (int cc = 0, count = this.count; cc < count; cc++){
+                    dst.addHeader(this.header(cc));
+                }
+            }
+            return this.getHeadline();
+        }
+        else
+            return null;
+    }
+    /**
+     * Reset, and then read a head from the input.
+     * 
+     * @return Head is complete
+     */
+    public boolean read(alto.io.Input in)
+        throws java.io.IOException
+    {
+        this.reset();
+        byte[] iob = this.iob;
+        if (in instanceof alto.io.u.Bbi){
+            alto.io.u.Bbi bin = (alto.io.u.Bbi)in;
+            while (!this.complete){
+                bin.mark(iob.length);
+                int read = bin.read(iob,0,iob.length);
+                if (0 < read){
+                    int used = this.update(iob,0,read);
+                    if (used < read){
+                        bin.reset();
+                        bin.skip(used);
+                    }
+                }
+                else
+                    break;
+            }
+        }
+        else {
+            while (!this.complete){
+                int ch = in.read();
+                if (-1 < ch){
+                    iob[0] = (byte)ch;
+                    this.update(iob,0,1);
+                }
+                else
+                    break;
+            }
+        }
+        return this.complete;
+    }
+    public boolean isComplete(){
+        return this.complete;
+    }
+    /**
+     * @return Number of bytes in the head, including the empty line
+     * when complete
+     */
+    public int length(){
+        return this.length;
+    }
+    /**
+     * @return Head bytes, valid until the next reset
+     */
+    public byte[] buffer(){
+        return this.buf;
+    }
+    public boolean hasHeadline(){
+        return (-1 < this.headlineEnd);
+    }
+    public java.lang.String getHeadline(){
+        int end = this.headlineEnd;
+        if (-1 < end)
+            return this.string(0,end);
+        else
+            return null;
+    }
+    /**
+     * @return Number of headers
+     */
+    public int count(){
+        return this.count;
+    }
+    /**
+     * @return Header name, interned for well known names, or null
+     * for index out of range.
+     */
+    public java.lang.String name(int idx){
+        if (-1 < idx && idx < this.count){
+            int ix = (idx<<2);
+            int start = this.index[ix], end = this.index[ix+1];
+            java.lang.String name = Names.Lookup(this.buf,start,end);
+            if (null != name)
+                return name;
+            else
+                return this.string(start,end);
+        }
+        else
+            return null;
+    }
+    /**
+     * Case insensitive name comparison without allocation.
+     */
+    public boolean isName(int idx, java.lang.String name){
+        if (-1 < idx && idx < this.count && null != name){
+            int ix = (idx<<2);
+            return Names.Equals(name,this.buf,this.index[ix],this.index[ix+1]);
+        }
+        else
+            return false;
+    }
+    /**
+     * @return Index of the first header having the name, or negative
+     * one
+     */
+    public int indexOf(java.lang.String name){
+        for (int cc = 0, count = this.count; cc < count; cc++){
+            if (this.isName(cc,name))
+                return cc;
+        }
+        return -1;
+    }
+    /**
+     * @return Header value, with folded lines joined by spaces, or
+     * null for index out of range
+     */
+    public java.lang.String value(int idx){
+        if (-1 < idx && idx < this.count){
+            int ix = (idx<<2);
+            int start = this.index[ix+2], end = this.index[ix+3];
+            byte[] buf = this.buf;
+            char[] cary = new char[end-start];
+            int count = 0;
+            boolean fold = false;
+            for (int cc = start; cc < end; cc++){
+                int ch = (buf[cc] & 0xff);
+                if ('\r' == ch || '\n' == ch)
+                    fold = true;
+                else if (fold && (' ' == ch || '\t' == ch))
+                    continue;
+                else {
+                    if (fold){
+                        cary[count++] = ' ';
+                        fold = false;
+                    }
+                    cary[count++] = (char)ch;
+                }
+            }
+            return new java.lang.String(cary,0,count);
+        }
+        else
+            return null;
+    }
+    /**
+     * Decimal value without allocation, for example of
+     * <code>"Content-Length"</code>.
+     * 
+     * @return Non negative value, or negative one for a missing or
+     * non decimal value
+     */
+    public long valueLong(int idx){
+        if (-1 < idx && idx < this.count){
+            int ix = (idx<<2);
+            int start = this.index[ix+2], end = this.index[ix+3];
+            if (start < end && 19 > (end-start)){
+                byte[] buf = this.buf;
+                long value = 0L;
+                for (int cc = start; cc < end; cc++){
+                    int ch = buf[cc];
+                    if ('0' <= ch && '9' >= ch)
+                        value = (value*10L)+(ch-'0');
+                    else
+                        return -1L;
+                }
+                return value;
+            }
+        }
+        return -1L;
+    }
+    public Header header(int idx){
+        java.lang.String name = this.name(idx);
+        if (null != name)
+            return new Header(name,this.value(idx));
+        else
+            return null;
+    }
+    /**
+     * Record a line of the head.
+     */
+    private void line(int start, int end){
+        byte[] buf = this.buf;
+        if (0 > this.headlineEnd){
+            this.headlineEnd = end;
+            return;
+        }
+        int first = buf[start];
+        if ((' ' == first || '\t' == first) && 0 < this.count){
+            /*
+             * Folded continuation of the previous value
+             */
+            this.index[((this.count-1)<<2)+3] = end;
+            return;
+        }
+        int colon = start;
+        while (colon < end && ':' != buf[colon])
+            colon += 1;
+        if (colon == end)
+            throw new Header.Malformed(this.string(start,end));
+        else {
+            int nend = colon;
+            while (nend > start && (' ' == buf[nend-1] || '\t' == buf[nend-1]))
+                nend -= 1;
+            int vstart = (colon+1);
+            while (vstart < end && (' ' == buf[vstart] || '\t' == buf[vstart]))
+                vstart += 1;
+            int vend = end;
+            while (vend > vstart && (' ' == buf[vend-1] || '\t' == buf[vend-1]))
+                vend -= 1;
+
+            int ix = (this.count<<2);
+            int[] index = this.index;
+            if (ix == index.length){
+                int[] copier = new int[ix<<1];
+                java.lang.System.arraycopy(index,0,copier,0,ix);
+                this.index = index = copier;
+            }
+            index[ix] = start;
+            index[ix+1] = nend;
+            index[ix+2] = vstart;
+            index[ix+3] = vend;
+            this.count += 1;
+        }
+    }
+    /**
+     * ASCII (ISO-8859-1) string
+     */
+    private java.lang.String string(int start, int end){
+        byte[] buf = this.buf;
+        char[] cary = new char[end-start];
+        for (int cc = start; cc < end; cc++)
+            cary[cc-start] = (char)(buf[cc] & 0xff);
+        return new java.lang.String(cary);
+    }
+
+
+    protected static void usage( java.io.PrintStream out){
+        out.println();
+        out.println("Usage");
+        out.println();
+        out.println("  HttpHeadParser [iterations]");
+        out.println();
+        out.println("Description");
+        out.println();
+        out.println("  Parse realistic request heads with this parser, and with");
+        out.println("  InputStream.readLine and Header(String), and print heads per");
+        out.println("  millisecond for each.  Default 200000 iterations.");
+        out.println();
+    }
+    private final static java.lang.String[] Heads = {
+        "GET /index.html HTTP/1.1\r\n"+
+        "Host: www.example.com\r\n"+
+        "User-Agent: Mozilla/5.0 (X11; Linux x86_64; rv:60.0) Gecko/20100101 Firefox/60.0\r\n"+
+        "Accept: text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8\r\n"+
+        "Accept-Language: en-US,en;q=0.5\r\n"+
+        "Accept-Encoding: gzip, deflate\r\n"+
+        "Connection: keep-alive\r\n"+
+        "If-Modified-Since: Sat, 29 Oct 1994 19:43:31 GMT\r\n"+
+        "If-None-Match: \"7b5a3c2f\"\r\n"+
+        "\r\n",
+
+        "PUT /sys/users/jdp/profile.xml/1 HTTP/1.1\r\n"+
+        "Host: alto.example.com:8080\r\n"+
+        "Date: Sat, 29 Oct 1994 19:43:31 GMT\r\n"+
+        "Content-Type: application/xml\r\n"+
+        "Content-Length: 4096\r\n"+
+        "Content-MD5: Q2hlY2sgSW50ZWdyaXR5IQ==\r\n"+
+        "ETag: 7b5a3c2f\r\n"+
+        "Last-Modified: Sat, 29 Oct 1994 19:43:31 GMT\r\n"+
+        "SAuth-UID: 6f1ed002ab5595859014ebf0951522d9\r\n"+
+        "SAuth-Nonce: 0123456789abcdef0123456789abcdef\r\n"+
+        "SAuth-Signature: 3045022100c6047f9441ed7d6d3045406e95c07cd85c778e4b8cef3ca7abac09b95c709ee5\r\n"+
+        "SDFS-MID: 42\r\n"+
+        "SDFS-TTL: 3\r\n"+
+        "\r\n"
+    };
+    public static void main(java.lang.String[] argv){
+        int iterations = 200000;
+        if (0 < argv.length){
+            try {
+                iterations = java.lang.Integer.parseInt(argv[0]);
+            }
+            catch (java.lang.NumberFormatException exc){
+                usage(System.err);
+                System.exit(1);
+            }
+        }
+        try {
+            byte[][] heads = new byte[Heads.length][];
+            for (int cc = 0; cc < heads.length; cc++)
+                heads[cc] = Heads[cc].getBytes("US-ASCII");
+
+            HttpHeadParser parser = new HttpHeadParser();
+            long check = 0L;
+            for (int pass = 0; pass < 2; pass++){
+                /*
+                 * Parser, names and headline only
+                 */
+                long start = java.lang.System.nanoTime();
+                for (int cc = 0; cc < iterations; cc++){
+                    byte[] head = heads[cc % heads.length];
+                    parser.reset();
+                    parser.update(head,0,head.length);
+                    for (int hh = 0, count = parser.count(); hh < count; hh++)
+                        check += parser.name(hh).length();
+                    check += parser.getHeadline().length();
+                }
+                long parse = (java.lang.System.nanoTime()-start);
+                /*
+                 * Parser to headers
+                 */
+                start = java.lang.System.nanoTime();
+                for (int cc = 0; cc < iterations; cc++){
+                    byte[] head = heads[cc % heads.length];
+                    parser.reset();
+                    parser.update(head,0,head.length);
+                    for (int hh = 0, count = parser.count(); hh < count; hh++)
+                        check += parser.header(hh).getValue().length();
+                    check += parser.getHeadline().length();
+                }
+                long headers = (java.lang.System.nanoTime()-start);
+                /*
+                 * Line reader to headers
+                 */
+                start = java.lang.System.nanoTime();
+                for (int cc = 0; cc < iterations; cc++){
+                    byte[] head = heads[cc % heads.length];
+                    InputStream in = new InputStream(head);
+                    java.lang.String line = in.readLine();
+                    check += line.length();
+                    while (null != (line = in.readLine()) && 0 < line.trim().length())
+                        check += new Header(line).getValue().length();
+                }
+                long lines = (java.lang.System.nanoTime()-start);
+                if (0 < pass){
+                    System.out.printf("parser names     %10.1f heads/ms%n",(iterations/(parse/1e6)));
+                    System.out.printf("parser headers   %10.1f heads/ms%n",(iterations/(headers/1e6)));
+                    System.out.printf("readLine headers %10.1f heads/ms%n",(iterations/(lines/1e6)));
+                }
+            }
+            if (0L == check)
+                System.err.println("check");
+            System.exit(0);
+        }
+        catch (java.lang.Exception exc){
+            exc.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
@@ -42,6 +42,10 @@ public class Abstract
 
     protected OutputStream out;
 
+    protected ReadableByteChannel inc;
+
+    protected WritableByteChannel outc;
+
 
     public Abstract(){
         super();
@@ -55,10 +59,15 @@ public class Abstract
         return UriDefault;
     }
     public java.nio.channels.ReadableByteChannel openChannelReadable(){
-        return null;
+        return (this.inc = new ReadableByteChannel(this));
     }
     public java.nio.channels.ReadableByteChannel getChannelReadable(){
-        return null;
+        ReadableByteChannel inc = this.inc;
+        if (null == inc){
+            inc = new ReadableByteChannel(this);
+            this.inc = inc;
+        }
+        return inc;
     }
     public long lastModified(){
         return last;
@@ -111,10 +120,51 @@ public class Abstract
         return in;
     }
     public java.nio.channels.WritableByteChannel openChannelWritable(){
-        return null;
+        return (this.outc = new WritableByteChannel(this));
     }
     public java.nio.channels.WritableByteChannel getChannelWritable(){
-        return null;
+        WritableByteChannel outc = this.outc;
+        if (null == outc){
+            outc = new WritableByteChannel(this);
+            this.outc = outc;
+        }
+        return outc;
+    }
+    /**
+     * Gathering write of the readable bytes of the head followed by
+     * the readable bytes of this buffer, without concatenating them.
+     * Both are consumed as by {@link
+     * alto.io.u.Bbuf#writeTo(java.nio.channels.WritableByteChannel)}.
+     * 
+     * @param out Destination channel
+     * @param head Optional head buffer, for example message headers
+     * @return Number of bytes written
+     */
+    public long writeTo(java.nio.channels.GatheringByteChannel out, alto.io.u.Bbuf head)
+        throws java.io.IOException
+    {
+        java.nio.ByteBuffer body = this.toByteBuffer();
+        java.nio.ByteBuffer hb = (null != head)?(head.toByteBuffer()):(null);
+        java.nio.ByteBuffer[] srcs;
+        if (null != hb)
+            srcs = new java.nio.ByteBuffer[]{hb,body};
+        else
+            srcs = new java.nio.ByteBuffer[]{body};
+        int bodyStart = body.position(), headStart = (null != hb)?(hb.position()):(0);
+        int bodyCount = 0, headCount = 0;
+        try {
+            while (body.hasRemaining() || (null != hb && hb.hasRemaining()))
+                out.write(srcs);
+        }
+        finally {
+            bodyCount = (body.position()-bodyStart);
+            this.skip_read(bodyCount);
+            if (null != hb){
+                headCount = (hb.position()-headStart);
+                head.skip_read(headCount);
+            }
+        }
+        return (headCount+bodyCount);
     }
     public boolean setLastModified(long last){
         this.last = last;
@@ -155,6 +205,8 @@ public class Abstract
     {
         this.in = null;
         this.out = null;
+        this.inc = null;
+        this.outc = null;
     }
     public byte[] getBuffer(){
         try {
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 1998, 2009  John Pritchard and the Alto Project Group.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package alto.lang.buffer;
+
+/**
+ * Channel view of the readable bytes of an {@link Abstract} buffer,
+ * consuming them as {@link InputStream}.
+ * 
+ * @see WritableByteChannel
+ */
+public class ReadableByteChannel
+    extends java.lang.Object
+    implements java.nio.channels.ReadableByteChannel
+{
+
+    private final Abstract iob;
+
+    private volatile boolean open = true;
+
+
+    public ReadableByteChannel(Abstract iob){
+        super();
+        if (null != iob){
+            this.iob = iob;
+            iob.reset_read();
+        }
+        else
+            throw new alto.sys.Error.Argument();
+    }
+
+
+    public Abstract getBuffer(){
+        return this.iob;
+    }
+    public int read(java.nio.ByteBuffer dst)
+        throws java.io.IOException
+    {
+        if (this.open)
+            return this.iob.read(dst);
+        else
+            throw new java.nio.channels.ClosedChannelException();
+    }
+    /**
+     * Drain the readable bytes to the target channel without
+     * copying.
+     * @return Number of bytes written
+     */
+    public long transferTo(java.nio.channels.WritableByteChannel out)
+        throws java.io.IOException
+    {
+        if (this.open)
+            return this.iob.writeTo(out);
+        else
+            throw new java.nio.channels.ClosedChannelException();
+    }
+    public boolean isOpen(){
+        return this.open;
+    }
+    public void close()
+        throws java.io.IOException
+    {
+        this.open = false;
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 1998, 2009  John Pritchard and the Alto Project Group.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package alto.lang.buffer;
+
+/**
+ * Channel view appending to an {@link Abstract} buffer, as {@link
+ * OutputStream}.  The gathering write appends each source in turn,
+ * so that a head and body held in separate buffers are not
+ * concatenated before writing.
+ * 
+ * @see ReadableByteChannel
+ */
+public class WritableByteChannel
+    extends java.lang.Object
+    implements java.nio.channels.GatheringByteChannel
+{
+
+    private final Abstract iob;
+
+    private volatile boolean open = true;
+
+
+    public WritableByteChannel(Abstract iob){
+        super();
+        if (null != iob){
+            this.iob = iob;
+            iob.reset_write();
+        }
+        else
+            throw new alto.sys.Error.Argument();
+    }
+
+
+    public Abstract getBuffer(){
+        return this.iob;
+    }
+    public int write(java.nio.ByteBuffer src)
+        throws java.io.IOException
+    {
+        if (this.open)
+            return this.iob.write(src);
+        else
+            throw new java.nio.channels.ClosedChannelException();
+    }
+    public long write(java.nio.ByteBuffer[] srcs)
+        throws java.io.IOException
+    {
+        return this.write(srcs,0,srcs.length);
+    }
+    public long write(java.nio.ByteBuffer[] srcs, int offset, int length)
+        throws java.io.IOException
+    {
+        if (0 > offset || 0 > length || (offset+length) > srcs.length)
+            throw new java.lang.IndexOutOfBoundsException();
+        else if (this.open){
+            Abstract iob = this.iob;
+            long total = 0L;
+            for (int cc = offset, end = (offset+length); cc < end; cc++){
+                total += iob.write(srcs[cc]);
+            }
+            return total;
+        }
+        else
+            throw new java.nio.channels.ClosedChannelException();
+    }
+    public boolean isOpen(){
+        return this.open;
+    }
+    public void close()
+        throws java.io.IOException
+    {
+        this.open = false;
+    }
+}
@@ -279,6 +279,7 @@ public class Keys
 
 
     public void destroy(){
+        this.invalidate();
         this.name = null;
         this.protector = null;
         if (this.isPushed())
@@ -421,6 +422,7 @@ public class Keys
             Key key = new Key(this);
             key.generate(alg);
             this.list = Key.List.Add(this.list,key);
+            this.invalidate();
             return true;
         }
     }
@@ -431,6 +433,7 @@ public class Keys
             Key key = new Key(this);
             key.generateRSA();
             this.list = Key.List.Add(this.list,key);
+            this.invalidate();
             return true;
         }
     }
@@ -549,6 +552,22 @@ public class Keys
             }
             this.roles = list;
         }
+        this.invalidate();
+    }
+    /**
+     * Drop the cached signing context for this principal.  Without a
+     * UID to name it, all cached contexts are dropped.
+     * @see alto.io.auth.SAuth$Context
+     */
+    protected void invalidate(){
+        if (null != this.list){
+            try {
+                alto.io.auth.SAuth.Context.Invalidate(this.getUID());
+            }
+            catch (alto.sys.Error.Bug nouid){
+                alto.io.auth.SAuth.Context.Clear();
+            }
+        }
     }
     protected Key getProtectorRSA(){
         Keys protector = (Keys)this.getProtector();
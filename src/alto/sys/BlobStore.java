@@ -0,0 +1,446 @@
+/*
+ * Copyright (C) 1998, 2009  John Pritchard and the Alto Project Group.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package alto.sys;
+
+import alto.lang.HttpMessage;
+
+/**
+ * <p> Content addressed store of message bodies in a {@link
+ * Partition}.  A body is stored once under its hash, and the file
+ * for each version holding that body is a stub with the message head
+ * and the hash.  </p>
+ *
+ * <h3>Stub</h3>
+ *
+ * <p> A stub file is the line <code>"ALTO-BLOB hash-hex"</code>
+ * followed by the message head.  {@link File} opens the body from the
+ * store in place of the stub body (see {@link
+ * FileInputStream#getBodyChannel()}), so that readers of stored
+ * messages see the message unchanged.  </p>
+ *
+ * <h3>Writes</h3>
+ *
+ * <p> A body of {@link #Threshold} or more bytes is hashed and
+ * written to the store when not found.  A body read from the store is
+ * remembered with its key, so that copying the message to another
+ * file, or writing it again as a new version, stores only the stub
+ * without hashing the body again.  The copy still reads the whole
+ * body into the message, and a write behind the {@link Journal}
+ * still serializes and forces the whole message to the journal.
+ * </p>
+ *
+ * <p> A body found in the store is touched, its last modified time
+ * set to the time of the write, so that {@link #sweep(long)} will not
+ * remove it within its grace period while the stub referring to it is
+ * written.  </p>
+ *
+ * <h3>Configuration</h3>
+ *
+ * <p> The store is optional, and written when the system property
+ * <code>"alto.sys.BlobStore"</code> is true.  Stubs are read whenever
+ * the store directory exists.  The hash function is the system
+ * property <code>"alto.sys.BlobStore.Hash"</code>, "sha1" (default)
+ * or "md5", or any {@link Hash} given to the constructor.  Bodies no
+ * longer referenced by a stub are removed by {@link #sweep(long)}.
+ * </p>
+ *
+ * @see FileManager#init(java.io.File)
+ * @since 1.6
+ */
+public final class BlobStore
+    extends java.lang.Object
+{
+    /**
+     * Store directory in the partition
+     */
+    public final static java.lang.String Name = ".blobs";
+
+    /**
+     * Least body length stored by hash, from the system property
+     * <code>"alto.sys.BlobStore.Threshold"</code>, default 4096.
+     */
+    public final static int Threshold = java.lang.Integer.getInteger("alto.sys.BlobStore.Threshold",0x1000);
+
+    private final static byte[] Magic = {
+        'A','L','T','O','-','B','L','O','B',' '
+    };
+
+    /**
+     * Body hash function
+     */
+    public interface Hash {
+
+        /**
+         * @return Key prefix
+         */
+        public java.lang.String getName();
+
+        public byte[] hash(byte[] body, int ofs, int len);
+    }
+    public final static class SHA1
+        extends java.lang.Object
+        implements Hash
+    {
+        public final static SHA1 Instance = new SHA1();
+
+        public java.lang.String getName(){
+            return "sha1";
+        }
+        public byte[] hash(byte[] body, int ofs, int len){
+            alto.hash.SHA1 sha = new alto.hash.SHA1();
+            sha.update(body,ofs,len);
+            return sha.hash();
+        }
+    }
+    public final static class MD5
+        extends java.lang.Object
+        implements Hash
+    {
+        public final static MD5 Instance = new MD5();
+
+        public java.lang.String getName(){
+            return "md5";
+        }
+        public byte[] hash(byte[] body, int ofs, int len){
+            alto.hash.MD5 md5 = new alto.hash.MD5();
+            md5.update(body,ofs,len);
+            return md5.hash();
+        }
+    }
+    /**
+     * @return Hash function named by the system property
+     * <code>"alto.sys.BlobStore.Hash"</code>
+     */
+    public final static Hash DefaultHash(){
+        java.lang.String name = java.lang.System.getProperty("alto.sys.BlobStore.Hash");
+        if (null == name || "sha1".equalsIgnoreCase(name))
+            return SHA1.Instance;
+        else if ("md5".equalsIgnoreCase(name))
+            return MD5.Instance;
+        else
+            throw new alto.sys.Error.State("alto.sys.BlobStore.Hash: "+name);
+    }
+    /**
+     * @return Store for the partition, or null when neither enabled
+     * nor found
+     */
+    public final static BlobStore For(Partition partition){
+        java.io.File dir = new java.io.File(partition.getFile(),Name);
+        if (java.lang.Boolean.getBoolean("alto.sys.BlobStore"))
+            return new BlobStore(partition,DefaultHash(),true);
+        else if (dir.isDirectory())
+            return new BlobStore(partition,DefaultHash(),false);
+        else
+            return null;
+    }
+
+
+    private final Partition partition;
+
+    private final java.io.File dir;
+
+    private final Hash hash;
+
+    private final boolean writable;
+
+    /**
+     * Bodies recently stored or read, by identity, to their keys
+     */
+    private final java.util.Map<byte[],java.lang.String> known = new java.util.WeakHashMap<byte[],java.lang.String>();
+
+    private final java.util.concurrent.atomic.AtomicLong stored = new java.util.concurrent.atomic.AtomicLong();
+
+    private final java.util.concurrent.atomic.AtomicLong deduplicated = new java.util.concurrent.atomic.AtomicLong();
+
+    private final java.util.concurrent.atomic.AtomicLong bytesSaved = new java.util.concurrent.atomic.AtomicLong();
+
+
+    /**
+     * @param writable Store bodies, otherwise only read stubs
+     */
+    public BlobStore(Partition partition, Hash hash, boolean writable){
+        super();
+        if (null != partition && null != hash){
+            this.partition = partition;
+            this.dir = new java.io.File(partition.getFile(),Name);
+            this.hash = hash;
+            this.writable = writable;
+        }
+        else
+            throw new alto.sys.Error.Argument();
+    }
+
+
+    public Partition getPartition(){
+        return this.partition;
+    }
+    public java.io.File getDirectory(){
+        return this.dir;
+    }
+    public Hash getHash(){
+        return this.hash;
+    }
+    public boolean isWritable(){
+        return this.writable;
+    }
+    /**
+     * @return Stored message body for the key
+     */
+    public java.io.File fileFor(java.lang.String key){
+        if (null != key && 4 < key.length() && 0 > key.indexOf('/') && 0 > key.indexOf('.')){
+            int dash = key.indexOf('-');
+            java.lang.String fan = key.substring(dash+1,dash+3);
+            return new java.io.File(new java.io.File(this.dir,fan),key);
+        }
+        else
+            throw new alto.sys.Error.Argument(key);
+    }
+    public boolean contains(java.lang.String key){
+        return this.fileFor(key).isFile();
+    }
+    /**
+     * @return Message body to be written by hash, as for {@link
+     * #write(alto.lang.HttpMessage)}
+     */
+    public boolean isBlob(HttpMessage message){
+        if (this.writable){
+            byte[] body = message.getBody();
+            return (null != body && Threshold <= body.length);
+        }
+        else
+            return false;
+    }
+    /**
+     * Store the message body by its hash when not found.
+     *
+     * @return Key for the body, or null for a message not stored by
+     * hash
+     */
+    public java.lang.String write(HttpMessage message)
+        throws java.io.IOException
+    {
+        if (this.writable){
+            byte[] body = message.getBody();
+            if (null != body && Threshold <= body.length){
+                java.lang.String key;
+                synchronized(this.known){
+                    key = this.known.get(body);
+                }
+                if (null != key && this.refresh(this.fileFor(key))){
+                    this.deduplicated.incrementAndGet();
+                    this.bytesSaved.addAndGet(body.length);
+                    return key;
+                }
+                else {
+                    key = (this.hash.getName()+'-'+alto.io.u.Hex.encode(this.hash.hash(body,0,body.length)));
+                    java.io.File file = this.fileFor(key);
+                    if (file.length() == body.length && this.refresh(file)){
+                        this.deduplicated.incrementAndGet();
+                        this.bytesSaved.addAndGet(body.length);
+                    }
+                    else {
+                        java.io.File parent = file.getParentFile();
+                        if (!parent.isDirectory() && (!parent.mkdirs()) && (!parent.isDirectory()))
+                            throw new java.io.IOException("Unable to create "+parent);
+                        java.io.File temp = java.io.File.createTempFile(key,".tmp",parent);
+                        try {
+                            java.io.FileOutputStream out = new java.io.FileOutputStream(temp);
+                            try {
+                                out.write(body,0,body.length);
+                                out.getFD().sync();
+                            }
+                            finally {
+                                out.close();
+                            }
+                            if (!temp.renameTo(file) && (!file.isFile()))
+                                throw new java.io.IOException("Unable to rename "+temp+" to "+file);
+                            this.partition.account(null,body.length);
+                        }
+                        finally {
+                            temp.delete();
+                        }
+                        this.stored.incrementAndGet();
+                    }
+                    this.remember(body,key);
+                    return key;
+                }
+            }
+        }
+        return null;
+    }
+    /**
+     * Touch a body found in the store for a write.
+     *
+     * @return False for a body not found, to be written again
+     */
+    private boolean refresh(java.io.File file){
+        return file.setLastModified(java.lang.System.currentTimeMillis());
+    }
+    /**
+     * Write the stub line for the key.
+     */
+    public void writeStub(java.io.OutputStream out, java.lang.String key)
+        throws java.io.IOException
+    {
+        out.write(Magic);
+        out.write(alto.io.u.Utf8.encode(key));
+        out.write('\r');
+        out.write('\n');
+    }
+    /**
+     * Open the body from the store for a stub.  Otherwise reposition
+     * the input to its start.
+     *
+     * @return Key, or null for not a stub
+     */
+    public java.lang.String open(FileInputStream in)
+        throws java.io.IOException
+    {
+        java.nio.channels.FileChannel channel = in.getChannel();
+        byte[] magic = Magic;
+        java.nio.ByteBuffer test = java.nio.ByteBuffer.allocate(magic.length);
+        while (test.hasRemaining() && 0 < channel.read(test))
+            ;
+        if (!test.hasRemaining()){
+            byte[] bytes = test.array();
+            for (int cc = 0, count = magic.length; cc < count; cc++){
+                if (magic[cc] != bytes[cc]){
+                    channel.position(0L);
+                    return null;
+                }
+            }
+            java.lang.String key = in.readLine();
+            java.io.File file = this.fileFor(key);
+            try {
+                in.setBody(new java.io.FileInputStream(file),key);
+            }
+            catch (java.io.FileNotFoundException exc){
+                throw new NotFoundException(exc,key);
+            }
+            return key;
+        }
+        else {
+            channel.position(0L);
+            return null;
+        }
+    }
+    /**
+     * Associate a body read from the store with its key.
+     */
+    public void remember(byte[] body, java.lang.String key){
+        if (null != body && null != key){
+            synchronized(this.known){
+                this.known.put(body,key);
+            }
+        }
+    }
+    public long countStored(){
+        return this.stored.get();
+    }
+    public long countDeduplicated(){
+        return this.deduplicated.get();
+    }
+    /**
+     * @return Body bytes not written for bodies found in the store
+     */
+    public long countBytesSaved(){
+        return this.bytesSaved.get();
+    }
+    /**
+     * Remove bodies older than 'grace' milliseconds that are not
+     * referenced by any stub in the partition.  Each body is moved
+     * aside before its time is checked again, so that a body touched
+     * by a write after the first check is restored, and a write after
+     * the move stores the body again.
+     *
+     * @return Number of bodies removed
+     */
+    public int sweep(long grace)
+        throws java.io.IOException
+    {
+        java.util.Set<java.lang.String> referenced = new java.util.HashSet<java.lang.String>();
+        this.mark(this.partition.getFile(),referenced);
+        long before = (java.lang.System.currentTimeMillis()-grace);
+        int removed = 0;
+        java.io.File[] fans = this.dir.listFiles();
+        if (null != fans){
+            for (java.io.File fan : fans){
+                java.io.File[] blobs = fan.listFiles();
+                if (null != blobs){
+                    for (java.io.File blob : blobs){
+                        if (blob.lastModified() < before && (!referenced.contains(blob.getName())) && this.remove(blob,before))
+                            removed += 1;
+                    }
+                }
+            }
+        }
+        return removed;
+    }
+    /**
+     * @return Body removed, not touched since 'before'
+     */
+    private boolean remove(java.io.File blob, long before){
+        java.io.File swept = new java.io.File(blob.getParentFile(),blob.getName()+".swept");
+        if (blob.renameTo(swept)){
+            if (swept.lastModified() < before){
+                long length = swept.length();
+                if (swept.delete()){
+                    this.partition.account(null,-length);
+                    return true;
+                }
+                else
+                    return false;
+            }
+            else if (!swept.renameTo(blob) && blob.isFile())
+                swept.delete();
+        }
+        return false;
+    }
+    private void mark(java.io.File dir, java.util.Set<java.lang.String> referenced)
+        throws java.io.IOException
+    {
+        java.io.File[] list = dir.listFiles();
+        if (null != list){
+            byte[] magic = Magic;
+            byte[] test = new byte[magic.length];
+            for (java.io.File file : list){
+                if ('.' == file.getName().charAt(0))
+                    continue;
+                else if (file.isDirectory())
+                    this.mark(file,referenced);
+                else if (file.length() > magic.length){
+                    java.io.DataInputStream in = new java.io.DataInputStream(new java.io.BufferedInputStream(new java.io.FileInputStream(file),0x100));
+                    try {
+                        in.readFully(test);
+                        if (java.util.Arrays.equals(magic,test)){
+                            java.lang.StringBuilder key = new java.lang.StringBuilder();
+                            int ch;
+                            while (-1 < (ch = in.read()) && '\r' != ch && '\n' != ch)
+                                key.append((char)ch);
+                            referenced.add(key.toString());
+                        }
+                    }
+                    finally {
+                        in.close();
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,379 @@
+/*
+ * Copyright (C) 1998, 2009  John Pritchard and the Alto Project Group.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package alto.sys;
+
+/**
+ * <p> The request context of a thread, its {@link IO.Context} and
+ * {@link FileManager}, captured to be restored on another thread.
+ * </p>
+ *
+ * <h3>Usage</h3>
+ * <pre>
+ *  Carrier carrier = Carrier.Capture();
+ *  executor.execute(carrier.wrap(task));
+ * </pre>
+ * <pre>
+ *  Carrier previous = carrier.restore();
+ *  try {
+ *    //(request)
+ *  }
+ *  finally {
+ *    previous.restore();
+ *  }
+ * </pre>
+ *
+ * <h3>Threads</h3>
+ *
+ * <p> An {@link alto.sys.Thread} keeps its context in a field.  Any
+ * other thread, for example in a pool of an executor service, keeps
+ * its context in a thread local, so that the static context and
+ * principal methods of {@link alto.sys.Thread} work on all threads.
+ * The file manager is the thread context class loader read by {@link
+ * FileManager#Instance()}.  </p>
+ *
+ * <p> A task should not leave its context on a pooled thread, so
+ * restore and wrap always return the thread to its previous context.
+ * </p>
+ *
+ * @see Carrier.Executor
+ * @see Timer
+ * @since 1.6
+ */
+public final class Carrier
+    extends java.lang.Object
+{
+    /**
+     * Context of threads not an {@link alto.sys.Thread}
+     */
+    private final static java.lang.ThreadLocal<IO.Context> Local = new java.lang.ThreadLocal<IO.Context>();
+
+    /**
+     * Empty context
+     */
+    public final static Carrier Nil = new Carrier(null,null);
+
+    /**
+     * @return Context of the current thread, or null
+     */
+    public final static IO.Context Context(){
+        java.lang.Thread T = java.lang.Thread.currentThread();
+        if (T instanceof alto.sys.Thread)
+            return ((alto.sys.Thread)T).getContext();
+        else
+            return Local.get();
+    }
+    /**
+     * Define the context of the current thread.
+     */
+    public final static void Context(IO.Context context){
+        java.lang.Thread T = java.lang.Thread.currentThread();
+        if (T instanceof alto.sys.Thread)
+            ((alto.sys.Thread)T).resetContext(context);
+        else if (null != context)
+            Local.set(context);
+        else
+            Local.remove();
+    }
+    /**
+     * @return Context and file manager of the current thread
+     */
+    public final static Carrier Capture(){
+        IO.Context context = Context();
+        FileManager fm = null;
+        java.lang.ClassLoader cl = java.lang.Thread.currentThread().getContextClassLoader();
+        if (cl instanceof FileManager)
+            fm = (FileManager)cl;
+        if (null == context && null == fm)
+            return Nil;
+        else
+            return new Carrier(context,fm);
+    }
+    /**
+     * @return Task run in the current context
+     */
+    public final static java.lang.Runnable Wrap(java.lang.Runnable task){
+        return Capture().wrap(task);
+    }
+    /**
+     * @return Task called in the current context
+     */
+    public final static <V> java.util.concurrent.Callable<V> Wrap(java.util.concurrent.Callable<V> task){
+        return Capture().wrap(task);
+    }
+
+    /**
+     * Executor running each task in the context of the thread that
+     * submitted it.
+     */
+    public final static class Executor
+        extends java.lang.Object
+        implements java.util.concurrent.Executor
+    {
+        private final java.util.concurrent.Executor executor;
+
+
+        public Executor(java.util.concurrent.Executor executor){
+            super();
+            if (null != executor)
+                this.executor = executor;
+            else
+                throw new alto.sys.Error.Argument();
+        }
+
+
+        public void execute(java.lang.Runnable task){
+            this.executor.execute(Wrap(task));
+        }
+    }
+
+
+    private final IO.Context context;
+
+    /**
+     * File manager, or any class loader in a previous context
+     */
+    private final java.lang.ClassLoader loader;
+
+
+    private Carrier(IO.Context context, java.lang.ClassLoader loader){
+        super();
+        this.context = context;
+        this.loader = loader;
+    }
+
+
+    public IO.Context getContext(){
+        return this.context;
+    }
+    public FileManager getFileManager(){
+        java.lang.ClassLoader loader = this.loader;
+        if (loader instanceof FileManager)
+            return (FileManager)loader;
+        else
+            return null;
+    }
+    public boolean isEmpty(){
+        return (null == this.context && null == this.loader);
+    }
+    /**
+     * Define this context on the current thread.  A carrier without
+     * a file manager leaves the context class loader unchanged.
+     *
+     * @return The previous context, to restore
+     */
+    public Carrier restore(){
+        java.lang.Thread T = java.lang.Thread.currentThread();
+        IO.Context context = Context();
+        java.lang.ClassLoader cl = T.getContextClassLoader();
+        java.lang.ClassLoader loader = this.loader;
+        Context(this.context);
+        if (null != loader && cl != loader)
+            T.setContextClassLoader(loader);
+        if (null == context && null == cl)
+            return Nil;
+        else
+            return new Carrier(context,cl);
+    }
+    /**
+     * @return Task run in this context
+     */
+    public java.lang.Runnable wrap(final java.lang.Runnable task){
+        if (null == task)
+            throw new alto.sys.Error.Argument();
+        else {
+            final Carrier carrier = this;
+            return new java.lang.Runnable(){
+                public void run(){
+                    Carrier previous = carrier.restore();
+                    try {
+                        task.run();
+                    }
+                    finally {
+                        previous.restore();
+                    }
+                }
+            };
+        }
+    }
+    /**
+     * @return Task called in this context
+     */
+    public <V> java.util.concurrent.Callable<V> wrap(final java.util.concurrent.Callable<V> task){
+        if (null == task)
+            throw new alto.sys.Error.Argument();
+        else {
+            final Carrier carrier = this;
+            return new java.util.concurrent.Callable<V>(){
+                public V call() throws java.lang.Exception {
+                    Carrier previous = carrier.restore();
+                    try {
+                        return task.call();
+                    }
+                    finally {
+                        previous.restore();
+                    }
+                }
+            };
+        }
+    }
+    public java.lang.String toString(){
+        return "[Carrier context="+this.context+" loader="+this.loader+']';
+    }
+
+
+    protected static void usage(java.io.PrintStream out){
+        out.println();
+        out.println("Usage");
+        out.println();
+        out.println("  Carrier pool [requests] [threads] [work-ms]");
+        out.println("  Carrier threads [requests] [work-ms]");
+        out.println();
+        out.println("Description");
+        out.println();
+        out.println("  Each request reads its context in the static Thread API and");
+        out.println("  waits 'work' milliseconds.  Pool runs the requests on a fixed");
+        out.println("  pool with carriers.  Threads runs each request on a new");
+        out.println("  alto.sys.Thread inheriting its context.  Reports elapsed time,");
+        out.println("  context errors and peak live threads.  Default 100000");
+        out.println("  requests, 256 threads, one millisecond.");
+        out.println();
+    }
+    private final static class Request
+        extends java.lang.Object
+        implements java.lang.Runnable
+    {
+        final IO.Context expect;
+        final long work;
+        final java.util.concurrent.atomic.AtomicLong errors;
+        final java.util.concurrent.CountDownLatch done;
+
+        Request(IO.Context expect, long work, java.util.concurrent.atomic.AtomicLong errors, java.util.concurrent.CountDownLatch done){
+            super();
+            this.expect = expect;
+            this.work = work;
+            this.errors = errors;
+            this.done = done;
+        }
+        public void run(){
+            try {
+                if (this.expect != alto.sys.Thread.Context())
+                    this.errors.incrementAndGet();
+                if (0L < this.work)
+                    java.lang.Thread.sleep(this.work);
+            }
+            catch (java.lang.InterruptedException exc){
+            }
+            finally {
+                this.done.countDown();
+            }
+        }
+    }
+    private final static class Worker
+        extends alto.sys.Thread
+    {
+        Worker(java.lang.Runnable request){
+            super(null,request,"Request");
+        }
+    }
+    private final static class Main
+        extends alto.sys.Thread
+    {
+        final java.lang.String[] argv;
+        volatile int status = 1;
+
+        Main(java.lang.String[] argv){
+            super(null,"Carrier bench");
+            this.argv = argv;
+        }
+        public void run(){
+            try {
+                java.lang.String[] argv = this.argv;
+                boolean pool = (0 < argv.length && "pool".equals(argv[0]));
+                boolean threads = (0 < argv.length && "threads".equals(argv[0]));
+                if (pool || threads){
+                    int requests = 100000, size = 256;
+                    long work = 1L;
+                    int ofs = 1;
+                    if (ofs < argv.length)
+                        requests = java.lang.Integer.parseInt(argv[ofs++]);
+                    if (pool && ofs < argv.length)
+                        size = java.lang.Integer.parseInt(argv[ofs++]);
+                    if (ofs < argv.length)
+                        work = java.lang.Long.parseLong(argv[ofs++]);
+                    IO.Context context = (IO.Context)java.lang.reflect.Proxy.newProxyInstance(Carrier.class.getClassLoader(),
+                                                                                              new java.lang.Class[]{IO.Context.class},
+                                                                                              new java.lang.reflect.InvocationHandler(){
+                        public java.lang.Object invoke(java.lang.Object proxy, java.lang.reflect.Method method, java.lang.Object[] args){
+                            if ("hashCode".equals(method.getName()))
+                                return java.lang.System.identityHashCode(proxy);
+                            else if ("equals".equals(method.getName()))
+                                return (proxy == args[0]);
+                            else if ("toString".equals(method.getName()))
+                                return "bench";
+                            else
+                                return null;
+                        }
+                    });
+                    this.resetContext(context);
+                    java.util.concurrent.atomic.AtomicLong errors = new java.util.concurrent.atomic.AtomicLong();
+                    java.util.concurrent.CountDownLatch done = new java.util.concurrent.CountDownLatch(requests);
+                    int peak = 0;
+                    long start = java.lang.System.nanoTime();
+                    if (pool){
+                        java.util.concurrent.ExecutorService service = java.util.concurrent.Executors.newFixedThreadPool(size);
+                        Executor executor = new Executor(service);
+                        for (int cc = 0; cc < requests; cc++)
+                            executor.execute(new Request(context,work,errors,done));
+                        peak = java.lang.Thread.activeCount();
+                        done.await();
+                        service.shutdown();
+                    }
+                    else {
+                        for (int cc = 0; cc < requests; cc++){
+                            new Worker(new Request(context,work,errors,done)).start();
+                            if (0 == (cc & 0xff))
+                                peak = java.lang.Math.max(peak,java.lang.Thread.activeCount());
+                        }
+                        done.await();
+                    }
+                    long end = java.lang.System.nanoTime();
+                    System.out.printf("%s: %d requests in %.1f ms, %.1f requests/ms, %d context errors, %d peak threads%n",
+                                      argv[0],requests,((end-start)/1e6),(requests/((end-start)/1e6)),errors.get(),peak);
+                    this.status = (0L == errors.get())?(0):(1);
+                }
+                else
+                    usage(System.err);
+            }
+            catch (java.lang.Exception exc){
+                exc.printStackTrace();
+            }
+        }
+    }
+    public static void main(java.lang.String[] argv){
+        try {
+            Main main = new Main(argv);
+            main.start();
+            main.join();
+            System.exit(main.status);
+        }
+        catch (java.lang.InterruptedException exc){
+            System.exit(1);
+        }
+    }
+}
@@ -62,6 +62,8 @@ public abstract class DFS
 
     protected alto.io.DFS dfs;
 
+    protected volatile Notifier notifier;
+
 
     protected DFS(){
         super();
@@ -76,12 +78,22 @@ public abstract class DFS
     public alto.io.DFS getDfs(){
         return this.dfs;
     }
+    /**
+     * Define the peer, and batch notifications to it unless the
+     * {@link Notifier#Delay} is zero.
+     */
     public void setDfs(alto.io.DFS dfs){
-        if (null == this.dfs)
+        if (null == this.dfs){
             this.dfs = dfs;
+            if (null != dfs && 0L < Notifier.Delay)
+                this.notifier = new Notifier(dfs);
+        }
         else
             throw new Error.State("Previously defined");
     }
+    public Notifier getNotifier(){
+        return this.notifier;
+    }
     /**
      * May look to location for optional configuration.
      */
@@ -105,23 +117,38 @@ public abstract class DFS
     public void dfsNotifyPUT(File file)
         throws java.io.IOException
     {
-        alto.io.DFS dfs = this.dfs;
-        if (null != dfs)
-            dfs.dfsNotifyPUT(file);
+        Notifier notifier = this.notifier;
+        if (null != notifier)
+            notifier.notifyPUT(file);
+        else {
+            alto.io.DFS dfs = this.dfs;
+            if (null != dfs)
+                dfs.dfsNotifyPUT(file);
+        }
     }
     public void dfsNotifyDELETE(File file)
         throws java.io.IOException
     {
-        alto.io.DFS dfs = this.dfs;
-        if (null != dfs)
-            dfs.dfsNotifyDELETE(file);
+        Notifier notifier = this.notifier;
+        if (null != notifier)
+            notifier.notifyDELETE(file);
+        else {
+            alto.io.DFS dfs = this.dfs;
+            if (null != dfs)
+                dfs.dfsNotifyDELETE(file);
+        }
     }
     public void dfsNotifyLOCK(Address reference, long timein, long timeout)
         throws java.io.IOException
     {
-        alto.io.DFS dfs = this.dfs;
-        if (null != dfs)
-            dfs.dfsNotifyLOCK(reference,timein,timeout);
+        Notifier notifier = this.notifier;
+        if (null != notifier)
+            notifier.notifyLOCK(reference,timein,timeout);
+        else {
+            alto.io.DFS dfs = this.dfs;
+            if (null != dfs)
+                dfs.dfsNotifyLOCK(reference,timein,timeout);
+        }
     }
     public void dfsResponseLOCKHolding(Address reference, Reference toUnlock)
         throws java.io.IOException
@@ -24,6 +24,7 @@ package alto.sys;
  * @see BadRequestException
  * @see BadResponseException
  * @see ConflictException
+ * @see InsufficientStorageException
  * @see NotFoundException
  * @see RequestEntityTooLargeException
  * @see ServiceUnavailableException
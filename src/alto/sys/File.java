@@ -141,6 +141,349 @@ public abstract class File
             return false;
         }
     }
+    private final static java.util.concurrent.atomic.AtomicLong BytesTransferred = new java.util.concurrent.atomic.AtomicLong();
+
+    private final static java.util.concurrent.atomic.AtomicLong BytesStreamed = new java.util.concurrent.atomic.AtomicLong();
+
+    /**
+     * @return Number of message body bytes sent by {@link
+     * #sendTo(alto.lang.HttpMessage)} with channel transfer
+     */
+    public final static long BytesTransferred(){
+        return BytesTransferred.get();
+    }
+    /**
+     * @return Number of message body bytes sent by {@link
+     * #copyTo(alto.lang.HttpMessage)} through the message buffer
+     */
+    public final static long BytesStreamed(){
+        return BytesStreamed.get();
+    }
+    /**
+     * @return The blocking TCP channel of a plain (not secure) socket
+     * of the argument message, or null.
+     */
+    protected final static java.nio.channels.SocketChannel ChannelTcp(HttpMessage dst){
+        if (null != dst && dst.hasSocket()){
+            Socket socket = dst.getSocket();
+            if (null != socket && (!socket.isSecure()) && socket.isTcpClient()){
+                java.nio.channels.SocketChannel channel = socket.getChannelTcp();
+                if (null != channel && channel.isBlocking() && channel.isConnected())
+                    return channel;
+            }
+        }
+        return null;
+    }
+    private final static java.util.concurrent.atomic.AtomicLong BytesMapped = new java.util.concurrent.atomic.AtomicLong();
+
+    private final static java.util.concurrent.atomic.AtomicLong ShortCircuited = new java.util.concurrent.atomic.AtomicLong();
+
+    /**
+     * @return Number of HEAD and not modified responses made from
+     * {@link Stat} records, without reading a message body
+     */
+    public final static long ShortCircuited(){
+        return ShortCircuited.get();
+    }
+    /**
+     * <p> Validators and head of the stored message, retained with
+     * the stat metadata of the file when the message is not held.
+     * The record is dropped when the stat metadata changes. </p>
+     * 
+     * @see File#getStat()
+     */
+    public final static class Stat
+        extends java.lang.Object
+    {
+        private final HttpMessage head;
+
+        private final java.lang.String etag;
+
+        private final long lastModified;
+
+
+        Stat(HttpMessage head){
+            super();
+            this.head = head;
+            this.etag = head.getETag();
+            this.lastModified = head.getLastModified();
+        }
+
+
+        /**
+         * @return Message head without body
+         */
+        public HttpMessage getHead(){
+            return this.head;
+        }
+        public java.lang.String getETag(){
+            return this.etag;
+        }
+        public long getLastModified(){
+            return this.lastModified;
+        }
+        /**
+         * @return The request "If-None-Match" matches, or the request
+         * has no "If-None-Match" and its "If-Modified-Since" is not
+         * before the last modified second.
+         */
+        public boolean isNotModified(HttpMessage request){
+            if (request.hasIfNoneMatch())
+                return Match(request.getIfNoneMatch(),this.etag);
+            else if (request.hasIfModifiedSince()){
+                long since = request.getIfModifiedSince();
+                long last = this.lastModified;
+                return (0L < since && 0L < last && (last/1000L) <= (since/1000L));
+            }
+            else
+                return false;
+        }
+        /**
+         * @param list Value of "If-None-Match"
+         */
+        private final static boolean Match(java.lang.String list, java.lang.String etag){
+            if (null == list || null == etag)
+                return false;
+            else {
+                java.util.StringTokenizer strtok = new java.util.StringTokenizer(list,",");
+                while (strtok.hasMoreTokens()){
+                    java.lang.String tag = strtok.nextToken().trim();
+                    if ("*".equals(tag))
+                        return true;
+                    else {
+                        if (tag.startsWith("W/"))
+                            tag = tag.substring(2);
+                        int len = tag.length();
+                        if (1 < len && '"' == tag.charAt(0) && '"' == tag.charAt(len-1))
+                            tag = tag.substring(1,len-1);
+                        if (tag.equals(etag))
+                            return true;
+                    }
+                }
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Least stored message length sent from a mapping by {@link
+     * #sendTo(alto.lang.HttpMessage)}, from the system property
+     * <code>"alto.sys.File.MapThreshold"</code>, default one
+     * megabyte.
+     */
+    public final static long MapThreshold = java.lang.Long.getLong("alto.sys.File.MapThreshold",0x100000L);
+
+    /**
+     * @return Number of message body bytes sent by {@link
+     * #sendTo(alto.lang.HttpMessage)} from a mapping
+     */
+    public final static long BytesMapped(){
+        return BytesMapped.get();
+    }
+    /**
+     * <p> Read only mapping of a stored message body, with the parsed
+     * message head.  The file holds one reference until it drops the
+     * mapping, and each user holds one from {@link File#map()} until
+     * {@link #release()}.  The buffer is dropped for collection when
+     * no references remain. </p>
+     * 
+     * <p> A write to the file drops its mapping under the write lock
+     * before truncating the file, so a user reads the body only
+     * while holding the file's read lock, and while the mapping is
+     * still the file's current mapping. </p>
+     */
+    public final static class Mapping
+        extends java.lang.Object
+    {
+        private final HttpMessage head;
+
+        private final long statLast, statLength;
+
+        private final java.util.concurrent.atomic.AtomicInteger refs = new java.util.concurrent.atomic.AtomicInteger(1);
+
+        private volatile java.nio.MappedByteBuffer buffer;
+
+
+        Mapping(HttpMessage head, java.nio.MappedByteBuffer buffer, long statLast, long statLength){
+            super();
+            this.head = head;
+            this.buffer = buffer;
+            this.statLast = statLast;
+            this.statLength = statLength;
+        }
+
+
+        /**
+         * @return Message head, without body
+         */
+        public HttpMessage getHead(){
+            return this.head;
+        }
+        /**
+         * @return New read only view of the body, positioned at zero
+         */
+        public java.nio.ByteBuffer getBody(){
+            java.nio.MappedByteBuffer buffer = this.buffer;
+            if (null != buffer)
+                return buffer.asReadOnlyBuffer();
+            else
+                throw new alto.sys.Error.State("Mapping released");
+        }
+        public int getBodyLength(){
+            java.nio.MappedByteBuffer buffer = this.buffer;
+            if (null != buffer)
+                return buffer.capacity();
+            else
+                return 0;
+        }
+        /**
+         * Write the body from the mapping to the channel.  The caller
+         * holds the file's read lock.
+         * 
+         * @return Number of bytes written
+         */
+        public long copyTo(java.nio.channels.WritableByteChannel out)
+            throws java.io.IOException
+        {
+            java.nio.ByteBuffer body = this.getBody();
+            long count = 0L;
+            while (body.hasRemaining())
+                count += out.write(body);
+            return count;
+        }
+        public void release(){
+            if (0 == this.refs.decrementAndGet())
+                this.buffer = null;
+        }
+        boolean acquire(){
+            int refs;
+            do {
+                refs = this.refs.get();
+                if (1 > refs)
+                    return false;
+            }
+            while (!this.refs.compareAndSet(refs,(refs+1)));
+            return true;
+        }
+        boolean isValidFor(File file){
+            return (this.statLast == file.statLast && this.statLength == file.statLength);
+        }
+    }
+    /**
+     * <p> Directory entry names in a window of the listing, skipping
+     * dot files.  Entries before the window are counted and not kept,
+     * and entries after it are not accepted. </p>
+     * 
+     * <p> The filter bounds the array returned by {@link
+     * java.io.File#list(java.io.FilenameFilter)} to the window, and
+     * so the addresses constructed from it.  It does not bound the
+     * walk: the JDK reads every entry name of the directory into an
+     * array before filtering, so the cost of a page is still linear
+     * in the size of the directory. </p>
+     */
+    public final static class Window
+        extends java.lang.Object
+        implements java.io.FilenameFilter
+    {
+        private final int from, last;
+
+        private int index;
+
+
+        public Window(int from, int count){
+            super();
+            this.from = java.lang.Math.max(0,from);
+            if (0 < count && (java.lang.Integer.MAX_VALUE - this.from) > count)
+                this.last = (this.from + count);
+            else if (0 < count)
+                this.last = java.lang.Integer.MAX_VALUE;
+            else
+                this.last = this.from;
+        }
+
+
+        public boolean accept(java.io.File dir, java.lang.String name){
+            if (0 < name.length() && '.' != name.charAt(0)){
+                int index = this.index;
+                if (index < this.last){
+                    this.index = (index+1);
+                    return (index >= this.from);
+                }
+            }
+            return false;
+        }
+    }
+    /**
+     * <p> Addresses of a window of directory entries, constructed as
+     * iterated.  A listing is iterated once. </p>
+     * 
+     * @see File#iterateItems(int,int)
+     * @see File#iterateVersions(int,int)
+     */
+    public final static class Listing
+        extends java.lang.Object
+        implements java.util.Iterator<Address>
+    {
+        private final Address address;
+
+        private final Component[] items;
+
+        private final java.lang.String[] names;
+
+        private int index;
+
+        /**
+         * @param items Class components for item addresses, or null
+         * for version addresses under address
+         */
+        Listing(Address address, Component[] items, java.lang.String[] names){
+            super();
+            this.address = address;
+            this.items = items;
+            if (null != names)
+                this.names = names;
+            else
+                this.names = new java.lang.String[0];
+        }
+
+
+        public int size(){
+            return this.names.length;
+        }
+        public boolean hasNext(){
+            return (this.index < this.names.length);
+        }
+        public Address next(){
+            int index = this.index;
+            if (index < this.names.length){
+                java.lang.String name = this.names[index];
+                this.names[index] = null;
+                this.index = (index+1);
+                Component[] items = this.items;
+                if (null != items){
+                    Component[] component = Component.List.Add(items,name);
+                    component = Component.List.Add(component,Component.Version.Current);
+                    return new Address(component);
+                }
+                else
+                    return new Address(this.address,name);
+            }
+            else
+                throw new java.util.NoSuchElementException();
+        }
+        public void remove(){
+            throw new java.lang.UnsupportedOperationException();
+        }
+        /**
+         * @return Remaining addresses
+         */
+        public Address[] toArray(){
+            Address[] list = new Address[this.names.length - this.index];
+            for (int cc = 0, count = list.length; cc < count; cc++)
+                list[cc] = this.next();
+            return list;
+        }
+    }
     protected final static void Commit(java.nio.channels.WritableByteChannel dstc)
         throws java.io.IOException
     {
@@ -150,8 +493,30 @@ public abstract class File
     }
 
 
-    protected final alto.sys.Lock.Advanced lock = 
-        new alto.sys.lock.Light();
+    /**
+     * File lock implementation from the system property
+     * <code>"alto.sys.File.Lock"</code>, "light" (default) or
+     * "stamped" for {@link alto.sys.lock.Stamped}.
+     */
+    public final static java.lang.String LockType = java.lang.System.getProperty("alto.sys.File.Lock","light");
+
+    /**
+     * @return New lock of the {@link #LockType}, instrumented when
+     * {@link alto.sys.lock.Instrumented#Enabled}
+     */
+    protected final static alto.sys.Lock.Advanced NewLock(Address address){
+        alto.sys.Lock.Advanced lock;
+        if ("stamped".equalsIgnoreCase(LockType))
+            lock = new alto.sys.lock.Stamped();
+        else if ("light".equalsIgnoreCase(LockType))
+            lock = new alto.sys.lock.Light();
+        else
+            throw new alto.sys.Error.State("alto.sys.File.Lock: "+LockType);
+        return alto.sys.lock.Instrumented.Wrap(lock,address);
+    }
+
+
+    protected final alto.sys.Lock.Advanced lock;
 
     protected final Partition partition;
 
@@ -171,6 +536,12 @@ public abstract class File
 
     protected volatile Object content;
 
+    protected volatile Mapping mapping;
+
+    protected volatile VersionIndex versions;
+
+    protected volatile Stat statHead;
+
 
     /**
      * 
@@ -179,6 +550,7 @@ public abstract class File
         super(fsloc);
         this.partition = partition;
         this.address = address;
+        this.lock = NewLock(address);
         this.stat(true);
     }
     /**
@@ -196,7 +568,13 @@ public abstract class File
         throws java.io.IOException
     {
         HttpMessage message = this.message;
-        if (null != message)
+        if (null != message){
+            if (this.isPersistent())
+                FileManager.messages.touch(this);
+
+            return message;
+        }
+        else if (null != (message = this.readPending()))
             return message;
         else if (this.isFile()){
             this.lockReadEnter();
@@ -204,10 +582,15 @@ public abstract class File
                 /*
                  * Read message from storage
                  */
+                FileManager.messages.miss(this);
+
                 message = this.newHttpMessage();
-                this.message = message;
-                alto.io.Input in = this.openMessageInput();
+                FileInputStream in = this.openMessageInput();
                 message.readMessage(in);
+                java.lang.String blob = in.getBlob();
+                if (null != blob)
+                    FileManager.blobs.remember(message.getBody(),blob);
+                this.hold(message);
                 return message;
             }
             finally {
@@ -247,32 +630,394 @@ public abstract class File
                 this.stat(message.getContentLength(),message.getLastModified());
             }
             else {
-                /*
-                 * [TODO] Asynchronous Cache Writes 
-                 */
-                alto.io.Output out = this.openMessageOutput(message);
-                try {
-                    message.writeMessage(out);
+                this.partition.check(this.address,this.growth(message));
+
+                Journal journal = FileManager.journal;
+                if (null != journal && this.isNotTransactional()){
+                    /*
+                     * Write behind
+                     */
+                    journal.write(this,message);
+                    this.hold(message);
                 }
-                finally {
-                    out.close();
+                else {
+                    this.writeThrough(message,false);
+                    this.hold(message);
                 }
-                this.message = message;
-
-                FileManager.DFSNotifyPUT(this);
             }
             return true;
         }
         else
             return false;
     }
+    /**
+     * Write message to storage, and notify DFS.  The file is written
+     * under its write lock, after dropping any mapping of the body
+     * that the write would truncate.
+     * 
+     * @param force Force the file to the device before returning, as
+     * for a message dropped from the journal
+     * @see Journal
+     */
+    @Code(Check.Locking)
+    void writeThrough(HttpMessage message, boolean force)
+        throws java.io.IOException
+    {
+        BlobStore blobs = FileManager.blobs;
+        java.lang.String blob = null;
+        if (null != blobs && this.isNotTransactional())
+            blob = blobs.write(message);
+
+        this.lockWriteEnter();
+        try {
+            this.unmap();
+            this.statHead = null;
+
+            long before = super.length();
+            FileOutputStream out = this.openMessageOutput(message);
+            try {
+                if (null != blob){
+                    /*
+                     * Stub
+                     */
+                    blobs.writeStub(out,blob);
+                    message.writeMessageHead(out);
+                }
+                else
+                    message.writeMessage(out);
+
+                if (force){
+                    out.flush();
+                    out.getFD().sync();
+                }
+            }
+            finally {
+                out.close();
+            }
+            this.partition.account(this.address,(super.length()-before));
+            this.indexVersion(true);
+        }
+        finally {
+            this.lockWriteExit();
+        }
+        FileManager.DFSNotifyPUT(this);
+    }
+    /**
+     * @return Estimate of bytes to be written less bytes to be
+     * replaced, for the {@link Partition} check before a write.  The
+     * write accounts the change in length on disk.
+     */
+    private long growth(HttpMessage message){
+        return (java.lang.Math.max(0L,message.getContentLength()) - this.statLength);
+    }
+    /**
+     * @return Message written to the journal and not yet to storage,
+     * or null
+     */
+    protected HttpMessage readPending(){
+        Journal journal = FileManager.journal;
+        if (null != journal && this.isPersistent())
+            return journal.read(this);
+        else
+            return null;
+    }
+    /**
+     * @return Dropped a message written to the journal and not yet to
+     * storage
+     */
+    protected boolean dropPending(){
+        Journal journal = FileManager.journal;
+        if (null != journal)
+            return journal.drop(this);
+        else
+            return false;
+    }
+    /**
+     * Read the message into memory and copy it to the destination.
+     * The destination is not written to its socket.
+     * 
+     * @see #sendTo(alto.lang.HttpMessage)
+     * @see #BytesStreamed()
+     */
     @Code(Check.Locking)
     public boolean copyTo(HttpMessage dst)
         throws java.io.IOException
     {
         HttpMessage message = this.read();
+        if (null != message){
+            if (message.copyTo(dst)){
+                BytesStreamed.addAndGet(java.lang.Math.max(0,message.getContentLength()));
+                return true;
+            }
+            else
+                return false;
+        }
+        else
+            return false;
+    }
+    /**
+     * <p> Send the stored message as the destination, writing the
+     * destination head and the stored body to the destination socket
+     * without reading the body into memory. </p>
+     * 
+     * <p> When the destination has a plain TCP socket channel, the
+     * stored body is sent from the file to the channel with {@link
+     * java.nio.channels.FileChannel#transferTo(long,long,java.nio.channels.WritableByteChannel)
+     * transferTo}.  Otherwise a body of at least {@link
+     * #MapThreshold} bytes is sent from a {@link #map() mapping}.
+     * </p>
+     * 
+     * @return The destination has been written to its socket.  When
+     * false, nothing has been written, and the caller copies the
+     * message with {@link #copyTo(alto.lang.HttpMessage)} and writes
+     * the destination.
+     * 
+     * @see #BytesTransferred()
+     * @see #BytesMapped()
+     */
+    @Code(Check.Locking)
+    public boolean sendTo(HttpMessage dst)
+        throws java.io.IOException
+    {
+        if (null == this.message && this.isPersistent() && this.isFile() && null == this.readPending()){
+            java.nio.channels.SocketChannel channel = ChannelTcp(dst);
+            if (null != channel)
+                return this.transferTo(dst,channel);
+            else if (MapThreshold <= this.statLength && null != dst && dst.hasSocket())
+                return this.mappedTo(dst);
+        }
+        return false;
+    }
+    /**
+     * Write head from storage through the destination to its socket,
+     * and then the body from storage to the socket channel.
+     */
+    @Code(Check.Locking)
+    private boolean transferTo(HttpMessage dst, java.nio.channels.SocketChannel channel)
+        throws java.io.IOException
+    {
+        this.lockReadEnter();
+        try {
+            FileInputStream in = this.openMessageInput();
+            try {
+                HttpMessage head = this.newHttpMessage();
+                head.readMessageHead(in);
+                if (head.headTo(dst)){
+                    java.nio.channels.FileChannel file = in.getBodyChannel();
+                    long position = file.position();
+                    long length = (file.size()-position);
+                    if (head.hasContentLength())
+                        length = java.lang.Math.min(length,head.getContentLength());
+
+                    alto.lang.OutputStream out = new alto.lang.OutputStream(dst.getSocket());
+                    dst.writeMessageHead(out);
+                    out.flush();
+
+                    long count = 0L;
+                    while (count < length){
+                        long many = file.transferTo((position+count),(length-count),channel);
+                        if (0L < many)
+                            count += many;
+                        else
+                            throw new java.io.EOFException(this.toString());
+                    }
+                    BytesTransferred.addAndGet(count);
+                    return true;
+                }
+                else
+                    return false;
+            }
+            finally {
+                in.close();
+            }
+        }
+        finally {
+            this.lockReadExit();
+        }
+    }
+    /**
+     * Write head through the destination to its socket, and then the
+     * body from the mapping, holding the read lock so that the mapped
+     * file is not truncated by a write.
+     */
+    @Code(Check.Locking)
+    private boolean mappedTo(HttpMessage dst)
+        throws java.io.IOException
+    {
+        Mapping mapping = this.map();
+        if (null != mapping){
+            try {
+                this.lockReadEnter();
+                try {
+                    if (mapping == this.mapping && mapping.getHead().headTo(dst)){
+                        alto.lang.OutputStream out = new alto.lang.OutputStream(dst.getSocket());
+                        dst.writeMessageHead(out);
+                        out.flush();
+                        BytesMapped.addAndGet(mapping.copyTo(java.nio.channels.Channels.newChannel(out)));
+                        out.flush();
+                        return true;
+                    }
+                    else
+                        return false;
+                }
+                finally {
+                    this.lockReadExit();
+                }
+            }
+            finally {
+                mapping.release();
+            }
+        }
+        else
+            return false;
+    }
+    /**
+     * Map the body of the stored message read only, or reuse the
+     * current mapping.  The caller must release the returned mapping.
+     * 
+     * @return Mapping, or null for not found, not persistent, or a
+     * body longer than a mapping
+     */
+    @Code(Check.Locking)
+    public Mapping map()
+        throws java.io.IOException
+    {
+        Mapping mapping = this.mapping;
+        if (null != mapping && mapping.isValidFor(this) && mapping.acquire())
+            return mapping;
+        else if (this.isPersistent() && this.isFile() && null == this.readPending()){
+            this.lockWriteEnter();
+            try {
+                mapping = this.mapping;
+                if (null != mapping){
+                    if (mapping.isValidFor(this) && mapping.acquire())
+                        return mapping;
+                    else {
+                        this.mapping = null;
+                        mapping.release();
+                    }
+                }
+                long statLast = this.statLast, statLength = this.statLength;
+                FileInputStream in = this.openMessageInput();
+                try {
+                    HttpMessage head = this.newHttpMessage();
+                    head.readMessageHead(in);
+                    java.nio.channels.FileChannel file = in.getBodyChannel();
+                    long position = file.position();
+                    long length = (file.size()-position);
+                    if (head.hasContentLength())
+                        length = java.lang.Math.min(length,head.getContentLength());
+                    if (java.lang.Integer.MAX_VALUE < length)
+                        return null;
+                    else {
+                        java.nio.MappedByteBuffer buffer = file.map(java.nio.channels.FileChannel.MapMode.READ_ONLY,position,length);
+                        mapping = new Mapping(head,buffer,statLast,statLength);
+                        mapping.acquire();
+                        this.mapping = mapping;
+                        return mapping;
+                    }
+                }
+                finally {
+                    in.close();
+                }
+            }
+            finally {
+                this.lockWriteExit();
+            }
+        }
+        else
+            return null;
+    }
+    /**
+     * Release this file's reference to its mapping.
+     */
+    protected void unmap(){
+        Mapping mapping = this.mapping;
+        if (null != mapping){
+            this.mapping = null;
+            mapping.release();
+        }
+    }
+    /**
+     * @return Validators and head of the stored message, from the
+     * message or mapping when held, or else read from storage without
+     * reading the message body.  Null for not found.  A held or
+     * pending message is preferred to the stat record, which is
+     * retained under the read lock and cleared by every write.
+     */
+    @Code(Check.Locking)
+    public Stat getStat()
+        throws java.io.IOException
+    {
+        HttpMessage message = this.message;
+        if (null == message)
+            message = this.readPending();
         if (null != message)
-            return message.copyTo(dst);
+            return new Stat(message);
+        else {
+            Stat stat = this.statHead;
+            if (null != stat)
+                return stat;
+            else if (this.isPersistent() && this.isFile()){
+                this.lockReadEnter();
+                try {
+                    Mapping mapping = this.mapping;
+                    if (null != mapping && mapping.isValidFor(this))
+                        stat = new Stat(mapping.getHead());
+                    else {
+                        FileInputStream in = this.openMessageInput();
+                        try {
+                            HttpMessage head = this.newHttpMessage();
+                            head.readMessageHead(in);
+                            stat = new Stat(head);
+                        }
+                        finally {
+                            in.close();
+                        }
+                    }
+                    this.statHead = stat;
+                    return stat;
+                }
+                finally {
+                    this.lockReadExit();
+                }
+            }
+            else
+                return null;
+        }
+    }
+    /**
+     * Conditional GET: a 304 decision from the {@link Stat} record.
+     * 
+     * @return The request "If-None-Match" or "If-Modified-Since" is
+     * satisfied by the stored message, which is unmodified
+     */
+    @Code(Check.Locking)
+    public boolean isNotModified(HttpMessage request)
+        throws java.io.IOException
+    {
+        if (request.hasIfNoneMatch() || request.hasIfModifiedSince()){
+            Stat stat = this.getStat();
+            if (null != stat && stat.isNotModified(request)){
+                ShortCircuited.incrementAndGet();
+                return true;
+            }
+        }
+        return false;
+    }
+    /**
+     * HEAD: copy the head of the stored message from the {@link Stat}
+     * record to the destination.
+     */
+    @Code(Check.Locking)
+    public boolean headTo(HttpMessage dst)
+        throws java.io.IOException
+    {
+        Stat stat = this.getStat();
+        if (null != stat && stat.getHead().headTo(dst)){
+            ShortCircuited.incrementAndGet();
+            return true;
+        }
         else
             return false;
     }
@@ -301,7 +1046,9 @@ public abstract class File
                         transaction.release();
 
                     if (super.renameTo(dst)){
+                        this.unmap();
                         this.drop();
+                        this.indexRename(dst);
                         return true;
                     }
                     else
@@ -311,7 +1058,9 @@ public abstract class File
                     return false;
             }
             else if (super.renameTo(dst)){
+                this.unmap();
                 this.drop();
+                this.indexRename(dst);
                 return true;
             }
             else
@@ -357,27 +1106,41 @@ public abstract class File
 
                     transaction.release();
 
-                    if (Delete(this)){
-                        this.dropBuffer();
-                        return true;
-                    }
-                    else
-                        return false;
+                    return this.deleteStorage();
                 }
                 else
                     return false;
             }
-            else if (Delete(this)){
-                this.dropBuffer();
-                return true;
-            }
             else
-                return false;
+                return this.deleteStorage();
         }
         finally {
             this.lockWriteExit();
         }
     }
+    /**
+     * Delete under the write lock.  A write pending in the journal is
+     * dropped, and when nothing is on disk the file is deleted with
+     * it.
+     */
+    private boolean deleteStorage(){
+        boolean pending = this.dropPending();
+        long length = super.length();
+        if (Delete(this)){
+            this.partition.account(this.address,-length);
+            this.dropBuffer();
+            this.unmap();
+            this.indexVersion(false);
+            return true;
+        }
+        else if (pending){
+            this.dropBuffer();
+            this.unmap();
+            return true;
+        }
+        else
+            return false;
+    }
     /**
      * Alias for {@link #dropBuffer()}. 
      */
@@ -408,7 +1171,26 @@ public abstract class File
         else {
             String statLastTag = this.statLastTag;
             if (null == statLastTag){
-                statLastTag = ETag(this);
+                alto.sys.Lock.Advanced lock = this.lock;
+                if (lock instanceof alto.sys.Lock.Optimistic){
+                    /*
+                     * Length and last modified from one stat
+                     */
+                    alto.sys.Lock.Optimistic optimistic = (alto.sys.Lock.Optimistic)lock;
+                    long stamp = optimistic.lockReadOptimistic();
+                    statLastTag = ETag(this.statLength,this.statLast);
+                    if (!optimistic.lockReadValidate(stamp)){
+                        optimistic.lockReadEnter();
+                        try {
+                            statLastTag = ETag(this.statLength,this.statLast);
+                        }
+                        finally {
+                            optimistic.lockReadExit();
+                        }
+                    }
+                }
+                else
+                    statLastTag = ETag(this);
                 this.statLastTag = statLastTag;
             }
             return statLastTag;
@@ -467,7 +1249,7 @@ public abstract class File
     public abstract boolean isCached();
 
     public boolean exists(){
-        return (this.statExists);
+        return (this.statExists || null != this.readPending());
     }
     public boolean canRead(){
         return (this.statExists);
@@ -488,6 +1270,8 @@ public abstract class File
     public boolean isFile(){
         if (this.statExists)
             return this.statIsfile;
+        else if (null != this.readPending())
+            return true;
 
 //         else if (this.dirty){
 //             if (FileManager.DFSRequestGET(this)){
@@ -600,7 +1384,35 @@ public abstract class File
      * file.
      */
     public void dropBuffer(){
-        this.message = null;
+        this.release();
+    }
+    /**
+     * Hold a message read from or written to persistent storage,
+     * bounded by the {@link FileManager#Messages() message cache}.
+     */
+    private void hold(HttpMessage message){
+        this.statHead = null;
+        this.message = message;
+        if (this.isPersistent())
+            FileManager.messages.put(this,message);
+    }
+    /**
+     * Drop the held message from this file and the message cache.
+     */
+    private void release(){
+        this.statHead = null;
+        if (null != this.message){
+            this.message = null;
+            FileManager.messages.remove(this);
+        }
+    }
+    /**
+     * Called by the message cache on evicting a message, which is
+     * dropped when still held.  Stat metadata is retained.
+     */
+    void evicted(HttpMessage message){
+        if (message == this.message)
+            this.message = null;
     }
     public void ensureContainer()
         throws java.io.IOException
@@ -616,7 +1428,18 @@ public abstract class File
     {
         this.lockReadEnter();
         try {
-            return new FileInputStream(this);
+            FileInputStream in = new FileInputStream(this);
+            BlobStore blobs = FileManager.blobs;
+            if (null != blobs){
+                try {
+                    blobs.open(in);
+                }
+                catch (java.io.IOException exc){
+                    in.close();
+                    throw exc;
+                }
+            }
+            return in;
         }
         catch (java.io.FileNotFoundException exc){
             throw new NotFoundException(exc,"Not found");
@@ -757,26 +1580,32 @@ public abstract class File
             return null;
     }
     public Address[] listItems(){
+        Listing list = this.iterateItems(0,java.lang.Integer.MAX_VALUE);
+        if (null != list && 0 < list.size())
+            return list.toArray();
+        else
+            return null;
+    }
+    /**
+     * @param from Index of first entry, as {@link
+     * FileManager.List#From(alto.io.Uri)}
+     * @param count Number of entries, as {@link
+     * FileManager.List#Count(alto.io.Uri)}
+     * @return Item addresses in the window, or null for directory not
+     * found
+     * @see Window
+     */
+    public Listing iterateItems(int from, int count){
         Address address = this.address;
         if (address.isAddressToClass()){
-            String[] flist = this.list();
+            String[] flist = this.list(new Window(from,count));
             if (null != flist){
-                Component relation = address.getComponentRelation();
-                Component container = address.getComponentContainer();
-                Component typeclass = address.getComponentClass();
-                Component version = Component.Version.Current;
                 Component[] base = {
-                    relation,
-                    container,
-                    typeclass
-                }, component;
-                Address[] list = null;
-                for (int cc = 0, count = flist.length; cc < count; cc++){
-                    component = Component.List.Add(base,flist[cc]);
-                    component = Component.List.Add(component,version);
-                    list = Address.List.Add(list,new Address(component));
-                }
-                return list;
+                    address.getComponentRelation(),
+                    address.getComponentContainer(),
+                    address.getComponentClass()
+                };
+                return new Listing(address,base,flist);
             }
             else
                 return null;
@@ -787,16 +1616,9 @@ public abstract class File
     public Address[] listVersions(){
         Address address = this.address;
         if (address.isAddressBasePath()){
-            String[] flist = this.list();
-            if (null != flist){
-                Address[] list = null;
-                for (int cc = 0, count = flist.length; cc < count; cc++){
-                    String name = flist[cc];
-                    Address add = new Address(address,name);
-                    list = Address.List.Add(list,add);
-                }
-                return list;
-            }
+            Listing list = this.iterateVersions(0,java.lang.Integer.MAX_VALUE);
+            if (null != list && 0 < list.size())
+                return list.toArray();
             else
                 return null;
         }
@@ -808,17 +1630,65 @@ public abstract class File
         else
             throw new alto.sys.Error.Bug();
     }
-    public Component.Version lastVersion(){
+    /**
+     * @return Version addresses in the window, or null for directory
+     * not found
+     * @see #iterateItems(int,int)
+     */
+    public Listing iterateVersions(int from, int count){
         Address address = this.address;
         if (address.isAddressBasePath()){
-            String[] flist = this.list();
-            if (null != flist){
-                long last = 0;
-                for (int cc = 0, count = flist.length; cc < count; cc++){
-                    String name = flist[cc];
-                    Component.Version test = Component.Version.Tools.ValueOf(name);
-                    last = Math.max(last,test.numericValue());
+            String[] flist = this.list(new Window(from,count));
+            if (null != flist)
+                return new Listing(address,null,flist);
+            else
+                return null;
+        }
+        else if (address.hasComponentTerminal()){
+            Address base = address.getAddressBasePath();
+            File basef = FileManager.Instance().getStorage(base);
+            return basef.iterateVersions(from,count);
+        }
+        else
+            throw new alto.sys.Error.Bug();
+    }
+    /**
+     * Numeric versions from first to last, inclusive, in ascending
+     * order from the {@link VersionIndex}.
+     * 
+     * @return Null for none
+     */
+    public Address[] listVersions(long first, long last){
+        Address address = this.address;
+        if (address.isAddressBasePath()){
+            VersionIndex index = this.getVersionIndex();
+            if (null != index){
+                long[] versions = index.list(first,last);
+                int count = versions.length;
+                if (0 < count){
+                    Component[] path = address.getAddressPath();
+                    Address[] list = new Address[count];
+                    for (int cc = 0; cc < count; cc++)
+                        list[cc] = new Address(path,new alto.lang.component.Version(versions[cc]));
+                    return list;
                 }
+            }
+            return null;
+        }
+        else if (address.hasComponentTerminal()){
+            Address base = address.getAddressBasePath();
+            File basef = FileManager.Instance().getStorage(base);
+            return basef.listVersions(first,last);
+        }
+        else
+            throw new alto.sys.Error.Bug();
+    }
+    public Component.Version lastVersion(){
+        Address address = this.address;
+        if (address.isAddressBasePath()){
+            VersionIndex index = this.getVersionIndex();
+            if (null != index){
+                long last = index.last();
                 if (0 != last)
                     return new alto.lang.component.Version(last);
             }
@@ -832,6 +1702,63 @@ public abstract class File
         else
             throw new alto.sys.Error.Bug();
     }
+    /**
+     * @return Index of numeric versions in this base path directory,
+     * or null for directory not found
+     */
+    public VersionIndex getVersionIndex(){
+        VersionIndex index = this.versions;
+        if (null == index && this.address.isAddressBasePath()){
+            this.lockWriteEnter();
+            try {
+                index = this.versions;
+                if (null == index){
+                    index = VersionIndex.Open(this);
+                    this.versions = index;
+                }
+            }
+            catch (java.io.IOException exc){
+                throw new alto.sys.Error.State(this.getPath(),exc);
+            }
+            finally {
+                this.lockWriteExit();
+            }
+        }
+        return index;
+    }
+    /**
+     * Maintain the version index of the base path for a numeric
+     * version added or removed.
+     */
+    protected void indexVersion(boolean add){
+        Address address = this.address;
+        if (address.isAddressToTerminal()){
+            long version = address.getComponentTerminal().numericValue();
+            if (0L < version){
+                Address base = address.getAddressBasePath();
+                File basef = FileManager.Instance().getStorage(base);
+                if (null != basef){
+                    VersionIndex index = basef.getVersionIndex();
+                    if (null != index){
+                        try {
+                            if (add)
+                                index.add(version);
+                            else
+                                index.remove(version);
+                        }
+                        catch (java.io.IOException exc){
+                            basef.versions = null;
+                        }
+                    }
+                }
+            }
+        }
+    }
+    private void indexRename(java.io.File dst){
+        this.indexVersion(false);
+        if (dst instanceof File)
+            ((File)dst).indexVersion(true);
+    }
     public Address lastVersionAddress(){
         Component.Version lastVersion = this.lastVersion();
         return new Address(this.address.getAddressPath(),lastVersion);
@@ -934,36 +1861,55 @@ public abstract class File
         else
             return this.toString().equals(ano.toString());
     }
+    /**
+     * Stat fields are written under the write lock, for the
+     * optimistic read in {@link #getETag()}.
+     */
+    @Code(Check.Locking)
     public void destroy(){
-        this.transaction = null;
-        this.message = null;
-        this.content = null;
-        this.statExists = false;
-        this.statLast = 0L;
-        this.statLastString = null;
-        this.statLastTag = null;
-        this.statLength = 0L;
-    }
-    protected void stat(boolean test){
-        if (test){
-            this.message = null;
-            this.dirty = false;
-            this.statExists = super.exists();
-            this.statIsfile = super.isFile();
-            this.statLast = this.statUpdateLastModified();
-            this.statLastString = null;
-            this.statLastTag = null;
-            this.statLength = super.length();
-        }
-        else {
-            this.message = null;
+        this.lockWriteEnter();
+        try {
+            this.transaction = null;
+            this.release();
+            this.unmap();
+            this.content = null;
             this.statExists = false;
-            this.statIsfile = false;
             this.statLast = 0L;
             this.statLastString = null;
             this.statLastTag = null;
             this.statLength = 0L;
         }
+        finally {
+            this.lockWriteExit();
+        }
+    }
+    @Code(Check.Locking)
+    protected void stat(boolean test){
+        this.lockWriteEnter();
+        try {
+            if (test){
+                this.release();
+                this.dirty = false;
+                this.statExists = super.exists();
+                this.statIsfile = super.isFile();
+                this.statLast = this.statUpdateLastModified();
+                this.statLastString = null;
+                this.statLastTag = null;
+                this.statLength = super.length();
+            }
+            else {
+                this.release();
+                this.statExists = false;
+                this.statIsfile = false;
+                this.statLast = 0L;
+                this.statLastString = null;
+                this.statLastTag = null;
+                this.statLength = 0L;
+            }
+        }
+        finally {
+            this.lockWriteExit();
+        }
     }
     protected long statUpdateLastModified(){
         HttpMessage message = this.message;
@@ -981,20 +1927,27 @@ public abstract class File
         else
             this.stat(true);
     }
+    @Code(Check.Locking)
     private void stat(long last, long length){
-        boolean isfile = (this.isPersistent() && super.isFile());
-        this.statExists = isfile;
-        this.statIsfile = isfile;
-        this.statLength = length;
-        this.message = null;
-        this.dirty = false;
-        if (0L < last){
-            this.setLastModified(last);
+        this.lockWriteEnter();
+        try {
+            boolean isfile = (this.isPersistent() && super.isFile());
+            this.statExists = isfile;
+            this.statIsfile = isfile;
+            this.statLength = length;
+            this.release();
+            this.dirty = false;
+            if (0L < last){
+                this.setLastModified(last);
+            }
+            else {
+                this.statLast = super.lastModified();
+                this.statLastString = null;
+                this.statLastTag = null;
+            }
         }
-        else {
-            this.statLast = super.lastModified();
-            this.statLastString = null;
-            this.statLastTag = null;
+        finally {
+            this.lockWriteExit();
         }
     }
     /**
@@ -48,6 +48,13 @@ public class FileInputStream
 
     private alto.io.u.Bbuf linebuf;
 
+    /**
+     * Message body from the {@link BlobStore} following a stub
+     */
+    private java.io.FileInputStream body;
+
+    private java.lang.String blob;
+
 
 
     public FileInputStream(File file)
@@ -65,10 +72,106 @@ public class FileInputStream
     public boolean isOpen(){
         return this.getChannel().isOpen();
     }
+    /**
+     * Called by {@link BlobStore#open(FileInputStream)} when this file
+     * is a stub, following the stub line.
+     */
+    void setBody(java.io.FileInputStream body, java.lang.String blob){
+        this.body = body;
+        this.blob = blob;
+    }
+    /**
+     * @return Key of the message body in the {@link BlobStore}, or
+     * null for a message body in this file
+     */
+    public java.lang.String getBlob(){
+        return this.blob;
+    }
+    /**
+     * @return Channel to read the message body from, following the
+     * message head
+     */
+    public FileChannel getBodyChannel(){
+        java.io.FileInputStream body = this.body;
+        if (null != body)
+            return body.getChannel();
+        else
+            return this.getChannel();
+    }
     public int read(java.nio.ByteBuffer dst) 
         throws java.io.IOException
     {
-        return this.getChannel().read(dst);
+        java.io.FileInputStream body = this.body;
+        if (null != body){
+            int re = this.getChannel().read(dst);
+            if (-1 == re)
+                return body.getChannel().read(dst);
+            else
+                return re;
+        }
+        else
+            return this.getChannel().read(dst);
+    }
+    public int read()
+        throws java.io.IOException
+    {
+        int re = super.read();
+        if (-1 == re && null != this.body)
+            return this.body.read();
+        else
+            return re;
+    }
+    public int read(byte[] b)
+        throws java.io.IOException
+    {
+        return this.read(b,0,b.length);
+    }
+    public int read(byte[] b, int ofs, int len)
+        throws java.io.IOException
+    {
+        int re = super.read(b,ofs,len);
+        if (-1 == re && null != this.body)
+            return this.body.read(b,ofs,len);
+        else
+            return re;
+    }
+    public long skip(long n)
+        throws java.io.IOException
+    {
+        java.io.FileInputStream body = this.body;
+        if (null != body){
+            FileChannel channel = this.getChannel();
+            long head = java.lang.Math.max(0L,java.lang.Math.min(n,(channel.size()-channel.position())));
+            if (0L < head)
+                channel.position(channel.position()+head);
+            if (head < n)
+                return (head + body.skip(n-head));
+            else
+                return head;
+        }
+        else
+            return super.skip(n);
+    }
+    public int available()
+        throws java.io.IOException
+    {
+        int re = super.available();
+        if (0 == re && null != this.body)
+            return this.body.available();
+        else
+            return re;
+    }
+    public void close()
+        throws java.io.IOException
+    {
+        try {
+            super.close();
+        }
+        finally {
+            java.io.FileInputStream body = this.body;
+            if (null != body)
+                body.close();
+        }
     }
     private alto.io.u.Bbuf linebuf(){
         alto.io.u.Bbuf linebuf = this.linebuf;
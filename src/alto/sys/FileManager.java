@@ -52,12 +52,21 @@ import java.util.Set;
 public abstract class FileManager
     extends DFS
 {
+    /**
+     * @return The thread context class loader, as defined by {@link
+     * #SInit(alto.sys.FileManager)} or a {@link Carrier}, or else the
+     * default file manager
+     */
     public static FileManager Instance(){
         java.lang.ClassLoader test = java.lang.Thread.currentThread().getContextClassLoader();
         if (test instanceof FileManager)
             return (FileManager)test;
         else {
-            throw new Error.State("File manager not initialized.");
+            FileManager fm = Default;
+            if (null != fm)
+                return fm;
+            else
+                throw new Error.State("File manager not initialized.");
         }
     }
     public final static void SInit(FileManager fm){
@@ -151,6 +160,12 @@ public abstract class FileManager
             else
                 return From(ref.getQuery("from"));
         }
+        public final static int From(Reference ref){
+            if (null == ref)
+                return 0;
+            else
+                return From(ref.getQuery("from"));
+        }
         public final static int Count(String string){
             if (null == string)
                 return Integer.MAX_VALUE;
@@ -310,8 +325,221 @@ public abstract class FileManager
     }
 
 
+    /**
+     * <p> Bounded cache of the messages held by {@link File} objects
+     * over persistent storage, weighed in bytes by content length.
+     * An evicted message is dropped by its file, and read again from
+     * storage when next required.  File stat metadata remains. </p>
+     * 
+     * <p> The byte bound is the system property
+     * <code>"alto.sys.FileManager.Messages"</code>, default {@link
+     * #DefaultBytes}. </p>
+     * 
+     * <h3>Stripes</h3>
+     * 
+     * <p> Files are distributed over {@link #Stripes} independently
+     * synchronized {@link alto.io.u.Bobjmap} caches, each bounded by
+     * its share of the entries and bytes, so that concurrent reads of
+     * different files rarely meet on one monitor.  A message heavier
+     * than the share of one stripe is not held. </p>
+     */
+    public final static class MessageCache
+        extends java.lang.Object
+    {
+        public final static long DefaultBytes = (64L << 20);
+
+        public final static int DefaultEntries = 0x10000;
+
+        /**
+         * Number of stripes, a power of two
+         */
+        public final static int Stripes = 0x8;
+
+        /**
+         * Weight of a message head
+         */
+        public final static long Head = 0x200L;
+
+        /**
+         * One stripe of the cache
+         */
+        private final static class Stripe
+            extends alto.io.u.Bobjmap
+        {
+            Stripe(int maxEntries, long maxBytes){
+                super(maxEntries,maxBytes);
+            }
+
+            protected long weigh(java.lang.Object key, java.lang.Object value){
+                HttpMessage message = (HttpMessage)value;
+                return (Head + java.lang.Math.max(0L,message.getContentLength()));
+            }
+            protected void evicted(java.lang.Object key, java.lang.Object value){
+                ((File)key).evicted((HttpMessage)value);
+            }
+        }
+
+
+        private final Stripe[] stripes;
+
+        private final long maxBytes;
+
+
+        MessageCache(long maxBytes){
+            super();
+            this.maxBytes = maxBytes;
+            Stripe[] stripes = new Stripe[Stripes];
+            for (int cc = 0; cc < Stripes; cc++)
+                stripes[cc] = new Stripe((DefaultEntries/Stripes),(maxBytes/Stripes));
+            this.stripes = stripes;
+        }
+
+
+        private Stripe stripe(File file){
+            int h = file.hashCode();
+            h ^= (h >>> 16);
+            return this.stripes[h & (Stripes-1)];
+        }
+        /**
+         * Record a hit on the held message of the file, and its
+         * recency.
+         */
+        void touch(File file){
+            this.stripe(file).get(file);
+        }
+        /**
+         * Record a miss for the file, reading its message from
+         * storage.
+         */
+        void miss(File file){
+            this.stripe(file).get(file);
+        }
+        void put(File file, HttpMessage message){
+            this.stripe(file).put(file,message);
+        }
+        void remove(File file){
+            this.stripe(file).remove(file);
+        }
+        public long getMaxBytes(){
+            return this.maxBytes;
+        }
+        public long getHits(){
+            long value = 0L;
+            for (Stripe stripe : this.stripes)
+                value += stripe.getHits();
+            return value;
+        }
+        public long getMisses(){
+            long value = 0L;
+            for (Stripe stripe : this.stripes)
+                value += stripe.getMisses();
+            return value;
+        }
+        public long getEvictions(){
+            long value = 0L;
+            for (Stripe stripe : this.stripes)
+                value += stripe.getEvictions();
+            return value;
+        }
+        public int size(){
+            int value = 0;
+            for (Stripe stripe : this.stripes)
+                value += stripe.size();
+            return value;
+        }
+        /**
+         * @return Ratio of hits to lookups, or zero
+         */
+        public double getHitRatio(){
+            long hits = this.getHits();
+            long total = (hits + this.getMisses());
+            if (0L < total)
+                return ((double)hits/(double)total);
+            else
+                return 0.0;
+        }
+        /**
+         * @return Bytes of messages held
+         */
+        public long getResidentBytes(){
+            long value = 0L;
+            for (Stripe stripe : this.stripes)
+                value += stripe.getWeight();
+            return value;
+        }
+        public void resetStatistics(){
+            for (Stripe stripe : this.stripes)
+                stripe.resetStatistics();
+        }
+        /**
+         * @return New statistic headers over the counters of all
+         * stripes
+         */
+        public alto.lang.Statistic[] statistics(){
+            alto.io.u.Bobjmap[] maps = this.stripes;
+            return new alto.lang.Statistic[]{
+                new alto.io.u.Bobjmap.Counter(alto.io.u.Bobjmap.Counter.Hits,maps),
+                new alto.io.u.Bobjmap.Counter(alto.io.u.Bobjmap.Counter.Misses,maps),
+                new alto.io.u.Bobjmap.Counter(alto.io.u.Bobjmap.Counter.Evictions,maps),
+                new alto.io.u.Bobjmap.Counter(alto.io.u.Bobjmap.Counter.Expirations,maps),
+                new alto.io.u.Bobjmap.Counter(alto.io.u.Bobjmap.Counter.Count,maps),
+                new alto.io.u.Bobjmap.Counter(alto.io.u.Bobjmap.Counter.Weight,maps)
+            };
+        }
+        /**
+         * Set the statistic headers into the argument.
+         */
+        public void statistics(alto.lang.Headers headers){
+            alto.lang.Statistic[] list = this.statistics();
+            for (int cc = 0, count = list.length; cc < count; cc++){
+                headers.setHeader(list[cc]);
+            }
+        }
+        public void clear(){
+            for (Stripe stripe : this.stripes)
+                stripe.clear();
+        }
+    }
+
+    protected final static MessageCache messages =
+        new MessageCache(java.lang.Long.getLong("alto.sys.FileManager.Messages",MessageCache.DefaultBytes));
+
+    /**
+     * @return Message cache for hit ratio, resident bytes and
+     * statistics
+     */
+    public final static MessageCache Messages(){
+        return messages;
+    }
+
+    protected final static FileRegistry registry = new FileRegistry();
+
+    /**
+     * @return Registry of file instances by address, for {@link
+     * #getStorage(alto.lang.Address)}, {@link
+     * #dropStorage(alto.lang.Address)} and {@link
+     * #deleteStorage(alto.lang.Address)}
+     */
+    public final static FileRegistry Registry(){
+        return registry;
+    }
+
+
     protected static Partition partition;
 
+    /**
+     * Write behind journal for the partition
+     * @see File#write(alto.lang.HttpMessage)
+     */
+    protected volatile static Journal journal;
+
+    /**
+     * Optional content addressed store of message bodies for the
+     * partition
+     * @see File#writeThrough(alto.lang.HttpMessage,boolean)
+     */
+    protected volatile static BlobStore blobs;
+
     protected final JavaFileManager.Location location;
 
     protected final Ctor.Location.Parsed locationParsed;
@@ -407,6 +635,15 @@ public abstract class FileManager
 
         try {
             this.dfsInit();
+
+            if (null == blobs)
+                blobs = BlobStore.For(partition);
+
+            if (null == journal){
+                Journal journal = new Journal(partition);
+                journal.replay(this);
+                FileManager.journal = journal;
+            }
             return this;
         }
         catch (java.io.IOException exc){
@@ -434,9 +671,16 @@ public abstract class FileManager
     @Code(Check.Locking)
     public abstract File deleteStorage(Address address);
 
+    /**
+     * @return The one file instance for the address, as from {@link
+     * FileRegistry#get(alto.lang.Address,FileRegistry.Factory)}
+     */
     @Code(Check.Locking)
     public abstract File getStorage(Address address);
 
+    /**
+     * @return File removed from the {@link FileRegistry}
+     */
     @Code(Check.Locking)
     public abstract File dropStorage(Address address);
 
@@ -453,6 +697,18 @@ public abstract class FileManager
         File dir = this.getStorage(base);
         return dir.listItems();
     }
+    /**
+     * Window of the listing by query parameters "from" and "count".
+     */
+    @Code(Check.Locking)
+    public final File.Listing iterateItems(Address base, Uri query){
+        return this.iterateItems(base,List.From(query),List.Count(query));
+    }
+    @Code(Check.Locking)
+    public final File.Listing iterateItems(Address base, int from, int count){
+        File dir = this.getStorage(base);
+        return dir.iterateItems(from,count);
+    }
     @Code(Check.Locking)
     public final Address[] listVersions(Reference ref){
         return this.listVersions(ref.getAddress());
@@ -463,6 +719,19 @@ public abstract class FileManager
         File dir = this.getStorage(path);
         return dir.listVersions();
     }
+    /**
+     * Window of the listing by query parameters "from" and "count".
+     */
+    @Code(Check.Locking)
+    public final File.Listing iterateVersions(Reference ref){
+        return this.iterateVersions(ref.getAddress(),List.From(ref),List.Count(ref));
+    }
+    @Code(Check.Locking)
+    public final File.Listing iterateVersions(Address address, int from, int count){
+        Address path = address.getAddressBasePath();
+        File dir = this.getStorage(path);
+        return dir.iterateVersions(from,count);
+    }
     /**
      * Classes are loaded from locations (output true) via a storage
      * reference of the form
@@ -0,0 +1,353 @@
+/*
+ * Copyright (C) 1998, 2009  John Pritchard and the Alto Project Group.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package alto.sys;
+
+import alto.lang.Address;
+
+/**
+ * <p> Registry of the one {@link File} instance for each {@link
+ * Address}, for {@link FileManager#getStorage(alto.lang.Address)}.
+ * The lock and message state of a file are only correct when every
+ * thread has the same instance. </p>
+ *
+ * <h3>Stripes</h3>
+ *
+ * <p> The address hash selects one of {@link #Stripes} hash tables,
+ * each with its own monitor, so that lookups of different addresses
+ * rarely contend.  </p>
+ *
+ * <h3>Retention</h3>
+ *
+ * <p> Entries are weak references.  A file referenced from elsewhere,
+ * for example by a lock holder, the message cache or the journal,
+ * remains registered.  The most recently used files are also held in
+ * a ring of {@link #Retain} strong references, so that an idle file is
+ * released only after that many later lookups.  Collected entries
+ * are removed on the next lookup that misses in their stripe.  </p>
+ *
+ * @see FileManager#Registry()
+ * @since 1.6
+ */
+public final class FileRegistry
+    extends java.lang.Object
+{
+    /**
+     * Constructs a file for an address not registered.
+     */
+    public interface Factory {
+
+        public File newFile(Address address);
+    }
+
+    /**
+     * Registry counter as a statistic header.
+     */
+    public final static class Counter
+        extends alto.lang.Statistic
+        implements alto.lang.Header.Update
+    {
+        public final static String Lookups  = "Storage-Lookups";
+        public final static String Misses   = "Storage-Misses";
+        public final static String Latency  = "Storage-Lookup-Nanos";
+        public final static String Resident = "Storage-Resident";
+
+        private final FileRegistry registry;
+
+
+        public Counter(String name, FileRegistry registry){
+            super(name);
+            if (null != registry){
+                this.registry = registry;
+                this.update();
+            }
+            else
+                throw new alto.sys.Error.Argument();
+        }
+
+
+        public long getCounter(){
+            return this.registry.counter(this.name);
+        }
+        public void update(){
+            long value = this.getCounter();
+            this.value = java.lang.String.valueOf(value);
+            this.parsed = java.lang.Long.valueOf(value);
+            this.string = (this.name+": "+this.value);
+        }
+    }
+
+    public final static int Stripes = 0x20;
+
+    /**
+     * Strong references to recently used files, from the system
+     * property <code>"alto.sys.FileRegistry.Retain"</code>, default
+     * 4096, rounded up to a power of two.
+     */
+    public final static int Retain = java.lang.Integer.getInteger("alto.sys.FileRegistry.Retain",0x1000);
+
+    private final static class Entry
+        extends java.lang.ref.WeakReference<File>
+    {
+        final Address address;
+
+        Entry(Address address, File file, java.lang.ref.ReferenceQueue<File> queue){
+            super(file,queue);
+            this.address = address;
+        }
+    }
+
+    private final static class Stripe
+        extends java.lang.Object
+    {
+        final java.util.HashMap<Address,Entry> map = new java.util.HashMap<Address,Entry>();
+
+        final java.lang.ref.ReferenceQueue<File> queue = new java.lang.ref.ReferenceQueue<File>();
+
+        /**
+         * Remove collected entries, under the stripe monitor.
+         */
+        void expunge(){
+            java.lang.ref.Reference<? extends File> ref;
+            while (null != (ref = this.queue.poll())){
+                Entry entry = (Entry)ref;
+                if (entry == this.map.get(entry.address))
+                    this.map.remove(entry.address);
+            }
+        }
+    }
+
+
+    private final Stripe[] stripes;
+
+    private final java.util.concurrent.atomic.AtomicReferenceArray<File> recent;
+
+    private final int recentMask;
+
+    private final java.util.concurrent.atomic.AtomicInteger recentIndex = new java.util.concurrent.atomic.AtomicInteger();
+
+    private final java.util.concurrent.atomic.AtomicLong lookups = new java.util.concurrent.atomic.AtomicLong();
+
+    private final java.util.concurrent.atomic.AtomicLong misses = new java.util.concurrent.atomic.AtomicLong();
+
+    private final java.util.concurrent.atomic.AtomicLong nanos = new java.util.concurrent.atomic.AtomicLong();
+
+
+    public FileRegistry(){
+        this(Retain);
+    }
+    /**
+     * @param retain Number of recently used files held strongly,
+     * rounded up to a power of two
+     */
+    public FileRegistry(int retain){
+        super();
+        Stripe[] stripes = new Stripe[Stripes];
+        for (int cc = 0; cc < Stripes; cc++)
+            stripes[cc] = new Stripe();
+        this.stripes = stripes;
+        int size = 1;
+        while (size < retain)
+            size <<= 1;
+        this.recent = new java.util.concurrent.atomic.AtomicReferenceArray<File>(size);
+        this.recentMask = (size-1);
+    }
+
+
+    /**
+     * @return Registered file, or null
+     */
+    public File get(Address address){
+        long start = java.lang.System.nanoTime();
+        Stripe stripe = this.stripe(address);
+        File file;
+        synchronized(stripe){
+            Entry entry = stripe.map.get(address);
+            if (null != entry)
+                file = entry.get();
+            else
+                file = null;
+        }
+        this.lookup(start,file);
+        return file;
+    }
+    /**
+     * @return Registered file, or the new file from the factory
+     * registered for the address
+     */
+    public File get(Address address, Factory factory){
+        long start = java.lang.System.nanoTime();
+        Stripe stripe = this.stripe(address);
+        File file;
+        boolean miss = false;
+        synchronized(stripe){
+            Entry entry = stripe.map.get(address);
+            if (null != entry)
+                file = entry.get();
+            else
+                file = null;
+            if (null == file){
+                miss = true;
+                stripe.expunge();
+                file = factory.newFile(address);
+                if (null != file)
+                    stripe.map.put(address,new Entry(address,file,stripe.queue));
+            }
+        }
+        if (miss){
+            this.misses.incrementAndGet();
+            if (null != file)
+                this.retain(file);
+            this.lookups.incrementAndGet();
+            this.nanos.addAndGet(java.lang.System.nanoTime()-start);
+        }
+        else
+            this.lookup(start,file);
+        return file;
+    }
+    /**
+     * @return The file registered for the address, which is the
+     * argument unless another was registered
+     */
+    public File put(File file){
+        Address address = file.getAddress();
+        Stripe stripe = this.stripe(address);
+        synchronized(stripe){
+            Entry entry = stripe.map.get(address);
+            if (null != entry){
+                File registered = entry.get();
+                if (null != registered)
+                    return registered;
+            }
+            stripe.expunge();
+            stripe.map.put(address,new Entry(address,file,stripe.queue));
+        }
+        this.retain(file);
+        return file;
+    }
+    /**
+     * @return Registered file removed, or null
+     */
+    public File remove(Address address){
+        Stripe stripe = this.stripe(address);
+        synchronized(stripe){
+            Entry entry = stripe.map.remove(address);
+            if (null != entry)
+                return entry.get();
+            else
+                return null;
+        }
+    }
+    /**
+     * Remove the file when it is the one registered for its address.
+     */
+    public boolean remove(File file){
+        Address address = file.getAddress();
+        Stripe stripe = this.stripe(address);
+        synchronized(stripe){
+            Entry entry = stripe.map.get(address);
+            if (null != entry && file == entry.get()){
+                stripe.map.remove(address);
+                return true;
+            }
+            else
+                return false;
+        }
+    }
+    /**
+     * @return Number of registered files not collected
+     */
+    public int size(){
+        int size = 0;
+        for (Stripe stripe : this.stripes){
+            synchronized(stripe){
+                stripe.expunge();
+                size += stripe.map.size();
+            }
+        }
+        return size;
+    }
+    public void clear(){
+        for (Stripe stripe : this.stripes){
+            synchronized(stripe){
+                stripe.map.clear();
+                stripe.expunge();
+            }
+        }
+        for (int cc = 0, count = this.recent.length(); cc < count; cc++)
+            this.recent.set(cc,null);
+    }
+    /**
+     * @return Mean lookup time in nanoseconds
+     */
+    public long getLookupNanos(){
+        long lookups = this.lookups.get();
+        if (0L < lookups)
+            return (this.nanos.get()/lookups);
+        else
+            return 0L;
+    }
+    /**
+     * @param name One of the counter names in {@link Counter}
+     * @return Counter value, or negative one for name not recognized
+     */
+    public long counter(String name){
+        if (Counter.Lookups.equals(name))
+            return this.lookups.get();
+        else if (Counter.Misses.equals(name))
+            return this.misses.get();
+        else if (Counter.Latency.equals(name))
+            return this.getLookupNanos();
+        else if (Counter.Resident.equals(name))
+            return this.size();
+        else
+            return -1L;
+    }
+    /**
+     * @return New statistic headers over this registry's counters
+     */
+    public alto.lang.Statistic[] statistics(){
+        return new alto.lang.Statistic[]{
+            new Counter(Counter.Lookups,this),
+            new Counter(Counter.Misses,this),
+            new Counter(Counter.Latency,this),
+            new Counter(Counter.Resident,this)
+        };
+    }
+    public void resetStatistics(){
+        this.lookups.set(0L);
+        this.misses.set(0L);
+        this.nanos.set(0L);
+    }
+    private Stripe stripe(Address address){
+        int hash = address.hashCode();
+        hash ^= (hash >>> 16);
+        return this.stripes[hash & (Stripes-1)];
+    }
+    private void lookup(long start, File file){
+        this.lookups.incrementAndGet();
+        if (null == file)
+            this.misses.incrementAndGet();
+        else
+            this.retain(file);
+        this.nanos.addAndGet(java.lang.System.nanoTime()-start);
+    }
+    private void retain(File file){
+        this.recent.lazySet(this.recentIndex.getAndIncrement() & this.recentMask,file);
+    }
+}
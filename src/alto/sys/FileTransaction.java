@@ -46,10 +46,12 @@ import alto.lang.Type;
  * 
  * <h3>Timeout</h3>
  * 
- * A file transaction is constructed and started as a thread in every
- * use case.  The thread times- out after a default or requested-
- * acceptable number of seconds, typically less than ten.  On timeout,
- * an open transaction is discarded.
+ * A file transaction is constructed and started in every use case.
+ * It times- out after a default or requested- acceptable number of
+ * seconds, typically less than ten.  On timeout, an open transaction
+ * is discarded.  The countdown is a {@link FileTransaction.Timeout}
+ * on the shared {@link Timer}, rather than a thread for each
+ * transaction.
  * 
  * <h3>Notes</h3>
  * 
@@ -71,7 +73,62 @@ public interface FileTransaction
     extends java.lang.Runnable
 {
     /**
-     * Begin countdown on transaction lock timeout.
+     * Transaction lock timeout on the shared {@link Timer}.  The
+     * transaction is scheduled in {@link FileTransaction#start()},
+     * and cancelled on commit, discard or release.  On timeout, an
+     * open transaction is discarded and a held lock released, in the
+     * context of the thread that started the transaction, and threads
+     * in {@link FileTransaction#waitfor(long)} on the transaction are
+     * notified.
+     */
+    public static class Timeout
+        extends Timer.Task
+    {
+        protected final FileTransaction transaction;
+
+
+        public Timeout(FileTransaction transaction){
+            super();
+            if (null != transaction)
+                this.transaction = transaction;
+            else
+                throw new alto.sys.Error.Argument();
+        }
+
+
+        public FileTransaction getFileTransaction(){
+            return this.transaction;
+        }
+        /**
+         * Schedule on the shared timer.
+         */
+        public Timeout start(long timeout){
+            Timer.Instance().schedule(this,timeout);
+            return this;
+        }
+        public void run(){
+            FileTransaction transaction = this.transaction;
+            try {
+                if (transaction.isOpen())
+                    transaction.discard();
+                else if (transaction.isHeld())
+                    transaction.release();
+            }
+            catch (java.io.IOException exc){
+                exc.printStackTrace();
+            }
+            finally {
+                synchronized(transaction){
+                    transaction.notifyAll();
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Begin countdown on transaction lock timeout, by scheduling a
+     * {@link FileTransaction.Timeout}.
      */
     public void start();
 
@@ -140,6 +197,10 @@ public interface FileTransaction
      * There is a network level race between the rename of named to
      * version, and the rename of temporary to named.  An unprotected
      * operation on named (e.g. GET) in this race window may fail.  
+     * 
+     * The renames are made with {@link File#renameTo(java.io.File)},
+     * which records the numeric version in the {@link VersionIndex}
+     * of the base path.
      */
     public void commit()
         throws java.io.IOException;
@@ -0,0 +1,516 @@
+/*
+ * Copyright (C) 1998, 2009  John Pritchard and the Alto Project Group.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package alto.sys;
+
+import alto.lang.Address;
+import alto.lang.Component;
+import alto.lang.HttpMessage;
+
+/**
+ * <p> Write behind journal for persistent, not transactional, {@link
+ * File} writes.  </p>
+ * 
+ * <h3>Operation</h3>
+ * 
+ * <p> A write appends the address and serialized message to the
+ * journal file in the {@link Partition}, and returns when the
+ * journal has been forced to the device.  Concurrent writers share
+ * one force (group commit).  The message is then pending for its
+ * address, and a later write to the same address replaces it.  </p>
+ * 
+ * <p> The journal thread writes pending messages to their files
+ * after a short delay, forcing each file to the device before its
+ * message is dropped, and truncates the journal when nothing remains
+ * pending.  Until then {@link File#read()} finds the pending message
+ * here.  </p>
+ * 
+ * <h3>Recovery</h3>
+ * 
+ * <p> On {@link FileManager#init()} the journal is replayed, writing
+ * the last complete record for each address to its file.  A torn
+ * record at the end of the journal is ignored.  The journal is
+ * truncated only after every file has been written and forced.
+ * </p>
+ * 
+ * <h3>Transactions</h3>
+ * 
+ * <p> Transactional writes hold a file lock for the writing
+ * principal, and remain synchronous.  </p>
+ * 
+ * @see File#write(alto.lang.HttpMessage)
+ * @since 1.6
+ */
+public final class Journal
+    extends java.lang.Object
+{
+    public final static java.lang.String Name = ".journal";
+
+    private final static int Magic = 0x4a726e6c;
+
+    /**
+     * Milliseconds from a write to its flush, for coalescing repeated
+     * writes.
+     */
+    public final static long Delay = 100L;
+
+    /**
+     * Retry after a failed flush
+     */
+    private final static long Retry = 5000L;
+
+    /**
+     * Message pending for an address
+     */
+    private final static class Pending
+        extends java.lang.Object
+    {
+        final FileManager fm;
+        final File file;
+        final HttpMessage message;
+        final long position;
+
+        Pending(FileManager fm, File file, HttpMessage message, long position){
+            super();
+            this.fm = fm;
+            this.file = file;
+            this.message = message;
+            this.position = position;
+        }
+    }
+    /**
+     * Journal thread
+     */
+    private final static class Writer
+        extends alto.sys.Thread
+    {
+        private final Journal journal;
+
+        Writer(Journal journal){
+            super(null,"Journal "+journal.location.getPath());
+            this.journal = journal;
+            this.setDaemon(true);
+        }
+        public void run(){
+            Journal journal = this.journal;
+            while (journal.await()){
+                journal.flush();
+            }
+        }
+    }
+
+
+    private final java.io.File location;
+
+    private final java.io.RandomAccessFile file;
+
+    private final java.nio.channels.FileChannel channel;
+
+    private final java.util.Map<Address,Pending> pending = new java.util.LinkedHashMap<Address,Pending>();
+
+    private final java.lang.Object sync = new java.lang.Object();
+
+    private final Writer writer;
+
+    /**
+     * Journal file length, written under this monitor
+     */
+    private volatile long written;
+
+    /**
+     * Journal length forced to the device, written under the sync
+     * monitor
+     */
+    private volatile long synced;
+
+    /**
+     * Appended records not yet pending
+     */
+    private int inflight;
+
+    private long due;
+
+    private volatile boolean closed;
+
+    private final java.util.concurrent.atomic.AtomicLong appended = new java.util.concurrent.atomic.AtomicLong();
+
+    private final java.util.concurrent.atomic.AtomicLong coalesced = new java.util.concurrent.atomic.AtomicLong();
+
+    private final java.util.concurrent.atomic.AtomicLong flushed = new java.util.concurrent.atomic.AtomicLong();
+
+    private final java.util.concurrent.atomic.AtomicLong forced = new java.util.concurrent.atomic.AtomicLong();
+
+
+    public Journal(Partition partition)
+        throws java.io.IOException
+    {
+        super();
+        this.location = new java.io.File(partition.getFile(),Name);
+        this.file = new java.io.RandomAccessFile(this.location,"rw");
+        this.channel = this.file.getChannel();
+        this.written = this.channel.size();
+        this.synced = this.written;
+        this.writer = new Writer(this);
+    }
+
+
+    public java.io.File getLocation(){
+        return this.location;
+    }
+    /**
+     * Write the last complete record for each address in the journal
+     * to its file, forcing each, and then truncate the journal and
+     * start the journal thread.  A failed write leaves the journal
+     * whole for the next replay.
+     * 
+     * @return Number of messages written
+     */
+    public int replay(FileManager fm)
+        throws java.io.IOException
+    {
+        java.util.Map<Address,byte[]> records = new java.util.LinkedHashMap<Address,byte[]>();
+        synchronized(this){
+            long size = this.channel.size();
+            if (0L < size){
+                java.io.DataInputStream in = new java.io.DataInputStream(new java.io.BufferedInputStream(java.nio.channels.Channels.newInputStream(this.channel.position(0L))));
+                long position = 0L;
+                java.util.zip.CRC32 crc = new java.util.zip.CRC32();
+                try {
+                    while (position < size){
+                        if (Magic != in.readInt())
+                            break;
+                        else {
+                            int alen = in.readInt();
+                            int mlen = in.readInt();
+                            if (0 > alen || 0 > mlen || (position+20L+alen+mlen) > size)
+                                break;
+                            else {
+                                byte[] a = new byte[alen];
+                                byte[] m = new byte[mlen];
+                                in.readFully(a);
+                                in.readFully(m);
+                                long check = in.readLong();
+                                crc.reset();
+                                crc.update(a,0,alen);
+                                crc.update(m,0,mlen);
+                                if (check != crc.getValue())
+                                    break;
+                                else {
+                                    Address address = ReadAddress(a);
+                                    records.remove(address);
+                                    records.put(address,m);
+                                    position += (20L+alen+mlen);
+                                }
+                            }
+                        }
+                    }
+                }
+                catch (java.io.EOFException torn){
+                }
+            }
+        }
+        int count = 0;
+        for (java.util.Map.Entry<Address,byte[]> record : records.entrySet()){
+            File file = fm.getStorage(record.getKey());
+            if (null != file){
+                HttpMessage message = file.newHttpMessage();
+                message.readMessage(new alto.lang.buffer.InputStream(record.getValue()));
+                this.flush(new Pending(fm,file,message,0L),false);
+                count += 1;
+            }
+        }
+        synchronized(this){
+            synchronized(this.sync){
+                this.channel.truncate(0L);
+                this.channel.force(true);
+                this.written = 0L;
+                this.synced = 0L;
+            }
+        }
+        if (!this.writer.isAlive())
+            this.writer.start();
+        return count;
+    }
+    /**
+     * Append the message to the journal, and return when the journal
+     * is on the device.
+     */
+    public void write(File file, HttpMessage message)
+        throws java.io.IOException
+    {
+        if (this.closed)
+            throw new alto.sys.Error.State("Journal closed");
+        else {
+            Address address = file.getAddress();
+            byte[] a = WriteAddress(address);
+            alto.lang.buffer.OutputStream mout = new alto.lang.buffer.OutputStream();
+            message.writeMessage(mout);
+            byte[] m = mout.toByteArray();
+
+            java.util.zip.CRC32 crc = new java.util.zip.CRC32();
+            crc.update(a,0,a.length);
+            crc.update(m,0,m.length);
+            java.nio.ByteBuffer record = java.nio.ByteBuffer.allocate(20+a.length+m.length);
+            record.putInt(Magic);
+            record.putInt(a.length);
+            record.putInt(m.length);
+            record.put(a);
+            record.put(m);
+            record.putLong(crc.getValue());
+            record.flip();
+
+            FileManager fm = FileManager.Instance();
+            long end;
+            synchronized(this){
+                long position = this.written;
+                while (record.hasRemaining())
+                    position += this.channel.write(record,position);
+                this.written = position;
+                this.inflight += 1;
+                end = position;
+            }
+            boolean durable = false;
+            try {
+                this.sync(end);
+                durable = true;
+            }
+            finally {
+                synchronized(this){
+                    this.inflight -= 1;
+                    if (durable){
+                        Pending prior = this.pending.get(address);
+                        if (null == prior || prior.position < end){
+                            if (null != prior)
+                                this.coalesced.incrementAndGet();
+                            this.pending.put(address,new Pending(fm,file,message,end));
+                        }
+                        if (0L == this.due){
+                            this.due = (java.lang.System.currentTimeMillis()+Delay);
+                            this.notifyAll();
+                        }
+                    }
+                }
+            }
+            this.appended.incrementAndGet();
+        }
+    }
+    /**
+     * @return Pending message for the file, or null
+     */
+    public HttpMessage read(File file){
+        Pending pending;
+        synchronized(this){
+            pending = this.pending.get(file.getAddress());
+        }
+        if (null != pending)
+            return pending.message;
+        else
+            return null;
+    }
+    /**
+     * @return File has a pending message
+     */
+    public boolean isPending(File file){
+        synchronized(this){
+            return this.pending.containsKey(file.getAddress());
+        }
+    }
+    /**
+     * Drop a pending message, as for delete.
+     */
+    public boolean drop(File file){
+        synchronized(this){
+            return (null != this.pending.remove(file.getAddress()));
+        }
+    }
+    public int countPending(){
+        synchronized(this){
+            return this.pending.size();
+        }
+    }
+    public long countAppended(){
+        return this.appended.get();
+    }
+    /**
+     * @return Number of writes replaced by a later write before flush
+     */
+    public long countCoalesced(){
+        return this.coalesced.get();
+    }
+    public long countFlushed(){
+        return this.flushed.get();
+    }
+    /**
+     * @return Number of device syncs, less than or equal to appended
+     */
+    public long countForced(){
+        return this.forced.get();
+    }
+    /**
+     * Flush pending messages and stop the journal thread.
+     */
+    public void close()
+        throws java.io.IOException
+    {
+        this.closed = true;
+        synchronized(this){
+            this.notifyAll();
+        }
+        try {
+            this.writer.join();
+        }
+        catch (java.lang.InterruptedException exc){
+        }
+        this.flush();
+        this.channel.close();
+    }
+    /**
+     * Group commit: the first writer forces for all writers that
+     * have appended by then.
+     */
+    private void sync(long end)
+        throws java.io.IOException
+    {
+        if (end > this.synced){
+            synchronized(this.sync){
+                if (end > this.synced){
+                    long target = this.written;
+                    this.channel.force(false);
+                    this.synced = target;
+                    this.forced.incrementAndGet();
+                }
+            }
+        }
+    }
+    /**
+     * Journal thread wait for a due flush
+     * @return False for closed
+     */
+    private synchronized boolean await(){
+        while (!this.closed){
+            long due = this.due;
+            long wait = (0L == due)?(0L):(due - java.lang.System.currentTimeMillis());
+            if (0L == due || 0L < wait){
+                try {
+                    this.wait(wait);
+                }
+                catch (java.lang.InterruptedException exc){
+                    return false;
+                }
+            }
+            else {
+                this.due = 0L;
+                return true;
+            }
+        }
+        return false;
+    }
+    /**
+     * Write pending messages to their files, and truncate the journal
+     * when none remain.  A message is dropped only after its file is
+     * on the device.
+     */
+    private void flush(){
+        Pending[] list;
+        synchronized(this){
+            list = this.pending.values().toArray(new Pending[this.pending.size()]);
+        }
+        boolean retry = false;
+        for (int cc = 0, count = list.length; cc < count; cc++){
+            Pending pending = list[cc];
+            try {
+                this.flush(pending,true);
+                synchronized(this){
+                    Address address = pending.file.getAddress();
+                    if (pending == this.pending.get(address))
+                        this.pending.remove(address);
+                }
+            }
+            catch (java.lang.Exception exc){
+                exc.printStackTrace();
+                retry = true;
+            }
+        }
+        synchronized(this){
+            if (this.pending.isEmpty() && 0 == this.inflight && 0L < this.written){
+                synchronized(this.sync){
+                    try {
+                        this.channel.truncate(0L);
+                        this.written = 0L;
+                        this.synced = 0L;
+                    }
+                    catch (java.io.IOException exc){
+                        exc.printStackTrace();
+                    }
+                }
+            }
+            else if (retry && 0L == this.due)
+                this.due = (java.lang.System.currentTimeMillis()+Retry);
+        }
+    }
+    /**
+     * Write a pending message to its file under the file's write
+     * lock.
+     * 
+     * @param check Skip a message that has been dropped by delete or
+     * replaced since the pending list was taken
+     */
+    private void flush(Pending pending, boolean check)
+        throws java.io.IOException
+    {
+        File file = pending.file;
+        java.lang.Thread current = java.lang.Thread.currentThread();
+        java.lang.ClassLoader cl = current.getContextClassLoader();
+        current.setContextClassLoader(pending.fm);
+        file.lockWriteEnter();
+        try {
+            if (check){
+                synchronized(this){
+                    if (pending != this.pending.get(file.getAddress()))
+                        return;
+                }
+            }
+            file.writeThrough(pending.message,true);
+            this.flushed.incrementAndGet();
+        }
+        finally {
+            file.lockWriteExit();
+            current.setContextClassLoader(cl);
+        }
+    }
+
+    private final static byte[] WriteAddress(Address address)
+        throws java.io.IOException
+    {
+        alto.lang.buffer.OutputStream out = new alto.lang.buffer.OutputStream();
+        address.writeMessage(out);
+        return out.toByteArray();
+    }
+    private final static Address ReadAddress(byte[] bytes)
+        throws java.io.IOException
+    {
+        alto.io.Input in = new alto.lang.buffer.InputStream(bytes);
+        Component[] address = null;
+        while (0 < in.available()){
+            byte[] cb = alto.lang.sio.Field.Read(in);
+            if (null != cb)
+                address = Component.List.Add(address,cb);
+        }
+        return new Address(address);
+    }
+}
@@ -47,6 +47,27 @@ public interface Lock {
          */
         public boolean lockWriteEnterTry(long millis) throws java.lang.InterruptedException ;
     }
+    /**
+     * <p> Optimistic reads of volatile fields written under the write
+     * lock, validated after reading.  A stamp of zero is never valid,
+     * and the reader takes the read lock instead.  </p>
+     * 
+     * @see alto.sys.lock.Stamped
+     */
+    public interface Optimistic
+        extends Advanced
+    {
+        /**
+         * @return Stamp for {@link #lockReadValidate(long)}, or zero
+         */
+        public long lockReadOptimistic();
+
+        /**
+         * @return No write lock has been entered since the stamp was
+         * issued
+         */
+        public boolean lockReadValidate(long stamp);
+    }
     /**
      * <p> A CAS Semaphore lock.  Acquire the write lock, then compare
      * and set the semaphore.  If the semaphore CAS operation was
@@ -0,0 +1,558 @@
+/*
+ * Copyright (C) 1998, 2009  John Pritchard and the Alto Project Group.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package alto.sys;
+
+import alto.lang.Address;
+
+/**
+ * <p> Batched change notifications from {@link DFS} to one {@link
+ * alto.io.DFS} peer.  </p>
+ *
+ * <h3>Operation</h3>
+ *
+ * <p> PUT, DELETE and LOCK notices are queued and returned from at
+ * once.  The notifier thread delivers the queue as one batch {@link
+ * #Delay} milliseconds after the first notice, or as soon as {@link
+ * #Batch} notices are queued.  A peer implementing {@link Peer}
+ * receives the batch in one call, for one <code>"SDFS-Notify"</code>
+ * message (see {@link #Header(Notifier.Notice[])}).  Otherwise the
+ * notices are delivered to the peer one by one from the notifier
+ * thread.  </p>
+ *
+ * <h3>Coalescing</h3>
+ *
+ * <p> A PUT or DELETE replaces a queued PUT or DELETE of the same
+ * address, so that only the last change to an address is delivered.
+ * LOCK notices are not coalesced.  </p>
+ *
+ * <h3>Back pressure</h3>
+ *
+ * <p> While {@link #Capacity} notices are queued, because the peer is
+ * slow or failing, a notice that is not coalesced waits for the
+ * queue.  A batch that fails is queued again ahead of newer notices,
+ * and retried after {@link #Retry} milliseconds.  </p>
+ *
+ * @see DFS#setDfs(alto.io.DFS)
+ * @since 1.6
+ */
+public final class Notifier
+    extends java.lang.Object
+{
+    /**
+     * Peer receiving a batch in one call.
+     */
+    public interface Peer {
+
+        public void dfsNotify(Notice[] batch)
+            throws java.io.IOException;
+    }
+    /**
+     * Change notice
+     */
+    public final static class Notice
+        extends java.lang.Object
+    {
+        public final static int PUT = 1;
+        public final static int DELETE = 2;
+        public final static int LOCK = 3;
+
+
+        public final int kind;
+
+        public final Address address;
+
+        /**
+         * PUT or DELETE from a file, otherwise null
+         */
+        public final File file;
+
+        public final long timein, timeout;
+
+
+        Notice(int kind, File file){
+            super();
+            this.kind = kind;
+            this.file = file;
+            this.address = file.getAddress();
+            this.timein = 0L;
+            this.timeout = 0L;
+        }
+        /**
+         * PUT or DELETE by address alone, for delivery to a {@link
+         * Peer} in process
+         */
+        Notice(int kind, Address address){
+            super();
+            this.kind = kind;
+            this.file = null;
+            this.address = address;
+            this.timein = 0L;
+            this.timeout = 0L;
+        }
+        Notice(Address address, long timein, long timeout){
+            super();
+            this.kind = LOCK;
+            this.file = null;
+            this.address = address;
+            this.timein = timein;
+            this.timeout = timeout;
+        }
+
+
+        /**
+         * @return Key for coalescing in the queue
+         */
+        java.lang.Object key(){
+            if (LOCK == this.kind)
+                return this;
+            else
+                return this.address;
+        }
+        void deliver(alto.io.DFS dfs)
+            throws java.io.IOException
+        {
+            switch (this.kind){
+            case PUT:
+                dfs.dfsNotifyPUT(this.file);
+                break;
+            case DELETE:
+                dfs.dfsNotifyDELETE(this.file);
+                break;
+            default:
+                dfs.dfsNotifyLOCK(this.address,this.timein,this.timeout);
+                break;
+            }
+        }
+        public java.lang.String toString(){
+            switch (this.kind){
+            case PUT:
+                return "PUT "+this.address;
+            case DELETE:
+                return "DELETE "+this.address;
+            default:
+                return "LOCK "+this.address+' '+this.timein+' '+this.timeout;
+            }
+        }
+    }
+
+    /**
+     * Milliseconds from a first notice to its batch, from the system
+     * property <code>"alto.sys.Notifier.Delay"</code>, default 50.
+     */
+    public final static long Delay = java.lang.Long.getLong("alto.sys.Notifier.Delay",50L);
+    /**
+     * Notices queued for an immediate batch, from the system property
+     * <code>"alto.sys.Notifier.Batch"</code>, default 64.
+     */
+    public final static int Batch = java.lang.Integer.getInteger("alto.sys.Notifier.Batch",64);
+    /**
+     * Notices queued before notifying threads wait, from the system
+     * property <code>"alto.sys.Notifier.Capacity"</code>, default
+     * 4096.
+     */
+    public final static int Capacity = java.lang.Integer.getInteger("alto.sys.Notifier.Capacity",0x1000);
+
+    private final static long Retry = 1000L;
+
+    /**
+     * @return Value of an <code>"SDFS-Notify"</code> header for the
+     * batch, a comma separated list of notices
+     */
+    public final static alto.lang.Header Header(Notice[] batch){
+        java.lang.StringBuilder string = new java.lang.StringBuilder();
+        for (int cc = 0, count = batch.length; cc < count; cc++){
+            if (0 < cc)
+                string.append(", ");
+            string.append(batch[cc]);
+        }
+        return new alto.lang.Header.SDFS(alto.lang.Header.SDFS.Notify,string.toString());
+    }
+
+    private final static class Delivery
+        extends alto.sys.Thread
+    {
+        private final Notifier notifier;
+
+        Delivery(Notifier notifier){
+            super(null,"Notifier");
+            this.notifier = notifier;
+            this.setDaemon(true);
+        }
+        public void run(){
+            Notifier notifier = this.notifier;
+            Notice[] batch;
+            while (null != (batch = notifier.await())){
+                notifier.deliver(batch);
+            }
+        }
+    }
+
+
+    private final alto.io.DFS dfs;
+
+    private final Peer peer;
+
+    private final int batch, capacity;
+
+    private final long delay;
+
+    private java.util.LinkedHashMap<java.lang.Object,Notice> queue = new java.util.LinkedHashMap<java.lang.Object,Notice>();
+
+    private long due;
+
+    private boolean closed, delivering;
+
+    private final Delivery thread;
+
+    private final java.util.concurrent.atomic.AtomicLong notices = new java.util.concurrent.atomic.AtomicLong();
+
+    private final java.util.concurrent.atomic.AtomicLong coalesced = new java.util.concurrent.atomic.AtomicLong();
+
+    private final java.util.concurrent.atomic.AtomicLong batches = new java.util.concurrent.atomic.AtomicLong();
+
+    private final java.util.concurrent.atomic.AtomicLong waited = new java.util.concurrent.atomic.AtomicLong();
+
+    private final java.util.concurrent.atomic.AtomicLong failed = new java.util.concurrent.atomic.AtomicLong();
+
+
+    public Notifier(alto.io.DFS dfs){
+        this(dfs,Delay,Batch,Capacity);
+    }
+    /**
+     * @param dfs Peer, which may implement {@link Peer}
+     * @param delay Milliseconds from a first notice to its batch
+     * @param batch Notices queued for an immediate batch
+     * @param capacity Notices queued before notifying threads wait
+     */
+    public Notifier(alto.io.DFS dfs, long delay, int batch, int capacity){
+        super();
+        if (null != dfs && 0L <= delay && 0 < batch && batch <= capacity){
+            this.dfs = dfs;
+            if (dfs instanceof Peer)
+                this.peer = (Peer)dfs;
+            else
+                this.peer = null;
+            this.delay = delay;
+            this.batch = batch;
+            this.capacity = capacity;
+            this.thread = new Delivery(this);
+            this.thread.start();
+        }
+        else
+            throw new alto.sys.Error.Argument();
+    }
+
+
+    public alto.io.DFS getDfs(){
+        return this.dfs;
+    }
+    public void notifyPUT(File file)
+        throws java.io.IOException
+    {
+        this.add(new Notice(Notice.PUT,file));
+    }
+    public void notifyDELETE(File file)
+        throws java.io.IOException
+    {
+        this.add(new Notice(Notice.DELETE,file));
+    }
+    public void notifyLOCK(Address address, long timein, long timeout)
+        throws java.io.IOException
+    {
+        this.add(new Notice(address,timein,timeout));
+    }
+    /**
+     * @return Notices queued and not yet delivered
+     */
+    public synchronized int countQueued(){
+        return this.queue.size();
+    }
+    public long countNotices(){
+        return this.notices.get();
+    }
+    public long countCoalesced(){
+        return this.coalesced.get();
+    }
+    public long countBatches(){
+        return this.batches.get();
+    }
+    /**
+     * @return Notices that waited for a full queue
+     */
+    public long countWaited(){
+        return this.waited.get();
+    }
+    public long countFailed(){
+        return this.failed.get();
+    }
+    /**
+     * Wait as many as 'to' milliseconds for the queue to be
+     * delivered.
+     *
+     * @return Queue delivered
+     */
+    public synchronized boolean drain(long to)
+        throws java.lang.InterruptedException
+    {
+        long end = (java.lang.System.currentTimeMillis()+to);
+        while (!this.queue.isEmpty() || this.delivering){
+            if (this.closed)
+                return false;
+            else {
+                this.due = java.lang.System.currentTimeMillis();
+                this.notifyAll();
+                long wait = (end - java.lang.System.currentTimeMillis());
+                if (0L < wait)
+                    this.wait(wait);
+                else
+                    return false;
+            }
+        }
+        return true;
+    }
+    /**
+     * Stop the notifier thread.  Queued notices are not delivered.
+     */
+    public synchronized void close(){
+        this.closed = true;
+        this.notifyAll();
+    }
+    private synchronized void add(Notice notice)
+        throws java.io.IOException
+    {
+        if (this.closed)
+            throw new java.io.IOException("Notifier closed");
+        else {
+            this.notices.incrementAndGet();
+            java.lang.Object key = notice.key();
+            if (null != this.queue.remove(key))
+                this.coalesced.incrementAndGet();
+            else if (this.queue.size() >= this.capacity){
+                this.waited.incrementAndGet();
+                do {
+                    this.due = java.lang.System.currentTimeMillis();
+                    this.notifyAll();
+                    try {
+                        this.wait();
+                    }
+                    catch (java.lang.InterruptedException exc){
+                        throw new java.io.InterruptedIOException();
+                    }
+                    if (this.closed)
+                        throw new java.io.IOException("Notifier closed");
+                    else if (null != this.queue.remove(key)){
+                        this.coalesced.incrementAndGet();
+                        break;
+                    }
+                }
+                while (this.queue.size() >= this.capacity);
+            }
+            this.queue.put(key,notice);
+
+            int size = this.queue.size();
+            if (size >= this.batch){
+                this.due = java.lang.System.currentTimeMillis();
+                this.notifyAll();
+            }
+            else if (0L == this.due){
+                this.due = (java.lang.System.currentTimeMillis()+this.delay);
+                this.notifyAll();
+            }
+        }
+    }
+    /**
+     * @return Next batch, or null for closed
+     */
+    private synchronized Notice[] await(){
+        this.delivering = false;
+        this.notifyAll();
+        while (!this.closed){
+            long due = this.due;
+            long wait = (0L == due)?(0L):(due - java.lang.System.currentTimeMillis());
+            if (0L == due || 0L < wait){
+                try {
+                    this.wait(wait);
+                }
+                catch (java.lang.InterruptedException exc){
+                    return null;
+                }
+            }
+            else {
+                this.due = 0L;
+                java.util.LinkedHashMap<java.lang.Object,Notice> queue = this.queue;
+                if (!queue.isEmpty()){
+                    this.queue = new java.util.LinkedHashMap<java.lang.Object,Notice>();
+                    this.delivering = true;
+                    this.notifyAll();
+                    return queue.values().toArray(new Notice[queue.size()]);
+                }
+            }
+        }
+        return null;
+    }
+    private void deliver(Notice[] batch){
+        try {
+            Peer peer = this.peer;
+            if (null != peer)
+                peer.dfsNotify(batch);
+            else {
+                alto.io.DFS dfs = this.dfs;
+                for (int cc = 0, count = batch.length; cc < count; cc++){
+                    batch[cc].deliver(dfs);
+                    batch[cc] = null;
+                }
+            }
+            this.batches.incrementAndGet();
+        }
+        catch (java.lang.Exception exc){
+            this.failed.incrementAndGet();
+            exc.printStackTrace();
+            this.requeue(batch);
+        }
+    }
+    /**
+     * Queue notices of a failed batch ahead of newer notices, except
+     * where a newer notice replaces one.
+     */
+    private synchronized void requeue(Notice[] batch){
+        java.util.LinkedHashMap<java.lang.Object,Notice> queue = new java.util.LinkedHashMap<java.lang.Object,Notice>();
+        for (int cc = 0, count = batch.length; cc < count; cc++){
+            Notice notice = batch[cc];
+            if (null != notice && (!this.queue.containsKey(notice.key())))
+                queue.put(notice.key(),notice);
+        }
+        queue.putAll(this.queue);
+        this.queue = queue;
+        if (0L == this.due)
+            this.due = (java.lang.System.currentTimeMillis()+Retry);
+    }
+
+
+    protected static void usage(java.io.PrintStream out){
+        out.println();
+        out.println("Usage");
+        out.println();
+        out.println("  Notifier [notices] [addresses] [peer-millis]");
+        out.println();
+        out.println("Description");
+        out.println();
+        out.println("  Send PUT notices over a number of addresses through a");
+        out.println("  notifier to an in process loopback peer that takes");
+        out.println("  peer-millis per batch, and check that the last PUT for");
+        out.println("  every address is delivered.  Defaults 100000, 1000, 1.");
+        out.println();
+    }
+    /**
+     * In process stand in for a peer, recording the last notice
+     * delivered for each address.
+     */
+    private final static class Loopback
+        extends java.lang.Object
+        implements java.lang.reflect.InvocationHandler
+    {
+        final long millis;
+
+        final java.util.Map<Address,Notice> last = new java.util.HashMap<Address,Notice>();
+
+        long batches, notices;
+
+        Loopback(long millis){
+            super();
+            this.millis = millis;
+        }
+
+        public java.lang.Object invoke(java.lang.Object proxy, java.lang.reflect.Method method, java.lang.Object[] args)
+            throws java.lang.Throwable
+        {
+            if ("dfsNotify".equals(method.getName())){
+                Notice[] batch = (Notice[])args[0];
+                if (0L < this.millis)
+                    java.lang.Thread.sleep(this.millis);
+                synchronized(this){
+                    this.batches += 1;
+                    for (Notice notice : batch){
+                        this.notices += 1;
+                        this.last.put(notice.address,notice);
+                    }
+                }
+                return null;
+            }
+            else if ("hashCode".equals(method.getName()))
+                return java.lang.System.identityHashCode(proxy);
+            else if ("equals".equals(method.getName()))
+                return (proxy == args[0]);
+            else
+                throw new java.lang.UnsupportedOperationException(method.getName());
+        }
+    }
+    public static void main(java.lang.String[] argv){
+        int notices = 100000, addresses = 1000;
+        long millis = 1L;
+        try {
+            if (0 < argv.length)
+                notices = java.lang.Integer.parseInt(argv[0]);
+            if (1 < argv.length)
+                addresses = java.lang.Integer.parseInt(argv[1]);
+            if (2 < argv.length)
+                millis = java.lang.Long.parseLong(argv[2]);
+        }
+        catch (java.lang.NumberFormatException exc){
+            usage(System.err);
+            System.exit(1);
+        }
+        try {
+            alto.lang.Component relation = alto.lang.Component.Relation.Tools.ValueOf("01");
+            alto.lang.Component host = alto.lang.Component.Host.Tools.ValueOf("01");
+            alto.lang.Component type = alto.lang.Component.Type.Tools.ValueOf("01");
+            Address[] list = new Address[addresses];
+            for (int cc = 0; cc < addresses; cc++){
+                alto.lang.Component path = alto.lang.Component.Path.Tools.ValueOf(java.lang.Integer.toHexString(0x100+cc));
+                list[cc] = new Address(relation,host,type,path,alto.lang.Component.Version.Current);
+            }
+            Loopback loopback = new Loopback(millis);
+            alto.io.DFS peer = (alto.io.DFS)java.lang.reflect.Proxy.newProxyInstance(Notifier.class.getClassLoader(),
+                                                                                   new java.lang.Class[]{alto.io.DFS.class,Peer.class},
+                                                                                   loopback);
+            Notifier notifier = new Notifier(peer);
+            long start = java.lang.System.nanoTime();
+            for (int cc = 0; cc < notices; cc++)
+                notifier.add(new Notice(Notice.PUT,list[cc % addresses]));
+            long queued = java.lang.System.nanoTime();
+            if (!notifier.drain(60000L))
+                throw new alto.sys.Error.State("Drain timeout");
+            long end = java.lang.System.nanoTime();
+            notifier.close();
+            int missing = 0;
+            synchronized(loopback){
+                for (Address address : list){
+                    if (null == loopback.last.get(address))
+                        missing += 1;
+                }
+                System.out.printf("%d notices in %.1f ms, delivered in %.1f ms%n",notices,(queued-start)/1e6,(end-start)/1e6);
+                System.out.printf("%d batches, %d delivered, %d coalesced, %d waited, %d missing%n",
+                                  loopback.batches,loopback.notices,notifier.countCoalesced(),notifier.countWaited(),missing);
+            }
+            System.exit((0 == missing)?(0):(1));
+        }
+        catch (java.lang.Exception exc){
+            exc.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
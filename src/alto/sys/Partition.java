@@ -19,23 +19,182 @@
 package alto.sys;
 
 import alto.lang.Address;
+import alto.lang.Component;
 
 /**
  * A storage cache fs root directory.  Used by the {@link File}
  * constructor to resolve an {@link Address} to a cache fs location.
  * 
+ * <h3>Accounting</h3>
+ * 
+ * <p> File system space is read by {@link #stat()} on a background
+ * schedule of {@link #Refresh} milliseconds.  Bytes written and
+ * deleted are counted as they occur by {@link File}, as the change in
+ * length of the file on disk under its write lock, per partition and
+ * per container component, so that {@link #getFreeSpace()} is
+ * current between refreshes without the write path calling the file
+ * system.  </p>
+ * 
+ * <p> The bytes stored in the partition directory and in each
+ * container directory, as distinct from the space used on the file
+ * system, are read by {@link #scan()} and counted from there as
+ * bytes are written and deleted.  The first refresh after any quota
+ * is defined scans the directory.  Until then {@link
+ * #getStoredSpace()} and {@link Usage#getUsed()} are the net bytes
+ * written since the process began.  Files changed other than through
+ * {@link File} are not counted before the next scan.  </p>
+ * 
+ * <h3>Quotas</h3>
+ * 
+ * <p> A write that would reduce free space below the reserve, or
+ * grow the stored bytes of the partition or a container beyond its
+ * quota, is refused by
+ * {@link #check(alto.lang.Address,long)} with {@link
+ * InsufficientStorageException}.  Concurrent writes may pass one
+ * check together, so a quota is a bound within the size of
+ * concurrent writes.  The system properties
+ * <code>"alto.sys.Partition.Reserve"</code>,
+ * <code>"alto.sys.Partition.Quota"</code> and
+ * <code>"alto.sys.Partition.ContainerQuota"</code> define the
+ * initial reserve, partition quota and default container quota in
+ * bytes, where zero is no limit.  </p>
+ * 
  * @author jdp
  * @since 1.6
  */
 public final class Partition
     extends java.lang.Object
 {
+    /**
+     * Milliseconds between file system space refreshes, from the
+     * system property <code>"alto.sys.Partition.Refresh"</code>,
+     * default 5000.
+     */
+    public final static long Refresh = java.lang.Long.getLong("alto.sys.Partition.Refresh",5000L);
+
+    /**
+     * Bytes counted for one container.
+     */
+    public final static class Usage
+        extends java.lang.Object
+    {
+        private final java.util.concurrent.atomic.AtomicLong used = new java.util.concurrent.atomic.AtomicLong();
+
+        /**
+         * Bytes in the container at the last scan, less net bytes
+         * written before it
+         */
+        private volatile long stored;
+
+        private volatile long quota;
+
+
+        Usage(){
+            super();
+        }
+
+
+        /**
+         * @return Bytes in the container at the last scan of the
+         * partition, plus net bytes written since
+         */
+        public long getUsed(){
+            return (this.stored + this.used.get());
+        }
+        /**
+         * @return Quota bytes, or zero for the default
+         */
+        public long getQuota(){
+            return this.quota;
+        }
+    }
+    /**
+     * Refreshes the space of the live partitions, periodically on
+     * the shared {@link Timer}.
+     */
+    private final static class Refresher
+        extends Timer.Task
+    {
+        Refresher(){
+            super();
+        }
+        public void run(){
+            Partition[] list = Partition.List();
+            for (int cc = 0, count = list.length; cc < count; cc++){
+                try {
+                    list[cc].stat();
+                }
+                catch (java.lang.RuntimeException exc){
+                    exc.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private final static java.util.List<java.lang.ref.WeakReference<Partition>> Live = new java.util.ArrayList<java.lang.ref.WeakReference<Partition>>();
+
+    private static Refresher Refresher;
+
+    private final static void Register(Partition partition){
+        synchronized(Live){
+            Live.add(new java.lang.ref.WeakReference<Partition>(partition));
+            if (null == Refresher && 0L < Refresh){
+                Refresher = new Refresher();
+                Timer.Instance().schedule(Refresher,Refresh,Refresh);
+            }
+        }
+    }
+    /**
+     * @return Partitions not collected
+     */
+    private final static Partition[] List(){
+        synchronized(Live){
+            java.util.List<Partition> list = new java.util.ArrayList<Partition>(Live.size());
+            java.util.Iterator<java.lang.ref.WeakReference<Partition>> it = Live.iterator();
+            while (it.hasNext()){
+                Partition partition = it.next().get();
+                if (null == partition)
+                    it.remove();
+                else
+                    list.add(partition);
+            }
+            return list.toArray(new Partition[list.size()]);
+        }
+    }
+
 
     private final java.io.File dir;
 
     private final String path, uri;
 
-    private long last, total, free;
+    private volatile long last, total, free;
+
+    /**
+     * Net bytes written since the last stat
+     */
+    private final java.util.concurrent.atomic.AtomicLong since = new java.util.concurrent.atomic.AtomicLong();
+
+    private final java.util.concurrent.atomic.AtomicLong written = new java.util.concurrent.atomic.AtomicLong();
+
+    private final java.util.concurrent.atomic.AtomicLong deleted = new java.util.concurrent.atomic.AtomicLong();
+
+    private final java.util.concurrent.atomic.AtomicLong refused = new java.util.concurrent.atomic.AtomicLong();
+
+    /**
+     * Bytes in the directory at the last scan, less net bytes written
+     * before it
+     */
+    private volatile long stored;
+
+    private volatile boolean scanned;
+
+    private final java.util.concurrent.ConcurrentHashMap<Component,Usage> containers = new java.util.concurrent.ConcurrentHashMap<Component,Usage>();
+
+    private volatile long reserve = java.lang.Long.getLong("alto.sys.Partition.Reserve",0L);
+
+    private volatile long quota = java.lang.Long.getLong("alto.sys.Partition.Quota",0L);
+
+    private volatile long containerQuota = java.lang.Long.getLong("alto.sys.Partition.ContainerQuota",0L);
 
 
     public Partition(java.io.File dir){
@@ -54,12 +213,122 @@ public final class Partition
         this.total = test;
         this.free = dir.getUsableSpace();
         this.last = System.currentTimeMillis();
+        Register(this);
     }
 
+    /**
+     * Read file system space, and scan the directory once a quota is
+     * defined.  Called on the refresh schedule.
+     */
     public synchronized void stat(){
+        long since = this.since.get();
         this.total = dir.getTotalSpace();
         this.free = dir.getUsableSpace();
         this.last = System.currentTimeMillis();
+        this.since.addAndGet(-since);
+        if (!this.scanned && this.hasQuota())
+            this.scan();
+    }
+    /**
+     * @return A partition, default container or container quota is
+     * defined
+     */
+    private boolean hasQuota(){
+        if (0L < this.quota || 0L < this.containerQuota)
+            return true;
+        else {
+            for (Usage usage : this.containers.values()){
+                if (0L < usage.quota)
+                    return true;
+            }
+            return false;
+        }
+    }
+    /**
+     * Read the bytes stored in the partition directory, and in each
+     * container directory, <code>"/relation/host"</code>.  Bytes
+     * written during the scan may be counted twice, within the size
+     * of concurrent writes.
+     * 
+     * @return Bytes stored
+     */
+    public synchronized long scan(){
+        long net = (this.written.get() - this.deleted.get());
+        java.util.Map<Component,Usage> usage = new java.util.HashMap<Component,Usage>();
+        for (java.util.Map.Entry<Component,Usage> container : this.containers.entrySet())
+            usage.put(container.getKey(),container.getValue());
+        java.util.Map<Component,long[]> counts = new java.util.HashMap<Component,long[]>();
+        java.util.Map<Component,java.lang.Long> nets = new java.util.HashMap<Component,java.lang.Long>();
+        long bytes = 0L;
+        java.io.File[] relations = this.dir.listFiles();
+        if (null != relations){
+            for (java.io.File relation : relations){
+                if (!relation.isDirectory())
+                    bytes += relation.length();
+                else if ('.' == relation.getName().charAt(0))
+                    bytes += Scan(relation);
+                else {
+                    java.io.File[] hosts = relation.listFiles();
+                    if (null != hosts){
+                        for (java.io.File host : hosts){
+                            if (!host.isDirectory())
+                                bytes += host.length();
+                            else {
+                                long hbytes = Scan(host);
+                                bytes += hbytes;
+                                Component container = Container(host.getName());
+                                if (null != container){
+                                    long[] count = counts.get(container);
+                                    if (null == count){
+                                        Usage u = this.usage(container);
+                                        nets.put(container,u.used.get());
+                                        usage.put(container,u);
+                                        counts.put(container,new long[]{hbytes});
+                                    }
+                                    else
+                                        count[0] += hbytes;
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        this.stored = (bytes - net);
+        for (java.util.Map.Entry<Component,Usage> container : usage.entrySet()){
+            Usage u = container.getValue();
+            long[] count = counts.get(container.getKey());
+            if (null != count)
+                u.stored = (count[0] - nets.get(container.getKey()));
+            else
+                u.stored = -(u.used.get());
+        }
+        this.scanned = true;
+        return bytes;
+    }
+    /**
+     * @return Container for a storage directory name, or null
+     */
+    private final static Component Container(java.lang.String name){
+        try {
+            return new alto.lang.component.Host(name);
+        }
+        catch (java.lang.RuntimeException notHex){
+            return null;
+        }
+    }
+    private final static long Scan(java.io.File dir){
+        long bytes = 0L;
+        java.io.File[] list = dir.listFiles();
+        if (null != list){
+            for (java.io.File file : list){
+                if (file.isDirectory())
+                    bytes += Scan(file);
+                else
+                    bytes += file.length();
+            }
+        }
+        return bytes;
     }
     public String pathTo(Address address){
 
@@ -68,12 +337,140 @@ public final class Partition
     public long getTotalSpace(){
         return this.total;
     }
+    /**
+     * @return Free space at the last stat, less bytes written since
+     */
     public long getFreeSpace(){
-        return this.free;
+        return (this.free - this.since.get());
+    }
+    /**
+     * @return Used space at the last stat, plus bytes written since
+     */
+    public long getUsedSpace(){
+        return ((this.total - this.free) + this.since.get());
+    }
+    /**
+     * @return Bytes in the partition directory at the last scan, plus
+     * net bytes written since
+     */
+    public long getStoredSpace(){
+        return (this.stored + (this.written.get() - this.deleted.get()));
+    }
+    public boolean isScanned(){
+        return this.scanned;
     }
     public long getStatLast(){
         return this.last;
     }
+    public long getWrittenBytes(){
+        return this.written.get();
+    }
+    public long getDeletedBytes(){
+        return this.deleted.get();
+    }
+    /**
+     * @return Number of writes refused by quota or reserve
+     */
+    public long getRefusedCount(){
+        return this.refused.get();
+    }
+    public long getReserve(){
+        return this.reserve;
+    }
+    public void setReserve(long bytes){
+        this.reserve = java.lang.Math.max(0L,bytes);
+    }
+    public long getQuota(){
+        return this.quota;
+    }
+    public void setQuota(long bytes){
+        this.quota = java.lang.Math.max(0L,bytes);
+    }
+    public long getContainerQuota(){
+        return this.containerQuota;
+    }
+    /**
+     * @param bytes Default quota for containers, zero for no limit
+     */
+    public void setContainerQuota(long bytes){
+        this.containerQuota = java.lang.Math.max(0L,bytes);
+    }
+    /**
+     * @param bytes Quota for the container, zero for the default
+     */
+    public void setQuota(Component container, long bytes){
+        this.usage(container).quota = java.lang.Math.max(0L,bytes);
+    }
+    /**
+     * @return Counts for the container, or null
+     */
+    public Usage getUsage(Component container){
+        if (null != container)
+            return this.containers.get(container);
+        else
+            return null;
+    }
+    /**
+     * Refuse a write growing storage by 'delta' bytes where it would
+     * exceed the reserve or a quota.
+     * 
+     * @param delta Bytes to be written less bytes to be replaced
+     * @exception InsufficientStorageException Write refused
+     */
+    public void check(Address address, long delta)
+        throws InsufficientStorageException
+    {
+        if (0L < delta){
+            long reserve = this.reserve;
+            if (0L < reserve && (this.getFreeSpace() - delta) < reserve){
+                this.refused.incrementAndGet();
+                throw new InsufficientStorageException("Partition reserve");
+            }
+            long quota = this.quota;
+            if (0L < quota && (this.getStoredSpace() + delta) > quota){
+                this.refused.incrementAndGet();
+                throw new InsufficientStorageException("Partition quota");
+            }
+            Component container = address.getComponentContainer();
+            if (null != container){
+                Usage usage = this.containers.get(container);
+                quota = (null != usage && 0L < usage.quota)?(usage.quota):(this.containerQuota);
+                if (0L < quota && ((null != usage)?(usage.getUsed()):(0L)) + delta > quota){
+                    this.refused.incrementAndGet();
+                    throw new InsufficientStorageException("Container quota");
+                }
+            }
+        }
+    }
+    /**
+     * Count bytes written (positive) or deleted (negative) for the
+     * address, or for the partition outside any container when the
+     * address is null.
+     */
+    public void account(Address address, long delta){
+        if (0L != delta){
+            this.since.addAndGet(delta);
+            if (0L < delta)
+                this.written.addAndGet(delta);
+            else
+                this.deleted.addAndGet(-delta);
+            if (null != address){
+                Component container = address.getComponentContainer();
+                if (null != container)
+                    this.usage(container).used.addAndGet(delta);
+            }
+        }
+    }
+    private Usage usage(Component container){
+        Usage usage = this.containers.get(container);
+        if (null == usage){
+            usage = new Usage();
+            Usage race = this.containers.putIfAbsent(container,usage);
+            if (null != race)
+                return race;
+        }
+        return usage;
+    }
     public String getPath(){
         return this.path;
     }
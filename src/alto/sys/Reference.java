@@ -944,6 +944,19 @@ public class Reference
     {
         return this.copyTo(response);
     }
+    /**
+     * Basic implementation of HTTP GET (this) Reference without
+     * Conditional GET semantics, written to the response socket.
+     * 
+     * @return The response has been written to its socket.  When
+     * false, nothing has been written, and the caller continues with
+     * {@link #get(alto.lang.HttpMessage)} and writes the response.
+     */
+    public boolean send(HttpMessage response)
+        throws java.io.IOException
+    {
+        return this.sendTo(response);
+    }
     /**
      * Basic implementation of HTTP GET (this) Reference without
      * Conditional GET semantics.
@@ -1068,21 +1081,59 @@ public class Reference
         else
             throw new alto.sys.Error.Bug(this.string);
     }
+    /**
+     * @see File#copyTo(alto.lang.HttpMessage)
+     */
     public boolean copyTo(HttpMessage response)
         throws java.io.IOException
     {
-        HttpMessage storage = this.read();
-        if (null != storage)
-            return storage.copyTo(response);
+        File storage = this.getStorage();
+        if (null != storage){
+            try {
+                return storage.copyTo(response);
+            }
+            catch (alto.sys.UnauthorizedException exc){
+                throw new alto.sys.UnauthorizedException(this.toString(),exc);
+            }
+        }
+        else
+            return false;
+    }
+    /**
+     * @see File#sendTo(alto.lang.HttpMessage)
+     */
+    public boolean sendTo(HttpMessage response)
+        throws java.io.IOException
+    {
+        File storage = this.getStorage();
+        if (null != storage){
+            try {
+                return storage.sendTo(response);
+            }
+            catch (alto.sys.UnauthorizedException exc){
+                throw new alto.sys.UnauthorizedException(this.toString(),exc);
+            }
+        }
         else
             return false;
     }
+    /**
+     * Copy the head of the stored message for HEAD, without reading
+     * the stored message body.
+     * @see File#headTo(alto.lang.HttpMessage)
+     */
     public boolean headTo(HttpMessage response)
         throws java.io.IOException
     {
-        HttpMessage storage = this.read();
-        if (null != storage)
-            return storage.headTo(response);
+        File storage = this.getStorage();
+        if (null != storage){
+            try {
+                return storage.headTo(response);
+            }
+            catch (alto.sys.UnauthorizedException exc){
+                throw new alto.sys.UnauthorizedException(this.toString(),exc);
+            }
+        }
         else
             return false;
     }
@@ -1377,11 +1428,27 @@ public class Reference
     public String getETag()
         throws java.io.IOException
     {
-        HttpMessage storage = this.read();
+        File storage = this.getStorage();
+        if (null != storage){
+            File.Stat stat = storage.getStat();
+            if (null != stat)
+                return stat.getETag();
+        }
+        return null;
+    }
+    /**
+     * @return Stored message is not modified for the conditional
+     * request, without reading the stored message body
+     * @see File#isNotModified(alto.lang.HttpMessage)
+     */
+    public boolean isNotModified(HttpMessage request)
+        throws java.io.IOException
+    {
+        File storage = this.getStorage();
         if (null != storage)
-            return storage.getETag();
+            return storage.isNotModified(request);
         else
-            return null;
+            return false;
     }
     public boolean hasLocation(){
         return (null != this.getHostName())&&(null != this.getPath());
@@ -25,6 +25,10 @@ import alto.io.Principal;
 /**
  * All threads extend from this one.
  * 
+ * <p> The static context and principal methods work on any thread,
+ * including pooled threads not extending this class, with the
+ * context defined by a {@link Carrier}. </p>
+ * 
  * @author jdp
  * @since 1.1
  */
@@ -35,52 +39,100 @@ public class Thread
     public final static boolean In(){
         return (java.lang.Thread.currentThread() instanceof alto.sys.Thread);
     }
+    /**
+     * @return Current thread, which must be an instance of this class
+     */
     public final static Thread Get(){
         return (Thread)currentThread();
     }
     public final static boolean IsMain(){
-        return ((Thread)currentThread()).isMain();
+        java.lang.Thread T = currentThread();
+        return (T instanceof Thread && ((Thread)T).isMain());
     }
     /**
      * @return True when in an *HTTP network request context.
      */
     public final static boolean IsInContext(){
-        return ((Thread)currentThread()).hasContext();
+        return (null != Carrier.Context());
     }
     public final static boolean IsNotInContext(){
-        return ((Thread)currentThread()).hasNotContext();
+        return (null == Carrier.Context());
     }
     public final static IO.Context Context(){
-        return ((Thread)currentThread()).getContext();
+        return Carrier.Context();
     }
     public final static boolean MaySetContext(IO.Context cx){
         if (null != cx){
-            Thread T = (Thread)currentThread();
-            if (T.hasNotContext()){
-                return (cx == T.pushContext(cx));
+            java.lang.Thread T = currentThread();
+            if (T instanceof Thread){
+                Thread thread = (Thread)T;
+                if (thread.hasNotContext()){
+                    return (cx == thread.pushContext(cx));
+                }
+            }
+            else if (null == Carrier.Context()){
+                Carrier.Context(cx);
+                return true;
             }
         }
         return false;
     }
     public final static void ResetContext(IO.Context cx){
-        ((Thread)currentThread()).resetContext(cx);
+        Carrier.Context(cx);
     }
     public final static Principal GetPrincipal(){
-        return ((Thread)currentThread()).getPrincipal();
+        return Principal(Carrier.Context());
     }
     @Code(Check.Locking)
     public final static Principal GetPrincipal(boolean authenticate)
         throws java.io.IOException
     {
-        return ((Thread)currentThread()).getPrincipal(authenticate);
+        return Principal(Carrier.Context(),authenticate);
     }
     @Code(Check.SecTrusted)
     public final static Principal PushPrincipal(){
-        return ((Thread)currentThread()).pushPrincipal();
+        IO.Context context = Carrier.Context();
+        if (null != context)
+            return context.pushPrincipal();
+        else
+            return null;
     }
     @Code(Check.SecSafe)
     public final static Principal PopPrincipal(){
-        return ((Thread)currentThread()).popPrincipal();
+        IO.Context context = Carrier.Context();
+        if (null != context)
+            return context.popPrincipal();
+        else
+            return null;
+    }
+    private final static Principal Principal(IO.Context context){
+        if (null != context){
+            if (context.isAuthenticated())
+                return context.getPrincipal();
+            else if (context.isAuthenticating()){
+                /*
+                 * Authenticate this path from a place known external
+                 * to all locks.
+                 */
+                throw new Error.Bug("Should have been authenticated");
+            }
+        }
+        return null;
+    }
+    /**
+     * (Care with locks)
+     */
+    @Code(Check.Locking)
+    private final static Principal Principal(IO.Context context, boolean authenticate)
+        throws java.io.IOException
+    {
+        if (null != context){
+            if (context.isAuthenticating())
+                return context.authenticate();
+            else
+                return context.getPrincipal();
+        }
+        return null;
     }
 
 
@@ -101,12 +153,11 @@ public class Thread
     /**
      * This is needed by threads like FileTransaction to inherit their
      * correct security context.
+     * 
+     * @see Carrier
      */
     private void inherit(){
-        java.lang.Thread T = currentThread();
-        if (T instanceof Thread){
-            this.context = ((Thread)T).getContext();
-        }
+        this.context = Carrier.Context();
     }
     /**
      * Only {@link Init$Main} returns true from here.
@@ -143,19 +194,7 @@ public class Thread
         this.context = context;
     }
     public final Principal getPrincipal(){
-        IO.Context context = this.context;
-        if (null != context){
-            if (context.isAuthenticated())
-                return context.getPrincipal();
-            else if (context.isAuthenticating()){
-                /*
-                 * Authenticate this path from a place known external
-                 * to all locks.
-                 */
-                throw new Error.Bug("Should have been authenticated");
-            }
-        }
-        return null;
+        return Principal(this.context);
     }
     /**
      * (Care with locks)
@@ -164,14 +203,7 @@ public class Thread
     public final Principal getPrincipal(boolean authenticate)
         throws java.io.IOException
     {
-        IO.Context context = this.context;
-        if (null != context){
-            if (context.isAuthenticating())
-                return context.authenticate();
-            else
-                return context.getPrincipal();
-        }
-        return null;
+        return Principal(this.context,authenticate);
     }
     @Code(Check.SecTrusted)
     public final Principal pushPrincipal(){
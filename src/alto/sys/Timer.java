@@ -0,0 +1,467 @@
+/*
+ * Copyright (C) 1998, 2009  John Pritchard and the Alto Project Group.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package alto.sys;
+
+/**
+ * <p> Shared scheduler of short timed tasks on one daemon thread,
+ * for example {@link FileTransaction} lock timeouts, in place of a
+ * sleeping thread for each.  </p>
+ *
+ * <h3>Wheel</h3>
+ *
+ * <p> Tasks are kept in a hashed wheel of {@link #Slots} lists, each
+ * list holding the tasks expiring on one {@link #Tick} of
+ * milliseconds, modulo the number of slots.  Scheduling and
+ * cancelling are constant time without a lock.  New tasks are queued
+ * to the timer thread, which places them on the wheel.  A cancelled
+ * task is removed when its slot is next expired.  Tasks expire at the
+ * end of their tick, and not before their deadline.  </p>
+ *
+ * <h3>Context</h3>
+ *
+ * <p> The {@link IO.Context} of the scheduling thread is captured
+ * with the task in a {@link Carrier}, and restored on the timer
+ * thread while the task runs, so that a task runs with the principal
+ * that scheduled it.  </p>
+ *
+ * <h3>Tasks</h3>
+ *
+ * <p> Tasks run on the timer thread, and should not block for long.
+ * An exception thrown by a task is printed, and does not stop the
+ * timer.  </p>
+ *
+ * @see FileTransaction.Timeout
+ * @since 1.6
+ */
+public final class Timer
+    extends java.lang.Object
+{
+    /**
+     * Milliseconds per wheel slot, from the system property
+     * <code>"alto.sys.Timer.Tick"</code>, default ten.
+     */
+    public final static long Tick = java.lang.Math.max(1L,java.lang.Long.getLong("alto.sys.Timer.Tick",10L));
+
+    /**
+     * Number of wheel slots, a power of two
+     */
+    public final static int Slots = 0x200;
+
+    private static Timer Instance;
+
+    /**
+     * @return Shared timer
+     */
+    public final static Timer Instance(){
+        synchronized(Timer.class){
+            Timer timer = Instance;
+            if (null == timer){
+                timer = new Timer("Timer");
+                Instance = timer;
+            }
+            return timer;
+        }
+    }
+
+    /**
+     * A task scheduled once, or periodically, on a timer.
+     */
+    public abstract static class Task
+        extends java.lang.Object
+        implements java.lang.Runnable
+    {
+        private final static int New = 0, Scheduled = 1, Cancelled = 2, Done = 3;
+
+        private final static java.util.concurrent.atomic.AtomicIntegerFieldUpdater<Task> State =
+            java.util.concurrent.atomic.AtomicIntegerFieldUpdater.newUpdater(Task.class,"state");
+
+
+        private volatile int state;
+
+        private volatile long deadline;
+
+        private long period;
+
+        private long rounds;
+
+        private Carrier carrier = Carrier.Nil;
+
+        /*
+         * Wheel slot list, under the timer thread
+         */
+        private Task next;
+
+
+        protected Task(){
+            super();
+        }
+
+
+        /**
+         * @return Deadline in {@link java.lang.System#nanoTime()}
+         */
+        public final long getDeadline(){
+            return this.deadline;
+        }
+        public final boolean isScheduled(){
+            return (Scheduled == this.state);
+        }
+        public final boolean isCancelled(){
+            return (Cancelled == this.state);
+        }
+        /**
+         * @return Task will not run again.  False for a task already
+         * run once, or cancelled.
+         */
+        public final boolean cancel(){
+            return State.compareAndSet(this,Scheduled,Cancelled);
+        }
+        /**
+         * @return Captured context of the scheduling thread
+         */
+        public final IO.Context getContext(){
+            return this.carrier.getContext();
+        }
+    }
+
+
+    private final java.util.concurrent.ConcurrentLinkedQueue<Task> queue = new java.util.concurrent.ConcurrentLinkedQueue<Task>();
+
+    private final Task[] wheel = new Task[Slots];
+
+    private final long origin = java.lang.System.nanoTime();
+
+    private final long tickNanos = (Tick * 1000000L);
+
+    private final Wheel thread;
+
+    private final java.util.concurrent.atomic.AtomicLong scheduled = new java.util.concurrent.atomic.AtomicLong();
+
+    private final java.util.concurrent.atomic.AtomicLong expired = new java.util.concurrent.atomic.AtomicLong();
+
+    private final java.util.concurrent.atomic.AtomicLong cancelled = new java.util.concurrent.atomic.AtomicLong();
+
+    private final java.util.concurrent.atomic.AtomicInteger pending = new java.util.concurrent.atomic.AtomicInteger();
+
+    /**
+     * Next tick to expire, under the timer thread
+     */
+    private long tick;
+
+
+    public Timer(java.lang.String name){
+        super();
+        this.thread = new Wheel(this,name);
+        this.thread.start();
+    }
+
+
+    /**
+     * Run the task once after 'delay' milliseconds.
+     */
+    public Task schedule(Task task, long delay){
+        return this.schedule(task,delay,0L);
+    }
+    /**
+     * Run the task after 'delay' milliseconds, and then every
+     * 'period' milliseconds until cancelled.
+     *
+     * @param period Zero for once
+     */
+    public Task schedule(Task task, long delay, long period){
+        if (null == task || 0L > delay || 0L > period)
+            throw new alto.sys.Error.Argument();
+        else if (Task.State.compareAndSet(task,Task.New,Task.Scheduled)){
+            task.carrier = Carrier.Capture();
+            task.period = (period * 1000000L);
+            task.deadline = (java.lang.System.nanoTime()+(delay * 1000000L));
+            this.scheduled.incrementAndGet();
+            this.pending.incrementAndGet();
+            this.queue.add(task);
+            return task;
+        }
+        else
+            throw new alto.sys.Error.State("Task scheduled");
+    }
+    /**
+     * @return Tasks scheduled and not yet run or removed after
+     * cancel
+     */
+    public int countPending(){
+        return this.pending.get();
+    }
+    public long countScheduled(){
+        return this.scheduled.get();
+    }
+    public long countExpired(){
+        return this.expired.get();
+    }
+    public long countCancelled(){
+        return this.cancelled.get();
+    }
+    /**
+     * Stop the timer thread.  Pending tasks do not run.
+     */
+    public void close(){
+        this.thread.interrupt();
+    }
+    /**
+     * Timer thread
+     */
+    private void run(){
+        final long tickNanos = this.tickNanos;
+        while (true){
+            long now = java.lang.System.nanoTime();
+            long current = ((now - this.origin)/tickNanos);
+            this.place(current);
+            while (this.tick <= current){
+                this.expire(this.tick);
+                this.tick += 1;
+                /*
+                 * Periodic tasks run are queued for placement
+                 */
+                this.place(current);
+            }
+            long next = (this.origin+(this.tick * tickNanos));
+            java.util.concurrent.locks.LockSupport.parkNanos(this,(next - java.lang.System.nanoTime()));
+            if (java.lang.Thread.interrupted())
+                return;
+        }
+    }
+    /**
+     * Move queued tasks onto the wheel.
+     *
+     * @param current Tick now
+     */
+    private void place(long current){
+        Task task;
+        while (null != (task = this.queue.poll())){
+            if (Task.Cancelled == task.state){
+                this.remove();
+                continue;
+            }
+            /*
+             * Expire at the end of the deadline tick, not before the
+             * deadline
+             */
+            long at = (((task.deadline - this.origin)+(this.tickNanos-1))/this.tickNanos);
+            if (at < this.tick)
+                at = this.tick;
+            task.rounds = ((at - this.tick)/Slots);
+            int slot = (int)(at & (Slots-1));
+            task.next = this.wheel[slot];
+            this.wheel[slot] = task;
+        }
+    }
+    private void expire(long tick){
+        int slot = (int)(tick & (Slots-1));
+        Task task = this.wheel[slot], prev = null;
+        while (null != task){
+            Task next = task.next;
+            if (Task.Cancelled == task.state){
+                this.unlink(slot,prev,task);
+                this.remove();
+            }
+            else if (0L < task.rounds){
+                task.rounds -= 1;
+                prev = task;
+            }
+            else {
+                this.unlink(slot,prev,task);
+                this.run(task);
+            }
+            task = next;
+        }
+    }
+    private void unlink(int slot, Task prev, Task task){
+        if (null == prev)
+            this.wheel[slot] = task.next;
+        else
+            prev.next = task.next;
+        task.next = null;
+    }
+    private void remove(){
+        this.pending.decrementAndGet();
+        this.cancelled.incrementAndGet();
+    }
+    private void run(Task task){
+        boolean periodic = (0L < task.period);
+        if (!periodic && !Task.State.compareAndSet(task,Task.Scheduled,Task.Done)){
+            this.remove();
+            return;
+        }
+        this.expired.incrementAndGet();
+        Carrier previous = task.carrier.restore();
+        try {
+            task.run();
+        }
+        catch (java.lang.Throwable exc){
+            exc.printStackTrace();
+        }
+        finally {
+            previous.restore();
+        }
+        if (periodic && Task.Scheduled == task.state){
+            task.deadline += task.period;
+            this.queue.add(task);
+        }
+        else if (periodic){
+            this.remove();
+        }
+        else
+            this.pending.decrementAndGet();
+    }
+
+    private final static class Wheel
+        extends alto.sys.Thread
+    {
+        private final Timer timer;
+
+        Wheel(Timer timer, java.lang.String name){
+            super(null,name);
+            this.timer = timer;
+            this.setDaemon(true);
+        }
+        public void run(){
+            this.resetContext(null);
+            this.timer.run();
+        }
+    }
+
+
+    protected static void usage(java.io.PrintStream out){
+        out.println();
+        out.println("Usage");
+        out.println();
+        out.println("  Timer bench [transactions] [timeout-ms] [commit-percent]");
+        out.println("  Timer threads [transactions] [timeout-ms]");
+        out.println();
+        out.println("Description");
+        out.println();
+        out.println("  Bench opens transactions, each scheduling a timeout, and");
+        out.println("  completes the commit percent before the timeout by cancel.");
+        out.println("  Reports schedule rate, lateness of expired timeouts, and live");
+        out.println("  threads.  Default 10000 transactions, 1000 ms, 90%.");
+        out.println();
+        out.println("  Threads opens the same number of sleeping timeout threads, one");
+        out.println("  per transaction, for comparison.");
+        out.println();
+    }
+    /**
+     * Bench timeout recording lateness.
+     */
+    private final static class Bench
+        extends Task
+    {
+        final java.util.concurrent.atomic.AtomicLong late;
+        final java.util.concurrent.CountDownLatch done;
+
+        Bench(java.util.concurrent.atomic.AtomicLong late, java.util.concurrent.CountDownLatch done){
+            super();
+            this.late = late;
+            this.done = done;
+        }
+        public void run(){
+            this.late.addAndGet(java.lang.System.nanoTime() - this.getDeadline());
+            this.done.countDown();
+        }
+    }
+    public static void main(java.lang.String[] argv){
+        try {
+            int count = 10000;
+            long timeout = 1000L;
+            int commit = 90;
+            if (1 < argv.length)
+                count = java.lang.Integer.parseInt(argv[1]);
+            if (2 < argv.length)
+                timeout = java.lang.Long.parseLong(argv[2]);
+            if (3 < argv.length)
+                commit = java.lang.Integer.parseInt(argv[3]);
+            if (0 < argv.length && "bench".equals(argv[0])){
+                Timer timer = new Timer("Timer bench");
+                java.util.concurrent.atomic.AtomicLong late = new java.util.concurrent.atomic.AtomicLong();
+                java.util.Random random = new java.util.Random();
+                Task[] tasks = new Task[count];
+                int expire = 0;
+                boolean[] commits = new boolean[count];
+                for (int cc = 0; cc < count; cc++){
+                    commits[cc] = (random.nextInt(100) < commit);
+                    if (!commits[cc])
+                        expire += 1;
+                }
+                java.util.concurrent.CountDownLatch done = new java.util.concurrent.CountDownLatch(expire);
+                long start = java.lang.System.nanoTime();
+                for (int cc = 0; cc < count; cc++)
+                    tasks[cc] = timer.schedule(new Bench(late,done),timeout);
+                long scheduled = java.lang.System.nanoTime();
+                System.out.printf("scheduled %d in %.1f ms, %d pending, %d live threads%n",
+                                  count,((scheduled-start)/1e6),timer.countPending(),java.lang.Thread.activeCount());
+                for (int cc = 0; cc < count; cc++){
+                    if (commits[cc])
+                        tasks[cc].cancel();
+                }
+                System.out.printf("cancelled %d in %.1f ms%n",(count-expire),((java.lang.System.nanoTime()-scheduled)/1e6));
+                if (!done.await(timeout+10000L,java.util.concurrent.TimeUnit.MILLISECONDS))
+                    System.out.println("timeouts not expired");
+                else {
+                    long end = java.lang.System.nanoTime();
+                    System.out.printf("expired %d, mean lateness %.2f ms, complete %.1f ms after schedule%n",
+                                      timer.countExpired(),((0 < expire)?(late.get()/1e6/expire):(0.0)),((end-scheduled)/1e6));
+                }
+                java.lang.Thread.sleep(2*Tick);
+                System.out.printf("pending %d, cancelled %d%n",timer.countPending(),timer.countCancelled());
+                timer.close();
+                System.exit(0);
+            }
+            else if (0 < argv.length && "threads".equals(argv[0])){
+                java.lang.Thread[] threads = new java.lang.Thread[count];
+                final long sleep = timeout;
+                long start = java.lang.System.nanoTime();
+                for (int cc = 0; cc < count; cc++){
+                    threads[cc] = new java.lang.Thread(){
+                            public void run(){
+                                try {
+                                    java.lang.Thread.sleep(sleep);
+                                }
+                                catch (java.lang.InterruptedException exc){
+                                }
+                            }
+                        };
+                    threads[cc].setDaemon(true);
+                    threads[cc].start();
+                }
+                long started = java.lang.System.nanoTime();
+                System.out.printf("started %d in %.1f ms, %d live threads%n",
+                                  count,((started-start)/1e6),java.lang.Thread.activeCount());
+                for (int cc = 0; cc < count; cc++)
+                    threads[cc].join();
+                System.out.printf("complete %.1f ms after start%n",((java.lang.System.nanoTime()-started)/1e6));
+                System.exit(0);
+            }
+            else {
+                usage(System.err);
+                System.exit(1);
+            }
+        }
+        catch (java.lang.Exception exc){
+            exc.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
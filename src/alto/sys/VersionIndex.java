@@ -0,0 +1,302 @@
+/*
+ * Copyright (C) 1998, 2009  John Pritchard and the Alto Project Group.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package alto.sys;
+
+/**
+ * <p> Numeric versions present under one base path directory, as a
+ * sorted set of longs in memory and an append only sidecar file in
+ * the directory.  </p>
+ *
+ * <h3>Sidecar</h3>
+ *
+ * <p> The sidecar is a sequence of eight byte records: a positive
+ * version was added, and a negative version was removed.  A torn
+ * record at the end is ignored.  When the sidecar is missing, or its
+ * last version is not found in the directory, the index is rebuilt
+ * from a directory listing and the sidecar rewritten.  The sidecar
+ * is rewritten when it has grown to twice the set plus {@link
+ * #Compact} records.  </p>
+ *
+ * <h3>Updates</h3>
+ *
+ * <p> {@link File#renameTo(java.io.File)} and {@link File#delete()}
+ * maintain the index, so a {@link FileTransaction#commit()} renaming
+ * "current" to its numeric version records that version.  </p>
+ *
+ * @see File#lastVersion()
+ * @see File#listVersions(long,long)
+ * @since 1.6
+ */
+public final class VersionIndex
+    extends java.lang.Object
+{
+    public final static java.lang.String Name = ".versions";
+
+    /**
+     * Sidecar records beyond twice the set before a rewrite
+     */
+    public final static int Compact = 0x100;
+
+    private final static long[] Empty = new long[0];
+
+    /**
+     * Open the index for the base path directory, rebuilding it from
+     * a directory listing as necessary.
+     *
+     * @return Null for directory not found
+     */
+    public final static VersionIndex Open(java.io.File dir)
+        throws java.io.IOException
+    {
+        java.lang.String[] list = dir.list();
+        if (null == list)
+            return null;
+        else {
+            VersionIndex index = new VersionIndex(dir);
+            if (!index.load())
+                index.rebuild(list);
+            return index;
+        }
+    }
+    /**
+     * @return Numeric version of the file name, or zero
+     */
+    public final static long ValueOf(java.lang.String name){
+        int len = name.length();
+        if (0 < len && 19 > len){
+            long value = 0L;
+            for (int cc = 0; cc < len; cc++){
+                char ch = name.charAt(cc);
+                if ('0' <= ch && '9' >= ch)
+                    value = (value * 10L)+(ch-'0');
+                else
+                    return 0L;
+            }
+            return value;
+        }
+        else
+            return 0L;
+    }
+
+
+    private final java.io.File dir, file;
+
+    private long[] set = Empty;
+
+    private int count;
+
+    private int records;
+
+
+    private VersionIndex(java.io.File dir){
+        super();
+        this.dir = dir;
+        this.file = new java.io.File(dir,Name);
+    }
+
+
+    /**
+     * @return Greatest version, or zero for none
+     */
+    public synchronized long last(){
+        int count = this.count;
+        if (0 < count)
+            return this.set[count-1];
+        else
+            return 0L;
+    }
+    public synchronized int count(){
+        return this.count;
+    }
+    public synchronized boolean contains(long version){
+        return (-1 < java.util.Arrays.binarySearch(this.set,0,this.count,version));
+    }
+    /**
+     * @return Versions from first to last, inclusive, in ascending
+     * order
+     */
+    public synchronized long[] list(long first, long last){
+        if (first > last)
+            return Empty;
+        else {
+            long[] set = this.set;
+            int count = this.count;
+            int start = java.util.Arrays.binarySearch(set,0,count,first);
+            if (0 > start)
+                start = -(start+1);
+            int end = java.util.Arrays.binarySearch(set,start,count,last);
+            if (0 > end)
+                end = -(end+1);
+            else
+                end += 1;
+            if (start < end){
+                long[] list = new long[end-start];
+                java.lang.System.arraycopy(set,start,list,0,list.length);
+                return list;
+            }
+            else
+                return Empty;
+        }
+    }
+    /**
+     * Record a version present in the directory.
+     */
+    public synchronized void add(long version)
+        throws java.io.IOException
+    {
+        if (0L < version && this.insert(version))
+            this.append(version);
+    }
+    /**
+     * Record a version removed from the directory.
+     */
+    public synchronized void remove(long version)
+        throws java.io.IOException
+    {
+        if (0L < version && this.delete(version))
+            this.append(-version);
+    }
+    private boolean insert(long version){
+        long[] set = this.set;
+        int count = this.count;
+        int idx;
+        if (0 == count || set[count-1] < version)
+            idx = count;
+        else {
+            idx = java.util.Arrays.binarySearch(set,0,count,version);
+            if (-1 < idx)
+                return false;
+            else
+                idx = -(idx+1);
+        }
+        if (count == set.length){
+            long[] copier = new long[java.lang.Math.max(0x10,(count<<1))];
+            java.lang.System.arraycopy(set,0,copier,0,count);
+            this.set = set = copier;
+        }
+        if (idx < count)
+            java.lang.System.arraycopy(set,idx,set,(idx+1),(count-idx));
+        set[idx] = version;
+        this.count = (count+1);
+        return true;
+    }
+    private boolean delete(long version){
+        long[] set = this.set;
+        int count = this.count;
+        int idx = java.util.Arrays.binarySearch(set,0,count,version);
+        if (-1 < idx){
+            count -= 1;
+            if (idx < count)
+                java.lang.System.arraycopy(set,(idx+1),set,idx,(count-idx));
+            this.count = count;
+            return true;
+        }
+        else
+            return false;
+    }
+    private void append(long record)
+        throws java.io.IOException
+    {
+        if (this.records >= ((this.count<<1)+Compact))
+            this.write();
+        else {
+            java.io.DataOutputStream out = new java.io.DataOutputStream(new java.io.FileOutputStream(this.file,true));
+            try {
+                out.writeLong(record);
+            }
+            finally {
+                out.close();
+            }
+            this.records += 1;
+        }
+    }
+    /**
+     * @return False for sidecar not found, or not consistent with the
+     * directory
+     */
+    private boolean load()
+        throws java.io.IOException
+    {
+        java.io.File file = this.file;
+        long length = file.length();
+        if (8L > length)
+            return false;
+        else {
+            java.io.DataInputStream in = new java.io.DataInputStream(new java.io.BufferedInputStream(new java.io.FileInputStream(file)));
+            try {
+                long records = (length >>> 3);
+                for (long cc = 0; cc < records; cc++){
+                    long record = in.readLong();
+                    if (0L < record)
+                        this.insert(record);
+                    else if (0L > record)
+                        this.delete(-record);
+                }
+                this.records = (int)records;
+            }
+            finally {
+                in.close();
+            }
+            long last = this.last();
+            if (0L == last || new java.io.File(this.dir,java.lang.String.valueOf(last)).isFile()){
+                if (0L != (length & 7L))
+                    this.write();
+                return true;
+            }
+            else {
+                this.set = Empty;
+                this.count = 0;
+                return false;
+            }
+        }
+    }
+    private void rebuild(java.lang.String[] list)
+        throws java.io.IOException
+    {
+        for (int cc = 0, count = list.length; cc < count; cc++){
+            long version = ValueOf(list[cc]);
+            if (0L < version)
+                this.insert(version);
+        }
+        this.write();
+    }
+    /**
+     * Replace the sidecar with the set.
+     */
+    private void write()
+        throws java.io.IOException
+    {
+        java.io.File temp = new java.io.File(this.dir,Name+".tmp");
+        java.io.DataOutputStream out = new java.io.DataOutputStream(new java.io.BufferedOutputStream(new java.io.FileOutputStream(temp)));
+        try {
+            long[] set = this.set;
+            for (int cc = 0, count = this.count; cc < count; cc++)
+                out.writeLong(set[cc]);
+        }
+        finally {
+            out.close();
+        }
+        if (temp.renameTo(this.file) || (this.file.delete() && temp.renameTo(this.file)))
+            this.records = this.count;
+        else {
+            temp.delete();
+            throw new java.io.IOException("Rename "+temp+" to "+this.file);
+        }
+    }
+}
@@ -0,0 +1,561 @@
+/*
+ * Copyright (C) 1998, 2009  John Pritchard and the Alto Project Group.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package alto.sys.lock;
+
+/**
+ * <p> A lock wrapper recording wait and hold times, contended
+ * entries and timeouts for the lock of a keyed object, for example
+ * the {@link alto.sys.File} of an {@link alto.lang.Address}.  </p>
+ *
+ * <h3>Usage</h3>
+ * <pre>
+ *  this.lock = Instrumented.Wrap(new Light(),address);
+ * </pre>
+ *
+ * <p> When the system property
+ * <code>"alto.sys.lock.Instrumented"</code> is not true, {@link
+ * #Wrap(alto.sys.Lock.Advanced,java.lang.Object) Wrap} returns its
+ * argument, so the disabled cost is nothing.  </p>
+ *
+ * <h3>Statistics</h3>
+ *
+ * <p> Times are collected over all instrumented locks in log two
+ * nanosecond histograms, and published by {@link #Statistics()} as
+ * {@link Counter} headers.  An entry is contended when the wrapped
+ * lock's try enter fails.  The {@link #Top} keys with the most
+ * contended entries are the value of the {@link Counter#Hot}
+ * header.  </p>
+ *
+ * <p> Read hold times are from the outermost entry to the matching
+ * exit in each thread, and write hold times from the outermost write
+ * entry to its exit.  </p>
+ *
+ * <p> Optimistic reads are passed to a wrapped {@link
+ * alto.sys.Lock$Optimistic} lock uncounted, so that instrumentation
+ * does not change the locking of its callers.  Over any other lock
+ * the stamp is zero, and the caller takes the read lock.  </p>
+ *
+ * @see alto.sys.File#LockType
+ * @since 1.6
+ */
+public final class Instrumented
+    extends java.lang.Object
+    implements alto.sys.Lock.Optimistic
+{
+    /**
+     * From the system property <code>"alto.sys.lock.Instrumented"</code>
+     */
+    public final static boolean Enabled = java.lang.Boolean.getBoolean("alto.sys.lock.Instrumented");
+
+    /**
+     * Number of keys in the {@link Counter#Hot} header, from the
+     * system property <code>"alto.sys.lock.Instrumented.Top"</code>,
+     * default ten.
+     */
+    public final static int Top = java.lang.Integer.getInteger("alto.sys.lock.Instrumented.Top",10);
+
+    /**
+     * @return Instrumented lock when {@link #Enabled}, otherwise the
+     * argument
+     */
+    public final static alto.sys.Lock.Advanced Wrap(alto.sys.Lock.Advanced lock, java.lang.Object key){
+        if (Enabled)
+            return new Instrumented(lock,key);
+        else
+            return lock;
+    }
+
+    /**
+     * Log two histogram of nanosecond times.  Bucket 'n' counts times
+     * less than two to the 'n'.
+     */
+    public final static class Histogram
+        extends java.lang.Object
+    {
+        public final static int Buckets = 40;
+
+
+        private final java.util.concurrent.atomic.AtomicLongArray buckets = new java.util.concurrent.atomic.AtomicLongArray(Buckets);
+
+        private final java.util.concurrent.atomic.AtomicLong count = new java.util.concurrent.atomic.AtomicLong();
+
+        private final java.util.concurrent.atomic.AtomicLong sum = new java.util.concurrent.atomic.AtomicLong();
+
+
+        public Histogram(){
+            super();
+        }
+
+
+        public void add(long nanos){
+            if (0L > nanos)
+                nanos = 0L;
+            int bucket = (64-java.lang.Long.numberOfLeadingZeros(nanos));
+            if (Buckets <= bucket)
+                bucket = (Buckets-1);
+            this.buckets.incrementAndGet(bucket);
+            this.count.incrementAndGet();
+            this.sum.addAndGet(nanos);
+        }
+        public long count(){
+            return this.count.get();
+        }
+        public long mean(){
+            long count = this.count.get();
+            if (0L < count)
+                return (this.sum.get()/count);
+            else
+                return 0L;
+        }
+        /**
+         * @param percent Zero to one hundred
+         * @return Upper bound of the bucket holding the percentile
+         */
+        public long percentile(double percent){
+            long count = this.count.get();
+            if (0L < count){
+                long rank = (long)java.lang.Math.ceil((percent/100.0)*count);
+                long seen = 0L;
+                for (int bucket = 0; bucket < Buckets; bucket++){
+                    seen += this.buckets.get(bucket);
+                    if (seen >= rank)
+                        return (1L << bucket);
+                }
+                return (1L << (Buckets-1));
+            }
+            else
+                return 0L;
+        }
+        public void reset(){
+            for (int bucket = 0; bucket < Buckets; bucket++)
+                this.buckets.set(bucket,0L);
+            this.count.set(0L);
+            this.sum.set(0L);
+        }
+        /**
+         * @return Non zero buckets as "bound:count", comma separated
+         */
+        public java.lang.String toString(){
+            java.lang.StringBuilder string = new java.lang.StringBuilder();
+            for (int bucket = 0; bucket < Buckets; bucket++){
+                long value = this.buckets.get(bucket);
+                if (0L < value){
+                    if (0 < string.length())
+                        string.append(", ");
+                    string.append(1L << bucket);
+                    string.append(':');
+                    string.append(value);
+                }
+            }
+            return string.toString();
+        }
+    }
+    /**
+     * Instrumented lock statistic as a header.
+     */
+    public final static class Counter
+        extends alto.lang.Statistic
+        implements alto.lang.Header.Update
+    {
+        public final static String Acquires      = "Lock-Acquires";
+        public final static String Contended     = "Lock-Contended";
+        public final static String Timeouts      = "Lock-Timeouts";
+        public final static String Wait          = "Lock-Wait-Nanos";
+        public final static String WaitP99       = "Lock-Wait-P99-Nanos";
+        public final static String WaitHistogram = "Lock-Wait-Histogram";
+        public final static String Hold          = "Lock-Hold-Nanos";
+        public final static String HoldP99       = "Lock-Hold-P99-Nanos";
+        public final static String HoldHistogram = "Lock-Hold-Histogram";
+        public final static String Hot           = "Lock-Hot";
+
+
+        public Counter(String name){
+            super(name);
+            this.update();
+        }
+
+
+        public void update(){
+            java.lang.String value = Instrumented.Value(this.name);
+            this.value = value;
+            this.parsed = value;
+            this.string = (this.name+": "+value);
+        }
+    }
+    /**
+     * Outermost read entries of a thread, by lock
+     */
+    private final static class Reads
+        extends java.lang.Object
+    {
+        Instrumented[] locks = new Instrumented[4];
+        int[] depth = new int[4];
+        long[] start = new long[4];
+        int count;
+
+        Reads(){
+            super();
+        }
+
+        void enter(Instrumented lock, long now){
+            Instrumented[] locks = this.locks;
+            int count = this.count;
+            for (int cc = 0; cc < count; cc++){
+                if (lock == locks[cc]){
+                    this.depth[cc] += 1;
+                    return;
+                }
+            }
+            if (count == locks.length){
+                int size = (count<<1);
+                Instrumented[] locks_copier = new Instrumented[size];
+                int[] depth_copier = new int[size];
+                long[] start_copier = new long[size];
+                java.lang.System.arraycopy(locks,0,locks_copier,0,count);
+                java.lang.System.arraycopy(this.depth,0,depth_copier,0,count);
+                java.lang.System.arraycopy(this.start,0,start_copier,0,count);
+                this.locks = locks = locks_copier;
+                this.depth = depth_copier;
+                this.start = start_copier;
+            }
+            locks[count] = lock;
+            this.depth[count] = 1;
+            this.start[count] = now;
+            this.count = (count+1);
+        }
+        /**
+         * @return Start of the outermost entry on its exit, otherwise
+         * negative one
+         */
+        long exit(Instrumented lock){
+            Instrumented[] locks = this.locks;
+            int count = this.count;
+            for (int cc = 0; cc < count; cc++){
+                if (lock == locks[cc]){
+                    int depth = (this.depth[cc]-1);
+                    if (0 < depth){
+                        this.depth[cc] = depth;
+                        return -1L;
+                    }
+                    else {
+                        long start = this.start[cc];
+                        count -= 1;
+                        locks[cc] = locks[count];
+                        this.depth[cc] = this.depth[count];
+                        this.start[cc] = this.start[count];
+                        locks[count] = null;
+                        this.count = count;
+                        return start;
+                    }
+                }
+            }
+            return -1L;
+        }
+    }
+
+    private final static java.lang.ThreadLocal<Reads> ThreadReads = new java.lang.ThreadLocal<Reads>(){
+        protected Reads initialValue(){
+            return new Reads();
+        }
+    };
+
+    private final static java.util.concurrent.atomic.AtomicLong Acquires = new java.util.concurrent.atomic.AtomicLong();
+
+    private final static java.util.concurrent.atomic.AtomicLong Contended = new java.util.concurrent.atomic.AtomicLong();
+
+    private final static java.util.concurrent.atomic.AtomicLong Timeouts = new java.util.concurrent.atomic.AtomicLong();
+
+    private final static Histogram Wait = new Histogram();
+
+    private final static Histogram Hold = new Histogram();
+
+    /**
+     * Instrumented locks having a contended entry
+     */
+    private final static java.util.Map<Instrumented,java.lang.Boolean> Hot = new java.util.WeakHashMap<Instrumented,java.lang.Boolean>();
+
+
+    /**
+     * @param name One of the header names in {@link Counter}
+     * @return Statistic value, or null for name not recognized
+     */
+    public final static java.lang.String Value(java.lang.String name){
+        if (Counter.Acquires.equals(name))
+            return java.lang.String.valueOf(Acquires.get());
+        else if (Counter.Contended.equals(name))
+            return java.lang.String.valueOf(Contended.get());
+        else if (Counter.Timeouts.equals(name))
+            return java.lang.String.valueOf(Timeouts.get());
+        else if (Counter.Wait.equals(name))
+            return java.lang.String.valueOf(Wait.mean());
+        else if (Counter.WaitP99.equals(name))
+            return java.lang.String.valueOf(Wait.percentile(99.0));
+        else if (Counter.WaitHistogram.equals(name))
+            return Wait.toString();
+        else if (Counter.Hold.equals(name))
+            return java.lang.String.valueOf(Hold.mean());
+        else if (Counter.HoldP99.equals(name))
+            return java.lang.String.valueOf(Hold.percentile(99.0));
+        else if (Counter.HoldHistogram.equals(name))
+            return Hold.toString();
+        else if (Counter.Hot.equals(name)){
+            java.lang.StringBuilder string = new java.lang.StringBuilder();
+            for (Instrumented lock : Hot(Top)){
+                if (0 < string.length())
+                    string.append(", ");
+                string.append(lock.key);
+                string.append(' ');
+                string.append(lock.contended.get());
+            }
+            return string.toString();
+        }
+        else
+            return null;
+    }
+    /**
+     * @return New statistic headers over all instrumented locks
+     */
+    public final static alto.lang.Statistic[] Statistics(){
+        return new alto.lang.Statistic[]{
+            new Counter(Counter.Acquires),
+            new Counter(Counter.Contended),
+            new Counter(Counter.Timeouts),
+            new Counter(Counter.Wait),
+            new Counter(Counter.WaitP99),
+            new Counter(Counter.WaitHistogram),
+            new Counter(Counter.Hold),
+            new Counter(Counter.HoldP99),
+            new Counter(Counter.HoldHistogram),
+            new Counter(Counter.Hot)
+        };
+    }
+    /**
+     * @return Up to 'count' locks having the most contended entries,
+     * in descending order
+     */
+    public final static Instrumented[] Hot(int count){
+        Instrumented[] list;
+        synchronized(Hot){
+            list = Hot.keySet().toArray(new Instrumented[Hot.size()]);
+        }
+        /*
+         * Sort by counts sampled once
+         */
+        final java.util.Map<Instrumented,java.lang.Long> sample = new java.util.IdentityHashMap<Instrumented,java.lang.Long>();
+        for (Instrumented lock : list)
+            sample.put(lock,lock.contended.get());
+        java.util.Arrays.sort(list,new java.util.Comparator<Instrumented>(){
+                public int compare(Instrumented a, Instrumented b){
+                    long ca = sample.get(a), cb = sample.get(b);
+                    return (ca > cb)?(-1):((ca < cb)?(1):(0));
+                }
+            });
+        if (count < list.length){
+            Instrumented[] copier = new Instrumented[java.lang.Math.max(0,count)];
+            java.lang.System.arraycopy(list,0,copier,0,copier.length);
+            return copier;
+        }
+        else
+            return list;
+    }
+    public final static void ResetStatistics(){
+        Acquires.set(0L);
+        Contended.set(0L);
+        Timeouts.set(0L);
+        Wait.reset();
+        Hold.reset();
+        synchronized(Hot){
+            for (Instrumented lock : Hot.keySet()){
+                lock.contended.set(0L);
+                lock.hot = false;
+            }
+            Hot.clear();
+        }
+    }
+
+
+    private final alto.sys.Lock.Advanced lock;
+
+    private final java.lang.Object key;
+
+    private final java.util.concurrent.atomic.AtomicLong contended = new java.util.concurrent.atomic.AtomicLong();
+
+    private volatile boolean hot;
+
+    /*
+     * Load and store only by the write lock holder
+     */
+    private int writeDepth;
+
+    private long writeStart;
+
+
+    public Instrumented(alto.sys.Lock.Advanced lock, java.lang.Object key){
+        super();
+        if (null != lock){
+            this.lock = lock;
+            this.key = key;
+        }
+        else
+            throw new alto.sys.Error.Argument();
+    }
+
+
+    public alto.sys.Lock.Advanced getLock(){
+        return this.lock;
+    }
+    public java.lang.Object getKey(){
+        return this.key;
+    }
+    public long getContended(){
+        return this.contended.get();
+    }
+    public long lockReadOptimistic(){
+        alto.sys.Lock.Advanced lock = this.lock;
+        if (lock instanceof alto.sys.Lock.Optimistic)
+            return ((alto.sys.Lock.Optimistic)lock).lockReadOptimistic();
+        else
+            return 0L;
+    }
+    public boolean lockReadValidate(long stamp){
+        alto.sys.Lock.Advanced lock = this.lock;
+        if (lock instanceof alto.sys.Lock.Optimistic)
+            return ((alto.sys.Lock.Optimistic)lock).lockReadValidate(stamp);
+        else
+            return false;
+    }
+    public int lockReadLockCount(){
+        return this.lock.lockReadLockCount();
+    }
+    public boolean lockReadEnterTry(){
+        long start = java.lang.System.nanoTime();
+        if (this.lock.lockReadEnterTry()){
+            this.entered(start,false);
+            return true;
+        }
+        else
+            return false;
+    }
+    public boolean lockReadEnterTry(long millis) throws java.lang.InterruptedException {
+        long start = java.lang.System.nanoTime();
+        if (this.lock.lockReadEnterTry()){
+            this.entered(start,false);
+            return true;
+        }
+        else {
+            this.contended();
+            if (this.lock.lockReadEnterTry(millis)){
+                this.entered(start,false);
+                return true;
+            }
+            else {
+                Timeouts.incrementAndGet();
+                return false;
+            }
+        }
+    }
+    public void lockReadEnter(){
+        long start = java.lang.System.nanoTime();
+        if (!this.lock.lockReadEnterTry()){
+            this.contended();
+            this.lock.lockReadEnter();
+        }
+        this.entered(start,false);
+    }
+    public void lockReadExit(){
+        long start = ThreadReads.get().exit(this);
+        this.lock.lockReadExit();
+        if (-1L < start)
+            Hold.add(java.lang.System.nanoTime()-start);
+    }
+    public int lockWriteHoldCount(){
+        return this.lock.lockWriteHoldCount();
+    }
+    public boolean lockWriteEnterTry(){
+        long start = java.lang.System.nanoTime();
+        if (this.lock.lockWriteEnterTry()){
+            this.entered(start,true);
+            return true;
+        }
+        else
+            return false;
+    }
+    public boolean lockWriteEnterTry(long millis) throws java.lang.InterruptedException {
+        long start = java.lang.System.nanoTime();
+        if (this.lock.lockWriteEnterTry()){
+            this.entered(start,true);
+            return true;
+        }
+        else {
+            this.contended();
+            if (this.lock.lockWriteEnterTry(millis)){
+                this.entered(start,true);
+                return true;
+            }
+            else {
+                Timeouts.incrementAndGet();
+                return false;
+            }
+        }
+    }
+    public void lockWriteEnter(){
+        long start = java.lang.System.nanoTime();
+        if (!this.lock.lockWriteEnterTry()){
+            this.contended();
+            this.lock.lockWriteEnter();
+        }
+        this.entered(start,true);
+    }
+    public void lockWriteExit(){
+        long start = -1L;
+        int depth = (this.writeDepth-1);
+        if (0 <= depth){
+            this.writeDepth = depth;
+            if (0 == depth)
+                start = this.writeStart;
+        }
+        this.lock.lockWriteExit();
+        if (-1L < start)
+            Hold.add(java.lang.System.nanoTime()-start);
+    }
+    public java.lang.String toString(){
+        return "[Instrumented "+this.key+" contended="+this.contended.get()+' '+this.lock+']';
+    }
+    private void entered(long start, boolean write){
+        long now = java.lang.System.nanoTime();
+        Acquires.incrementAndGet();
+        Wait.add(now-start);
+        if (write){
+            if (0 == this.writeDepth++)
+                this.writeStart = now;
+        }
+        else
+            ThreadReads.get().enter(this,now);
+    }
+    private void contended(){
+        Contended.incrementAndGet();
+        this.contended.incrementAndGet();
+        if (!this.hot){
+            this.hot = true;
+            synchronized(Hot){
+                Hot.put(this,java.lang.Boolean.TRUE);
+            }
+        }
+    }
+}
@@ -0,0 +1,641 @@
+/*
+ * Copyright (C) 1998, 2009  John Pritchard and the Alto Project Group.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation; either version 2 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA
+ * 02110-1301 USA.
+ */
+package alto.sys.lock;
+
+import java.util.concurrent.locks.AbstractQueuedSynchronizer;
+
+/**
+ * <p> A reentrant read- write lock with writer preference and an
+ * optimistic read mode.  </p>
+ *
+ * <h3>Usage</h3>
+ * <pre>
+ *  long stamp = lock.lockReadOptimistic();
+ *  long length = file.statLength;
+ *  long last = file.statLast;
+ *  if (!lock.lockReadValidate(stamp)){
+ *    lock.lockReadEnter();
+ *    try {
+ *      length = file.statLength;
+ *      last = file.statLast;
+ *    }
+ *    finally {
+ *      lock.lockReadExit();
+ *    }
+ *  }
+ * </pre>
+ *
+ * <p> Optimistic reads are valid for volatile fields written under
+ * the write lock.  </p>
+ *
+ * <h3>Implementation</h3>
+ *
+ * <p> Reader and writer counts are one atomic integer in a queued
+ * synchronizer, and waiting threads are parked in its queue.  Timed
+ * entries park for the remaining time.  Reentrant reads are counted
+ * per thread, for the first reader in a field and otherwise in a
+ * thread local.  </p>
+ *
+ * <h3>Operation</h3>
+ *
+ * <p> While a writer is waiting, a thread not holding the read lock
+ * and not first in the queue does not enter the read lock.  The
+ * write lock holder may enter the read lock.  A read lock holder
+ * entering the write lock is a user bug that will dead lock, as for
+ * {@link Light}.  </p>
+ *
+ * <p> Each write lock entry from no writer increments a version, and
+ * an optimistic read stamp is that version while no writer holds the
+ * lock.  </p>
+ *
+ * @see Light
+ * @since 1.6
+ */
+public class Stamped
+    extends java.lang.Object
+    implements alto.sys.Lock.Optimistic
+{
+    private final static int SharedShift = 16;
+    private final static int SharedUnit = (1 << SharedShift);
+    private final static int Max = ((1 << SharedShift) - 1);
+    private final static int ExclusiveMask = ((1 << SharedShift) - 1);
+
+    private final static class Count
+        extends java.lang.Object
+    {
+        int holds;
+
+        Count(){
+            super();
+        }
+    }
+
+    private final static class Sync
+        extends AbstractQueuedSynchronizer
+    {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Written only by the write lock holder
+         */
+        volatile long version = 1L;
+
+        /**
+         * Number of threads entering the write lock
+         */
+        final java.util.concurrent.atomic.AtomicInteger writers = new java.util.concurrent.atomic.AtomicInteger();
+
+        private volatile java.lang.Thread firstReader;
+
+        private int firstReaderHolds;
+
+        private final java.lang.ThreadLocal<Count> holds = new java.lang.ThreadLocal<Count>(){
+            protected Count initialValue(){
+                return new Count();
+            }
+        };
+
+
+        Sync(){
+            super();
+        }
+
+
+        final int readers(){
+            return (this.getState() >>> SharedShift);
+        }
+        final int writes(){
+            return (this.getState() & ExclusiveMask);
+        }
+        final java.lang.Thread writer(){
+            return this.getExclusiveOwnerThread();
+        }
+        protected final boolean tryAcquire(int unused){
+            java.lang.Thread current = java.lang.Thread.currentThread();
+            int c = this.getState();
+            if (0 != c){
+                if (0 == (c & ExclusiveMask) || current != this.getExclusiveOwnerThread())
+                    return false;
+                else if (Max == (c & ExclusiveMask))
+                    throw new alto.sys.Error.State("Maximum write lock count");
+                else {
+                    this.setState(c+1);
+                    return true;
+                }
+            }
+            else if (this.compareAndSetState(0,1)){
+                this.setExclusiveOwnerThread(current);
+                this.version = (this.version+1L);
+                return true;
+            }
+            else
+                return false;
+        }
+        protected final boolean tryRelease(int unused){
+            if (java.lang.Thread.currentThread() != this.getExclusiveOwnerThread())
+                throw new alto.sys.Error.State();
+            else {
+                int c = (this.getState()-1);
+                boolean free = (0 == (c & ExclusiveMask));
+                if (free)
+                    this.setExclusiveOwnerThread(null);
+                this.setState(c);
+                return free;
+            }
+        }
+        protected final int tryAcquireShared(int unused){
+            java.lang.Thread current = java.lang.Thread.currentThread();
+            while (true){
+                int c = this.getState();
+                if (0 != (c & ExclusiveMask) && current != this.getExclusiveOwnerThread())
+                    return -1;
+                else if (0 == (c & ExclusiveMask) && 0 < this.writers.get() && 0 == this.holdsRead(current) &&
+                         current != this.getFirstQueuedThread())
+                {
+                    /*
+                     * Writer preference
+                     */
+                    return -1;
+                }
+                else if (Max == (c >>> SharedShift))
+                    throw new alto.sys.Error.State("Maximum read lock count");
+                else if (this.compareAndSetState(c,(c+SharedUnit))){
+                    this.holdsIncrement(current,(c >>> SharedShift));
+                    return 1;
+                }
+            }
+        }
+        protected final boolean tryReleaseShared(int unused){
+            this.holdsDecrement(java.lang.Thread.currentThread());
+            while (true){
+                int c = this.getState();
+                int next = (c-SharedUnit);
+                if (this.compareAndSetState(c,next))
+                    return (0 == next);
+            }
+        }
+        final int holdsRead(java.lang.Thread current){
+            if (current == this.firstReader)
+                return this.firstReaderHolds;
+            else if (0 == this.readers())
+                return 0;
+            else
+                return this.holds.get().holds;
+        }
+        private void holdsIncrement(java.lang.Thread current, int readers){
+            if (0 == readers && null == this.firstReader){
+                this.firstReader = current;
+                this.firstReaderHolds = 1;
+            }
+            else if (current == this.firstReader)
+                this.firstReaderHolds += 1;
+            else
+                this.holds.get().holds += 1;
+        }
+        private void holdsDecrement(java.lang.Thread current){
+            if (current == this.firstReader){
+                int holds = (this.firstReaderHolds-1);
+                this.firstReaderHolds = holds;
+                if (0 == holds)
+                    this.firstReader = null;
+            }
+            else {
+                Count count = this.holds.get();
+                if (0 < count.holds){
+                    count.holds -= 1;
+                    if (0 == count.holds)
+                        this.holds.remove();
+                }
+                else {
+                    this.holds.remove();
+                    throw new alto.sys.Error.State("Read lock not held");
+                }
+            }
+        }
+    }
+
+
+    private final Sync sync = new Sync();
+
+
+    public Stamped(){
+        super();
+    }
+
+
+    /**
+     * @return Read lock entries, including reentries
+     */
+    public final int lockReadLockCount(){
+        return this.sync.readers();
+    }
+    public final boolean lockReadEnterTry(){
+        return (0 <= this.sync.tryAcquireShared(1));
+    }
+    public final boolean lockReadEnterTry(long millis) throws java.lang.InterruptedException {
+        return this.sync.tryAcquireSharedNanos(1,java.util.concurrent.TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+    public final void lockReadEnter(){
+        this.sync.acquireShared(1);
+    }
+    public final void lockReadExit(){
+        this.sync.releaseShared(1);
+    }
+    /**
+     * @return Write lock entries, including reentries
+     */
+    public final int lockWriteHoldCount(){
+        return this.sync.writes();
+    }
+    public final boolean lockWriteEnterTry(){
+        return this.sync.tryAcquire(1);
+    }
+    public final boolean lockWriteEnterTry(long millis) throws java.lang.InterruptedException {
+        Sync sync = this.sync;
+        if (sync.tryAcquire(1))
+            return true;
+        else {
+            sync.writers.incrementAndGet();
+            try {
+                return sync.tryAcquireNanos(1,java.util.concurrent.TimeUnit.MILLISECONDS.toNanos(millis));
+            }
+            finally {
+                sync.writers.decrementAndGet();
+            }
+        }
+    }
+    public final void lockWriteEnter(){
+        Sync sync = this.sync;
+        if (!sync.tryAcquire(1)){
+            sync.writers.incrementAndGet();
+            try {
+                sync.acquire(1);
+            }
+            finally {
+                sync.writers.decrementAndGet();
+            }
+        }
+    }
+    public final void lockWriteExit(){
+        this.sync.release(1);
+    }
+    /**
+     * @return Stamp for {@link #lockReadValidate(long)}, or zero while
+     * the write lock is held
+     */
+    public final long lockReadOptimistic(){
+        Sync sync = this.sync;
+        long version = sync.version;
+        if (0 == sync.writes())
+            return version;
+        else
+            return 0L;
+    }
+    /**
+     * @return No write lock has been entered since the stamp was
+     * issued, so that reads made after the stamp are consistent
+     */
+    public final boolean lockReadValidate(long stamp){
+        Sync sync = this.sync;
+        return (0L != stamp && stamp == sync.version && 0 == sync.writes());
+    }
+    public final boolean isWriteLocked(){
+        return (0 != this.sync.writes());
+    }
+    public final boolean isNotWriteLocked(){
+        return (0 == this.sync.writes());
+    }
+    public final boolean isWriteLocker(){
+        return (java.lang.Thread.currentThread() == this.sync.writer());
+    }
+    public final boolean isNotWriteLocker(){
+        return (java.lang.Thread.currentThread() != this.sync.writer());
+    }
+    public java.lang.String toString(){
+        Sync sync = this.sync;
+        return "[Stamped readers="+sync.readers()+" writes="+sync.writes()+" version="+sync.version+"]";
+    }
+
+
+    protected static void usage(java.io.PrintStream out){
+        out.println();
+        out.println("Usage");
+        out.println();
+        out.println("  Stamped test [seconds]");
+        out.println("  Stamped bench [threads] [write-percent] [seconds]");
+        out.println();
+        out.println("Description");
+        out.println();
+        out.println("  Test checks mutual exclusion, reentrant reads with a waiting");
+        out.println("  writer, writer preference, timed entries and optimistic read");
+        out.println("  validation.  Default one second.");
+        out.println();
+        out.println("  Bench compares read- heavy throughput of Light, Stamped and");
+        out.println("  Stamped optimistic reads.  Default 8 threads, 5% writes,");
+        out.println("  two seconds per lock.  Workers not completed one second after");
+        out.println("  the run are reported as stalled.");
+        out.println();
+    }
+    /**
+     * Shared state for the test and bench threads.  Writers keep
+     * 'a' equal to 'b'.
+     */
+    private final static class Data
+        extends java.lang.Object
+    {
+        final alto.sys.Lock.Advanced lock;
+        volatile long a, b;
+        final java.util.concurrent.atomic.AtomicInteger readers = new java.util.concurrent.atomic.AtomicInteger();
+        final java.util.concurrent.atomic.AtomicInteger writers = new java.util.concurrent.atomic.AtomicInteger();
+        final java.util.concurrent.atomic.AtomicLong errors = new java.util.concurrent.atomic.AtomicLong();
+        final java.util.concurrent.atomic.AtomicLong operations = new java.util.concurrent.atomic.AtomicLong();
+        final java.util.concurrent.atomic.AtomicLong invalid = new java.util.concurrent.atomic.AtomicLong();
+        volatile boolean run = true;
+        /**
+         * Workers not completed after the run
+         */
+        int stalled;
+
+        Data(alto.sys.Lock.Advanced lock){
+            super();
+            this.lock = lock;
+        }
+    }
+    private final static class Worker
+        extends java.lang.Thread
+    {
+        final Data data;
+        final int writePercent;
+        final boolean optimistic, check;
+
+        Worker(Data data, int writePercent, boolean optimistic, boolean check){
+            super("Stamped worker");
+            this.data = data;
+            this.writePercent = writePercent;
+            this.optimistic = optimistic;
+            this.check = check;
+            this.setDaemon(true);
+        }
+        public void run(){
+            Data data = this.data;
+            alto.sys.Lock.Advanced lock = data.lock;
+            java.util.Random random = new java.util.Random();
+            long count = 0L;
+            while (data.run){
+                if (random.nextInt(100) < this.writePercent){
+                    lock.lockWriteEnter();
+                    try {
+                        if (this.check){
+                            if (0 != data.writers.getAndIncrement() || 0 != data.readers.get())
+                                data.errors.incrementAndGet();
+                        }
+                        data.a += 1;
+                        if (this.check)
+                            java.lang.Thread.yield();
+                        data.b += 1;
+                        if (this.check)
+                            data.writers.decrementAndGet();
+                    }
+                    finally {
+                        lock.lockWriteExit();
+                    }
+                }
+                else if (this.optimistic){
+                    Stamped stamped = (Stamped)lock;
+                    long stamp = stamped.lockReadOptimistic();
+                    long a = data.a;
+                    long b = data.b;
+                    if (!stamped.lockReadValidate(stamp)){
+                        data.invalid.incrementAndGet();
+                        lock.lockReadEnter();
+                        try {
+                            a = data.a;
+                            b = data.b;
+                        }
+                        finally {
+                            lock.lockReadExit();
+                        }
+                    }
+                    if (a != b)
+                        data.errors.incrementAndGet();
+                }
+                else {
+                    lock.lockReadEnter();
+                    try {
+                        if (this.check){
+                            data.readers.incrementAndGet();
+                            if (0 != data.writers.get())
+                                data.errors.incrementAndGet();
+                        }
+                        if (data.a != data.b)
+                            data.errors.incrementAndGet();
+                        if (this.check)
+                            data.readers.decrementAndGet();
+                    }
+                    finally {
+                        lock.lockReadExit();
+                    }
+                }
+                count += 1;
+            }
+            data.operations.addAndGet(count);
+        }
+    }
+    /**
+     * @return Operations per millisecond
+     */
+    private static double Run(Data data, int threads, int writePercent, boolean optimistic, boolean check, long millis)
+        throws java.lang.InterruptedException
+    {
+        Worker[] workers = new Worker[threads];
+        for (int cc = 0; cc < threads; cc++)
+            workers[cc] = new Worker(data,writePercent,optimistic,check);
+        long start = java.lang.System.nanoTime();
+        for (int cc = 0; cc < threads; cc++)
+            workers[cc].start();
+        java.lang.Thread.sleep(millis);
+        data.run = false;
+        long stall = (java.lang.System.currentTimeMillis()+1000L);
+        for (int cc = 0; cc < threads; cc++){
+            workers[cc].join(java.lang.Math.max(1L,(stall-java.lang.System.currentTimeMillis())));
+            if (workers[cc].isAlive())
+                data.stalled += 1;
+        }
+        long end = java.lang.System.nanoTime();
+        return (data.operations.get()/((end-start)/1e6));
+    }
+    private final static class Enter
+        extends java.lang.Thread
+    {
+        final alto.sys.Lock.Advanced lock;
+        final boolean write;
+        volatile boolean entered;
+
+        Enter(alto.sys.Lock.Advanced lock, boolean write){
+            super("Stamped enter");
+            this.lock = lock;
+            this.write = write;
+            this.setDaemon(true);
+        }
+        public void run(){
+            if (this.write){
+                this.lock.lockWriteEnter();
+                this.entered = true;
+                this.lock.lockWriteExit();
+            }
+            else {
+                this.lock.lockReadEnter();
+                this.entered = true;
+                this.lock.lockReadExit();
+            }
+        }
+    }
+    private static boolean Test(java.lang.String name, boolean pass){
+        System.out.printf("%-40s %s%n",name,(pass)?("pass"):("FAIL"));
+        return pass;
+    }
+    private static boolean Test(long millis)
+        throws java.lang.InterruptedException
+    {
+        boolean pass = true;
+        /*
+         * Exclusion and consistency
+         */
+        Data data = new Data(new Stamped());
+        Run(data,8,20,false,true,millis);
+        pass &= Test("exclusion ("+data.operations.get()+" ops)",(0L == data.errors.get() && 0 == data.stalled));
+        data = new Data(new Stamped());
+        Run(data,8,20,true,false,millis);
+        pass &= Test("optimistic validation ("+data.invalid.get()+" invalid)",(0L == data.errors.get() && 0 == data.stalled));
+        /*
+         * Reentrant read with a waiting writer
+         */
+        Stamped lock = new Stamped();
+        lock.lockReadEnter();
+        Enter writer = new Enter(lock,true);
+        writer.start();
+        while (0 == lock.sync.writers.get())
+            java.lang.Thread.yield();
+        boolean reentered = lock.lockReadEnterTry(1000L);
+        if (reentered)
+            lock.lockReadExit();
+        pass &= Test("reentrant read with waiting writer",reentered);
+        /*
+         * Writer preference
+         */
+        Enter reader = new Enter(lock,false);
+        reader.start();
+        java.lang.Thread.sleep(50L);
+        pass &= Test("writer preference",(!reader.entered && !writer.entered));
+        lock.lockReadExit();
+        writer.join(1000L);
+        reader.join(1000L);
+        pass &= Test("writer then reader after exit",(writer.entered && reader.entered));
+        /*
+         * Timed entries and write reentry with read
+         */
+        lock.lockWriteEnter();
+        lock.lockWriteEnter();
+        lock.lockReadEnter();
+        long stamp = lock.lockReadOptimistic();
+        Enter other = new Enter(lock,false);
+        other.start();
+        java.lang.Thread.sleep(20L);
+        pass &= Test("write reentry and read by writer",(2 == lock.lockWriteHoldCount() && 1 == lock.lockReadLockCount() && !other.entered));
+        pass &= Test("no optimistic stamp while write locked",(0L == stamp));
+        lock.lockReadExit();
+        lock.lockWriteExit();
+        lock.lockWriteExit();
+        other.join(1000L);
+        pass &= Test("reader after write exit",other.entered);
+        stamp = lock.lockReadOptimistic();
+        lock.lockWriteEnter();
+        lock.lockWriteExit();
+        pass &= Test("stamp invalid after write",(!lock.lockReadValidate(stamp)));
+        final Stamped held = new Stamped();
+        held.lockWriteEnter();
+        final boolean[] timed = new boolean[2];
+        java.lang.Thread T = new java.lang.Thread(){
+                public void run(){
+                    try {
+                        long start = java.lang.System.currentTimeMillis();
+                        timed[0] = (!held.lockReadEnterTry(30L) && !held.lockWriteEnterTry(30L));
+                        timed[1] = (55L <= (java.lang.System.currentTimeMillis()-start));
+                    }
+                    catch (java.lang.InterruptedException exc){
+                    }
+                }
+            };
+        T.start();
+        T.join();
+        held.lockWriteExit();
+        pass &= Test("timed entries time out",(timed[0] && timed[1]));
+        try {
+            held.lockReadExit();
+            pass &= Test("asymmetric read exit",false);
+        }
+        catch (alto.sys.Error.State exc){
+            pass &= Test("asymmetric read exit",true);
+        }
+        return pass;
+    }
+    public static void main(java.lang.String[] argv){
+        try {
+            if (0 < argv.length && "test".equals(argv[0])){
+                long millis = 1000L;
+                if (1 < argv.length)
+                    millis = (java.lang.Long.parseLong(argv[1])*1000L);
+                System.exit(Test(millis)?(0):(1));
+            }
+            else if (0 < argv.length && "bench".equals(argv[0])){
+                int threads = 8, writePercent = 5;
+                long millis = 2000L;
+                if (1 < argv.length)
+                    threads = java.lang.Integer.parseInt(argv[1]);
+                if (2 < argv.length)
+                    writePercent = java.lang.Integer.parseInt(argv[2]);
+                if (3 < argv.length)
+                    millis = (java.lang.Long.parseLong(argv[3])*1000L);
+                for (int pass = 0; pass < 2; pass++){
+                    Data light = new Data(new Light());
+                    Data stamped = new Data(new Stamped());
+                    Data optimistic = new Data(new Stamped());
+                    double lightRate = Run(light,threads,writePercent,false,false,millis);
+                    double stampedRate = Run(stamped,threads,writePercent,false,false,millis);
+                    double optimisticRate = Run(optimistic,threads,writePercent,true,false,millis);
+                    if (0 < pass){
+                        System.out.printf("%d threads %d%% writes (ops/ms)%n",threads,writePercent);
+                        System.out.printf("  Light      %12.1f  stalled %d%n",lightRate,light.stalled);
+                        System.out.printf("  Stamped    %12.1f  stalled %d%n",stampedRate,stamped.stalled);
+                        System.out.printf("  optimistic %12.1f  stalled %d  invalid %d%n",optimisticRate,optimistic.stalled,optimistic.invalid.get());
+                    }
+                }
+                System.exit(0);
+            }
+            else {
+                usage(System.err);
+                System.exit(1);
+            }
+        }
+        catch (java.lang.Exception exc){
+            exc.printStackTrace();
+            System.exit(1);
+        }
+    }
+}